@@ -0,0 +1,564 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A concurrent map keyed by primitive longs.
+ * <p>
+ * Unlike a {@code ConcurrentHashMap<Long, V>} it neither boxes the keys nor allocates an entry per
+ * mapping: the map is split in segments, each one an open addressing table made of an array of
+ * keys and an array of values. This brings the cost of a mapping down from around 50 bytes to less
+ * than 20, which matters on indexes holding millions of ids.
+ * <p>
+ * Updates hold the monitor of their segment. Lookups don't lock: they read the table and check
+ * that no entry was moved meanwhile, and only lock the segment when one was. A segment's table
+ * doubles when it is two thirds full and halves when it gets below a sixth full, down to the size
+ * it was created with.
+ * <p>
+ * Null values are not supported. The views returned by {@link #keys()} and {@link #values()} are
+ * snapshots, taken one segment at a time.
+ */
+public class ConcurrentLongHashMap<V>
+{
+   // Constants -----------------------------------------------------
+
+   private static final int DEFAULT_CAPACITY = 256;
+
+   private static final int DEFAULT_SEGMENTS = 16;
+
+   private static final float FILL_FACTOR = 0.66f;
+
+   // Attributes ----------------------------------------------------
+
+   private final Segment<V>[] segments;
+
+   private final int segmentShift;
+
+   // Constructors --------------------------------------------------
+
+   public ConcurrentLongHashMap()
+   {
+      this(DEFAULT_CAPACITY, DEFAULT_SEGMENTS);
+   }
+
+   /**
+    * @param expectedSize the number of mappings to size the map for
+    * @param concurrencyLevel the number of segments, rounded up to a power of 2
+    */
+   @SuppressWarnings("unchecked")
+   public ConcurrentLongHashMap(final int expectedSize, final int concurrencyLevel)
+   {
+      int n = 1;
+      int shift = 0;
+      while (n < concurrencyLevel)
+      {
+         n <<= 1;
+         shift++;
+      }
+
+      segments = new Segment[n];
+
+      segmentShift = 64 - shift;
+
+      int perSegment = Math.max(2, expectedSize / n);
+
+      for (int i = 0; i < n; i++)
+      {
+         segments[i] = new Segment<V>(perSegment);
+      }
+   }
+
+   // Public --------------------------------------------------------
+
+   public V get(final long key)
+   {
+      long h = hash(key);
+      return segmentFor(h).get(key, (int)h);
+   }
+
+   public boolean containsKey(final long key)
+   {
+      return get(key) != null;
+   }
+
+   /**
+    * @return the previous value, or null if there was none
+    */
+   public V put(final long key, final V value)
+   {
+      checkValue(value);
+      long h = hash(key);
+      return segmentFor(h).put(key, value, (int)h, false);
+   }
+
+   /**
+    * @return the current value if there was one, in which case it was not replaced, or null
+    */
+   public V putIfAbsent(final long key, final V value)
+   {
+      checkValue(value);
+      long h = hash(key);
+      return segmentFor(h).put(key, value, (int)h, true);
+   }
+
+   /**
+    * @return the removed value, or null if there was none
+    */
+   public V remove(final long key)
+   {
+      long h = hash(key);
+      return segmentFor(h).remove(key, (int)h);
+   }
+
+   public int size()
+   {
+      int size = 0;
+      for (Segment<V> segment : segments)
+      {
+         size += segment.size;
+      }
+      return size;
+   }
+
+   public boolean isEmpty()
+   {
+      for (Segment<V> segment : segments)
+      {
+         if (segment.size != 0)
+         {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   public void clear()
+   {
+      for (Segment<V> segment : segments)
+      {
+         segment.clear();
+      }
+   }
+
+   /**
+    * @return a snapshot of the keys
+    */
+   public long[] keys()
+   {
+      long[] keys = new long[size()];
+      int index = 0;
+
+      for (Segment<V> segment : segments)
+      {
+         synchronized (segment)
+         {
+            if (index + segment.size > keys.length)
+            {
+               keys = Arrays.copyOf(keys, index + segment.size);
+            }
+
+            Table table = segment.table;
+
+            for (int i = 0; i < table.capacity; i++)
+            {
+               if (table.values.get(i) != null)
+               {
+                  keys[index++] = table.keys.get(i);
+               }
+            }
+         }
+      }
+
+      return index == keys.length ? keys : Arrays.copyOf(keys, index);
+   }
+
+   /**
+    * @return a snapshot of the values
+    */
+   public List<V> values()
+   {
+      final List<V> values = new ArrayList<V>(size());
+
+      forEach(new EntryProcessor<V>()
+      {
+         public void accept(final long key, final V value)
+         {
+            values.add(value);
+         }
+      });
+
+      return values;
+   }
+
+   /**
+    * Calls the processor for every mapping, holding the lock of one segment at a time. The
+    * processor must not update this map.
+    */
+   @SuppressWarnings("unchecked")
+   public void forEach(final EntryProcessor<V> processor)
+   {
+      for (Segment<V> segment : segments)
+      {
+         synchronized (segment)
+         {
+            Table table = segment.table;
+
+            for (int i = 0; i < table.capacity; i++)
+            {
+               Object value = table.values.get(i);
+
+               if (value != null)
+               {
+                  processor.accept(table.keys.get(i), (V)value);
+               }
+            }
+         }
+      }
+   }
+
+   public void putAll(final ConcurrentLongHashMap<V> other)
+   {
+      other.forEach(new EntryProcessor<V>()
+      {
+         public void accept(final long key, final V value)
+         {
+            put(key, value);
+         }
+      });
+   }
+
+   /**
+    * @return the number of slots of all the segments' tables
+    */
+   int capacity()
+   {
+      int capacity = 0;
+      for (Segment<V> segment : segments)
+      {
+         capacity += segment.table.capacity;
+      }
+      return capacity;
+   }
+
+   @Override
+   public String toString()
+   {
+      final StringBuilder buffer = new StringBuilder("{");
+
+      forEach(new EntryProcessor<V>()
+      {
+         public void accept(final long key, final V value)
+         {
+            if (buffer.length() > 1)
+            {
+               buffer.append(", ");
+            }
+            buffer.append(key).append('=').append(value);
+         }
+      });
+
+      return buffer.append('}').toString();
+   }
+
+   // Private -------------------------------------------------------
+
+   private static void checkValue(final Object value)
+   {
+      if (value == null)
+      {
+         throw new NullPointerException("null values are not supported");
+      }
+   }
+
+   // the finalizer of MurmurHash3, ids are often sequential and need their bits spread
+   private static long hash(final long key)
+   {
+      long h = key;
+      h ^= h >>> 33;
+      h *= 0xff51afd7ed558ccdL;
+      h ^= h >>> 33;
+      h *= 0xc4ceb9fe1a85ec53L;
+      h ^= h >>> 33;
+      return h;
+   }
+
+   private Segment<V> segmentFor(final long hash)
+   {
+      // the high bits pick the segment, the low bits the bucket within it
+      return segments.length == 1 ? segments[0] : segments[(int)(hash >>> segmentShift)];
+   }
+
+   // Inner classes -------------------------------------------------
+
+   public interface EntryProcessor<V>
+   {
+      void accept(long key, V value);
+   }
+
+   private static final class Segment<V>
+   {
+      volatile Table table;
+
+      // odd while entries are moved within the table, lookups overlapping the move are done again
+      // holding the lock
+      volatile int version;
+
+      volatile int size;
+
+      final int minCapacity;
+
+      int resizeThreshold;
+
+      int shrinkThreshold;
+
+      Segment(final int expectedSize)
+      {
+         int capacity = 2;
+         while (capacity * FILL_FACTOR < expectedSize)
+         {
+            capacity <<= 1;
+         }
+         minCapacity = capacity;
+         allocate(capacity);
+      }
+
+      @SuppressWarnings("unchecked")
+      V get(final long key, final int hash)
+      {
+         int stamp = version;
+
+         if ((stamp & 1) == 0)
+         {
+            Object value = table.find(key, hash);
+
+            if (version == stamp)
+            {
+               return (V)value;
+            }
+         }
+
+         synchronized (this)
+         {
+            return (V)table.find(key, hash);
+         }
+      }
+
+      @SuppressWarnings("unchecked")
+      synchronized V put(final long key, final V value, final int hash, final boolean onlyIfAbsent)
+      {
+         Table table = this.table;
+
+         int mask = table.capacity - 1;
+
+         int i = hash & mask;
+
+         for (; table.values.get(i) != null; i = i + 1 & mask)
+         {
+            if (table.keys.get(i) == key)
+            {
+               V previous = (V)table.values.get(i);
+
+               if (!onlyIfAbsent)
+               {
+                  table.values.set(i, value);
+               }
+
+               return previous;
+            }
+         }
+
+         if (size + 1 > resizeThreshold)
+         {
+            rehash(table.capacity << 1);
+
+            return put(key, value, hash, onlyIfAbsent);
+         }
+
+         // the key is in place before the value makes the slot visible to lookups
+         table.keys.set(i, key);
+         table.values.set(i, value);
+
+         size++;
+
+         return null;
+      }
+
+      @SuppressWarnings("unchecked")
+      synchronized V remove(final long key, final int hash)
+      {
+         Table table = this.table;
+
+         int mask = table.capacity - 1;
+
+         int i = hash & mask;
+
+         for (; table.values.get(i) != null; i = i + 1 & mask)
+         {
+            if (table.keys.get(i) == key)
+            {
+               V previous = (V)table.values.get(i);
+
+               version++;
+               try
+               {
+                  table.values.set(i, null);
+                  size--;
+
+                  shiftBack(table, i, mask);
+
+                  if (size < shrinkThreshold && table.capacity > minCapacity)
+                  {
+                     rehash(table.capacity >> 1);
+                  }
+               }
+               finally
+               {
+                  version++;
+               }
+
+               return previous;
+            }
+         }
+
+         return null;
+      }
+
+      synchronized void clear()
+      {
+         allocate(minCapacity);
+         size = 0;
+      }
+
+      /**
+       * Linear probing needs no tombstones: the entries following the removed one in its cluster
+       * are moved back whenever the free slot is within their probe sequence.
+       */
+      private static void shiftBack(final Table table, int free, final int mask)
+      {
+         for (int i = free + 1 & mask; table.values.get(i) != null; i = i + 1 & mask)
+         {
+            long key = table.keys.get(i);
+
+            int home = (int)hash(key) & mask;
+
+            // move it unless its home slot is cyclically in (free, i]
+            if ((i - home & mask) >= (i - free & mask))
+            {
+               table.keys.set(free, key);
+               table.values.set(free, table.values.get(i));
+               table.values.set(i, null);
+               free = i;
+            }
+         }
+      }
+
+      private void rehash(final int capacity)
+      {
+         Table old = table;
+
+         Table resized = new Table(capacity);
+
+         int mask = capacity - 1;
+
+         for (int j = 0; j < old.capacity; j++)
+         {
+            Object value = old.values.get(j);
+
+            if (value != null)
+            {
+               long key = old.keys.get(j);
+
+               int i = (int)hash(key) & mask;
+
+               while (resized.values.get(i) != null)
+               {
+                  i = i + 1 & mask;
+               }
+
+               resized.keys.set(i, key);
+               resized.values.set(i, value);
+            }
+         }
+
+         // lookups still reading the old table see its entries as they were when it was replaced,
+         // it is not updated anymore
+         setTable(resized);
+      }
+
+      private void allocate(final int capacity)
+      {
+         setTable(new Table(capacity));
+      }
+
+      private void setTable(final Table table)
+      {
+         this.table = table;
+         resizeThreshold = (int)(table.capacity * FILL_FACTOR);
+         shrinkThreshold = table.capacity > minCapacity ? resizeThreshold / 4 : 0;
+      }
+   }
+
+   private static final class Table
+   {
+      final int capacity;
+
+      final AtomicLongArray keys;
+
+      final AtomicReferenceArray<Object> values;
+
+      Table(final int capacity)
+      {
+         this.capacity = capacity;
+         keys = new AtomicLongArray(capacity);
+         values = new AtomicReferenceArray<Object>(capacity);
+      }
+
+      /**
+       * @return the value of the key, or null. Without the segment's lock, the result only holds
+       *         if no entry was moved meanwhile.
+       */
+      Object find(final long key, final int hash)
+      {
+         int mask = capacity - 1;
+
+         int i = hash & mask;
+
+         // bounded, as a table read while entries move could appear full
+         for (int probes = 0; probes < capacity; probes++)
+         {
+            Object value = values.get(i);
+
+            if (value == null)
+            {
+               return null;
+            }
+
+            if (keys.get(i) == key)
+            {
+               return value;
+            }
+
+            i = i + 1 & mask;
+         }
+
+         return null;
+      }
+   }
+}
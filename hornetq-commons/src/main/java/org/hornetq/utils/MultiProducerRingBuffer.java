@@ -0,0 +1,175 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.utils;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded FIFO queue that any number of threads can offer to, but only one thread at a time may
+ * poll from (callers have to serialize the polls themselves).
+ * <p>
+ * Producers claim a slot by moving the tail with a CAS and then publish the element on it, so
+ * offering never locks nor allocates. When the ring is full {@link #offer(Object)} returns false
+ * and it is up to the caller to make room, e.g. by draining the ring itself.
+ */
+public final class MultiProducerRingBuffer<E> implements Iterable<E>
+{
+   private final AtomicReferenceArray<E> ring;
+
+   private final int mask;
+
+   // next slot to be claimed by a producer
+   private final AtomicLong tail = new AtomicLong(0);
+
+   // next slot to be polled, only moved by the consumer
+   private final AtomicLong head = new AtomicLong(0);
+
+   /**
+    * @param capacity rounded up to a power of 2
+    */
+   public MultiProducerRingBuffer(final int capacity)
+   {
+      int size = 1;
+      while (size < capacity)
+      {
+         size <<= 1;
+      }
+
+      ring = new AtomicReferenceArray<E>(size);
+
+      mask = size - 1;
+   }
+
+   /**
+    * @return false if the ring is full
+    */
+   public boolean offer(final E e)
+   {
+      if (e == null)
+      {
+         throw new NullPointerException();
+      }
+
+      long slot;
+
+      do
+      {
+         slot = tail.get();
+
+         if (slot - head.get() > mask)
+         {
+            return false;
+         }
+      }
+      while (!tail.compareAndSet(slot, slot + 1));
+
+      ring.lazySet((int)slot & mask, e);
+
+      return true;
+   }
+
+   /**
+    * Must not be called concurrently with itself.
+    *
+    * @return the oldest element, or null if the ring is empty
+    */
+   public E poll()
+   {
+      long slot = head.get();
+
+      int index = (int)slot & mask;
+
+      E e = ring.get(index);
+
+      if (e == null)
+      {
+         if (slot == tail.get())
+         {
+            return null;
+         }
+
+         // the slot was claimed but its producer has not published the element yet, this is a
+         // matter of a few instructions and we can't skip it without breaking the order
+         while ((e = ring.get(index)) == null)
+         {
+            Thread.yield();
+         }
+      }
+
+      ring.lazySet(index, null);
+
+      head.lazySet(slot + 1);
+
+      return e;
+   }
+
+   public boolean isEmpty()
+   {
+      return head.get() == tail.get();
+   }
+
+   public int size()
+   {
+      return (int)Math.max(0, tail.get() - head.get());
+   }
+
+   public int capacity()
+   {
+      return mask + 1;
+   }
+
+   /**
+    * A weakly consistent, read only view of the elements, meant for debugging and browsing: it may
+    * miss elements polled or offered while iterating.
+    */
+   public Iterator<E> iterator()
+   {
+      return new Iterator<E>()
+      {
+         private long slot = head.get();
+
+         private final long end = tail.get();
+
+         private E next;
+
+         public boolean hasNext()
+         {
+            while (next == null && slot < end)
+            {
+               next = ring.get((int)slot++ & mask);
+            }
+            return next != null;
+         }
+
+         public E next()
+         {
+            if (!hasNext())
+            {
+               throw new NoSuchElementException();
+            }
+            E e = next;
+            next = null;
+            return e;
+         }
+
+         public void remove()
+         {
+            throw new UnsupportedOperationException();
+         }
+      };
+   }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConcurrentLongHashMapTest extends Assert
+{
+   @Test
+   public void testPutGetRemove()
+   {
+      ConcurrentLongHashMap<String> map = new ConcurrentLongHashMap<String>(2, 1);
+
+      assertTrue(map.isEmpty());
+      assertNull(map.put(0, "zero"));
+      assertNull(map.put(-1, "minus one"));
+      assertNull(map.put(Long.MAX_VALUE, "max"));
+
+      assertEquals(3, map.size());
+      assertEquals("zero", map.get(0));
+      assertEquals("minus one", map.get(-1));
+      assertEquals("max", map.get(Long.MAX_VALUE));
+      assertNull(map.get(1));
+
+      assertEquals("zero", map.put(0, "0"));
+      assertEquals("0", map.putIfAbsent(0, "ignored"));
+      assertEquals("0", map.get(0));
+
+      assertEquals("minus one", map.remove(-1));
+      assertNull(map.remove(-1));
+      assertFalse(map.containsKey(-1));
+      assertEquals(2, map.size());
+
+      long[] keys = map.keys();
+      Arrays.sort(keys);
+      assertArrayEquals(new long[]{0, Long.MAX_VALUE}, keys);
+
+      map.clear();
+
+      assertTrue(map.isEmpty());
+      assertNull(map.get(0));
+   }
+
+   @Test(expected = NullPointerException.class)
+   public void testNullValue()
+   {
+      new ConcurrentLongHashMap<String>().put(1, null);
+   }
+
+   /**
+    * Removals move entries back within their probe sequence, random operations make sure no entry
+    * gets lost on the way.
+    */
+   @Test
+   public void testRandomOperations()
+   {
+      ConcurrentLongHashMap<Long> map = new ConcurrentLongHashMap<Long>(4, 4);
+
+      Map<Long, Long> expected = new HashMap<Long, Long>();
+
+      Random random = new Random(4);
+
+      for (int i = 0; i < 200000; i++)
+      {
+         long key = random.nextInt(2000);
+
+         if (random.nextInt(3) == 0)
+         {
+            assertEquals(expected.remove(key), map.remove(key));
+         }
+         else
+         {
+            assertEquals(expected.put(key, (long)i), map.put(key, (long)i));
+         }
+      }
+
+      assertEquals(expected.size(), map.size());
+
+      for (Map.Entry<Long, Long> entry : expected.entrySet())
+      {
+         assertEquals(entry.getValue(), map.get(entry.getKey()));
+      }
+
+      assertEquals(expected.size(), map.keys().length);
+      assertEquals(expected.size(), map.values().size());
+   }
+
+   @Test
+   public void testTablesShrink()
+   {
+      ConcurrentLongHashMap<Long> map = new ConcurrentLongHashMap<Long>(16, 2);
+
+      int initialCapacity = map.capacity();
+
+      for (long i = 0; i < 100000; i++)
+      {
+         map.put(i, i);
+      }
+
+      assertTrue(map.capacity() >= 100000);
+
+      for (long i = 0; i < 99990; i++)
+      {
+         assertEquals(Long.valueOf(i), map.remove(i));
+      }
+
+      assertTrue(map.capacity() < 1000);
+
+      for (long i = 99990; i < 100000; i++)
+      {
+         assertEquals(Long.valueOf(i), map.get(i));
+      }
+
+      map.clear();
+
+      assertEquals(initialCapacity, map.capacity());
+   }
+
+   /**
+    * Lookups don't lock, while removals move entries back and tables grow and shrink, keys which
+    * stay in the map must always be found.
+    */
+   @Test
+   public void testLookupsDuringUpdates() throws Exception
+   {
+      final ConcurrentLongHashMap<Long> map = new ConcurrentLongHashMap<Long>(4, 1);
+
+      // the even keys stay, the odd ones come and go around them
+      for (long i = 0; i < 1000; i += 2)
+      {
+         map.put(i, i);
+      }
+
+      final AtomicInteger misses = new AtomicInteger();
+
+      final AtomicBoolean running = new AtomicBoolean(true);
+
+      Thread[] readers = new Thread[4];
+
+      for (int t = 0; t < readers.length; t++)
+      {
+         readers[t] = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               while (running.get())
+               {
+                  for (long i = 0; i < 1000; i += 2)
+                  {
+                     if (!Long.valueOf(i).equals(map.get(i)))
+                     {
+                        misses.incrementAndGet();
+                     }
+                  }
+               }
+            }
+         };
+
+         readers[t].start();
+      }
+
+      try
+      {
+         for (int round = 0; round < 200; round++)
+         {
+            for (long i = 1; i < 20000; i += 2)
+            {
+               map.put(i, i);
+            }
+
+            for (long i = 1; i < 20000; i += 2)
+            {
+               map.remove(i);
+            }
+         }
+      }
+      finally
+      {
+         running.set(false);
+      }
+
+      for (Thread reader : readers)
+      {
+         reader.join();
+      }
+
+      assertEquals(0, misses.get());
+   }
+
+   @Test
+   public void testConcurrentPuts() throws Exception
+   {
+      final ConcurrentLongHashMap<Long> map = new ConcurrentLongHashMap<Long>();
+
+      final int threads = 8;
+
+      final int perThread = 50000;
+
+      final CountDownLatch start = new CountDownLatch(1);
+
+      Thread[] producers = new Thread[threads];
+
+      for (int t = 0; t < threads; t++)
+      {
+         final long base = t * (long)perThread;
+
+         producers[t] = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               try
+               {
+                  start.await();
+               }
+               catch (InterruptedException e)
+               {
+                  return;
+               }
+
+               for (long i = base; i < base + perThread; i++)
+               {
+                  map.put(i, i);
+
+                  if (i % 2 == 0)
+                  {
+                     map.remove(i);
+                  }
+               }
+            }
+         };
+
+         producers[t].start();
+      }
+
+      start.countDown();
+
+      for (Thread producer : producers)
+      {
+         producer.join();
+      }
+
+      assertEquals(threads * perThread / 2, map.size());
+
+      for (long i = 0; i < threads * (long)perThread; i++)
+      {
+         assertEquals(i % 2 == 0 ? null : Long.valueOf(i), map.get(i));
+      }
+   }
+}
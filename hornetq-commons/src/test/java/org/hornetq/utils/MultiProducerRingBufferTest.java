@@ -0,0 +1,142 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.utils;
+
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MultiProducerRingBufferTest extends Assert
+{
+   @Test
+   public void testOfferPollAndFull()
+   {
+      MultiProducerRingBuffer<Integer> ring = new MultiProducerRingBuffer<Integer>(3);
+
+      assertEquals(4, ring.capacity());
+      assertTrue(ring.isEmpty());
+      assertNull(ring.poll());
+
+      for (int i = 0; i < 4; i++)
+      {
+         assertTrue(ring.offer(i));
+      }
+
+      assertFalse(ring.offer(4));
+      assertEquals(4, ring.size());
+
+      assertEquals(Integer.valueOf(0), ring.poll());
+      assertTrue(ring.offer(4));
+
+      Iterator<Integer> iter = ring.iterator();
+      for (int i = 1; i <= 4; i++)
+      {
+         assertTrue(iter.hasNext());
+         assertEquals(Integer.valueOf(i), iter.next());
+      }
+      assertFalse(iter.hasNext());
+
+      for (int i = 1; i <= 4; i++)
+      {
+         assertEquals(Integer.valueOf(i), ring.poll());
+      }
+
+      assertNull(ring.poll());
+      assertTrue(ring.isEmpty());
+   }
+
+   @Test
+   public void testConcurrentProducers() throws Exception
+   {
+      final int producers = 8;
+      final int elements = 100000;
+
+      final MultiProducerRingBuffer<Long> ring = new MultiProducerRingBuffer<Long>(64);
+
+      final CountDownLatch latchStart = new CountDownLatch(1);
+
+      Thread[] threads = new Thread[producers];
+
+      for (int i = 0; i < producers; i++)
+      {
+         final long producer = i;
+
+         threads[i] = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               try
+               {
+                  latchStart.await();
+               }
+               catch (InterruptedException e)
+               {
+                  return;
+               }
+
+               for (long j = 0; j < elements; j++)
+               {
+                  Long value = producer * elements + j;
+
+                  while (!ring.offer(value))
+                  {
+                     Thread.yield();
+                  }
+               }
+            }
+         };
+         threads[i].start();
+      }
+
+      latchStart.countDown();
+
+      long[] last = new long[producers];
+
+      for (int i = 0; i < producers; i++)
+      {
+         last[i] = -1;
+      }
+
+      int received = 0;
+
+      while (received < producers * elements)
+      {
+         Long value = ring.poll();
+
+         if (value == null)
+         {
+            Thread.yield();
+            continue;
+         }
+
+         int producer = (int)(value / elements);
+
+         assertTrue("out of order", value > last[producer]);
+
+         last[producer] = value;
+
+         received++;
+      }
+
+      for (Thread t : threads)
+      {
+         t.join();
+      }
+
+      assertTrue(ring.isEmpty());
+   }
+}
@@ -225,6 +225,44 @@ public interface ServerLocator extends AutoCloseable
     */
    void setConsumerWindowSize(int consumerWindowSize);
 
+   /**
+    * Returns the minimum window size of the consumers whose window is sized from their
+    * consumption.
+    *
+    * Value is in bytes, default value is {@link HornetQClient#DEFAULT_CONSUMER_MIN_WINDOW_SIZE}.
+    *
+    * @return the minimum window size used for consumer flow control
+    */
+   int getConsumerMinWindowSize();
+
+   /**
+    * Sets the minimum window size of the consumers whose window is sized from their consumption.
+    *
+    * @param consumerMinWindowSize minimum window size (in bytes) used for consumer flow control
+    */
+   void setConsumerMinWindowSize(int consumerMinWindowSize);
+
+   /**
+    * Returns the maximum window size of the consumers created through this factory.
+    *
+    * Value is in bytes, default value is {@link HornetQClient#DEFAULT_CONSUMER_MAX_WINDOW_SIZE}.
+    *
+    * @return the maximum window size used for consumer flow control
+    */
+   int getConsumerMaxWindowSize();
+
+   /**
+    * Sets the maximum window size of the consumers created through this factory.
+    * <p>
+    * Value must be -1 (to keep the window of the consumers to their {@link #getConsumerWindowSize()
+    * window size}) or greater than 0. Once set, the window of the consumers with a window size
+    * greater than 1 starts at their window size and is then sized from the rate they consume
+    * messages at and the round trip time to the server, between the minimum and the maximum
+    * window size.
+    * @param consumerMaxWindowSize maximum window size (in bytes) used for consumer flow control
+    */
+   void setConsumerMaxWindowSize(int consumerMaxWindowSize);
+
    /**
     * Returns the maximum rate of message consumption for consumers created through this factory.
     *
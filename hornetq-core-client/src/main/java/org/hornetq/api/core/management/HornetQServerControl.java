@@ -138,6 +138,34 @@ public interface HornetQServerControl
     */
    int getJournalBufferTimeout();
 
+   /**
+    * Returns whether the timeout used to flush internal buffers adapts to the measured sync latency.
+    */
+   boolean isJournalBufferAdaptive();
+
+   /**
+    * Returns the timeout (in nanoseconds) currently used to flush internal buffers on the journal.
+    * <br>
+    * It only differs from {@link #getJournalBufferTimeout()} if the journal buffer is adaptive.
+    */
+   int getJournalCurrentBufferTimeout();
+
+   /**
+    * Returns the average time (in nanoseconds) a sync of the journal took, measured only if the
+    * journal buffer is adaptive.
+    */
+   long getJournalSyncLatency();
+
+   /**
+    * Returns the number of bytes per second recently written to the journal.
+    */
+   double getJournalWriteRate();
+
+   /**
+    * Returns the number of internal buffer flushes per second recently done on the journal.
+    */
+   double getJournalFlushRate();
+
    /**
     * do any clients failover on a server shutdown
     */
@@ -159,6 +187,58 @@ public interface HornetQServerControl
     */
    int getJournalCompactPercentage();
 
+   /**
+    * Returns the maximal number of consecutive journal files compacted at once, 0 if the whole
+    * journal is compacted at once.
+    */
+   int getJournalCompactMaxFiles();
+
+   /**
+    * Returns the rate (in MiB per second) at which compacting reads and writes journal files, 0 if
+    * it is unlimited.
+    */
+   int getJournalCompactIORate();
+
+   /**
+    * Returns the percentage of the journal files of the compacting in progress already read, -1 if
+    * the journal is not compacting.
+    */
+   int getJournalCompactProgress();
+
+   /**
+    * Returns the number of bytes of journal files reclaimed by compacting since the server started.
+    */
+   long getJournalCompactReclaimedBytes();
+
+   /**
+    * Returns the time (in milliseconds) writes to the journal were held by compacting since the
+    * server started.
+    */
+   long getJournalCompactPauseTime();
+
+   /**
+    * Returns the time (in milliseconds) writes to the journal were held by the last compacting.
+    */
+   long getJournalLastCompactPauseTime();
+
+   /**
+    * Returns the maximal number of filled journal files kept ready, 0 if only the next file is
+    * opened in advance.
+    */
+   int getJournalMaxReadyFiles();
+
+   /**
+    * Returns the number of times writes to the journal waited for the next journal file to be
+    * filled and opened since the server started.
+    */
+   long getJournalFileStalls();
+
+   /**
+    * Returns the time (in milliseconds) writes to the journal waited for the next journal file to
+    * be filled and opened since the server started.
+    */
+   long getJournalFileStallTime();
+
    /**
     * Returns whether this server is using persistence and store data.
     */
@@ -67,6 +67,16 @@ public interface QueueControl
     */
    long getScheduledCount();
 
+   /**
+    * Returns the number of pages read ahead of the paged messages of this queue.
+    */
+   int getPagePrefetchDepth();
+
+   /**
+    * Returns the time in milliseconds this queue waited for its paged messages to be read.
+    */
+   long getPageStallTime();
+
    /**
     * Returns the number of consumers consuming messages from this queue.
     */
@@ -82,6 +92,21 @@ public interface QueueControl
     */
    long getMessagesAdded();
 
+   /**
+    * Returns the number of message groups currently owned by a consumer of this queue.
+    */
+   int getGroupCount();
+
+   /**
+    * Returns the number of message groups dropped because they were idle or the queue owned too many groups.
+    */
+   long getGroupsEvicted();
+
+   /**
+    * Returns the number of message groups that had to pick a new consumer because their consumer was closed.
+    */
+   long getGroupsRebalanced();
+
    /**
     * Returns the expiry address associated to this queue.
     */
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.client.impl;
+
+/**
+ * The window of a consumer sized from the rate it processes messages at and the round trip time
+ * to the server, between a minimum and a maximum size.
+ * <p>
+ * The window is sized to twice the bytes processed during a round trip, so the buffer doesn't run
+ * dry while the credits are on their way to the server. The round trip time is measured from the
+ * credits sent while the server had none left to the next message received, and the processing
+ * rate from the messages consumed while others were already buffered. While the consumer starves
+ * (its buffer was empty and the server ran out of credits) the window doubles.
+ * <p>
+ * The window grows by sending more credits than the bytes consumed, and shrinks by sending less,
+ * the credits owed to the server being kept until enough bytes are consumed.
+ */
+class AdaptiveConsumerWindow
+{
+   // Constants -----------------------------------------------------
+
+   // weight of a new sample in the averages
+   private static final double SAMPLE_WEIGHT = 0.125;
+
+   // Attributes ----------------------------------------------------
+
+   private final int minWindowSize;
+
+   private final int maxWindowSize;
+
+   private int windowSize;
+
+   // credits sent to the server, and bytes received from it
+   private long granted;
+
+   private long received;
+
+   // credits the server is owed as the window shrank, <= 0
+   private long owed;
+
+   private long creditsSentAt = -1;
+
+   private double roundTripTime;
+
+   // bytes per nano second
+   private double rate;
+
+   private long busyBytes;
+
+   private long busyTime;
+
+   private long lastConsumedAt = -1;
+
+   private int lastConsumedBytes;
+
+   private boolean lastBacklog;
+
+   private boolean starving;
+
+   // Constructors --------------------------------------------------
+
+   /**
+    * @param windowSize the credits sent when the consumer was created
+    */
+   AdaptiveConsumerWindow(final int windowSize, final int minWindowSize, final int maxWindowSize)
+   {
+      this.minWindowSize = Math.max(2, Math.min(minWindowSize, maxWindowSize));
+      this.maxWindowSize = maxWindowSize;
+      reset(windowSize);
+   }
+
+   // Public --------------------------------------------------------
+
+   /**
+    * Resets the measures, once the consumer was recreated with {@code windowSize} credits.
+    */
+   public synchronized void reset(final int windowSize)
+   {
+      this.windowSize = windowSize;
+      granted = windowSize;
+      received = 0;
+      owed = 0;
+      creditsSentAt = -1;
+      roundTripTime = 0;
+      rate = 0;
+      busyBytes = 0;
+      busyTime = 0;
+      lastConsumedAt = -1;
+      lastBacklog = false;
+      starving = false;
+   }
+
+   public synchronized void received(final int bytes)
+   {
+      if (creditsSentAt >= 0)
+      {
+         long sample = nanoTime() - creditsSentAt;
+
+         // the server may have had nothing to deliver right away
+         if (roundTripTime > 0 && sample > 4 * roundTripTime)
+         {
+            sample = (long)(4 * roundTripTime);
+         }
+
+         roundTripTime = average(roundTripTime, sample);
+         creditsSentAt = -1;
+      }
+
+      received += bytes;
+   }
+
+   /**
+    * @param backlog whether other messages were buffered once this one was taken
+    */
+   public synchronized void consumed(final int bytes, final boolean backlog)
+   {
+      long now = nanoTime();
+
+      if (lastConsumedAt >= 0 && lastBacklog)
+      {
+         // the message was there as soon as the previous one was processed
+         busyBytes += lastConsumedBytes;
+         busyTime += now - lastConsumedAt;
+      }
+      else if (lastConsumedAt >= 0 && granted - received <= 0)
+      {
+         starving = true;
+      }
+
+      lastConsumedAt = now;
+      lastConsumedBytes = bytes;
+      lastBacklog = backlog;
+   }
+
+   /**
+    * Resizes the window, as {@code bytes} were consumed.
+    *
+    * @return the credits to send to the server, none if {@code <= 0}
+    */
+   public synchronized int credits(final int bytes)
+   {
+      if (busyTime > 0)
+      {
+         rate = average(rate, (double)busyBytes / busyTime);
+         busyBytes = 0;
+         busyTime = 0;
+      }
+
+      long target = windowSize;
+
+      if (rate > 0 && roundTripTime > 0)
+      {
+         target = (long)(2 * rate * roundTripTime);
+      }
+
+      if (starving)
+      {
+         target = Math.max(target, 2L * windowSize);
+         starving = false;
+      }
+
+      // halves at most at once, measures being averages
+      target = Math.max(target, windowSize >> 1);
+
+      target = Math.min(Math.max(target, minWindowSize), maxWindowSize);
+
+      long credits = bytes + target - windowSize + owed;
+
+      windowSize = (int)target;
+
+      if (credits <= 0)
+      {
+         owed = credits;
+         return 0;
+      }
+
+      owed = 0;
+
+      if (granted - received <= 0)
+      {
+         // the server will send again once it gets the credits
+         creditsSentAt = nanoTime();
+      }
+
+      granted += credits;
+
+      return (int)credits;
+   }
+
+   /**
+    * The credits are sent back once half the window was consumed.
+    */
+   public synchronized int getThreshold()
+   {
+      return windowSize >> 1;
+   }
+
+   public synchronized int getWindowSize()
+   {
+      return windowSize;
+   }
+
+   public synchronized long getRoundTripTime()
+   {
+      return (long)roundTripTime;
+   }
+
+   /**
+    * @return the processing rate, in bytes per second
+    */
+   public synchronized long getRate()
+   {
+      return (long)(rate * 1000000000L);
+   }
+
+   // Protected -----------------------------------------------------
+
+   protected long nanoTime()
+   {
+      return System.nanoTime();
+   }
+
+   // Private -------------------------------------------------------
+
+   private static double average(final double average, final double sample)
+   {
+      return average == 0 ? sample : average + (sample - average) * SAMPLE_WEIGHT;
+   }
+}
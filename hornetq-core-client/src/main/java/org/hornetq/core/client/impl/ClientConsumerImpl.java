@@ -16,7 +16,6 @@ package org.hornetq.core.client.impl;
 import java.io.File;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
-import java.util.Iterator;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
@@ -41,8 +40,6 @@ import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveMessage;
 import org.hornetq.core.client.HornetQClientLogger;
 import org.hornetq.core.client.HornetQClientMessageBundle;
 import org.hornetq.utils.FutureLatch;
-import org.hornetq.utils.PriorityLinkedList;
-import org.hornetq.utils.PriorityLinkedListImpl;
 import org.hornetq.utils.ReusableLatch;
 import org.hornetq.utils.TokenBucketLimiter;
 
@@ -96,9 +93,13 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
 
    private final int clientWindowSize;
 
+   // null unless the window is sized from the consumption
+   private final AdaptiveConsumerWindow adaptiveWindow;
+
    private final int ackBatchSize;
 
-   private final PriorityLinkedList<ClientMessageInternal> buffer = new PriorityLinkedListImpl<ClientMessageInternal>(ClientConsumerImpl.NUM_PRIORITIES);
+   // only polled with the lock held, and added to by the thread handling the packets without it
+   private final ReceiveBuffer<ClientMessageInternal> buffer = new ReceiveBuffer<ClientMessageInternal>(ClientConsumerImpl.NUM_PRIORITIES);
 
    private final Runner runner = new Runner();
 
@@ -112,6 +113,9 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
 
    private volatile Thread receiverThread;
 
+   // whether the receiver thread is about to wait for a message
+   private volatile boolean receiverWaiting;
+
    private volatile Thread onMessageThread;
 
    private volatile MessageHandler handler;
@@ -122,6 +126,11 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
 
    private volatile int creditsToSend;
 
+   // the size of the messages added to the buffer, and taken from it
+   private volatile long receivedBytes;
+
+   private volatile long takenBytes;
+
    private volatile boolean failedOver;
 
    private volatile Exception lastException;
@@ -130,7 +139,7 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
 
    private volatile ClientMessageInternal lastAckedMessage;
 
-   private boolean stopped = false;
+   private volatile boolean stopped = false;
 
    private long forceDeliveryCount;
 
@@ -149,6 +158,8 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
                              final SimpleString filterString,
                              final boolean browseOnly,
                              final int clientWindowSize,
+                             final int minWindowSize,
+                             final int maxWindowSize,
                              final int ackBatchSize,
                              final TokenBucketLimiter rateLimiter,
                              final Executor executor,
@@ -175,6 +186,16 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
 
       this.clientWindowSize = clientWindowSize;
 
+      if (maxWindowSize > 0 && clientWindowSize > 1)
+      {
+         // the session sent twice the client window size to create it
+         adaptiveWindow = new AdaptiveConsumerWindow(clientWindowSize << 1, minWindowSize, maxWindowSize);
+      }
+      else
+      {
+         adaptiveWindow = null;
+      }
+
       this.ackBatchSize = ackBatchSize;
 
       this.queueInfo = queueInfo;
@@ -220,6 +241,8 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
       // To control when to call deliveryForce
       boolean callForceDelivery = false;
 
+      boolean backlog = false;
+
       long start = -1;
 
       long toWait = timeout == 0 ? Long.MAX_VALUE : timeout;
@@ -256,12 +279,22 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
 
                   try
                   {
-                     wait(toWait);
+                     receiverWaiting = true;
+
+                     // the message may have been added before the flag was seen
+                     if (stopped || buffer.isEmpty())
+                     {
+                        wait(toWait);
+                     }
                   }
                   catch (InterruptedException e)
                   {
                      throw new HornetQInterruptedException(e);
                   }
+                  finally
+                  {
+                     receiverWaiting = false;
+                  }
 
                   if (m != null || closed)
                   {
@@ -274,6 +307,11 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
 
                   start = now;
                }
+
+               if (m != null)
+               {
+                  backlog = taken(m);
+               }
             }
 
             if (failedOver)
@@ -340,6 +378,8 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
                // if we have already pre acked we cant expire
                boolean expired = m.isExpired();
 
+               measureConsumption(m, backlog);
+
                flowControlBeforeConsumption(m);
 
                if (expired)
@@ -531,6 +571,12 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
 
       creditsToSend = 0;
 
+      if (adaptiveWindow != null)
+      {
+         // the session sends the client window size once the consumer is recreated
+         adaptiveWindow.reset(clientWindowSize);
+      }
+
       failedOver = true;
 
       ackIndividually = false;
@@ -576,7 +622,7 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
       return browseOnly;
    }
 
-   public synchronized void handleMessage(final SessionReceiveMessage message) throws Exception
+   public void handleMessage(final SessionReceiveMessage message) throws Exception
    {
       if (closing)
       {
@@ -600,6 +646,8 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
 
       message.setFlowControlSize(messagePacket.getPacketSize());
 
+      received(messagePacket.getPacketSize());
+
       handleRegularMessage(message);
    }
 
@@ -620,6 +668,8 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
          ackIndividually = true;
       }
 
+      receivedBytes += message.getFlowControlSize();
+
       // Add it to the buffer
       buffer.addTail(message, message.getPriority());
 
@@ -631,9 +681,12 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
             queueExecutor();
          }
       }
-      else
+      else if (receiverWaiting)
       {
-         notify();
+         synchronized (this)
+         {
+            notify();
+         }
       }
    }
 
@@ -649,7 +702,7 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
     * Say that you sent a 1G message full of spaces. That could be just bellow 100K compressed but you wouldn't have
     * enough memory to decompress it
     */
-   private void handleCompressedMessage(final SessionReceiveMessage message) throws Exception
+   private synchronized void handleCompressedMessage(final SessionReceiveMessage message) throws Exception
    {
       ClientMessageImpl clMessage = (ClientMessageImpl) message.getMessage();
       //create a ClientLargeMessageInternal out of the message
@@ -697,6 +750,8 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
 
       currentChunkMessage.setFlowControlSize(packet.getPacketSize());
 
+      received(packet.getPacketSize());
+
       currentChunkMessage.setDeliveryCount(packet.getDeliveryCount());
 
       File largeMessageCache = null;
@@ -732,6 +787,9 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
       {
          return;
       }
+
+      received(chunk.getPacketSize());
+
       if (currentLargeMessageController == null)
       {
          if (isTrace)
@@ -752,14 +810,14 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
       {
          // Need to send credits for the messages in the buffer
 
-         Iterator<ClientMessageInternal> iter = buffer.iterator();
+         ClientMessageInternal message;
 
-         while (iter.hasNext())
+         while ((message = buffer.poll()) != null)
          {
+            taken(message);
+
             try
             {
-               ClientMessageInternal message = iter.next();
-
                if (message.isLargeMessage())
                {
                   ClientLargeMessageInternal largeMessage = (ClientLargeMessageInternal)message;
@@ -813,6 +871,18 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
       return buffer.size();
    }
 
+   public int getBufferedBytes()
+   {
+      long taken = takenBytes;
+
+      return (int)(receivedBytes - taken);
+   }
+
+   public int getWindowSize()
+   {
+      return adaptiveWindow == null ? clientWindowSize << 1 : adaptiveWindow.getWindowSize();
+   }
+
    public void acknowledge(final ClientMessage message) throws HornetQException
    {
       ClientMessageInternal cmi = (ClientMessageInternal)message;
@@ -867,7 +937,7 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
       {
          creditsToSend += messageBytes;
 
-         if (creditsToSend >= clientWindowSize)
+         if (creditsToSend >= (adaptiveWindow == null ? clientWindowSize : adaptiveWindow.getThreshold()))
          {
             if (clientWindowSize == 0 && discountSlowConsumer)
             {
@@ -894,10 +964,15 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
                   HornetQClientLogger.LOGGER.debug("Sending " + messageBytes + " from flow-control");
                }
 
-               final int credits = creditsToSend;
+               int credits = creditsToSend;
 
                creditsToSend = 0;
 
+               if (adaptiveWindow != null)
+               {
+                  credits = adaptiveWindow.credits(credits);
+               }
+
                if (credits > 0)
                {
                   sendCredits(credits);
@@ -993,6 +1068,8 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
     */
    private void sendCredits(final int credits)
    {
+      final int buffered = getBufferedBytes();
+
       pendingFlowControl.countUp();
       flowControlExecutor.execute(new Runnable()
       {
@@ -1000,7 +1077,7 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
          {
             try
             {
-               channel.send(new SessionConsumerFlowCreditMessage(id, credits));
+               channel.send(new SessionConsumerFlowCreditMessage(id, credits, buffered));
             }
             finally
             {
@@ -1071,9 +1148,16 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
 
          failedOver = false;
 
+         boolean backlog = false;
+
          synchronized (this)
          {
             message = buffer.poll();
+
+            if (message != null)
+            {
+               backlog = taken(message);
+            }
          }
 
          if (message != null)
@@ -1088,6 +1172,8 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
 
             boolean expired = message.isExpired();
 
+            measureConsumption(message, backlog);
+
             flowControlBeforeConsumption(message);
 
             if (!expired)
@@ -1158,6 +1244,34 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
       }
    }
 
+   private void received(final int bytes)
+   {
+      if (adaptiveWindow != null)
+      {
+         adaptiveWindow.received(bytes);
+      }
+   }
+
+   /**
+    * Called with the lock held, once the message was polled from the buffer.
+    *
+    * @return whether other messages are left in the buffer
+    */
+   private boolean taken(final ClientMessageInternal message)
+   {
+      takenBytes += message.getFlowControlSize();
+
+      return !buffer.isEmpty();
+   }
+
+   private void measureConsumption(final ClientMessageInternal message, final boolean backlog)
+   {
+      if (adaptiveWindow != null)
+      {
+         adaptiveWindow.consumed(message.getFlowControlSize(), backlog);
+      }
+   }
+
    /**
     * @param message
     * @throws HornetQException
@@ -1223,9 +1337,14 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
       session.removeConsumer(this);
    }
 
-   private void clearBuffer()
+   private synchronized void clearBuffer()
    {
-      buffer.clear();
+      ClientMessageInternal message;
+
+      while ((message = buffer.poll()) != null)
+      {
+         taken(message);
+      }
    }
 
    private void doAck(final ClientMessageInternal message) throws HornetQException
@@ -62,6 +62,16 @@ public interface ClientConsumerInternal extends ClientConsumer
 
    int getBufferSize();
 
+   /**
+    * @return the size of the messages buffered, in bytes
+    */
+   int getBufferedBytes();
+
+   /**
+    * @return the window size, which only changes when sized from the consumption
+    */
+   int getWindowSize();
+
    void cleanUp() throws HornetQException;
 
    void acknowledge(ClientMessage message) throws HornetQException;
@@ -882,6 +882,8 @@ public class ClientSessionFactoryImpl implements ClientSessionFactoryInternal, C
                                                                      serverLocator.isAutoGroup(),
                                                                      ackBatchSize,
                                                                      serverLocator.getConsumerWindowSize(),
+                                                                     serverLocator.getConsumerMinWindowSize(),
+                                                                     serverLocator.getConsumerMaxWindowSize(),
                                                                      serverLocator.getConsumerMaxRate(),
                                                                      serverLocator.getConfirmationWindowSize(),
                                                                      serverLocator.getProducerWindowSize(),
@@ -149,6 +149,10 @@ final class ClientSessionImpl implements ClientSessionInternal, FailureListener,
 
    private final int consumerWindowSize;
 
+   private final int consumerMinWindowSize;
+
+   private final int consumerMaxWindowSize;
+
    private final int consumerMaxRate;
 
    private final int confirmationWindowSize;
@@ -212,6 +216,8 @@ final class ClientSessionImpl implements ClientSessionInternal, FailureListener,
                             final boolean autoGroup,
                             final int ackBatchSize,
                             final int consumerWindowSize,
+                            final int consumerMinWindowSize,
+                            final int consumerMaxWindowSize,
                             final int consumerMaxRate,
                             final int confirmationWindowSize,
                             final int producerWindowSize,
@@ -263,6 +269,10 @@ final class ClientSessionImpl implements ClientSessionInternal, FailureListener,
 
       this.consumerWindowSize = consumerWindowSize;
 
+      this.consumerMinWindowSize = consumerMinWindowSize;
+
+      this.consumerMaxWindowSize = consumerMaxWindowSize;
+
       this.consumerMaxRate = consumerMaxRate;
 
       this.confirmationWindowSize = confirmationWindowSize;
@@ -1933,6 +1943,8 @@ final class ClientSessionImpl implements ClientSessionInternal, FailureListener,
                                                                filterString,
                                                                browseOnly,
                                                                clientWindowSize,
+                                                               consumerMinWindowSize,
+                                                               consumerMaxWindowSize,
                                                                ackBatchSize,
                                                                consumerMaxRate > 0 ? new TokenBucketLimiterImpl(maxRate,
                                                                                                                 false)
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.client.impl;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import org.hornetq.utils.PriorityLinkedListImpl;
+
+/**
+ * The buffer of a consumer, a queue with a single thread adding to it and a single thread polling
+ * from it at a time, none of them taking a lock.
+ * <p>
+ * As long as all the elements have the same priority, they are polled in the order they were
+ * added. Once an element of another priority is added, the elements are moved to a
+ * {@link PriorityLinkedListImpl} as they are polled, so the higher priorities are polled first.
+ * <p>
+ * The size of the buffer can be read from any thread.
+ */
+final class ReceiveBuffer<T>
+{
+   // Constants -----------------------------------------------------
+
+   @SuppressWarnings("rawtypes")
+   private static final AtomicReferenceFieldUpdater<Node, Node> NEXT = AtomicReferenceFieldUpdater.newUpdater(Node.class,
+                                                                                                             Node.class,
+                                                                                                             "next");
+
+   // Attributes ----------------------------------------------------
+
+   private final int numPriorities;
+
+   // owned by the thread adding
+   private Node<T> tail;
+
+   private int priority = -1;
+
+   private volatile long added;
+
+   private volatile boolean mixedPriorities;
+
+   // owned by the thread polling
+   private Node<T> head;
+
+   private PriorityLinkedListImpl<T> sorted;
+
+   private volatile long removed;
+
+   // Constructors --------------------------------------------------
+
+   ReceiveBuffer(final int numPriorities)
+   {
+      this.numPriorities = numPriorities;
+
+      head = tail = new Node<T>(null, 0);
+   }
+
+   // Public --------------------------------------------------------
+
+   /**
+    * Only called by the thread adding.
+    */
+   @SuppressWarnings("unchecked")
+   public void addTail(final T t, final int priority)
+   {
+      if (priority != this.priority)
+      {
+         if (this.priority == -1)
+         {
+            this.priority = priority;
+         }
+         else if (!mixedPriorities)
+         {
+            mixedPriorities = true;
+         }
+      }
+
+      Node<T> node = new Node<T>(t, priority);
+
+      // counted before the node is published, so the size never goes below zero
+      added = added + 1;
+
+      NEXT.lazySet(tail, node);
+
+      tail = node;
+   }
+
+   /**
+    * Only called by the thread polling.
+    */
+   public T poll()
+   {
+      if (mixedPriorities)
+      {
+         return pollSorted();
+      }
+
+      T t = next();
+
+      if (t != null)
+      {
+         removed = removed + 1;
+      }
+
+      return t;
+   }
+
+   public int size()
+   {
+      long removed = this.removed;
+
+      return (int)(added - removed);
+   }
+
+   public boolean isEmpty()
+   {
+      return size() == 0;
+   }
+
+   // Private -------------------------------------------------------
+
+   private T next()
+   {
+      Node<T> next = head.next;
+
+      if (next == null)
+      {
+         return null;
+      }
+
+      T t = next.value;
+
+      // the node becomes the head, and shouldn't retain the element
+      next.value = null;
+
+      head = next;
+
+      return t;
+   }
+
+   private T pollSorted()
+   {
+      if (sorted == null)
+      {
+         sorted = new PriorityLinkedListImpl<T>(numPriorities);
+      }
+
+      Node<T> next;
+
+      while ((next = head.next) != null)
+      {
+         sorted.addTail(next(), next.priority);
+      }
+
+      T t = sorted.poll();
+
+      if (t != null)
+      {
+         removed = removed + 1;
+      }
+
+      return t;
+   }
+
+   // Inner classes -------------------------------------------------
+
+   private static final class Node<T>
+   {
+      T value;
+
+      final int priority;
+
+      volatile Node<T> next;
+
+      Node(final T value, final int priority)
+      {
+         this.value = value;
+         this.priority = priority;
+      }
+   }
+}
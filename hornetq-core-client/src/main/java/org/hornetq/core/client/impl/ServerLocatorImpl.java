@@ -137,6 +137,10 @@ public final class ServerLocatorImpl implements ServerLocatorInternal, Discovery
 
    private int consumerWindowSize;
 
+   private int consumerMinWindowSize;
+
+   private int consumerMaxWindowSize;
+
    private int consumerMaxRate;
 
    private int confirmationWindowSize;
@@ -431,6 +435,10 @@ public final class ServerLocatorImpl implements ServerLocatorInternal, Discovery
 
       consumerWindowSize = HornetQClient.DEFAULT_CONSUMER_WINDOW_SIZE;
 
+      consumerMinWindowSize = HornetQClient.DEFAULT_CONSUMER_MIN_WINDOW_SIZE;
+
+      consumerMaxWindowSize = HornetQClient.DEFAULT_CONSUMER_MAX_WINDOW_SIZE;
+
       consumerMaxRate = HornetQClient.DEFAULT_CONSUMER_MAX_RATE;
 
       confirmationWindowSize = HornetQClient.DEFAULT_CONFIRMATION_WINDOW_SIZE;
@@ -992,6 +1000,28 @@ public final class ServerLocatorImpl implements ServerLocatorInternal, Discovery
       this.consumerWindowSize = consumerWindowSize;
    }
 
+   public int getConsumerMinWindowSize()
+   {
+      return consumerMinWindowSize;
+   }
+
+   public void setConsumerMinWindowSize(final int consumerMinWindowSize)
+   {
+      checkWrite();
+      this.consumerMinWindowSize = consumerMinWindowSize;
+   }
+
+   public int getConsumerMaxWindowSize()
+   {
+      return consumerMaxWindowSize;
+   }
+
+   public void setConsumerMaxWindowSize(final int consumerMaxWindowSize)
+   {
+      checkWrite();
+      this.consumerMaxWindowSize = consumerMaxWindowSize;
+   }
+
    public int getConsumerMaxRate()
    {
       return consumerMaxRate;
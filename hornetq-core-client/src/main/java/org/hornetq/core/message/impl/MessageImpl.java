@@ -161,8 +161,6 @@ public abstract class MessageImpl implements MessageInternal
 
          if (other.buffer != null)
          {
-            createBody(other.buffer.capacity());
-
             // We need to copy the underlying buffer too, since the different messsages thereafter might have different
             // properties set on them, making their encoding different
             buffer = other.buffer.copy(0, other.buffer.capacity());
@@ -525,6 +523,21 @@ public abstract class MessageImpl implements MessageInternal
       }
    }
 
+   /**
+    * Returns the encoded message, without the space reserved for the packet headers, as a view on
+    * the message buffer rather than a copy of it, so all the deliveries of a message share its
+    * encoding. The view must not be written to: the message buffer is copied on its next change
+    * instead.
+    */
+   public synchronized HornetQBuffer getEncodedBufferView()
+   {
+      HornetQBuffer buff = encodeToBuffer();
+
+      bufferUsed = true;
+
+      return buff.slice(BUFFER_HEADER_SPACE, endOfMessagePosition - BUFFER_HEADER_SPACE);
+   }
+
    public void setAddressTransient(final SimpleString address)
    {
       this.address = address;
@@ -49,6 +49,8 @@ public interface MessageInternal extends Message
 
    HornetQBuffer getEncodedBuffer();
 
+   HornetQBuffer getEncodedBufferView();
+
    int getHeadersAndPropertiesEncodeSize();
 
    HornetQBuffer getWholeBuffer();
@@ -15,8 +15,8 @@ package org.hornetq.core.protocol.core.impl;
 
 import java.util.EnumSet;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
@@ -83,7 +83,7 @@ public final class ChannelImpl implements Channel
 
    private Packet response;
 
-   private final java.util.Queue<Packet> resendCache;
+   private final ResendCache resendCache;
 
    private volatile int firstStoredCommandID;
 
@@ -103,7 +103,11 @@ public final class ChannelImpl implements Channel
 
    private final Object sendBlockingLock = new Object();
 
-   private boolean failingOver;
+   // odd while failing over, incremented as the failover starts and ends
+   private final AtomicInteger failoverVersion = new AtomicInteger();
+
+   // set while a packet is added to the resend cache, for lock() to wait for it
+   private final AtomicBoolean addingToResendCache = new AtomicBoolean();
 
    private final int confWindowSize;
 
@@ -125,7 +129,7 @@ public final class ChannelImpl implements Channel
 
       if (confWindowSize != -1)
       {
-         resendCache = new ConcurrentLinkedQueue<Packet>();
+         resendCache = new ResendCache();
       }
       else
       {
@@ -223,22 +227,13 @@ public final class ChannelImpl implements Channel
 
          HornetQBuffer buffer = packet.encode(connection);
 
-         lock.lock();
+         final boolean cache = resendCache != null && packet.isRequiresConfirmations();
 
          try
          {
-            if (failingOver)
-            {
-               // TODO - don't hardcode this timeout
-               try
-               {
-                  failoverCondition.await(10000, TimeUnit.MILLISECONDS);
-               }
-               catch (InterruptedException e)
-               {
-                  throw new HornetQInterruptedException(e);
-               }
-            }
+            // No lock unless failing over: lock() waits for the packet being added to the resend cache
+            // TODO - don't hardcode this timeout
+            startAddingToResendCache(cache, 10000);
 
             // Sanity check
             if (transferring)
@@ -246,14 +241,17 @@ public final class ChannelImpl implements Channel
                throw new IllegalStateException("Cannot send a packet while channel is doing failover");
             }
 
-            if (resendCache != null && packet.isRequiresConfirmations())
+            if (cache)
             {
                resendCache.add(packet);
             }
          }
          finally
          {
-            lock.unlock();
+            if (cache)
+            {
+               addingToResendCache.lazySet(false);
+            }
          }
 
          if (isTrace)
@@ -307,40 +305,75 @@ public final class ChannelImpl implements Channel
 
          try
          {
-            if (failingOver)
+            response = null;
+         }
+         finally
+         {
+            lock.unlock();
+         }
+
+         final boolean cache = resendCache != null && packet.isRequiresConfirmations();
+
+         boolean waitForFailover = true;
+
+         while (true)
+         {
+            int version = failoverVersion.get();
+
+            // The failover is waited for without sendLock, or every send() would wait as long as it takes too
+            if (waitForFailover && isFailingOver(version))
+            {
+               if (!awaitFailover(version, connection.getBlockingCallFailoverTimeout()))
+               {
+                  HornetQClientLogger.LOGGER.debug("timed-out waiting for failover condition");
+
+                  // the packet is then sent while it is going on
+                  waitForFailover = false;
+               }
+
+               continue;
+            }
+
+            // The resend cache takes a single writer, and the packets must be written in the order they're cached
+            synchronized (sendLock)
             {
+               if (cache)
+               {
+                  addingToResendCache.set(true);
+               }
+
                try
                {
-                  if(connection.getBlockingCallFailoverTimeout() < 0)
+                  // Checked after the mark is set, like startAddingToResendCache does, in case a failover started
+                  // while taking the lock
+                  if (waitForFailover && isFailingOver(failoverVersion.get()))
                   {
-                     while (failingOver)
-                     {
-                        failoverCondition.await();
-                     }
+                     continue;
                   }
-                  else
+
+                  if (cache)
                   {
-                     if (!failoverCondition.await(connection.getBlockingCallFailoverTimeout(), TimeUnit.MILLISECONDS))
-                     {
-                        HornetQClientLogger.LOGGER.debug("timed-out waiting for failover condition");
-                     }
+                     resendCache.add(packet);
                   }
                }
-               catch (InterruptedException e)
+               finally
                {
-                  throw new HornetQInterruptedException(e);
+                  if (cache)
+                  {
+                     addingToResendCache.lazySet(false);
+                  }
                }
-            }
-
-            response = null;
 
-            if (resendCache != null && packet.isRequiresConfirmations())
-            {
-               resendCache.add(packet);
+               connection.getTransportConnection().write(buffer, false, false);
             }
 
-            connection.getTransportConnection().write(buffer, false, false);
+            break;
+         }
+
+         lock.lock();
 
+         try
+         {
             long toWait = connection.getBlockingCallTimeout();
 
             long start = System.currentTimeMillis();
@@ -473,7 +506,7 @@ public final class ChannelImpl implements Channel
          throw HornetQClientMessageBundle.BUNDLE.noChannelToClose(id);
       }
 
-      if(failingOver)
+      if (isFailingOver(failoverVersion.get()))
       {
          unlock();
       }
@@ -510,7 +543,7 @@ public final class ChannelImpl implements Channel
          }
          clearUpTo(otherLastConfirmedCommandID);
 
-         for (final Packet packet : resendCache)
+         for (final Packet packet : resendCache.getPackets())
          {
             doWrite(packet);
          }
@@ -521,20 +554,42 @@ public final class ChannelImpl implements Channel
    {
       lock.lock();
 
-      failingOver = true;
+      try
+      {
+         if (!isFailingOver(failoverVersion.get()))
+         {
+            failoverVersion.incrementAndGet();
+         }
+      }
+      finally
+      {
+         lock.unlock();
+      }
 
-      lock.unlock();
+      // A send that didn't see the failover yet is done with the resend cache shortly
+      while (addingToResendCache.get())
+      {
+         Thread.yield();
+      }
    }
 
    public void unlock()
    {
       lock.lock();
 
-      failingOver = false;
-
-      failoverCondition.signalAll();
+      try
+      {
+         if (isFailingOver(failoverVersion.get()))
+         {
+            failoverVersion.incrementAndGet();
+         }
 
-      lock.unlock();
+         failoverCondition.signalAll();
+      }
+      finally
+      {
+         lock.unlock();
+      }
    }
 
    public CoreRemotingConnection getConnection()
@@ -640,37 +695,102 @@ public final class ChannelImpl implements Channel
       connection.getTransportConnection().write(buffer, false, false);
    }
 
-   private void clearUpTo(final int lastReceivedCommandID)
+   private static boolean isFailingOver(final int failoverVersion)
    {
-      final int numberToClear = 1 + lastReceivedCommandID - firstStoredCommandID;
+      return (failoverVersion & 1) != 0;
+   }
 
-      if (numberToClear == -1)
+   /**
+    * Waits for any failover in progress to end, and marks a packet as being added to the resend cache if
+    * {@code cache}. The mark is set before the failover state is read, so either lock() sees it and waits for the
+    * packet to be added, or the packet waits for the failover lock() started. The caller clears the mark.
+    *
+    * @param timeout in milliseconds, forever if {@code < 0}
+    * @return {@code false} if a failover didn't end in time, the packet is then sent while it is going on
+    */
+   private boolean startAddingToResendCache(final boolean cache, final long timeout)
+   {
+      while (true)
       {
-         throw HornetQClientMessageBundle.BUNDLE.invalidCommandID(lastReceivedCommandID);
-      }
-
-      int sizeToFree = 0;
+         if (cache)
+         {
+            addingToResendCache.set(true);
+         }
 
-      for (int i = 0; i < numberToClear; i++)
-      {
-         final Packet packet = resendCache.poll();
+         int version = failoverVersion.get();
 
-         if (packet == null)
+         if (!isFailingOver(version))
          {
-            HornetQClientLogger.LOGGER.cannotFindPacketToClear(lastReceivedCommandID, firstStoredCommandID);
-            firstStoredCommandID = lastReceivedCommandID + 1;
-            return;
+            return true;
          }
 
-         if (packet.getType() != PacketImpl.PACKETS_CONFIRMED)
+         addingToResendCache.set(false);
+
+         if (!awaitFailover(version, timeout))
          {
-            sizeToFree += packet.getPacketSize();
+            addingToResendCache.set(cache);
+
+            return false;
          }
+      }
+   }
+
+   /**
+    * Waits for the failover started as of {@code version} to end.
+    *
+    * @param timeout in milliseconds, forever if {@code < 0}
+    * @return {@code false} if the failover didn't end in time
+    */
+   private boolean awaitFailover(final int version, final long timeout)
+   {
+      lock.lock();
 
-         if (commandConfirmationHandler != null)
+      try
+      {
+         long toWait = TimeUnit.MILLISECONDS.toNanos(timeout);
+
+         while (failoverVersion.get() == version)
          {
-            commandConfirmationHandler.commandConfirmed(packet);
+            if (timeout < 0)
+            {
+               failoverCondition.await();
+            }
+            else if (toWait > 0)
+            {
+               toWait = failoverCondition.awaitNanos(toWait);
+            }
+            else
+            {
+               return false;
+            }
          }
+
+         return true;
+      }
+      catch (InterruptedException e)
+      {
+         throw new HornetQInterruptedException(e);
+      }
+      finally
+      {
+         lock.unlock();
+      }
+   }
+
+   private void clearUpTo(final int lastReceivedCommandID)
+   {
+      final int numberToClear = 1 + lastReceivedCommandID - firstStoredCommandID;
+
+      if (numberToClear == -1)
+      {
+         throw HornetQClientMessageBundle.BUNDLE.invalidCommandID(lastReceivedCommandID);
+      }
+
+      if (resendCache.remove(numberToClear, commandConfirmationHandler) < numberToClear)
+      {
+         HornetQClientLogger.LOGGER.cannotFindPacketToClear(lastReceivedCommandID, firstStoredCommandID);
+         firstStoredCommandID = lastReceivedCommandID + 1;
+         return;
       }
 
       firstStoredCommandID += numberToClear;
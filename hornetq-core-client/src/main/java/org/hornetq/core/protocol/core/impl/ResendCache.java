@@ -0,0 +1,232 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.protocol.core.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.hornetq.core.protocol.core.CommandConfirmationHandler;
+import org.hornetq.core.protocol.core.Packet;
+
+/**
+ * The packets sent on a channel and not confirmed yet, in the order they were sent.
+ * <p>
+ * The packets are kept in a ring indexed by their sequence, which grows as needed. It takes a
+ * single writer, adding the packets as they are sent, and a single reader, removing them as they
+ * are confirmed, without locking: removing the confirmed packets only moves the head of the ring
+ * past them.
+ */
+final class ResendCache
+{
+   // Constants -----------------------------------------------------
+
+   private static final int INITIAL_CAPACITY = 64;
+
+   // Attributes ----------------------------------------------------
+
+   private volatile AtomicReferenceArray<Packet> packets;
+
+   // the sequence of the oldest packet, only moved by the reader
+   private volatile long head;
+
+   // the sequence of the next packet, only moved by the writer
+   private volatile long tail;
+
+   // the packets being removed, only used by the reader
+   private Packet[] removed = new Packet[0];
+
+   // Constructors --------------------------------------------------
+
+   ResendCache()
+   {
+      this(INITIAL_CAPACITY);
+   }
+
+   /**
+    * @param capacity the initial capacity, a power of 2
+    */
+   ResendCache(final int capacity)
+   {
+      packets = new AtomicReferenceArray<Packet>(capacity);
+   }
+
+   // Public --------------------------------------------------------
+
+   /**
+    * Adds a packet, by the writer.
+    */
+   public void add(final Packet packet)
+   {
+      AtomicReferenceArray<Packet> ring = packets;
+
+      final long seq = tail;
+
+      if (seq - head == ring.length())
+      {
+         ring = grow(ring, seq);
+      }
+
+      ring.lazySet(index(ring, seq), packet);
+
+      tail = seq + 1;
+   }
+
+   /**
+    * Removes the oldest packets, by the reader.
+    *
+    * @param count the number of packets to remove
+    * @param handler notified of every packet removed if not {@code null}
+    * @return the number of packets removed, less than {@code count} if there were not as many
+    */
+   public int remove(final int count, final CommandConfirmationHandler handler)
+   {
+      if (count <= 0)
+      {
+         return 0;
+      }
+
+      final long first = head;
+
+      final long end = Math.min(first + count, tail);
+
+      // read after the tail, for the ring to hold the packets up to it
+      final AtomicReferenceArray<Packet> ring = packets;
+
+      final int removedCount = (int)(end - first);
+
+      if (removed.length < removedCount)
+      {
+         removed = new Packet[Math.max(removedCount, removed.length * 2)];
+      }
+
+      for (long seq = first; seq < end; seq++)
+      {
+         int index = index(ring, seq);
+
+         Packet packet = ring.get(index);
+
+         removed[(int)(seq - first)] = packet;
+
+         // cleared before moving the head, after which the writer may reuse the slot
+         ring.lazySet(index, null);
+
+         if (handler != null)
+         {
+            handler.commandConfirmed(packet);
+         }
+      }
+
+      head = end;
+
+      AtomicReferenceArray<Packet> grown = packets;
+
+      if (grown != ring)
+      {
+         // the ring grew meanwhile, and may have copied the removed packets, unless the writer went round the new
+         // ring and the slot holds a newer packet already
+         for (long seq = first; seq < end; seq++)
+         {
+            Packet packet = removed[(int)(seq - first)];
+
+            if (packet != null)
+            {
+               grown.compareAndSet(index(grown, seq), packet, null);
+            }
+         }
+      }
+
+      // not to keep the packets
+      Arrays.fill(removed, 0, removedCount, null);
+
+      return removedCount;
+   }
+
+   /**
+    * Removes all the packets, by the reader.
+    */
+   public void clear()
+   {
+      remove(size(), null);
+   }
+
+   /**
+    * The packets, oldest first.
+    */
+   public List<Packet> getPackets()
+   {
+      final long end = tail;
+
+      final AtomicReferenceArray<Packet> ring = packets;
+
+      List<Packet> list = new ArrayList<Packet>((int)(end - head));
+
+      for (long seq = head; seq < end; seq++)
+      {
+         Packet packet = ring.get(index(ring, seq));
+
+         if (packet != null)
+         {
+            list.add(packet);
+         }
+      }
+
+      return list;
+   }
+
+   public int size()
+   {
+      return (int)(tail - head);
+   }
+
+   /**
+    * The number of packets the ring can hold before it grows.
+    */
+   public int getCapacity()
+   {
+      return packets.length();
+   }
+
+   // Private -------------------------------------------------------
+
+   private static int index(final AtomicReferenceArray<Packet> ring, final long seq)
+   {
+      return (int)seq & (ring.length() - 1);
+   }
+
+   private AtomicReferenceArray<Packet> grow(final AtomicReferenceArray<Packet> ring, final long seq)
+   {
+      final long first = head;
+
+      AtomicReferenceArray<Packet> grown = new AtomicReferenceArray<Packet>(ring.length() * 2);
+
+      for (long i = first; i < seq; i++)
+      {
+         grown.lazySet(index(grown, i), ring.get(index(ring, i)));
+      }
+
+      packets = grown;
+
+      // the packets removed while copying must not be kept by the new ring
+      final long removed = head;
+
+      for (long i = first; i < removed; i++)
+      {
+         grown.lazySet(index(grown, i), null);
+      }
+
+      return grown;
+   }
+}
@@ -26,11 +26,23 @@ public class SessionConsumerFlowCreditMessage extends PacketImpl
    private long consumerID;
    private int credits;
 
+   // -1 if unknown, the clients before it was added not sending it
+   private int bufferedBytes = -1;
+
    public SessionConsumerFlowCreditMessage(final long consumerID, final int credits)
+   {
+      this(consumerID, credits, -1);
+   }
+
+   /**
+    * @param bufferedBytes the size of the messages buffered by the consumer
+    */
+   public SessionConsumerFlowCreditMessage(final long consumerID, final int credits, final int bufferedBytes)
    {
       super(SESS_FLOWTOKEN);
       this.consumerID = consumerID;
       this.credits = credits;
+      this.bufferedBytes = bufferedBytes;
    }
 
    public SessionConsumerFlowCreditMessage()
@@ -50,11 +62,17 @@ public class SessionConsumerFlowCreditMessage extends PacketImpl
       return credits;
    }
 
+   public int getBufferedBytes()
+   {
+      return bufferedBytes;
+   }
+
    @Override
    public void encodeRest(final HornetQBuffer buffer)
    {
       buffer.writeLong(consumerID);
       buffer.writeInt(credits);
+      buffer.writeInt(bufferedBytes);
    }
 
    @Override
@@ -62,12 +80,18 @@ public class SessionConsumerFlowCreditMessage extends PacketImpl
    {
       consumerID = buffer.readLong();
       credits = buffer.readInt();
+
+      // the servers before it was added ignore it, as it comes last
+      if (buffer.readable())
+      {
+         bufferedBytes = buffer.readInt();
+      }
    }
 
    @Override
    public String toString()
    {
-      return getParentString() + ", consumerID=" + consumerID + ", credits=" + credits + "]";
+      return getParentString() + ", consumerID=" + consumerID + ", credits=" + credits + ", bufferedBytes=" + bufferedBytes + "]";
    }
 
    @Override
@@ -77,6 +101,7 @@ public class SessionConsumerFlowCreditMessage extends PacketImpl
       int result = super.hashCode();
       result = prime * result + (int)(consumerID ^ (consumerID >>> 32));
       result = prime * result + credits;
+      result = prime * result + bufferedBytes;
       return result;
    }
 
@@ -94,6 +119,8 @@ public class SessionConsumerFlowCreditMessage extends PacketImpl
          return false;
       if (credits != other.credits)
          return false;
+      if (bufferedBytes != other.bufferedBytes)
+         return false;
       return true;
    }
 }
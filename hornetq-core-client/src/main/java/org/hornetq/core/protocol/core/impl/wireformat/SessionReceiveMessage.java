@@ -14,9 +14,12 @@
 package org.hornetq.core.protocol.core.impl.wireformat;
 
 import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.core.buffers.impl.ChannelBufferWrapper;
 import org.hornetq.core.message.impl.MessageInternal;
 import org.hornetq.spi.core.protocol.RemotingConnection;
 import org.hornetq.utils.DataConstants;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 
 /**
  * @author <a href="mailto:tim.fox@jboss.com">Tim Fox</a>
@@ -58,33 +61,29 @@ public class SessionReceiveMessage extends MessagePacket
       return deliveryCount;
    }
 
+   /**
+    * The message encoding is not copied in the packet but shared with the other deliveries of the
+    * message, between buffers of its own for the packet headers and the consumer fields.
+    */
    @Override
    public HornetQBuffer encode(final RemotingConnection connection)
    {
-      HornetQBuffer buffer = message.getEncodedBuffer();
+      ChannelBuffer encoded = message.getEncodedBufferView().channelBuffer();
 
-      // Sanity check
-      if (buffer.writerIndex() != message.getEndOfMessagePosition())
-      {
-         throw new IllegalStateException("Wrong encode position");
-      }
-
-      buffer.writeLong(consumerID);
-      buffer.writeInt(deliveryCount);
-
-      size = buffer.writerIndex();
+      size = PACKET_HEADERS_SIZE + encoded.readableBytes() + DataConstants.SIZE_LONG + DataConstants.SIZE_INT;
 
       // Write standard headers
 
-      int len = size - DataConstants.SIZE_INT;
-      buffer.setInt(0, len);
-      buffer.setByte(DataConstants.SIZE_INT, getType());
-      buffer.setLong(DataConstants.SIZE_INT + DataConstants.SIZE_BYTE, channelID);
+      ChannelBuffer headers = ChannelBuffers.buffer(PACKET_HEADERS_SIZE);
+      headers.writeInt(size - DataConstants.SIZE_INT);
+      headers.writeByte(getType());
+      headers.writeLong(channelID);
 
-      // Position reader for reading by Netty
-      buffer.setIndex(0, size);
+      ChannelBuffer consumerFields = ChannelBuffers.buffer(DataConstants.SIZE_LONG + DataConstants.SIZE_INT);
+      consumerFields.writeLong(consumerID);
+      consumerFields.writeInt(deliveryCount);
 
-      return buffer;
+      return new ChannelBufferWrapper(ChannelBuffers.wrappedBuffer(headers, encoded, consumerFields));
    }
 
    @Override
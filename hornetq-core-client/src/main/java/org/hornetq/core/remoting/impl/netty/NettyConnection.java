@@ -15,10 +15,11 @@ package org.hornetq.core.remoting.impl.netty;
 
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Semaphore;
 
 import org.hornetq.api.core.HornetQBuffer;
-import org.hornetq.api.core.HornetQBuffers;
 import org.hornetq.api.core.HornetQInterruptedException;
 import org.hornetq.api.core.TransportConfiguration;
 import org.hornetq.core.buffers.impl.ChannelBufferWrapper;
@@ -28,9 +29,11 @@ import org.hornetq.spi.core.remoting.Connection;
 import org.hornetq.spi.core.remoting.ConnectionLifeCycleListener;
 import org.hornetq.spi.core.remoting.ReadyListener;
 import org.hornetq.utils.ConcurrentHashSet;
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.handler.ssl.SslHandler;
 
 /**
@@ -44,6 +47,9 @@ public class NettyConnection implements Connection
    // Constants -----------------------------------------------------
    private static final int BATCHING_BUFFER_SIZE = 8192;
 
+   // the batch buffers being written are reused once written, there are usually one or two of them
+   private static final int BATCHING_BUFFER_POOL_SIZE = 4;
+
    // Attributes ----------------------------------------------------
 
    private final Channel channel;
@@ -56,7 +62,9 @@ public class NettyConnection implements Connection
 
    private final boolean directDeliver;
 
-   private volatile HornetQBuffer batchBuffer;
+   private volatile ChannelBuffer batchBuffer;
+
+   private final BlockingQueue<ChannelBuffer> batchBufferPool = new ArrayBlockingQueue<ChannelBuffer>(BATCHING_BUFFER_POOL_SIZE);
 
    private final Map<String, Object> configuration;
 
@@ -150,9 +158,7 @@ public class NettyConnection implements Connection
          {
             if (batchBuffer != null && batchBuffer.readable())
             {
-               channel.write(batchBuffer.channelBuffer());
-
-               batchBuffer = HornetQBuffers.dynamicBuffer(BATCHING_BUFFER_SIZE);
+               writeBatchBuffer(swapBatchBuffer(true), null);
             }
          }
          finally
@@ -180,37 +186,48 @@ public class NettyConnection implements Connection
             {
                // Lazily create batch buffer
 
-               batchBuffer = HornetQBuffers.dynamicBuffer(BATCHING_BUFFER_SIZE);
+               batchBuffer = newBatchBuffer();
             }
 
+            ChannelFuture future;
+
             if (batchBuffer != null)
             {
-               batchBuffer.writeBytes(buffer, 0, buffer.writerIndex());
+               int size = buffer.writerIndex();
 
-               if (batchBuffer.writerIndex() >= BATCHING_BUFFER_SIZE || !batched || flush)
+               if (size <= batchBuffer.writableBytes())
                {
+                  batchBuffer.writeBytes(buffer.channelBuffer(), 0, size);
+
+                  if (batchBuffer.writable() && batched && !flush)
+                  {
+                     return;
+                  }
+
                   // If the batch buffer is full or it's flush param or not batched then flush the buffer
 
-                  buffer = batchBuffer;
+                  future = writeBatchBuffer(swapBatchBuffer(batched && !flush), null);
                }
-               else
+               else if (batchBuffer.readable())
                {
-                  return;
-               }
+                  // The packet doesn't fit, it is written along with the batch buffer without being copied
 
-               if (!batched || flush)
-               {
-                  batchBuffer = null;
+                  future = writeBatchBuffer(swapBatchBuffer(batched && !flush), buffer.channelBuffer().slice(0, size));
                }
                else
                {
-                  // Create a new buffer
+                  if (!batched || flush)
+                  {
+                     batchBufferPool.offer(swapBatchBuffer(false));
+                  }
 
-                  batchBuffer = HornetQBuffers.dynamicBuffer(BATCHING_BUFFER_SIZE);
+                  future = channel.write(buffer.channelBuffer());
                }
             }
-
-            ChannelFuture future = channel.write(buffer.channelBuffer());
+            else
+            {
+               future = channel.write(buffer.channelBuffer());
+            }
 
             if (flush)
             {
@@ -308,6 +325,56 @@ public class NettyConnection implements Connection
 
    // Private -------------------------------------------------------
 
+   private ChannelBuffer newBatchBuffer()
+   {
+      ChannelBuffer buffer = batchBufferPool.poll();
+
+      if (buffer == null)
+      {
+         // direct, so it isn't copied again when written to the socket
+         buffer = ChannelBuffers.directBuffer(BATCHING_BUFFER_SIZE);
+      }
+
+      return buffer;
+   }
+
+   /**
+    * The batch buffer is replaced before being written, as it may be written and returned to the
+    * pool by the time the write returns.
+    */
+   private ChannelBuffer swapBatchBuffer(final boolean renew)
+   {
+      ChannelBuffer current = batchBuffer;
+
+      batchBuffer = renew ? newBatchBuffer() : null;
+
+      return current;
+   }
+
+   /**
+    * Writes the batch buffer, followed by {@code packet} in a single gathering write if not null.
+    * The batch buffer is returned to the pool once written.
+    */
+   private ChannelFuture writeBatchBuffer(final ChannelBuffer buffer, final ChannelBuffer packet)
+   {
+      ChannelFuture future = channel.write(packet == null ? buffer : ChannelBuffers.wrappedBuffer(true, buffer, packet));
+
+      future.addListener(new ChannelFutureListener()
+      {
+         public void operationComplete(final ChannelFuture future) throws Exception
+         {
+            // a buffer which failed to be written may still be referenced by the pipeline
+            if (future.isSuccess())
+            {
+               buffer.clear();
+               batchBufferPool.offer(buffer);
+            }
+         }
+      });
+
+      return future;
+   }
+
    // Inner classes -------------------------------------------------
 
 }
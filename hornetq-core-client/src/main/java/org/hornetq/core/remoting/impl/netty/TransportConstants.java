@@ -102,7 +102,8 @@ public class TransportConstants
 
    public static final boolean DEFAULT_SSL_ENABLED = false;
 
-   public static final boolean DEFAULT_USE_NIO_SERVER = false;
+   // A thread per connection doesn't scale to many connections
+   public static final boolean DEFAULT_USE_NIO_SERVER = true;
 
    // For client, using old IO can be quicker
    public static final boolean DEFAULT_USE_NIO_CLIENT = false;
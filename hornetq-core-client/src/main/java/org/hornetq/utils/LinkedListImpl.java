@@ -50,6 +50,20 @@ public class LinkedListImpl<E> implements LinkedList<E>
    }
 
    public void addHead(E e)
+   {
+      addHeadNode(e);
+   }
+
+   public void addTail(E e)
+   {
+      addTailNode(e);
+   }
+
+   /**
+    * Same as {@link #addHead(Object)}, returning the node holding the element so it can later be
+    * removed with {@link #removeNode(Node)}.
+    */
+   Node<E> addHeadNode(E e)
    {
       Node<E> node = new Node<E>(e);
 
@@ -70,13 +84,15 @@ public class LinkedListImpl<E> implements LinkedList<E>
       }
 
       size++;
+
+      return node;
    }
 
-   public void addTail(E e)
+   Node<E> addTailNode(E e)
    {
       if (size == 0)
       {
-         addHead(e);
+         return addHeadNode(e);
       }
       else
       {
@@ -89,9 +105,37 @@ public class LinkedListImpl<E> implements LinkedList<E>
          tail = node;
 
          size++;
+
+         return node;
       }
    }
 
+   /**
+    * Removes a node returned by {@link #addHeadNode(Object)} or {@link #addTailNode(Object)} in
+    * constant time, moving any iterator positioned on it.
+    *
+    * @return false if the node had already been removed from the list
+    */
+   boolean removeNode(Node<E> node)
+   {
+      if (node.isRemoved())
+      {
+         return false;
+      }
+
+      removeAfter(node.prev);
+
+      return true;
+   }
+
+   /**
+    * @return the first node of the list, or null if the list is empty
+    */
+   Node<E> firstNode()
+   {
+      return head.next;
+   }
+
    public E poll()
    {
       Node<E> ret = head.next;
@@ -248,7 +292,7 @@ public class LinkedListImpl<E> implements LinkedList<E>
       throw new IllegalStateException("Cannot find iter to remove");
    }
 
-   private static final class Node<E>
+   static final class Node<E>
    {
       Node<E> next;
 
@@ -263,6 +307,14 @@ public class LinkedListImpl<E> implements LinkedList<E>
          val = e;
       }
 
+      /**
+       * Every node on the list has a previous node (at least the head), removeAfter clears it.
+       */
+      boolean isRemoved()
+      {
+         return prev == null;
+      }
+
       public String toString()
       {
          return "Node, value = " + val;
@@ -36,5 +36,37 @@ public interface PriorityLinkedList<T>
 
    LinkedListIterator<T> iterator();
 
+   /**
+    * Returns an iterator over the elements whose index key is <code>key</code>, in the same order
+    * as {@link #iterator()} would return them.
+    * <p>
+    * Removing an element through this iterator removes it from the list. The index for a key is
+    * built by the first iterator for that key, and then kept up to date as elements are added
+    * until {@link #removeIndex(Object)} is called, so later iterators for the key start right away.
+    *
+    * @throws IllegalStateException if no {@link KeyExtractor} was set
+    */
+   LinkedListIterator<T> iterator(Object key);
+
+   /**
+    * Stops indexing the elements by <code>key</code>. The iterators still open for that key no
+    * longer see the elements added afterwards.
+    */
+   void removeIndex(Object key);
+
+   /**
+    * Sets how the index key of an element is computed. This can only be changed while no key is
+    * indexed.
+    */
+   void setKeyExtractor(KeyExtractor<T> keyExtractor);
+
    boolean isEmpty();
+
+   interface KeyExtractor<T>
+   {
+      /**
+       * @return the index key of the element, or null if the element should not be indexed
+       */
+      Object getKey(T t);
+   }
 }
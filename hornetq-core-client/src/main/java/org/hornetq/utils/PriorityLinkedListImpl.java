@@ -14,12 +14,20 @@
 package org.hornetq.utils;
 
 import java.lang.reflect.Array;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 /**
  * A priority linked list implementation
  * 
  * It implements this by maintaining an individual LinkedBlockingDeque for each priority level.
+ *
+ * Elements can optionally be indexed by a key (see {@link #iterator(Object)}): for every key that
+ * was iterated and not removed, a second priority list holds the nodes of the matching elements,
+ * so its iterators never have to walk over elements with a different key. Index entries of
+ * elements removed through the main list are pruned once they make up half of their index, or
+ * earlier when the index is iterated, so they never hold on to more removed elements than live ones.
  * 
  * @author <a href="mailto:tim.fox@jboss.com>Tim Fox</a>
  * @author <a href="mailto:jmesnil@redhat.com>Jeff Mesnil</a>
@@ -38,6 +46,11 @@ public class PriorityLinkedListImpl<T> implements PriorityLinkedList<T>
 
    private int lastPriority = -1;
 
+   private KeyExtractor<T> keyExtractor;
+
+   // Only keys iterated since they were last removed are indexed
+   private final Map<Object, Index> indexes = new HashMap<Object, Index>();
+
    public PriorityLinkedListImpl(final int priorities)
    {
       levels = (LinkedListImpl<T>[])Array.newInstance(LinkedListImpl.class, priorities);
@@ -73,7 +86,21 @@ public class PriorityLinkedListImpl<T> implements PriorityLinkedList<T>
    {
       checkHighest(priority);
 
-      levels[priority].addHead(t);
+      if (indexes.isEmpty())
+      {
+         levels[priority].addHead(t);
+      }
+      else
+      {
+         Index index = getIndex(t);
+
+         LinkedListImpl.Node<T> node = levels[priority].addHeadNode(t);
+
+         if (index != null)
+         {
+            index.nodes.addHead(node, priority);
+         }
+      }
 
       size++;
    }
@@ -82,7 +109,21 @@ public class PriorityLinkedListImpl<T> implements PriorityLinkedList<T>
    {
       checkHighest(priority);
 
-      levels[priority].addTail(t);
+      if (indexes.isEmpty())
+      {
+         levels[priority].addTail(t);
+      }
+      else
+      {
+         Index index = getIndex(t);
+
+         LinkedListImpl.Node<T> node = levels[priority].addTailNode(t);
+
+         if (index != null)
+         {
+            index.nodes.addTail(node, priority);
+         }
+      }
 
       size++;
    }
@@ -109,6 +150,8 @@ public class PriorityLinkedListImpl<T> implements PriorityLinkedList<T>
             {
                size--;
 
+               removedFromIndex(t);
+
                if (ll.size() == 0)
                {
                   if (highestPriority == i)
@@ -132,6 +175,13 @@ public class PriorityLinkedListImpl<T> implements PriorityLinkedList<T>
          list.clear();
       }
 
+      for (Index index : indexes.values())
+      {
+         index.nodes.clear();
+
+         index.removed = 0;
+      }
+
       size = 0;
    }
 
@@ -150,6 +200,205 @@ public class PriorityLinkedListImpl<T> implements PriorityLinkedList<T>
       return new PriorityLinkedListIterator();
    }
 
+   public LinkedListIterator<T> iterator(final Object key)
+   {
+      if (keyExtractor == null)
+      {
+         throw new IllegalStateException("No key extractor set");
+      }
+
+      Index index = indexes.get(key);
+
+      if (index == null)
+      {
+         index = new Index();
+
+         // index the elements already on the list, keeping their order
+         for (int i = 0; i < levels.length; i++)
+         {
+            LinkedListImpl.Node<T> node = levels[i].firstNode();
+
+            while (node != null)
+            {
+               if (key.equals(keyExtractor.getKey(node.val)))
+               {
+                  index.nodes.addTail(node, i);
+               }
+               node = node.next;
+            }
+         }
+
+         indexes.put(key, index);
+      }
+
+      return new IndexIterator(index);
+   }
+
+   public void removeIndex(final Object key)
+   {
+      indexes.remove(key);
+   }
+
+   public void setKeyExtractor(final KeyExtractor<T> keyExtractor)
+   {
+      if (!indexes.isEmpty())
+      {
+         throw new IllegalStateException("Cannot change the key extractor while keys are indexed");
+      }
+
+      this.keyExtractor = keyExtractor;
+   }
+
+   private Index getIndex(final T t)
+   {
+      Object key = keyExtractor.getKey(t);
+
+      return key == null ? null : indexes.get(key);
+   }
+
+   /**
+    * Counts an element removed through the main list against its index, if any
+    */
+   private void removedFromIndex(final T t)
+   {
+      if (!indexes.isEmpty())
+      {
+         Index index = getIndex(t);
+
+         if (index != null && ++index.removed * 2 >= index.nodes.size())
+         {
+            index.prune();
+         }
+      }
+   }
+
+   /**
+    * Removes a node from the main list, on behalf of an index iterator
+    */
+   private void removeNode(final LinkedListImpl.Node<T> node, final int priority)
+   {
+      if (levels[priority].removeNode(node))
+      {
+         size--;
+
+         while (highestPriority >= 0 && levels[highestPriority].size() == 0)
+         {
+            highestPriority--;
+         }
+      }
+   }
+
+   private final class Index
+   {
+      final PriorityLinkedListImpl<LinkedListImpl.Node<T>> nodes = new PriorityLinkedListImpl<LinkedListImpl.Node<T>>(levels.length);
+
+      // entries of nodes removed through the main list, still to be pruned
+      int removed;
+
+      void prune()
+      {
+         LinkedListIterator<LinkedListImpl.Node<T>> iter = nodes.iterator();
+
+         try
+         {
+            while (iter.hasNext())
+            {
+               if (iter.next().isRemoved())
+               {
+                  iter.remove();
+               }
+            }
+         }
+         finally
+         {
+            iter.close();
+         }
+
+         removed = 0;
+      }
+   }
+
+   private final class IndexIterator implements LinkedListIterator<T>
+   {
+      private final Index index;
+
+      private final PriorityLinkedListImpl<LinkedListImpl.Node<T>>.PriorityLinkedListIterator iter;
+
+      private LinkedListImpl.Node<T> lastNode;
+
+      private int lastNodePriority;
+
+      IndexIterator(final Index index)
+      {
+         this.index = index;
+         iter = index.nodes.new PriorityLinkedListIterator();
+      }
+
+      public boolean hasNext()
+      {
+         while (iter.hasNext())
+         {
+            LinkedListImpl.Node<T> node = iter.next();
+
+            if (!node.isRemoved())
+            {
+               // leave it to be returned by next()
+               iter.repeat();
+
+               return true;
+            }
+
+            // it was removed from the list through some other iterator
+            iter.remove();
+
+            if (index.removed > 0)
+            {
+               index.removed--;
+            }
+         }
+
+         return false;
+      }
+
+      public T next()
+      {
+         if (!hasNext())
+         {
+            throw new NoSuchElementException();
+         }
+
+         lastNode = iter.next();
+
+         lastNodePriority = iter.index;
+
+         return lastNode.val;
+      }
+
+      public void remove()
+      {
+         if (lastNode == null)
+         {
+            throw new NoSuchElementException();
+         }
+
+         iter.remove();
+
+         removeNode(lastNode, lastNodePriority);
+
+         lastNode = null;
+      }
+
+      public void repeat()
+      {
+         iter.repeat();
+      }
+
+      public void close()
+      {
+         iter.close();
+      }
+   }
+
    private class PriorityLinkedListIterator implements LinkedListIterator<T>
    {
       private int index;
@@ -158,6 +407,8 @@ public class PriorityLinkedListImpl<T> implements PriorityLinkedList<T>
 
       private LinkedListIterator<T> lastIter;
 
+      private T last;
+
       private int resetCount = lastReset;
 
       volatile boolean closed = false;
@@ -189,6 +440,7 @@ public class PriorityLinkedListImpl<T> implements PriorityLinkedList<T>
          {
             closed = true;
             lastIter = null;
+            last = null;
 
             for (LinkedListIterator<T> iter : cachedIters)
             {
@@ -249,7 +501,9 @@ public class PriorityLinkedListImpl<T> implements PriorityLinkedList<T>
             throw new NoSuchElementException();
          }
 
-         return lastIter.next();
+         last = lastIter.next();
+
+         return last;
       }
 
       public void remove()
@@ -274,6 +528,10 @@ public class PriorityLinkedListImpl<T> implements PriorityLinkedList<T>
          }
 
          size--;
+
+         removedFromIndex(last);
+
+         last = null;
       }
    }
 }
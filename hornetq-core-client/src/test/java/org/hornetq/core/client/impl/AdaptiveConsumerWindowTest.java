@@ -0,0 +1,150 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.client.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AdaptiveConsumerWindowTest extends Assert
+{
+   @Test
+   public void testGrowsWhileStarving()
+   {
+      ManualClockWindow window = new ManualClockWindow(1000, 100, 3000);
+
+      starve(window, 1000);
+
+      // twice the window, the bytes consumed and the bytes the window grew by
+      assertEquals(2000, window.credits(1000));
+      assertEquals(2000, window.getWindowSize());
+      assertEquals(1000, window.getThreshold());
+
+      starve(window, 2000);
+
+      assertEquals(3000, window.credits(2000));
+      assertEquals(3000, window.getWindowSize());
+   }
+
+   @Test
+   public void testShrinksToProcessedDuringRoundTrip()
+   {
+      ManualClockWindow window = new ManualClockWindow(10000, 100, 100000);
+
+      long granted = 10000;
+      long consumed = 0;
+
+      // the server ran out of credits, while the consumer takes 1 ms per message of 100 bytes
+      window.received(10000);
+
+      for (int i = 0; i < 50; i++)
+      {
+         window.consumed(100, true);
+         window.advance(1);
+      }
+
+      granted += window.credits(5000);
+      consumed += 5000;
+
+      assertEquals(10000, window.getWindowSize());
+      assertEquals(100000, window.getRate(), 1);
+
+      window.advance(1);
+      window.received(100);
+
+      assertEquals(TimeUnit.MILLISECONDS.toNanos(1), window.getRoundTripTime());
+
+      int previousWindowSize = window.getWindowSize();
+
+      while (window.getWindowSize() > 200)
+      {
+         assertEquals(0, window.credits(100));
+         consumed += 100;
+
+         // halves at most at once
+         assertTrue(window.getWindowSize() >= previousWindowSize >> 1);
+         previousWindowSize = window.getWindowSize();
+      }
+
+      // 100 bytes per ms, twice over a round trip of 1 ms
+      assertEquals(200, window.getWindowSize());
+
+      int credits = window.credits(10000);
+      granted += credits;
+      consumed += 10000;
+
+      assertTrue(credits > 0);
+
+      // the credits owed to the server are paid back
+      assertEquals(window.getWindowSize(), granted - consumed);
+   }
+
+   @Test
+   public void testReset()
+   {
+      ManualClockWindow window = new ManualClockWindow(1000, 100, 3000);
+
+      starve(window, 1000);
+      window.credits(1000);
+
+      window.reset(500);
+
+      assertEquals(500, window.getWindowSize());
+      assertEquals(0, window.getRate());
+      assertEquals(0, window.getRoundTripTime());
+
+      // consumed in order, nothing measured
+      assertEquals(250, window.credits(250));
+      assertEquals(500, window.getWindowSize());
+   }
+
+   // Private -------------------------------------------------------
+
+   /**
+    * Receives and consumes messages of 100 bytes one by one, until the server has no credit left.
+    */
+   private static void starve(final ManualClockWindow window, final int bytes)
+   {
+      for (int i = 0; i < bytes; i += 100)
+      {
+         window.received(100);
+         window.consumed(100, false);
+         window.advance(1);
+      }
+   }
+
+   // Inner classes -------------------------------------------------
+
+   private static final class ManualClockWindow extends AdaptiveConsumerWindow
+   {
+      private long time;
+
+      ManualClockWindow(final int windowSize, final int minWindowSize, final int maxWindowSize)
+      {
+         super(windowSize, minWindowSize, maxWindowSize);
+      }
+
+      void advance(final long millis)
+      {
+         time += TimeUnit.MILLISECONDS.toNanos(millis);
+      }
+
+      @Override
+      protected long nanoTime()
+      {
+         return time;
+      }
+   }
+}
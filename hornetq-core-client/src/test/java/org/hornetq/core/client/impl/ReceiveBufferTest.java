@@ -0,0 +1,125 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.client.impl;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ReceiveBufferTest extends Assert
+{
+   @Test
+   public void testSinglePriorityInOrder()
+   {
+      ReceiveBuffer<Integer> buffer = new ReceiveBuffer<Integer>(10);
+
+      assertTrue(buffer.isEmpty());
+      assertNull(buffer.poll());
+
+      for (int i = 0; i < 5; i++)
+      {
+         buffer.addTail(i, 7);
+      }
+
+      assertEquals(5, buffer.size());
+
+      for (int i = 0; i < 5; i++)
+      {
+         assertEquals(Integer.valueOf(i), buffer.poll());
+      }
+
+      assertNull(buffer.poll());
+      assertTrue(buffer.isEmpty());
+   }
+
+   @Test
+   public void testMixedPriorities()
+   {
+      ReceiveBuffer<Integer> buffer = new ReceiveBuffer<Integer>(10);
+
+      buffer.addTail(1, 4);
+      buffer.addTail(2, 4);
+
+      assertEquals(Integer.valueOf(1), buffer.poll());
+
+      buffer.addTail(3, 9);
+      buffer.addTail(4, 0);
+      buffer.addTail(5, 4);
+
+      assertEquals(4, buffer.size());
+
+      // the higher priorities first, in the order they were added
+      assertEquals(Integer.valueOf(3), buffer.poll());
+      assertEquals(Integer.valueOf(2), buffer.poll());
+
+      buffer.addTail(6, 9);
+
+      assertEquals(Integer.valueOf(6), buffer.poll());
+      assertEquals(Integer.valueOf(5), buffer.poll());
+      assertEquals(Integer.valueOf(4), buffer.poll());
+      assertNull(buffer.poll());
+      assertEquals(0, buffer.size());
+   }
+
+   @Test
+   public void testConcurrentAddAndPoll() throws Exception
+   {
+      final int numberOfElements = 1000000;
+
+      final ReceiveBuffer<Integer> buffer = new ReceiveBuffer<Integer>(10);
+
+      final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+      Thread poller = new Thread()
+      {
+         @Override
+         public void run()
+         {
+            int next = 0;
+
+            while (next < numberOfElements && error.get() == null)
+            {
+               Integer element = buffer.poll();
+
+               if (element == null)
+               {
+                  Thread.yield();
+               }
+               else if (element != next++)
+               {
+                  error.set(new AssertionError("element " + element + " polled instead of " + (next - 1)));
+               }
+               else if (buffer.size() < 0)
+               {
+                  error.set(new AssertionError("negative size"));
+               }
+            }
+         }
+      };
+
+      poller.start();
+
+      for (int i = 0; i < numberOfElements; i++)
+      {
+         buffer.addTail(i, 4);
+      }
+
+      poller.join(60000);
+
+      assertNull(error.get());
+      assertFalse(poller.isAlive());
+      assertTrue(buffer.isEmpty());
+   }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.protocol.core.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.hornetq.core.protocol.core.CommandConfirmationHandler;
+import org.hornetq.core.protocol.core.Packet;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ResendCacheTest extends Assert
+{
+   @Test
+   public void testRemoveInOrder()
+   {
+      ResendCache cache = new ResendCache(4);
+
+      List<Packet> packets = createPackets(3);
+
+      for (Packet packet : packets)
+      {
+         cache.add(packet);
+      }
+
+      assertEquals(3, cache.size());
+      assertEquals(packets, cache.getPackets());
+
+      ConfirmedPackets confirmed = new ConfirmedPackets();
+
+      assertEquals(2, cache.remove(2, confirmed));
+      assertEquals(packets.subList(0, 2), confirmed.packets);
+      assertEquals(packets.subList(2, 3), cache.getPackets());
+
+      // not as many packets left
+      assertEquals(1, cache.remove(5, confirmed));
+      assertEquals(packets, confirmed.packets);
+      assertEquals(0, cache.size());
+
+      assertEquals(0, cache.remove(-1, confirmed));
+      assertEquals(0, cache.size());
+   }
+
+   @Test
+   public void testGrow()
+   {
+      ResendCache cache = new ResendCache(4);
+
+      List<Packet> packets = createPackets(10);
+
+      // wraps round the ring before it grows
+      cache.add(packets.get(0));
+      cache.add(packets.get(1));
+      cache.remove(2, null);
+
+      for (Packet packet : packets.subList(2, 10))
+      {
+         cache.add(packet);
+      }
+
+      assertEquals(8, cache.size());
+      assertEquals(8, cache.getCapacity());
+      assertEquals(packets.subList(2, 10), cache.getPackets());
+
+      cache.clear();
+
+      assertEquals(0, cache.size());
+      assertTrue(cache.getPackets().isEmpty());
+   }
+
+   @Test
+   public void testConcurrentWriterAndReader() throws Exception
+   {
+      final int numberOfPackets = 500000;
+
+      final ResendCache cache = new ResendCache(4);
+
+      final List<Packet> packets = createPackets(numberOfPackets);
+
+      final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+      Thread reader = new Thread()
+      {
+         @Override
+         public void run()
+         {
+            CommandConfirmationHandler handler = new CommandConfirmationHandler()
+            {
+               private int next;
+
+               public void commandConfirmed(final Packet packet)
+               {
+                  if (packet != packets.get(next++))
+                  {
+                     error.compareAndSet(null, new AssertionError("packet " + (next - 1) + " out of order"));
+                  }
+               }
+            };
+
+            int removed = 0;
+
+            while (removed < numberOfPackets && error.get() == null)
+            {
+               removed += cache.remove(1 + removed % 7, handler);
+            }
+         }
+      };
+
+      reader.start();
+
+      for (Packet packet : packets)
+      {
+         cache.add(packet);
+      }
+
+      reader.join(60000);
+
+      assertNull(error.get());
+      assertFalse(reader.isAlive());
+      assertEquals(0, cache.size());
+   }
+
+   @Test
+   public void testConcurrentGrowAndRemove() throws Exception
+   {
+      // small rings growing over and over while the reader removes the packets the writer copies
+      for (int round = 0; round < 2000; round++)
+      {
+         final int numberOfPackets = 256;
+
+         final ResendCache cache = new ResendCache(2);
+
+         final List<Packet> packets = createPackets(numberOfPackets);
+
+         final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+         Thread reader = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               CommandConfirmationHandler handler = new CommandConfirmationHandler()
+               {
+                  private int next;
+
+                  public void commandConfirmed(final Packet packet)
+                  {
+                     if (packet != packets.get(next++))
+                     {
+                        error.compareAndSet(null, new AssertionError("packet " + (next - 1) + " is " + packet));
+                     }
+                  }
+               };
+
+               int removed = 0;
+
+               while (removed < numberOfPackets && error.get() == null)
+               {
+                  removed += cache.remove(1 + removed % 3, handler);
+               }
+            }
+         };
+
+         reader.start();
+
+         for (Packet packet : packets)
+         {
+            cache.add(packet);
+         }
+
+         reader.join(60000);
+
+         assertNull(error.get());
+         assertFalse(reader.isAlive());
+         assertEquals(0, cache.size());
+         assertTrue(cache.getPackets().isEmpty());
+      }
+   }
+
+   // Private -------------------------------------------------------
+
+   private static List<Packet> createPackets(final int numberOfPackets)
+   {
+      List<Packet> packets = new ArrayList<Packet>(numberOfPackets);
+
+      for (int i = 0; i < numberOfPackets; i++)
+      {
+         Packet packet = new PacketImpl(PacketImpl.SESS_START);
+         packet.setChannelID(i);
+         packets.add(packet);
+      }
+
+      return packets;
+   }
+
+   // Inner classes -------------------------------------------------
+
+   private static final class ConfirmedPackets implements CommandConfirmationHandler
+   {
+      final List<Packet> packets = new ArrayList<Packet>();
+
+      public void commandConfirmed(final Packet packet)
+      {
+         packets.add(packet);
+      }
+   }
+}
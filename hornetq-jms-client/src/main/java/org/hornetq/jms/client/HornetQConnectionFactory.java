@@ -382,6 +382,28 @@ public class HornetQConnectionFactory implements Serializable, Referenceable, Co
       serverLocator.setConsumerWindowSize(consumerWindowSize);
    }
 
+   public synchronized int getConsumerMinWindowSize()
+   {
+      return serverLocator.getConsumerMinWindowSize();
+   }
+
+   public synchronized void setConsumerMinWindowSize(final int consumerMinWindowSize)
+   {
+      checkWrite();
+      serverLocator.setConsumerMinWindowSize(consumerMinWindowSize);
+   }
+
+   public synchronized int getConsumerMaxWindowSize()
+   {
+      return serverLocator.getConsumerMaxWindowSize();
+   }
+
+   public synchronized void setConsumerMaxWindowSize(final int consumerMaxWindowSize)
+   {
+      checkWrite();
+      serverLocator.setConsumerMaxWindowSize(consumerMaxWindowSize);
+   }
+
    public synchronized int getConsumerMaxRate()
    {
       return serverLocator.getConsumerMaxRate();
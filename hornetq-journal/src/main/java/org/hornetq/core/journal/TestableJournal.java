@@ -55,6 +55,8 @@ public interface TestableJournal extends Journal
 
    void testCompact();
 
+   void testCompactIncrementally();
+
    JournalFile getCurrentFile();
 
    /**
@@ -16,7 +16,6 @@ package org.hornetq.core.journal.impl;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 
 import org.hornetq.api.core.HornetQBuffer;
 import org.hornetq.api.core.HornetQBuffers;
@@ -26,7 +25,7 @@ import org.hornetq.core.journal.SequentialFileFactory;
 import org.hornetq.core.journal.impl.dataformat.ByteArrayEncoding;
 import org.hornetq.core.journal.impl.dataformat.JournalAddRecord;
 import org.hornetq.core.journal.impl.dataformat.JournalInternalRecord;
-import org.hornetq.utils.ConcurrentHashSet;
+import org.hornetq.utils.ConcurrentLongHashMap;
 
 /**
  *
@@ -58,7 +57,7 @@ public abstract class AbstractJournalUpdateTask implements JournalReaderCallback
 
    private HornetQBuffer writingChannel;
 
-   private final Set<Long> recordsSnapshot = new ConcurrentHashSet<Long>();
+   private final ConcurrentLongHashMap<Boolean> recordsSnapshot;
 
    protected final List<JournalFile> newDataFiles = new ArrayList<JournalFile>();
 
@@ -69,7 +68,7 @@ public abstract class AbstractJournalUpdateTask implements JournalReaderCallback
    protected AbstractJournalUpdateTask(final SequentialFileFactory fileFactory,
                                        final JournalImpl journal,
                                        final JournalFilesRepository filesRepository,
-                                       final Set<Long> recordsSnapshot,
+                                       final long[] recordsSnapshot,
                                        final long nextOrderingID)
    {
       super();
@@ -77,7 +76,11 @@ public abstract class AbstractJournalUpdateTask implements JournalReaderCallback
       this.filesRepository = filesRepository;
       this.fileFactory = fileFactory;
       this.nextOrderingID = nextOrderingID;
-      this.recordsSnapshot.addAll(recordsSnapshot);
+      this.recordsSnapshot = new ConcurrentLongHashMap<Boolean>(recordsSnapshot.length, 16);
+      for (long id : recordsSnapshot)
+      {
+         this.recordsSnapshot.put(id, Boolean.TRUE);
+      }
    }
 
    // Public --------------------------------------------------------
@@ -193,7 +196,7 @@ public abstract class AbstractJournalUpdateTask implements JournalReaderCallback
 
    public boolean lookupRecord(final long id)
    {
-      return recordsSnapshot.contains(id);
+      return recordsSnapshot.containsKey(id);
    }
 
    // Package protected ---------------------------------------------
@@ -217,14 +220,17 @@ public abstract class AbstractJournalUpdateTask implements JournalReaderCallback
 
       sequentialFile.open(1, false);
 
-      currentFile = new JournalFileImpl(sequentialFile, nextOrderingID++, JournalImpl.FORMAT_VERSION);
+      currentFile = new JournalFileImpl(sequentialFile, nextOrderingID++, journal.getFormatVersion());
 
-      JournalImpl.writeHeader(writingChannel, journal.getUserVersion(), currentFile.getFileID());
+      JournalImpl.writeHeader(writingChannel,
+                              currentFile.getJournalVersion(),
+                              journal.getUserVersion(),
+                              currentFile.getFileID());
    }
 
    protected void addToRecordsSnaptshot(final long id)
    {
-      recordsSnapshot.add(id);
+      recordsSnapshot.put(id, Boolean.TRUE);
    }
 
    /**
@@ -237,6 +243,7 @@ public abstract class AbstractJournalUpdateTask implements JournalReaderCallback
 
    protected void writeEncoder(final JournalInternalRecord record) throws Exception
    {
+      record.setChecksum(journal.isChecksums());
       record.setFileID(currentFile.getRecordID());
       record.encode(getWritingChannel());
    }
@@ -69,12 +69,23 @@ abstract class AbstractSequentialFileFactory implements SequentialFileFactory
                                         final int bufferTimeout,
                                         final boolean logRates,
                                         final IOCriticalErrorListener criticalErrorListener)
+   {
+      this(journalDir, buffered, bufferSize, bufferTimeout, logRates, false, criticalErrorListener);
+   }
+
+   AbstractSequentialFileFactory(final String journalDir,
+                                        final boolean buffered,
+                                        final int bufferSize,
+                                        final int bufferTimeout,
+                                        final boolean logRates,
+                                        final boolean adaptiveTimeout,
+                                        final IOCriticalErrorListener criticalErrorListener)
    {
       this.journalDir = journalDir;
 
       if (buffered)
       {
-         timedBuffer = new TimedBuffer(bufferSize, bufferTimeout, logRates);
+         timedBuffer = new TimedBuffer(bufferSize, bufferTimeout, logRates, adaptiveTimeout);
       }
       else
       {
@@ -110,6 +121,14 @@ abstract class AbstractSequentialFileFactory implements SequentialFileFactory
       }
    }
 
+   /**
+    * @return the buffer writes are batched on, or null if the files are not buffered
+    */
+   public TimedBuffer getTimedBuffer()
+   {
+      return timedBuffer;
+   }
+
    public String getDirectory()
    {
       return journalDir;
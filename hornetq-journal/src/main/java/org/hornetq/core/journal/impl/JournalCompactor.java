@@ -14,7 +14,9 @@
 package org.hornetq.core.journal.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -32,10 +34,12 @@ import org.hornetq.core.journal.impl.dataformat.JournalAddRecord;
 import org.hornetq.core.journal.impl.dataformat.JournalAddRecordTX;
 import org.hornetq.core.journal.impl.dataformat.JournalCompleteRecordTX;
 import org.hornetq.core.journal.impl.dataformat.JournalCompleteRecordTX.TX_RECORD_TYPE;
+import org.hornetq.core.journal.impl.dataformat.JournalDeleteRecord;
 import org.hornetq.core.journal.impl.dataformat.JournalDeleteRecordTX;
 import org.hornetq.core.journal.impl.dataformat.JournalInternalRecord;
 import org.hornetq.core.journal.impl.dataformat.JournalRollbackRecordTX;
 import org.hornetq.journal.HornetQJournalLogger;
+import org.hornetq.utils.ConcurrentLongHashMap;
 
 /**
  * A JournalCompactor
@@ -54,7 +58,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
    // Snapshot of transactions that were pending when the compactor started
    private final Map<Long, PendingTransaction> pendingTransactions = new ConcurrentHashMap<Long, PendingTransaction>();
 
-   private final Map<Long, JournalRecord> newRecords = new HashMap<Long, JournalRecord>();
+   private final ConcurrentLongHashMap<JournalRecord> newRecords = new ConcurrentLongHashMap<JournalRecord>();
 
    private final Map<Long, JournalTransaction> newTransactions = new HashMap<Long, JournalTransaction>();
 
@@ -63,6 +67,24 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
     *  we cache those updates. As soon as we are done we take the right account. */
    private final LinkedList<CompactCommand> pendingCommands = new LinkedList<CompactCommand>();
 
+   /** Only some of the data files are compacted, the records on the other files are left where they are */
+   private final boolean incremental;
+
+   /** The data files being compacted, empty if all are */
+   private final List<JournalFile> compactedFiles;
+
+   /** The new files can't take the ID of the data files following the compacted ones */
+   private final long lastFileID;
+
+   /** The records added on the compacted files, whether they are still live or not */
+   private final Set<Long> addedIDs = new HashSet<Long>();
+
+   /** Deletes of records added before the compacted files, these have to be kept */
+   private final List<Long> keptDeletes = new ArrayList<Long>();
+
+   /** Deletes of records added before the compacted files, kept if their transaction is committed */
+   private final Map<Long, List<Long>> transactionDeletes = new HashMap<Long, List<Long>>();
+
    public static SequentialFile readControlFile(final SequentialFileFactory fileFactory,
                                                 final List<String> dataFiles,
                                                 final List<String> newFiles,
@@ -130,7 +152,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
       return newDataFiles;
    }
 
-   public Map<Long, JournalRecord> getNewRecords()
+   public ConcurrentLongHashMap<JournalRecord> getNewRecords()
    {
       return newRecords;
    }
@@ -143,10 +165,113 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
    public JournalCompactor(final SequentialFileFactory fileFactory,
                            final JournalImpl journal,
                            final JournalFilesRepository filesRepository,
-                           final Set<Long> recordsSnapshot,
+                           final long[] recordsSnapshot,
                            final long firstFileID)
    {
       super(fileFactory, journal, filesRepository, recordsSnapshot, firstFileID);
+
+      incremental = false;
+
+      compactedFiles = Collections.emptyList();
+
+      lastFileID = Long.MAX_VALUE;
+   }
+
+   /**
+    * Compacts the given consecutive data files into new files taking their IDs. Their records are looked up on the
+    * journal, and any transaction with records on them has to be completed on them as well.
+    */
+   public JournalCompactor(final SequentialFileFactory fileFactory,
+                           final JournalImpl journal,
+                           final JournalFilesRepository filesRepository,
+                           final List<JournalFile> compactedFiles)
+   {
+      super(fileFactory, journal, filesRepository, new long[0], compactedFiles.get(0).getFileID());
+
+      incremental = true;
+
+      this.compactedFiles = compactedFiles;
+
+      lastFileID = compactedFiles.get(compactedFiles.size() - 1).getFileID();
+   }
+
+   /**
+    * Writes the deletes read on the compacted files of records added on the files before them, all on the same new
+    * file. It takes over the negative counts of the compacted files against the files before them, but for the
+    * commits and rollbacks already written on the new files.
+    * @param compactedFiles the files read, which may be fewer than the ones given at construction
+    */
+   public void writeKeptDeletes(final List<JournalFile> previousFiles, final List<JournalFile> compactedFiles) throws Exception
+   {
+      if (keptDeletes.isEmpty())
+      {
+         return;
+      }
+
+      List<JournalDeleteRecord> deleteRecords = new ArrayList<JournalDeleteRecord>(keptDeletes.size());
+
+      int size = 0;
+
+      for (Long id : keptDeletes)
+      {
+         JournalDeleteRecord deleteRecord = new JournalDeleteRecord(id);
+
+         deleteRecord.setChecksum(journal.isChecksums());
+
+         size += deleteRecord.getEncodeSize();
+
+         deleteRecords.add(deleteRecord);
+      }
+
+      checkSize(size);
+
+      for (JournalDeleteRecord deleteRecord : deleteRecords)
+      {
+         writeEncoder(deleteRecord);
+      }
+
+      for (JournalFile previousFile : previousFiles)
+      {
+         int deletes = 0;
+
+         for (JournalFile compactedFile : compactedFiles)
+         {
+            deletes += compactedFile.getNegCount(previousFile);
+         }
+
+         // the new files are only listed once they are flushed
+         for (JournalFile newFile : newDataFiles)
+         {
+            deletes -= newFile.getNegCount(previousFile);
+         }
+
+         deletes -= currentFile.getNegCount(previousFile);
+
+         for (int i = 0; i < deletes; i++)
+         {
+            currentFile.incNegCount(previousFile);
+         }
+      }
+   }
+
+   /** The number of updates, deletes and completions waiting for the compacting to be done */
+   public int getPendingCommandsCount()
+   {
+      return pendingCommands.size();
+   }
+
+   @Override
+   public boolean lookupRecord(final long id)
+   {
+      if (incremental)
+      {
+         // deletes are only applied once the compacting is done, so the journal still has any record being compacted
+         return journal.getRecords().containsKey(id);
+      }
+      else
+      {
+         return super.lookupRecord(id);
+      }
    }
 
    /** This methods informs the Compactor about the existence of a pending (non committed) transaction */
@@ -216,6 +341,19 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
       checkSize(size, -1);
    }
 
+   private void checkSize(final JournalInternalRecord record) throws Exception
+   {
+      checkSize(record, -1);
+   }
+
+   private void checkSize(final JournalInternalRecord record, final int compactCount) throws Exception
+   {
+      // The size of the record depends on whether it has a checksum
+      record.setChecksum(journal.isChecksums());
+
+      checkSize(record.getEncodeSize(), compactCount);
+   }
+
    private void checkSize(final int size, final int compactCount) throws Exception
    {
       if (getWritingChannel() == null)
@@ -254,6 +392,12 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
 
    private boolean checkCompact(final int compactCount) throws Exception
    {
+      if (incremental)
+      {
+         // not splitting keeps the new files fewer than the compacted ones, so their IDs fit
+         return false;
+      }
+
       if (compactCount >= COMPACT_SPLIT_LINE && !splitted)
       {
          willNeedToSplit = true;
@@ -296,6 +440,11 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
 
    public void onReadAddRecord(final RecordInfo info) throws Exception
    {
+      if (incremental)
+      {
+         addedIDs.add(info.id);
+      }
+
       if (lookupRecord(info.id))
       {
          JournalInternalRecord addRecord = new JournalAddRecord(true,
@@ -304,7 +453,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
                                                                 new ByteArrayEncoding(info.data));
          addRecord.setCompactCount((short)(info.compactCount + 1));
 
-         checkSize(addRecord.getEncodeSize(), info.compactCount);
+         checkSize(addRecord, info.compactCount);
 
          writeEncoder(addRecord);
 
@@ -314,6 +463,11 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
 
    public void onReadAddRecordTX(final long transactionID, final RecordInfo info) throws Exception
    {
+      if (incremental)
+      {
+         addedIDs.add(info.id);
+      }
+
       if (pendingTransactions.get(transactionID) != null || lookupRecord(info.id))
       {
          JournalTransaction newTransaction = getNewJournalTransaction(transactionID);
@@ -326,7 +480,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
 
          record.setCompactCount((short)(info.compactCount + 1));
 
-         checkSize(record.getEncodeSize(), info.compactCount);
+         checkSize(record, info.compactCount);
 
          newTransaction.addPositive(currentFile, info.id, record.getEncodeSize());
 
@@ -336,6 +490,12 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
 
    public void onReadCommitRecord(final long transactionID, final int numberOfRecords) throws Exception
    {
+      List<Long> deletes = transactionDeletes.remove(transactionID);
+
+      if (deletes != null)
+      {
+         keptDeletes.addAll(deletes);
+      }
 
       if (pendingTransactions.get(transactionID) != null)
       {
@@ -345,16 +505,24 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
       else
       {
          JournalTransaction newTransaction = newTransactions.remove(transactionID);
-         if (newTransaction != null)
+
+         List<JournalFile> previousFiles = getPreviousTransactionFiles(transactionID);
+
+         if (newTransaction != null || !previousFiles.isEmpty())
          {
             JournalInternalRecord commitRecord =
                      new JournalCompleteRecordTX(TX_RECORD_TYPE.COMMIT, transactionID, null);
 
-            checkSize(commitRecord.getEncodeSize());
+            checkSize(commitRecord);
+
+            writeEncoder(commitRecord, newTransaction == null ? 0 : newTransaction.getCounter(currentFile));
 
-            writeEncoder(commitRecord, newTransaction.getCounter(currentFile));
+            if (newTransaction != null)
+            {
+               newTransaction.commit(currentFile);
+            }
 
-            newTransaction.commit(currentFile);
+            completePreviousTransactionFiles(transactionID, previousFiles);
          }
       }
    }
@@ -366,7 +534,10 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
          // Sanity check, it should never happen
          HornetQJournalLogger.LOGGER.inconsistencyDuringCompactingDelete(recordID);
       }
-
+      else if (incremental && !addedIDs.contains(recordID))
+      {
+         keptDeletes.add(recordID);
+      }
    }
 
    public void onReadDeleteRecordTX(final long transactionID, final RecordInfo info) throws Exception
@@ -379,13 +550,24 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
                                                                   info.id,
                                                                   new ByteArrayEncoding(info.data));
 
-         checkSize(record.getEncodeSize());
+         checkSize(record);
 
          writeEncoder(record);
 
          newTransaction.addNegative(currentFile, info.id);
       }
-      // else.. nothing to be done
+      else if (incremental && !addedIDs.contains(info.id))
+      {
+         List<Long> deletes = transactionDeletes.get(transactionID);
+
+         if (deletes == null)
+         {
+            deletes = new ArrayList<Long>();
+            transactionDeletes.put(transactionID, deletes);
+         }
+
+         deletes.add(info.id);
+      }
    }
 
    public void markAsDataFile(final JournalFile file)
@@ -403,7 +585,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
          JournalInternalRecord prepareRecord =
                   new JournalCompleteRecordTX(TX_RECORD_TYPE.PREPARE, transactionID, new ByteArrayEncoding(extraData));
 
-         checkSize(prepareRecord.getEncodeSize());
+         checkSize(prepareRecord);
 
          writeEncoder(prepareRecord, newTransaction.getCounter(currentFile));
 
@@ -414,6 +596,8 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
 
    public void onReadRollbackRecord(final long transactionID) throws Exception
    {
+      transactionDeletes.remove(transactionID);
+
       if (pendingTransactions.get(transactionID) != null)
       {
          // Sanity check, this should never happen
@@ -423,16 +607,24 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
       else
       {
          JournalTransaction newTransaction = newTransactions.remove(transactionID);
-         if (newTransaction != null)
+
+         List<JournalFile> previousFiles = getPreviousTransactionFiles(transactionID);
+
+         if (newTransaction != null || !previousFiles.isEmpty())
          {
 
             JournalInternalRecord rollbackRecord = new JournalRollbackRecordTX(transactionID);
 
-            checkSize(rollbackRecord.getEncodeSize());
+            checkSize(rollbackRecord);
 
             writeEncoder(rollbackRecord);
 
-            newTransaction.rollback(currentFile);
+            if (newTransaction != null)
+            {
+               newTransaction.rollback(currentFile);
+            }
+
+            completePreviousTransactionFiles(transactionID, previousFiles);
          }
 
       }
@@ -449,13 +641,21 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
 
          updateRecord.setCompactCount((short)(info.compactCount + 1));
 
-         checkSize(updateRecord.getEncodeSize(), info.compactCount);
+         checkSize(updateRecord, info.compactCount);
 
          JournalRecord newRecord = newRecords.get(info.id);
 
          if (newRecord == null)
          {
-            HornetQJournalLogger.LOGGER.compactingWithNoAddRecord(info.id);
+            if (incremental)
+            {
+               // The record was added on a file that is not being compacted
+               newRecords.put(info.id, new JournalRecord(currentFile, updateRecord.getEncodeSize()));
+            }
+            else
+            {
+               HornetQJournalLogger.LOGGER.compactingWithNoAddRecord(info.id);
+            }
          }
          else
          {
@@ -480,7 +680,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
 
          updateRecordTX.setCompactCount((short)(info.compactCount + 1));
 
-         checkSize(updateRecordTX.getEncodeSize(), info.compactCount);
+         checkSize(updateRecordTX, info.compactCount);
 
          writeEncoder(updateRecordTX);
 
@@ -492,6 +692,51 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
       }
    }
 
+   @Override
+   protected void openFile() throws Exception
+   {
+      if (nextOrderingID > lastFileID)
+      {
+         throw new IllegalStateException("Compacting needs more files than the ones it compacts, up to ID " +
+                                         lastFileID);
+      }
+
+      super.openFile();
+   }
+
+   /**
+    * @return the data files before the compacted ones holding records of the transaction completed on the compacted
+    *         files, its commit or rollback has to be kept for them
+    */
+   private List<JournalFile> getPreviousTransactionFiles(final long transactionID)
+   {
+      List<JournalFile> previousFiles = new ArrayList<JournalFile>();
+
+      for (JournalFile compactedFile : compactedFiles)
+      {
+         for (JournalFile transactionFile : compactedFile.getCompletedTransactionFiles(transactionID))
+         {
+            if (transactionFile.getFileID() < compactedFiles.get(0).getFileID())
+            {
+               previousFiles.add(transactionFile);
+            }
+         }
+      }
+
+      return previousFiles;
+   }
+
+   /** The commit or rollback just written completes the transaction on the files before the compacted ones */
+   private void completePreviousTransactionFiles(final long transactionID, final List<JournalFile> previousFiles)
+   {
+      for (JournalFile previousFile : previousFiles)
+      {
+         currentFile.incNegCount(previousFile);
+         currentFile.addCompletedTransaction(transactionID, previousFile);
+         previousFile.addTransactionCompletion(currentFile);
+      }
+   }
+
    /**
     * @param transactionID
     * @return
@@ -632,7 +877,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
    }
 
    @Override
-   public Map<Long, JournalRecord> getRecords()
+   public ConcurrentLongHashMap<JournalRecord> getRecords()
    {
       return newRecords;
    }
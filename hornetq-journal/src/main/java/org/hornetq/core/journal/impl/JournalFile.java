@@ -13,6 +13,8 @@
 
 package org.hornetq.core.journal.impl;
 
+import java.util.List;
+
 import org.hornetq.core.journal.SequentialFile;
 
 /**
@@ -43,6 +45,24 @@ public interface JournalFile
    /** The total number of deletes this file has */
    int getTotalNegativeToOthers();
 
+   /** Records that a transaction with records on this file was committed or rolled back on the given file */
+   void addTransactionCompletion(JournalFile completionFile);
+
+   /**
+    * @return the highest ID of the files the transactions with records on this file were committed or rolled back
+    *         on, -1 if there is none
+    */
+   long getLastTransactionCompletionID();
+
+   /** Records that a transaction with records on the given file was committed or rolled back on this file */
+   void addCompletedTransaction(long transactionID, JournalFile transactionFile);
+
+   /**
+    * @return the other files holding records of the transaction if it was committed or rolled back on this file, empty
+    *         otherwise
+    */
+   List<JournalFile> getCompletedTransactionFiles(long transactionID);
+
    /**
     * Whether this file's contents can deleted and the file reused.
     * @param canDelete if {@code true} then this file's contents are unimportant and may be deleted
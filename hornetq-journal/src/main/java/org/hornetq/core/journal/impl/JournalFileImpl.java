@@ -13,6 +13,9 @@
 
 package org.hornetq.core.journal.impl;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
@@ -50,6 +53,11 @@ public class JournalFileImpl implements JournalFile
 
    private final Map<JournalFile, AtomicInteger> negCounts = new ConcurrentHashMap<JournalFile, AtomicInteger>();
 
+   private volatile long lastTransactionCompletionID = -1;
+
+   // the other files holding records of the transactions completed on this file
+   private final Map<Long, List<JournalFile>> completedTransactions = new ConcurrentHashMap<Long, List<JournalFile>>();
+
    public JournalFileImpl(final SequentialFile file, final long fileID, final int version)
    {
       this.file = file;
@@ -204,4 +212,40 @@ public class JournalFileImpl implements JournalFile
       return totalNegativeToOthers.get();
    }
 
+   public void addTransactionCompletion(final JournalFile completionFile)
+   {
+      if (completionFile.getFileID() > lastTransactionCompletionID)
+      {
+         lastTransactionCompletionID = completionFile.getFileID();
+      }
+   }
+
+   public long getLastTransactionCompletionID()
+   {
+      return lastTransactionCompletionID;
+   }
+
+   public void addCompletedTransaction(final long transactionID, final JournalFile transactionFile)
+   {
+      if (transactionFile != this)
+      {
+         List<JournalFile> files = completedTransactions.get(transactionID);
+
+         if (files == null)
+         {
+            files = new ArrayList<JournalFile>();
+            completedTransactions.put(transactionID, files);
+         }
+
+         files.add(transactionFile);
+      }
+   }
+
+   public List<JournalFile> getCompletedTransactionFiles(final long transactionID)
+   {
+      List<JournalFile> files = completedTransactions.get(transactionID);
+
+      return files == null ? Collections.<JournalFile> emptyList() : files;
+   }
+
 }
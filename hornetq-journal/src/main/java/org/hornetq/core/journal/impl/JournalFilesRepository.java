@@ -13,6 +13,7 @@
 
 package org.hornetq.core.journal.impl;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.BlockingDeque;
@@ -21,6 +22,7 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -79,6 +81,21 @@ public class JournalFilesRepository
 
    private Executor openFilesExecutor;
 
+   // The maximal number of filled files kept ready for the journal to move to, 0 keeps only the next one opened
+   private volatile int maxReadyFiles = 0;
+
+   // Averages of the time between two files being opened and of the time to create and fill a file, in nanoseconds
+   private volatile long fileInterval = 0;
+
+   private volatile long fillTime = 0;
+
+   private volatile long lastOpenTime = 0;
+
+   // The times the journal had to wait for the next file to be opened and how long it waited, in nanoseconds
+   private final AtomicLong fileStalls = new AtomicLong(0);
+
+   private final AtomicLong fileStallTime = new AtomicLong(0);
+
    private final Runnable pushOpenRunnable = new Runnable()
    {
       public void run()
@@ -94,6 +111,22 @@ public class JournalFilesRepository
       }
    };
 
+   // Fills one file at a time, so the files being opened don't wait for all the missing files to be filled
+   private final Runnable fillReadyFileRunnable = new Runnable()
+   {
+      public void run()
+      {
+         try
+         {
+            fillReadyFile();
+         }
+         catch (Exception e)
+         {
+            HornetQJournalLogger.LOGGER.errorPushingFile(e);
+         }
+      }
+   };
+
    public JournalFilesRepository(final SequentialFileFactory fileFactory,
                                  final JournalImpl journal,
                                  final String filePrefix,
@@ -132,6 +165,50 @@ public class JournalFilesRepository
       this.openFilesExecutor = fileExecutor;
    }
 
+   public int getMaxReadyFiles()
+   {
+      return maxReadyFiles;
+   }
+
+   /**
+    * @param maxReadyFiles the maximal number of filled files kept ready, the number actually kept follows the rate the
+    *           files are used at. 0 only opens the next file as the journal moves to a new one
+    */
+   public void setMaxReadyFiles(final int maxReadyFiles)
+   {
+      this.maxReadyFiles = maxReadyFiles;
+   }
+
+   /**
+    * The files that are expected to be used while a new one is filled, plus the next one.
+    * @return the number of filled files (free or opened) that should be kept ready, between 1 and maxReadyFiles
+    */
+   public int getReadyFilesTarget()
+   {
+      int max = maxReadyFiles;
+
+      long interval = fileInterval;
+
+      if (max <= 1 || interval <= 0)
+      {
+         return 1;
+      }
+
+      long target = 1 + (fillTime + interval - 1) / interval;
+
+      return (int)Math.min(max, target);
+   }
+
+   public long getFileStalls()
+   {
+      return fileStalls.get();
+   }
+
+   public long getFileStallTime()
+   {
+      return TimeUnit.NANOSECONDS.toMillis(fileStallTime.get());
+   }
+
    public void clear() throws Exception
    {
       dataFiles.clear();
@@ -277,6 +354,29 @@ public class JournalFilesRepository
       }
    }
 
+   /**
+    * Replaces consecutive data files by the files they were compacted into, keeping the order of the data files.
+    */
+   public void replaceDataFiles(final List<JournalFile> oldFiles, final List<JournalFile> newFiles)
+   {
+      ArrayList<JournalFile> files = new ArrayList<JournalFile>(dataFiles);
+
+      int position = files.indexOf(oldFiles.get(0));
+
+      files.removeAll(oldFiles);
+
+      files.addAll(position, newFiles);
+
+      dataFiles.clear();
+
+      dataFiles.addAll(files);
+
+      if (CHECK_CONSISTENCE)
+      {
+         checkDataFiles();
+      }
+   }
+
    public String debugFiles()
    {
       StringBuilder buffer = new StringBuilder();
@@ -402,7 +502,8 @@ public class JournalFilesRepository
       }
       else
       // FIXME - size() involves a scan!!!
-      if (!checkDelete || (freeFiles.size() + dataFiles.size() + 1 + openedFiles.size() < minFiles))
+      if (!checkDelete || (freeFiles.size() + dataFiles.size() + 1 + openedFiles.size() < minFiles) ||
+               (maxReadyFiles > 1 && freeFiles.size() + openedFiles.size() < getReadyFilesTarget()))
       {
          // Re-initialise it
 
@@ -471,6 +572,15 @@ public class JournalFilesRepository
          JournalFilesRepository.trace("enqueueOpenFile with openedFiles.size=" + openedFiles.size());
       }
 
+      long now = System.nanoTime();
+
+      if (lastOpenTime != 0)
+      {
+         fileInterval = average(fileInterval, now - lastOpenTime);
+      }
+
+      lastOpenTime = now;
+
       if (openFilesExecutor == null)
       {
          pushOpenRunnable.run();
@@ -480,15 +590,31 @@ public class JournalFilesRepository
          openFilesExecutor.execute(pushOpenRunnable);
       }
 
-      JournalFile nextFile = null;
+      JournalFile nextFile = openedFiles.poll();
 
-      while (nextFile == null)
+      if (nextFile == null)
       {
-         nextFile = openedFiles.poll(5, TimeUnit.SECONDS);
-         if (nextFile == null)
+         // the appends went faster than the files were filled
+         long stallStart = System.nanoTime();
+
+         while (nextFile == null)
          {
-            HornetQJournalLogger.LOGGER.errorOpeningFile(new Exception("trace"));
+            nextFile = openedFiles.poll(5, TimeUnit.SECONDS);
+            if (nextFile == null)
+            {
+               HornetQJournalLogger.LOGGER.errorOpeningFile(new Exception("trace"));
+            }
          }
+
+         fileStalls.incrementAndGet();
+
+         fileStallTime.addAndGet(System.nanoTime() - stallStart);
+      }
+
+      // only once the file was taken, as it isn't ready any more
+      if (openFilesExecutor != null && maxReadyFiles > 1)
+      {
+         openFilesExecutor.execute(fillReadyFileRunnable);
       }
 
       if (JournalFilesRepository.trace)
@@ -518,6 +644,33 @@ public class JournalFilesRepository
       }
    }
 
+   /**
+    * Creates a free file if fewer filled files than the target are ready, and schedules itself again for the next one.
+    */
+   private void fillReadyFile() throws Exception
+   {
+      if (freeFiles.size() + openedFiles.size() >= getReadyFilesTarget())
+      {
+         return;
+      }
+
+      freeFiles.add(createFile(false, false, true, false, -1));
+
+      Executor executor = openFilesExecutor;
+
+      if (executor != null)
+      {
+         try
+         {
+            executor.execute(fillReadyFileRunnable);
+         }
+         catch (RejectedExecutionException e)
+         {
+            // the journal is stopping
+         }
+      }
+   }
+
    public void closeFile(final JournalFile file) throws Exception
    {
       fileFactory.deactivateBuffer();
@@ -529,7 +682,7 @@ public class JournalFilesRepository
     * This will get a File from freeFile without initializing it
     * @return uninitialized JournalFile
     * @throws Exception
-    * @see {@link JournalImpl#initFileHeader(SequentialFileFactory, SequentialFile, int, long)}
+    * @see {@link JournalImpl#initFileHeader(SequentialFileFactory, SequentialFile, int, int, long)}
     */
    public JournalFile takeFile(final boolean keepOpened,
                                final boolean multiAIO,
@@ -601,9 +754,13 @@ public class JournalFilesRepository
 
       if (init)
       {
+         long fillStart = System.nanoTime();
+
          sequentialFile.fill(0, fileSize, JournalImpl.FILL_CHARACTER);
 
-         JournalImpl.initFileHeader(fileFactory, sequentialFile, userVersion, fileID);
+         fillTime = average(fillTime, System.nanoTime() - fillStart);
+
+         JournalImpl.initFileHeader(fileFactory, sequentialFile, journal.getFormatVersion(), userVersion, fileID);
       }
 
       long position = sequentialFile.position();
@@ -630,7 +787,7 @@ public class JournalFilesRepository
          sequentialFile.position(position);
       }
 
-      return new JournalFileImpl(sequentialFile, fileID, JournalImpl.FORMAT_VERSION);
+      return new JournalFileImpl(sequentialFile, fileID, journal.getFormatVersion());
    }
 
    /**
@@ -652,6 +809,12 @@ public class JournalFilesRepository
       return fileName;
    }
 
+   // Moving average giving a quarter of the weight to the new sample
+   private static long average(final long average, final long sample)
+   {
+      return average == 0 ? sample : (3 * average + sample) / 4;
+   }
+
    private long generateFileID()
    {
       return nextFileID.incrementAndGet();
@@ -680,9 +843,9 @@ public class JournalFilesRepository
 
       sf.open(1, false);
 
-      int position = JournalImpl.initFileHeader(fileFactory, sf, userVersion, newFileID);
+      int position = JournalImpl.initFileHeader(fileFactory, sf, journal.getFormatVersion(), userVersion, newFileID);
 
-      JournalFile jf = new JournalFileImpl(sf, newFileID, JournalImpl.FORMAT_VERSION);
+      JournalFile jf = new JournalFileImpl(sf, newFileID, journal.getFormatVersion());
 
       sf.position(position);
 
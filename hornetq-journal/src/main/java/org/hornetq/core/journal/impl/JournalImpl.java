@@ -16,6 +16,8 @@ package org.hornetq.core.journal.impl;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -26,8 +28,6 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -39,6 +39,7 @@ import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
 
 import org.hornetq.api.core.HornetQBuffer;
 import org.hornetq.api.core.HornetQBuffers;
@@ -66,6 +67,7 @@ import org.hornetq.core.journal.impl.dataformat.JournalRollbackRecordTX;
 import org.hornetq.journal.HornetQJournalBundle;
 import org.hornetq.journal.HornetQJournalLogger;
 import org.hornetq.utils.ConcurrentHashSet;
+import org.hornetq.utils.ConcurrentLongHashMap;
 import org.hornetq.utils.DataConstants;
 
 /**
@@ -86,7 +88,10 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
    public static final int FORMAT_VERSION = 2;
 
-   private static final int COMPATIBLE_VERSIONS[] = new int[] { 1 };
+   // The records on the files of this version have a checksum before their check size
+   public static final int CHECKSUM_FORMAT_VERSION = 3;
+
+   private static final int COMPATIBLE_VERSIONS[] = new int[] { 1, JournalImpl.CHECKSUM_FORMAT_VERSION };
 
    // Static --------------------------------------------------------
    private static final boolean trace = HornetQJournalLogger.LOGGER.isTraceEnabled();
@@ -112,6 +117,8 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
    public static final int MIN_FILE_SIZE = 1024;
 
+   public static final int DEFAULT_COMPACT_MAX_PENDING_COMMANDS = 100000;
+
    // FileID(Long) + JournalVersion + UserVersion
    public static final int SIZE_HEADER = DataConstants.SIZE_LONG + DataConstants.SIZE_INT + DataConstants.SIZE_INT;
 
@@ -159,6 +166,9 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
    public static final int SIZE_ROLLBACK_RECORD = JournalImpl.BASIC_SIZE + DataConstants.SIZE_LONG;
 
+   // CRC32 of the record up to the checksum
+   public static final int SIZE_CHECKSUM = DataConstants.SIZE_INT;
+
    public static final byte ROLLBACK_RECORD = 19;
 
    protected static final byte FILL_CHARACTER = (byte)'J';
@@ -167,6 +177,33 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
    private volatile boolean autoReclaim = true;
 
+   // whether the files are written with a checksum on each record
+   private volatile boolean checksums = false;
+
+   // files read concurrently on load, 1 reads them one after the other on the loading thread
+   private int loadThreads = 1;
+
+   // data files compacted in one go, 0 compacts all of them
+   private volatile int compactMaxFiles = 0;
+
+   // MiB per second read and written while compacting, 0 doesn't limit it
+   private volatile int compactIORate = 0;
+
+   private volatile int compactMaxPendingCommands = JournalImpl.DEFAULT_COMPACT_MAX_PENDING_COMMANDS;
+
+   private volatile int compactFilesToProcess;
+
+   private volatile int compactFilesProcessed;
+
+   private final AtomicLong compactReclaimedBytes = new AtomicLong();
+
+   private final AtomicLong compactPauseTime = new AtomicLong();
+
+   private volatile long lastCompactPauseTime;
+
+   // only used by the thread compacting
+   private long runPauseTime;
+
    private final int userVersion;
 
    private final int minFiles;
@@ -180,10 +217,10 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
    private final JournalFilesRepository filesRepository;
 
    // Compacting may replace this structure
-   private final ConcurrentMap<Long, JournalRecord> records = new ConcurrentHashMap<Long, JournalRecord>();
+   private final ConcurrentLongHashMap<JournalRecord> records = new ConcurrentLongHashMap<JournalRecord>();
 
    // Compacting may replace this structure
-   private final ConcurrentMap<Long, JournalTransaction> transactions = new ConcurrentHashMap<Long, JournalTransaction>();
+   private final ConcurrentLongHashMap<JournalTransaction> transactions = new ConcurrentLongHashMap<JournalTransaction>();
 
    // This will be set only while the JournalCompactor is being executed
    private volatile JournalCompactor compactor;
@@ -349,7 +386,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       latch.await();
    }
 
-   public Map<Long, JournalRecord> getRecords()
+   public ConcurrentLongHashMap<JournalRecord> getRecords()
    {
       return records;
    }
@@ -642,6 +679,41 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
                continue;
             }
 
+            // VIII - On the files with checksums the whole record is verified at once, as damaged data may still
+            // have the right sizes
+            if (file.getJournalVersion() >= JournalImpl.CHECKSUM_FORMAT_VERSION)
+            {
+               int checksumPos = pos + variableSize + recordSize + preparedTransactionExtraDataSize -
+                                 DataConstants.SIZE_INT -
+                                 JournalImpl.SIZE_CHECKSUM;
+
+               ByteBuffer recordBuffer = wholeFileBuffer.duplicate();
+
+               recordBuffer.limit(checksumPos);
+
+               recordBuffer.position(pos);
+
+               if (JournalImpl.calculateChecksum(recordBuffer) != wholeFileBuffer.getInt(checksumPos))
+               {
+                  JournalImpl.trace("Record at position " + pos +
+                                    " recordType = " +
+                                    recordType +
+                                    " possible transactionID = " +
+                                    transactionID +
+                                    " possible recordID = " +
+                                    recordID +
+                                    " file:" +
+                                    file.getFile().getFileName() +
+                                    " doesn't match its checksum and it is being ignored (IV)");
+
+                  reader.markAsDataFile(file);
+
+                  wholeFileBuffer.position(pos + DataConstants.SIZE_BYTE);
+
+                  continue;
+               }
+            }
+
             wholeFileBuffer.position(oldPos);
 
             // At this point everything is checked. So we relax and just load
@@ -727,6 +799,11 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
                }
             }
 
+            if (file.getJournalVersion() >= JournalImpl.CHECKSUM_FORMAT_VERSION)
+            {
+               wholeFileBuffer.position(wholeFileBuffer.position() + JournalImpl.SIZE_CHECKSUM);
+            }
+
             checkSize = wholeFileBuffer.getInt();
 
             // This is a sanity check about the loading code itself.
@@ -1464,6 +1541,8 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
          boolean previousReclaimValue = isAutoReclaim();
 
+         runPauseTime = 0;
+
       try
       {
          HornetQJournalLogger.LOGGER.debug("Starting compacting operation on journal");
@@ -1472,7 +1551,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
          // We need to guarantee that the journal is frozen for this short time
          // We don't freeze the journal as we compact, only for the short time where we replace records
-         journalLock.writeLock().lock();
+         long lockStart = lockJournalForCompacting();
          try
          {
             if (state != JournalState.LOADED)
@@ -1502,13 +1581,13 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
             compactor = new JournalCompactor(fileFactory,
                                              this,
                                              filesRepository,
-                                             records.keySet(),
+                                             records.keys(),
                                              dataFilesToProcess.get(0).getFileID());
 
-            for (Map.Entry<Long, JournalTransaction> entry : transactions.entrySet())
+            for (JournalTransaction tx : transactions.values())
             {
-               compactor.addPendingTransaction(entry.getKey(), entry.getValue().getPositiveArray());
-               entry.getValue().setCompacting();
+               compactor.addPendingTransaction(tx.getId(), tx.getPositiveArray());
+               tx.setCompacting();
             }
 
             // We will calculate the new records during compacting, what will take the position the records will take
@@ -1517,11 +1596,15 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
          }
          finally
          {
-            journalLock.writeLock().unlock();
+            unlockJournalForCompacting(lockStart);
          }
 
          Collections.sort(dataFilesToProcess, new JournalFileComparator());
 
+         compactFilesToProcess = dataFilesToProcess.size();
+
+         long readStart = System.nanoTime();
+
          // This is where most of the work is done, taking most of the time of the compacting routine.
          // Notice there are no locks while this is being done.
 
@@ -1538,6 +1621,8 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
                HornetQJournalLogger.LOGGER.compactReadError(file);
                throw new Exception("Error on reading compacting for " + file, e);
             }
+
+            throttleCompacting(readStart, ++compactFilesProcessed);
          }
 
          compactor.flush();
@@ -1553,7 +1638,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
          SequentialFile controlFile = createControlFile(dataFilesToProcess, compactor.getNewDataFiles(), null);
 
-         journalLock.writeLock().lock();
+         lockStart = lockJournalForCompacting();
          try
          {
             // Need to clear the compactor here, or the replay commands will send commands back (infinite loop)
@@ -1564,10 +1649,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
             newDatafiles = localCompactor.getNewDataFiles();
 
             // Restore newRecords created during compacting
-            for (Map.Entry<Long, JournalRecord> newRecordEntry : localCompactor.getNewRecords().entrySet())
-            {
-               records.put(newRecordEntry.getKey(), newRecordEntry.getValue());
-            }
+            records.putAll(localCompactor.getNewRecords());
 
             // Restore compacted dataFiles
             for (int i = newDatafiles.size() - 1; i >= 0; i--)
@@ -1617,13 +1699,15 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
          }
          finally
          {
-            journalLock.writeLock().unlock();
+            unlockJournalForCompacting(lockStart);
          }
 
          // At this point the journal is unlocked. We keep renaming files while the journal is already operational
          renameFiles(dataFilesToProcess, newDatafiles);
          deleteControlFile(controlFile);
 
+         compactReclaimedBytes.addAndGet((long)(dataFilesToProcess.size() - newDatafiles.size()) * fileSize);
+
          HornetQJournalLogger.LOGGER.debug("Finished compacting on journal");
 
       }
@@ -1642,6 +1726,9 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
             compactor = null;
          }
+         compactFilesToProcess = 0;
+         compactFilesProcessed = 0;
+         lastCompactPauseTime = runPauseTime;
          setAutoReclaim(previousReclaimValue);
          }
       }
@@ -1652,6 +1739,201 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
    }
 
+   /**
+    * Compacts at most {@link #getCompactMaxFiles()} consecutive data files, the ones with the most space to reclaim.
+    * Unlike {@link #compact()} the records on the other data files are left where they are, so the journal is only
+    * locked to check the files can still be compacted and to replace them by the compacted ones.
+    * <p>
+    * The files compacted together hold the commit or rollback of the transactions with records on them. The deletes,
+    * commits and rollbacks they hold for records on the data files before them are written again on the new files, as
+    * those would be lost otherwise. Once the updates and deletes waiting for the compacting to be done reach
+    * {@link #getCompactMaxPendingCommands()} no more files are read.
+    */
+   protected synchronized void compactIncrementally() throws Exception
+   {
+      if (compactor != null)
+      {
+         throw new IllegalStateException("There is pending compacting operation");
+      }
+
+      compactorLock.writeLock().lock();
+      try
+      {
+         boolean previousReclaimValue = isAutoReclaim();
+
+         runPauseTime = 0;
+
+         try
+         {
+            HornetQJournalLogger.LOGGER.debug("Starting incremental compacting operation on journal");
+
+            onCompactStart();
+
+            // No data file can be reclaimed while the files are picked and compacted
+            setAutoReclaim(false);
+
+            JournalFile[] files = getDataFiles();
+
+            Arrays.sort(files, new JournalFileComparator());
+
+            int[] selected = selectFilesToCompact(files);
+
+            if (selected == null)
+            {
+               trace("Finishing incremental compacting, no files worth compacting");
+               return;
+            }
+
+            List<JournalFile> dataFilesToProcess;
+
+            // whether the transactions with records on the files up to each one are completed on them
+            boolean[] completed = new boolean[selected[1] - selected[0] + 1];
+
+            long lockStart = lockJournalForCompacting();
+            try
+            {
+               if (state != JournalState.LOADED)
+               {
+                  return;
+               }
+
+               onCompactLockingTheJournal();
+
+               dataFilesToProcess = checkFilesToCompact(files, selected[0], selected[1], completed);
+
+               if (dataFilesToProcess.isEmpty())
+               {
+                  trace("Finishing incremental compacting, the files are still used by transactions");
+                  return;
+               }
+
+               compactor = new JournalCompactor(fileFactory, this, filesRepository, dataFilesToProcess);
+            }
+            finally
+            {
+               unlockJournalForCompacting(lockStart);
+            }
+
+            compactFilesToProcess = dataFilesToProcess.size();
+
+            long readStart = System.nanoTime();
+
+            for (int i = 0; i < dataFilesToProcess.size(); i++)
+            {
+               JournalFile file = dataFilesToProcess.get(i);
+
+               try
+               {
+                  JournalImpl.readJournalFile(fileFactory, file, compactor);
+               }
+               catch (Throwable e)
+               {
+                  HornetQJournalLogger.LOGGER.compactReadError(file);
+                  throw new Exception("Error on reading compacting for " + file, e);
+               }
+
+               throttleCompacting(readStart, ++compactFilesProcessed);
+
+               if (completed[i] && i < dataFilesToProcess.size() - 1 &&
+                   compactor.getPendingCommandsCount() >= compactMaxPendingCommands)
+               {
+                  trace("Stopping incremental compacting after " + file + ", too many pending operations");
+                  dataFilesToProcess = new ArrayList<JournalFile>(dataFilesToProcess.subList(0, i + 1));
+               }
+            }
+
+            compactor.writeKeptDeletes(Arrays.asList(files).subList(0, selected[0]), dataFilesToProcess);
+
+            compactor.flush();
+
+            onCompactDone();
+
+            final JournalCompactor localCompactor = compactor;
+
+            List<JournalFile> newDatafiles = localCompactor.getNewDataFiles();
+
+            SequentialFile controlFile = createControlFile(dataFilesToProcess, newDatafiles, null);
+
+            lockStart = lockJournalForCompacting();
+            try
+            {
+               // Need to clear the compactor here, or the replay commands will send commands back (infinite loop)
+               compactor = null;
+
+               onCompactLockingTheJournal();
+
+               final Set<JournalFile> compactedFiles = new HashSet<JournalFile>(dataFilesToProcess);
+
+               localCompactor.getNewRecords().forEach(new ConcurrentLongHashMap.EntryProcessor<JournalRecord>()
+               {
+                  public void accept(final long id, final JournalRecord compactedRecord)
+                  {
+                     // Deletes are only replayed below, the record can't be missing
+                     JournalRecord record = records.get(id);
+
+                     if (record != null)
+                     {
+                        records.put(id, record.merge(compactedFiles, compactedRecord));
+                     }
+                  }
+               });
+
+               filesRepository.replaceDataFiles(dataFilesToProcess, newDatafiles);
+
+               localCompactor.replayPendingCommands();
+            }
+            finally
+            {
+               unlockJournalForCompacting(lockStart);
+            }
+
+            renameFiles(dataFilesToProcess, newDatafiles);
+            deleteControlFile(controlFile);
+
+            compactReclaimedBytes.addAndGet((long)(dataFilesToProcess.size() - newDatafiles.size()) * fileSize);
+
+            HornetQJournalLogger.LOGGER.debug("Finished incremental compacting on journal");
+         }
+         finally
+         {
+            // The files were not replaced, they are kept along with the operations done on them meanwhile
+            if (compactor != null)
+            {
+               try
+               {
+                  compactor.flush();
+               }
+               catch (Throwable ignored)
+               {
+               }
+
+               long lockStart = lockJournalForCompacting();
+               try
+               {
+                  JournalCompactor failedCompactor = compactor;
+
+                  compactor = null;
+
+                  failedCompactor.replayPendingCommands();
+               }
+               finally
+               {
+                  unlockJournalForCompacting(lockStart);
+               }
+            }
+
+            compactFilesToProcess = 0;
+            compactFilesProcessed = 0;
+            lastCompactPauseTime = runPauseTime;
+            setAutoReclaim(previousReclaimValue);
+         }
+      }
+      finally
+      {
+         compactorLock.writeLock().unlock();
+      }
+   }
+
    /**
     * <p>Load data accordingly to the record layouts</p>
     *
@@ -1734,13 +2016,25 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       // AtomicLong is used only as a reference, not as an Atomic value
       final AtomicLong maxID = new AtomicLong(-1);
 
+      JournalLoadPipeline pipeline = null;
+
+      if (loadThreads > 1 && orderedFiles.size() > 1)
+      {
+         pipeline = new JournalLoadPipeline(fileFactory, orderedFiles, Math.min(loadThreads, orderedFiles.size()));
+      }
+
       for (final JournalFile file : orderedFiles)
       {
          JournalImpl.trace("Loading file " + file.getFile().getFileName());
 
          final AtomicBoolean hasData = new AtomicBoolean(false);
 
-         int resultLastPost = JournalImpl.readJournalFile(fileFactory, file, new JournalReaderCallback()
+         // The size of the records without their body, depending on the version of the file
+         final int addRecordSize = JournalImpl.getRecordSize(JournalImpl.ADD_RECORD, file.getJournalVersion());
+
+         final int addRecordTXSize = JournalImpl.getRecordSize(JournalImpl.ADD_RECORD_TX, file.getJournalVersion());
+
+         JournalReaderCallback reader = new JournalReaderCallback()
          {
 
             private void checkID(final long id)
@@ -1759,7 +2053,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
                loadManager.addRecord(info);
 
-               records.put(info.id, new JournalRecord(file, info.data.length + JournalImpl.SIZE_ADD_RECORD + 1));
+               records.put(info.id, new JournalRecord(file, info.data.length + addRecordSize));
             }
 
             public void onReadUpdateRecord(final RecordInfo info) throws Exception
@@ -1778,7 +2072,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
                   // have been deleted
                   // just leaving some updates in this file
 
-                  posFiles.addUpdateFile(file, info.data.length + JournalImpl.SIZE_ADD_RECORD + 1); // +1 = compact
+                  posFiles.addUpdateFile(file, info.data.length + addRecordSize);
                   // count
                }
             }
@@ -1829,7 +2123,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
                   transactions.put(transactionID, tnp);
                }
 
-               tnp.addPositive(file, info.id, info.data.length + JournalImpl.SIZE_ADD_RECORD_TX + 1); // +1 = compact
+               tnp.addPositive(file, info.id, info.data.length + addRecordTXSize);
                // count
             }
 
@@ -1986,7 +2280,10 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
                hasData.set(true);
             }
 
-         });
+         };
+
+         int resultLastPost = pipeline != null ? pipeline.readJournalFile(file, reader)
+                                               : JournalImpl.readJournalFile(fileFactory, file, reader);
 
          if (hasData.get())
          {
@@ -2078,6 +2375,12 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       }
       try
       {
+         // An incremental compacting leaves the files it reads on the data files
+         if (compactor != null)
+         {
+            return false;
+         }
+
          reclaimer.scan(getDataFiles());
 
          for (JournalFile file : filesRepository.getDataFiles())
@@ -2104,6 +2407,152 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       return false;
    }
 
+   /**
+    * @return the indexes of the first and last of the consecutive files with the most space to reclaim that can be
+    *         compacted together, null if there are none that would reclaim a file
+    */
+   private int[] selectFilesToCompact(final JournalFile[] files)
+   {
+      int[] selected = null;
+
+      long selectedReclaimable = fileSize - 1;
+
+      for (int first = 0; first < files.length; first++)
+      {
+         long lastCompletion = -1;
+
+         long reclaimable = 0;
+
+         long keptDeletes = 0;
+
+         for (int last = first; last < files.length && last - first < compactMaxFiles; last++)
+         {
+            keptDeletes += getKeptDeletesSize(files[last]);
+
+            if (keptDeletes > fileSize - JournalImpl.SIZE_HEADER)
+            {
+               break;
+            }
+
+            lastCompletion = Math.max(lastCompletion, files[last].getLastTransactionCompletionID());
+
+            reclaimable += fileSize - files[last].getLiveSize() - getKeptDeletesSize(files[last]);
+
+            if (lastCompletion <= files[last].getFileID() && reclaimable > selectedReclaimable)
+            {
+               selected = new int[] { first, last };
+               selectedReclaimable = reclaimable;
+            }
+         }
+      }
+
+      return selected;
+   }
+
+   /**
+    * Checks again with the journal locked the files picked to compact, stopping before the first file still used by a
+    * transaction.
+    * @return the files to compact, empty if they wouldn't reclaim a file anymore
+    */
+   private List<JournalFile> checkFilesToCompact(final JournalFile[] files,
+                                                 final int first,
+                                                 final int last,
+                                                 final boolean[] completed)
+   {
+      Collection<JournalFile> dataFiles = filesRepository.getDataFiles();
+
+      List<JournalTransaction> liveTransactions = transactions.values();
+
+      List<JournalFile> filesToCompact = new ArrayList<JournalFile>();
+
+      long lastCompletion = -1;
+
+      long reclaimable = 0;
+
+      int size = 0;
+
+      for (int i = first; i <= last && dataFiles.contains(files[i]); i++)
+      {
+         for (JournalTransaction tx : liveTransactions)
+         {
+            if (tx.isUsing(files[i]))
+            {
+               return new ArrayList<JournalFile>(filesToCompact.subList(0, size));
+            }
+         }
+
+         filesToCompact.add(files[i]);
+
+         lastCompletion = Math.max(lastCompletion, files[i].getLastTransactionCompletionID());
+
+         reclaimable += fileSize - files[i].getLiveSize() - getKeptDeletesSize(files[i]);
+
+         completed[i - first] = lastCompletion <= files[i].getFileID();
+
+         if (completed[i - first] && reclaimable >= fileSize)
+         {
+            size = filesToCompact.size();
+         }
+      }
+
+      return new ArrayList<JournalFile>(filesToCompact.subList(0, size));
+   }
+
+   /**
+    * The deletes of records before the compacted files are kept, any delete or completion on the file may be one of
+    * them.
+    * @return the bytes the deletes on the file that may have to be kept take
+    */
+   private long getKeptDeletesSize(final JournalFile file)
+   {
+      int deleteSize = JournalImpl.SIZE_DELETE_RECORD + 1 + (checksums ? JournalImpl.SIZE_CHECKSUM : 0);
+
+      return (long)file.getTotalNegativeToOthers() * deleteSize;
+   }
+
+   /** The journal is locked for the compactor, appends wait until it calls {@link #unlockJournalForCompacting(long)} */
+   private long lockJournalForCompacting()
+   {
+      long start = System.nanoTime();
+
+      journalLock.writeLock().lock();
+
+      return start;
+   }
+
+   private void unlockJournalForCompacting(final long start)
+   {
+      journalLock.writeLock().unlock();
+
+      long pause = System.nanoTime() - start;
+
+      runPauseTime += pause;
+
+      compactPauseTime.addAndGet(pause);
+   }
+
+   /**
+    * Waits as long as needed for the files read and written by the compactor since it started reading to stay within
+    * {@link #getCompactIORate()}.
+    */
+   private void throttleCompacting(final long start, final int filesRead) throws InterruptedException
+   {
+      int rate = compactIORate;
+
+      if (rate > 0 && state == JournalState.LOADED)
+      {
+         long bytes = (long)(filesRead + compactor.getNewDataFiles().size()) * fileSize;
+
+         long wait = bytes * 1000 / (rate * 1024L * 1024L) -
+                     TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+         if (wait > 0)
+         {
+            Thread.sleep(wait);
+         }
+      }
+   }
+
    private boolean needsCompact() throws Exception
    {
       JournalFile[] dataFiles = getDataFiles();
@@ -2157,10 +2606,18 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       {
          public void run()
          {
+            long reclaimedBytes = compactReclaimedBytes.get();
 
             try
             {
-               JournalImpl.this.compact();
+               if (compactMaxFiles > 0)
+               {
+                  JournalImpl.this.compactIncrementally();
+               }
+               else
+               {
+                  JournalImpl.this.compact();
+               }
             }
             catch (Throwable e)
             {
@@ -2170,6 +2627,19 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
             {
                compactorRunning.set(false);
             }
+
+            // An incremental compacting only reclaims some files, it goes on for as long as it reclaims any
+            if (compactMaxFiles > 0 && compactReclaimedBytes.get() > reclaimedBytes)
+            {
+               try
+               {
+                  checkCompact();
+               }
+               catch (Throwable e)
+               {
+                  HornetQJournalLogger.LOGGER.errorCompacting(e);
+               }
+            }
          }
       });
    }
@@ -2284,6 +2754,38 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       return filesRepository.getOpenedFilesCount();
    }
 
+   public int getMaxReadyFiles()
+   {
+      return filesRepository.getMaxReadyFiles();
+   }
+
+   /**
+    * @param maxReadyFiles the maximal number of filled files kept ready to move to, the number kept follows the rate
+    *           the journal moves to new files at. 0 only opens the next file when moving to a new one
+    */
+   public void setMaxReadyFiles(final int maxReadyFiles)
+   {
+      filesRepository.setMaxReadyFiles(maxReadyFiles);
+   }
+
+   /** @return the number of filled files currently meant to be kept ready */
+   public int getReadyFilesTarget()
+   {
+      return filesRepository.getReadyFilesTarget();
+   }
+
+   /** @return the number of times appends waited for the next file to be filled and opened */
+   public long getFileStalls()
+   {
+      return filesRepository.getFileStalls();
+   }
+
+   /** @return the milliseconds appends waited for the next file to be filled and opened */
+   public long getFileStallTime()
+   {
+      return filesRepository.getFileStallTime();
+   }
+
    public int getIDMapSize()
    {
       return records.size();
@@ -2320,6 +2822,112 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       return userVersion;
    }
 
+   public synchronized int getLoadThreads()
+   {
+      return loadThreads;
+   }
+
+   /**
+    * @param loadThreads the number of files read concurrently when loading, the records are still
+    *           applied in the order of the files
+    */
+   public synchronized void setLoadThreads(final int loadThreads)
+   {
+      this.loadThreads = loadThreads;
+   }
+
+   public boolean isChecksums()
+   {
+      return checksums;
+   }
+
+   /**
+    * @param checksums whether the files are written with a CRC32 on each record, verified when loading. It has to be
+    *           set before the journal is loaded, the files written before keep their format.
+    */
+   public void setChecksums(final boolean checksums)
+   {
+      this.checksums = checksums;
+   }
+
+   /**
+    * @return the version of the files written, depending on whether they have checksums
+    */
+   public int getFormatVersion()
+   {
+      return checksums ? JournalImpl.CHECKSUM_FORMAT_VERSION : JournalImpl.FORMAT_VERSION;
+   }
+
+   public int getCompactMaxFiles()
+   {
+      return compactMaxFiles;
+   }
+
+   /**
+    * @param compactMaxFiles the number of data files compacted when the journal needs compacting, it goes on
+    *           compacting a few files at a time for as long as it needs it, 0 compacts all the data files at once
+    */
+   public void setCompactMaxFiles(final int compactMaxFiles)
+   {
+      this.compactMaxFiles = compactMaxFiles;
+   }
+
+   public int getCompactIORate()
+   {
+      return compactIORate;
+   }
+
+   /**
+    * @param compactIORate the MiB per second the compactor reads and writes at most, 0 doesn't limit it
+    */
+   public void setCompactIORate(final int compactIORate)
+   {
+      this.compactIORate = compactIORate;
+   }
+
+   public int getCompactMaxPendingCommands()
+   {
+      return compactMaxPendingCommands;
+   }
+
+   /**
+    * @param compactMaxPendingCommands the number of updates and deletes waiting for an incremental compacting to be
+    *           done past which it doesn't read any more files
+    */
+   public void setCompactMaxPendingCommands(final int compactMaxPendingCommands)
+   {
+      this.compactMaxPendingCommands = compactMaxPendingCommands;
+   }
+
+   /**
+    * @return the percentage of the data files of the compacting in progress already read, -1 if the journal is not
+    *         compacting
+    */
+   public int getCompactProgress()
+   {
+      int filesToProcess = compactFilesToProcess;
+
+      return filesToProcess == 0 ? -1 : compactFilesProcessed * 100 / filesToProcess;
+   }
+
+   /** @return the bytes of data files reclaimed by compacting since the journal was created */
+   public long getCompactReclaimedBytes()
+   {
+      return compactReclaimedBytes.get();
+   }
+
+   /** @return the milliseconds appends were held by compacting since the journal was created */
+   public long getCompactPauseTime()
+   {
+      return TimeUnit.NANOSECONDS.toMillis(compactPauseTime.get());
+   }
+
+   /** @return the milliseconds appends were held by the last compacting */
+   public long getLastCompactPauseTime()
+   {
+      return TimeUnit.NANOSECONDS.toMillis(lastCompactPauseTime);
+   }
+
    // In some tests we need to force the journal to move to a next file
    public void forceMoveNextFile() throws Exception
    {
@@ -2644,12 +3252,40 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       }
       if (journalVersion >= 2)
       {
-         return recordSize + 1;
+         recordSize++;
+      }
+
+      if (journalVersion >= JournalImpl.CHECKSUM_FORMAT_VERSION)
+      {
+         recordSize += JournalImpl.SIZE_CHECKSUM;
+      }
+
+      return recordSize;
+   }
+
+   /**
+    * @return the CRC32 of the bytes between the position and the limit of the buffer, which are consumed
+    */
+   public static int calculateChecksum(final ByteBuffer buffer)
+   {
+      CRC32 crc = new CRC32();
+
+      if (buffer.hasArray())
+      {
+         crc.update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+
+         buffer.position(buffer.limit());
       }
       else
       {
-         return recordSize;
+         byte[] bytes = new byte[buffer.remaining()];
+
+         buffer.get(bytes);
+
+         crc.update(bytes, 0, bytes.length);
       }
+
+      return (int)crc.getValue();
    }
 
    /**
@@ -2708,13 +3344,28 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
                                     final SequentialFile sequentialFile,
                                     final int userVersion,
                                     final long fileID) throws Exception
+   {
+      return JournalImpl.initFileHeader(fileFactory, sequentialFile, JournalImpl.FORMAT_VERSION, userVersion, fileID);
+   }
+
+   /**
+    * @param journalVersion the version of the records the file will hold
+    * @param fileID
+    * @param sequentialFile
+    * @throws Exception
+    */
+   public static int initFileHeader(final SequentialFileFactory fileFactory,
+                                    final SequentialFile sequentialFile,
+                                    final int journalVersion,
+                                    final int userVersion,
+                                    final long fileID) throws Exception
    {
       // We don't need to release buffers while writing.
       ByteBuffer bb = fileFactory.newBuffer(JournalImpl.SIZE_HEADER);
 
       HornetQBuffer buffer = HornetQBuffers.wrappedBuffer(bb);
 
-      JournalImpl.writeHeader(buffer, userVersion, fileID);
+      JournalImpl.writeHeader(buffer, journalVersion, userVersion, fileID);
 
       bb.rewind();
 
@@ -2734,7 +3385,21 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
     */
    public static void writeHeader(final HornetQBuffer buffer, final int userVersion, final long fileID)
    {
-      buffer.writeInt(JournalImpl.FORMAT_VERSION);
+      JournalImpl.writeHeader(buffer, JournalImpl.FORMAT_VERSION, userVersion, fileID);
+   }
+
+   /**
+    * @param buffer
+    * @param journalVersion
+    * @param userVersion
+    * @param fileID
+    */
+   public static void writeHeader(final HornetQBuffer buffer,
+                                  final int journalVersion,
+                                  final int userVersion,
+                                  final long fileID)
+   {
+      buffer.writeInt(journalVersion);
 
       buffer.writeInt(userVersion);
 
@@ -2756,6 +3421,8 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
       final IOAsyncTask callback;
 
+      encoder.setChecksum(checksums);
+
       final int size = encoder.getEncodeSize();
 
       switchFileIfNecessary(size);
@@ -3103,6 +3770,15 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       // The current file is the last one that has data
 
       currentFile = filesRepository.pollLastDataFile();
+
+      // The records appended have to follow the format of the file, with or without checksums
+      if (currentFile != null && currentFile.getJournalVersion() != getFormatVersion())
+      {
+         filesRepository.addDataFileOnBottom(currentFile);
+
+         currentFile = null;
+      }
+
       if (currentFile != null)
       {
          if (!currentFile.getFile().isOpen())
@@ -3228,4 +3904,17 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
          throw new RuntimeException(e);
       }
    }
+
+   @Override
+   public void testCompactIncrementally()
+   {
+      try
+      {
+         compactIncrementally();
+      }
+      catch (Exception e)
+      {
+         throw new RuntimeException(e);
+      }
+   }
 }
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.journal.impl;
+
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.hornetq.core.journal.RecordInfo;
+import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.utils.HornetQThreadFactory;
+
+/**
+ * Reads the files of a journal being loaded ahead of the loading thread.
+ * <p>
+ * Reading a file and decoding its records is independent from any other file, so up to one file
+ * per thread is read concurrently. What the records mean though depends on the records of the
+ * previous files (an update or a delete refers to an add, a commit completes a transaction), so the
+ * records of each file are only recorded by the reading threads. They are then replayed on the
+ * loading thread, file after file in the journal order, exactly as
+ * {@link JournalImpl#readJournalFile(SequentialFileFactory, JournalFile, JournalReaderCallback)}
+ * would have reported them.
+ */
+final class JournalLoadPipeline
+{
+   // Attributes ----------------------------------------------------
+
+   private final SequentialFileFactory fileFactory;
+
+   private final LinkedList<JournalFile> toRead;
+
+   private final LinkedList<Future<RecordedFile>> reading = new LinkedList<Future<RecordedFile>>();
+
+   private final int threads;
+
+   private final ThreadPoolExecutor executor;
+
+   // Constructors --------------------------------------------------
+
+   /**
+    * @param files the files that will be read, in the order they will be read
+    */
+   JournalLoadPipeline(final SequentialFileFactory fileFactory, final List<JournalFile> files, final int threads)
+   {
+      this.fileFactory = fileFactory;
+      this.toRead = new LinkedList<JournalFile>(files);
+      this.threads = threads;
+
+      ClassLoader tccl = AccessController.doPrivileged(new PrivilegedAction<ClassLoader>()
+      {
+         public ClassLoader run()
+         {
+            return Thread.currentThread().getContextClassLoader();
+         }
+      });
+
+      // the threads go away by themselves if the load is interrupted by a failure
+      executor = new ThreadPoolExecutor(threads,
+                                        threads,
+                                        60,
+                                        TimeUnit.SECONDS,
+                                        new LinkedBlockingQueue<Runnable>(),
+                                        new HornetQThreadFactory("HornetQ-journal-loader", true, tccl));
+      executor.allowCoreThreadTimeOut(true);
+   }
+
+   // Public --------------------------------------------------------
+
+   /**
+    * Waits for the next file to be read and replays its records on the callback.
+    *
+    * @param file the next file, which has to follow the order given at construction
+    * @return the position after the last valid record, as readJournalFile
+    */
+   int readJournalFile(final JournalFile file, final JournalReaderCallback callback) throws Exception
+   {
+      fill();
+
+      Future<RecordedFile> future = reading.poll();
+
+      RecordedFile recorded;
+
+      try
+      {
+         recorded = future.get();
+      }
+      catch (ExecutionException e)
+      {
+         if (e.getCause() instanceof Exception)
+         {
+            throw (Exception)e.getCause();
+         }
+         throw e;
+      }
+
+      if (recorded.file != file)
+      {
+         throw new IllegalStateException("Journal file " + file + " read out of order, expected " + recorded.file);
+      }
+
+      // reads ahead while this file is replayed
+      fill();
+
+      return recorded.replay(callback);
+   }
+
+   // Private -------------------------------------------------------
+
+   private void fill()
+   {
+      // one file being replayed plus one being read per thread bounds the memory taken by records
+      // read but not replayed yet
+      while (reading.size() < threads && !toRead.isEmpty())
+      {
+         final JournalFile file = toRead.poll();
+
+         reading.add(executor.submit(new Callable<RecordedFile>()
+         {
+            public RecordedFile call() throws Exception
+            {
+               RecordedFile recorded = new RecordedFile(file);
+
+               recorded.lastDataPos = JournalImpl.readJournalFile(fileFactory, file, recorded);
+
+               return recorded;
+            }
+         }));
+
+         if (toRead.isEmpty())
+         {
+            executor.shutdown();
+         }
+      }
+   }
+
+   // Inner classes -------------------------------------------------
+
+   private static final class RecordedFile implements JournalReaderCallback
+   {
+      private static final byte ADD = 0;
+
+      private static final byte UPDATE = 1;
+
+      private static final byte DELETE = 2;
+
+      private static final byte ADD_TX = 3;
+
+      private static final byte UPDATE_TX = 4;
+
+      private static final byte DELETE_TX = 5;
+
+      private static final byte PREPARE = 6;
+
+      private static final byte COMMIT = 7;
+
+      private static final byte ROLLBACK = 8;
+
+      private static final byte MARK_AS_DATA = 9;
+
+      final JournalFile file;
+
+      private final List<Event> events = new ArrayList<Event>();
+
+      int lastDataPos;
+
+      RecordedFile(final JournalFile file)
+      {
+         this.file = file;
+      }
+
+      int replay(final JournalReaderCallback callback) throws Exception
+      {
+         for (Event event : events)
+         {
+            switch (event.type)
+            {
+               case ADD:
+                  callback.onReadAddRecord(event.info);
+                  break;
+               case UPDATE:
+                  callback.onReadUpdateRecord(event.info);
+                  break;
+               case DELETE:
+                  callback.onReadDeleteRecord(event.id);
+                  break;
+               case ADD_TX:
+                  callback.onReadAddRecordTX(event.id, event.info);
+                  break;
+               case UPDATE_TX:
+                  callback.onReadUpdateRecordTX(event.id, event.info);
+                  break;
+               case DELETE_TX:
+                  callback.onReadDeleteRecordTX(event.id, event.info);
+                  break;
+               case PREPARE:
+                  callback.onReadPrepareRecord(event.id, event.extraData, event.numberOfRecords);
+                  break;
+               case COMMIT:
+                  callback.onReadCommitRecord(event.id, event.numberOfRecords);
+                  break;
+               case ROLLBACK:
+                  callback.onReadRollbackRecord(event.id);
+                  break;
+               default:
+                  callback.markAsDataFile(file);
+            }
+         }
+
+         return lastDataPos;
+      }
+
+      public void onReadAddRecord(final RecordInfo info)
+      {
+         events.add(new Event(ADD, 0, info, null, 0));
+      }
+
+      public void onReadUpdateRecord(final RecordInfo info)
+      {
+         events.add(new Event(UPDATE, 0, info, null, 0));
+      }
+
+      public void onReadDeleteRecord(final long recordID)
+      {
+         events.add(new Event(DELETE, recordID, null, null, 0));
+      }
+
+      public void onReadAddRecordTX(final long transactionID, final RecordInfo info)
+      {
+         events.add(new Event(ADD_TX, transactionID, info, null, 0));
+      }
+
+      public void onReadUpdateRecordTX(final long transactionID, final RecordInfo info)
+      {
+         events.add(new Event(UPDATE_TX, transactionID, info, null, 0));
+      }
+
+      public void onReadDeleteRecordTX(final long transactionID, final RecordInfo info)
+      {
+         events.add(new Event(DELETE_TX, transactionID, info, null, 0));
+      }
+
+      public void onReadPrepareRecord(final long transactionID, final byte[] extraData, final int numberOfRecords)
+      {
+         events.add(new Event(PREPARE, transactionID, null, extraData, numberOfRecords));
+      }
+
+      public void onReadCommitRecord(final long transactionID, final int numberOfRecords)
+      {
+         events.add(new Event(COMMIT, transactionID, null, null, numberOfRecords));
+      }
+
+      public void onReadRollbackRecord(final long transactionID)
+      {
+         events.add(new Event(ROLLBACK, transactionID, null, null, 0));
+      }
+
+      public void markAsDataFile(final JournalFile file)
+      {
+         events.add(new Event(MARK_AS_DATA, 0, null, null, 0));
+      }
+   }
+
+   private static final class Event
+   {
+      final byte type;
+
+      // the record id or the transaction id, depending on the type
+      final long id;
+
+      final RecordInfo info;
+
+      final byte[] extraData;
+
+      final int numberOfRecords;
+
+      Event(final byte type, final long id, final RecordInfo info, final byte[] extraData, final int numberOfRecords)
+      {
+         this.type = type;
+         this.id = id;
+         this.info = info;
+         this.extraData = extraData;
+         this.numberOfRecords = numberOfRecords;
+      }
+   }
+}
@@ -15,6 +15,7 @@ package org.hornetq.core.journal.impl;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import org.hornetq.api.core.Pair;
 
@@ -45,6 +46,58 @@ public class JournalRecord
       addFile.addSize(size);
    }
 
+   private JournalRecord(final JournalFile addFile, final int size, final List<Pair<JournalFile, Integer>> updateFiles)
+   {
+      this.addFile = addFile;
+
+      this.size = size;
+
+      this.updateFiles = updateFiles;
+   }
+
+   /**
+    * Merges the positions a compaction of some of the data files gave to this record with the positions it has on
+    * the other files. The counts of the files were already taken when the records were appended or compacted.
+    * @param compactedFiles the files that were compacted
+    * @param compacted the positions of the record on the compacted files, where the first one is an update if the
+    *           record was added on a file that was not compacted
+    */
+   JournalRecord merge(final Set<JournalFile> compactedFiles, final JournalRecord compacted)
+   {
+      List<Pair<JournalFile, Integer>> mergedUpdates = new ArrayList<Pair<JournalFile, Integer>>();
+
+      JournalRecord merged;
+
+      if (compactedFiles.contains(addFile))
+      {
+         merged = new JournalRecord(compacted.addFile, compacted.size, mergedUpdates);
+      }
+      else
+      {
+         merged = new JournalRecord(addFile, size, mergedUpdates);
+
+         mergedUpdates.add(new Pair<JournalFile, Integer>(compacted.addFile, compacted.size));
+      }
+
+      if (compacted.updateFiles != null)
+      {
+         mergedUpdates.addAll(compacted.updateFiles);
+      }
+
+      if (updateFiles != null)
+      {
+         for (Pair<JournalFile, Integer> update : updateFiles)
+         {
+            if (!compactedFiles.contains(update.getA()))
+            {
+               mergedUpdates.add(update);
+            }
+         }
+      }
+
+      return merged;
+   }
+
    void addUpdateFile(final JournalFile updateFile, final int size)
    {
       if (updateFiles == null)
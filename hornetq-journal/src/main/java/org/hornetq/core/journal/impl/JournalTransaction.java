@@ -312,6 +312,8 @@ public class JournalTransaction
          for (JournalFile jf : pendingFiles)
          {
             file.incNegCount(jf);
+            jf.addTransactionCompletion(file);
+            file.addCompletedTransaction(id, jf);
          }
       }
    }
@@ -363,6 +365,8 @@ public class JournalTransaction
          for (JournalFile jf : pendingFiles)
          {
             file.incNegCount(jf);
+            jf.addTransactionCompletion(file);
+            file.addCompletedTransaction(id, jf);
          }
       }
    }
@@ -378,6 +382,12 @@ public class JournalTransaction
       addFile(file);
    }
 
+   /** @return whether this transaction has records on the file, which can't be compacted until it completes */
+   public boolean isUsing(final JournalFile file)
+   {
+      return pendingFiles != null && pendingFiles.contains(file);
+   }
+
    /** Used by load, when the transaction was not loaded correctly */
    public void forget()
    {
@@ -0,0 +1,618 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.journal.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.HornetQBuffers;
+import org.hornetq.api.core.HornetQException;
+import org.hornetq.api.core.HornetQExceptionType;
+import org.hornetq.api.core.HornetQIOErrorException;
+import org.hornetq.api.core.HornetQIllegalStateException;
+import org.hornetq.api.core.HornetQInterruptedException;
+import org.hornetq.core.journal.EncodingSupport;
+import org.hornetq.core.journal.IOAsyncTask;
+import org.hornetq.core.journal.SequentialFile;
+import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.journal.HornetQJournalBundle;
+import org.hornetq.journal.HornetQJournalLogger;
+
+/**
+ * A SequentialFile writing through a {@link MappedByteBuffer} covering the whole file.
+ * <p>
+ * A write is a copy into the page cache instead of a system call, and a sync forces the mapping.
+ * Journal files are filled up front, so they are mapped once when opened. Files written past their
+ * end, such as page files, get their mapping extended as they grow, and are truncated back to the
+ * data written when closed.
+ * <p>
+ * When the file is not buffered, records are encoded straight into the mapping.
+ */
+public final class MappedSequentialFile extends AbstractSequentialFile
+{
+   // Constants -----------------------------------------------------
+
+   /** How much a file written past its end is extended at least at a time */
+   private static final int MIN_GROWTH = 1024 * 1024;
+
+   /** sun.misc.Unsafe and its invokeCleaner, which releases a mapping from Java 9 on */
+   private static final Object UNSAFE;
+
+   private static final Method INVOKE_CLEANER;
+
+   static
+   {
+      Object unsafe = null;
+      Method invokeCleaner = null;
+      try
+      {
+         Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+         invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+         Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+         theUnsafe.setAccessible(true);
+         unsafe = theUnsafe.get(null);
+      }
+      catch (Exception e)
+      {
+         // before Java 9, the buffer's own cleaner is used
+         invokeCleaner = null;
+      }
+      UNSAFE = unsafe;
+      INVOKE_CLEANER = invokeCleaner;
+   }
+
+   // Attributes ----------------------------------------------------
+
+   private FileChannel channel;
+
+   private RandomAccessFile rfile;
+
+   /**
+    * Replaced when the file grows. A superseded mapping is left to the garbage collector as a
+    * pending sync may still be forcing it.
+    */
+   private volatile MappedByteBuffer mapped;
+
+   /** The end of the data, which is behind the end of the file when the mapping has extended it */
+   private long dataSize;
+
+   /** The write semaphore here is only used when writing asynchronously */
+   private Semaphore maxIOSemaphore;
+
+   private final int defaultMaxIO;
+
+   private int maxIO;
+
+   // Constructors --------------------------------------------------
+
+   public MappedSequentialFile(final SequentialFileFactory factory,
+                               final String directory,
+                               final String fileName,
+                               final int maxIO,
+                               final Executor writerExecutor)
+   {
+      super(directory, new File(directory + "/" + fileName), factory, writerExecutor);
+      defaultMaxIO = maxIO;
+   }
+
+   public MappedSequentialFile(final SequentialFileFactory factory,
+                               final File file,
+                               final int maxIO,
+                               final Executor writerExecutor)
+   {
+      super(file.getParent(), new File(file.getPath()), factory, writerExecutor);
+      defaultMaxIO = maxIO;
+   }
+
+   // Public --------------------------------------------------------
+
+   public int getAlignment()
+   {
+      return 1;
+   }
+
+   public int calculateBlockStart(final int position)
+   {
+      return position;
+   }
+
+   public synchronized boolean isOpen()
+   {
+      return channel != null;
+   }
+
+   public synchronized void open() throws IOException
+   {
+      open(defaultMaxIO, true);
+   }
+
+   public synchronized void open(final int maxIO, final boolean useExecutor) throws IOException
+   {
+      try
+      {
+         rfile = new RandomAccessFile(getFile(), "rw");
+
+         channel = rfile.getChannel();
+
+         fileSize = channel.size();
+
+         dataSize = fileSize;
+
+         // a new channel starts at 0, and so do reads and writes here
+         position.set(0);
+
+         map(fileSize);
+      }
+      catch (IOException e)
+      {
+         factory.onIOError(new HornetQIOErrorException(e.getMessage(), e), e.getMessage(), this);
+         throw e;
+      }
+
+      if (writerExecutor != null && useExecutor)
+      {
+         maxIOSemaphore = new Semaphore(maxIO);
+         this.maxIO = maxIO;
+      }
+   }
+
+   public synchronized void fill(final int position, final int size, final byte fillCharacter) throws IOException
+   {
+      ByteBuffer bb = ByteBuffer.allocate(size);
+
+      for (int i = 0; i < size; i++)
+      {
+         bb.put(fillCharacter);
+      }
+
+      bb.flip();
+
+      try
+      {
+         channel.write(bb, position);
+         channel.force(false);
+
+         fileSize = channel.size();
+
+         dataSize = Math.max(dataSize, position + size);
+
+         if (mapped == null || mapped.capacity() < fileSize)
+         {
+            map(fileSize);
+         }
+      }
+      catch (IOException e)
+      {
+         factory.onIOError(new HornetQIOErrorException(e.getMessage(), e), e.getMessage(), this);
+         throw e;
+      }
+   }
+
+   public synchronized void waitForClose() throws InterruptedException
+   {
+      while (isOpen())
+      {
+         wait();
+      }
+   }
+
+   @Override
+   public synchronized void close() throws IOException, InterruptedException, HornetQException
+   {
+      super.close();
+
+      if (maxIOSemaphore != null)
+      {
+         while (!maxIOSemaphore.tryAcquire(maxIO, 60, TimeUnit.SECONDS))
+         {
+            HornetQJournalLogger.LOGGER.errorClosingFile(getFileName());
+         }
+      }
+
+      maxIOSemaphore = null;
+
+      // nothing is using the mapping any more, the pending writes are done
+      if (mapped != null)
+      {
+         unmap(mapped);
+         mapped = null;
+      }
+
+      try
+      {
+         if (channel != null)
+         {
+            if (channel.size() > dataSize)
+            {
+               channel.truncate(dataSize);
+            }
+
+            channel.close();
+         }
+
+         if (rfile != null)
+         {
+            rfile.close();
+         }
+      }
+      catch (IOException e)
+      {
+         factory.onIOError(new HornetQIOErrorException(e.getMessage(), e), e.getMessage(), this);
+         throw e;
+      }
+
+      channel = null;
+
+      rfile = null;
+
+      notifyAll();
+   }
+
+   public int read(final ByteBuffer bytes) throws Exception
+   {
+      return read(bytes, null);
+   }
+
+   public synchronized int read(final ByteBuffer bytes, final IOAsyncTask callback) throws HornetQIllegalStateException
+   {
+      if (channel == null)
+      {
+         throw new HornetQIllegalStateException("File " + this.getFileName() + " has a null channel");
+      }
+
+      // reads move the same position as writes, as they do on a FileChannel
+      long start = position.get();
+
+      int bytesRead = (int)Math.min(bytes.remaining(), Math.max(0, dataSize - start));
+
+      if (bytesRead > 0)
+      {
+         ByteBuffer source = mapped.duplicate();
+         source.position((int)start);
+         source.limit((int)start + bytesRead);
+         bytes.put(source);
+
+         position.addAndGet(bytesRead);
+      }
+
+      if (callback != null)
+      {
+         callback.done();
+      }
+
+      bytes.flip();
+
+      return bytesRead == 0 && start >= dataSize ? -1 : bytesRead;
+   }
+
+   public synchronized void sync() throws IOException
+   {
+      if (mapped != null)
+      {
+         force(mapped);
+      }
+   }
+
+   public synchronized long size() throws IOException
+   {
+      if (channel == null)
+      {
+         return getFile().length();
+      }
+
+      return dataSize;
+   }
+
+   @Override
+   public synchronized void position(final long pos) throws IOException
+   {
+      super.position(pos);
+   }
+
+   @Override
+   public String toString()
+   {
+      return "MappedSequentialFile " + getFile();
+   }
+
+   public SequentialFile cloneFile()
+   {
+      return new MappedSequentialFile(factory, getFile(), maxIO, writerExecutor);
+   }
+
+   @Override
+   public void write(final HornetQBuffer bytes, final boolean sync, final IOAsyncTask callback) throws IOException
+   {
+      if (timedBuffer != null)
+      {
+         super.write(bytes, sync, callback);
+      }
+      else
+      {
+         writeMapped(bytes.capacity(), new MappedWriter()
+         {
+            public void write(final HornetQBuffer target)
+            {
+               target.writeBytes(bytes, 0, bytes.capacity());
+            }
+         }, sync, callback);
+      }
+   }
+
+   @Override
+   public void write(final EncodingSupport bytes, final boolean sync, final IOAsyncTask callback)
+   {
+      if (timedBuffer != null)
+      {
+         super.write(bytes, sync, callback);
+      }
+      else
+      {
+         writeMapped(bytes.getEncodeSize(), new MappedWriter()
+         {
+            public void write(final HornetQBuffer target)
+            {
+               bytes.encode(target);
+            }
+         }, sync, callback);
+      }
+   }
+
+   public void writeDirect(final ByteBuffer bytes, final boolean sync, final IOAsyncTask callback)
+   {
+      if (callback == null)
+      {
+         throw new NullPointerException("callback parameter need to be set");
+      }
+
+      internalWrite(bytes, sync, callback);
+   }
+
+   public void writeDirect(final ByteBuffer bytes, final boolean sync) throws Exception
+   {
+      checkOpen();
+      internalWrite(bytes, sync, null);
+   }
+
+   public void writeInternal(final ByteBuffer bytes) throws Exception
+   {
+      checkOpen();
+      internalWrite(bytes, true, null);
+   }
+
+   @Override
+   protected ByteBuffer newBuffer(int size, final int limit)
+   {
+      // the timed buffer is copied into the mapping, it doesn't need to cover its whole size
+      size = limit;
+
+      return super.newBuffer(size, limit);
+   }
+
+   // Private -------------------------------------------------------
+
+   private void checkOpen() throws HornetQIOErrorException
+   {
+      if (!isOpen())
+      {
+         throw HornetQJournalBundle.BUNDLE.fileNotOpened();
+      }
+   }
+
+   private void internalWrite(final ByteBuffer bytes, final boolean sync, final IOAsyncTask callback)
+   {
+      writeMapped(bytes.remaining(), new MappedWriter()
+      {
+         public void write(final HornetQBuffer target)
+         {
+            target.writeBytes(bytes);
+         }
+      }, sync, callback);
+   }
+
+   /**
+    * Copies the record into the mapping in the caller's thread, so records land in the order they
+    * are written, then forces it if needed and completes it, on the writer executor if there is one.
+    */
+   private void writeMapped(final int size,
+                            final MappedWriter writer,
+                            final boolean sync,
+                            final IOAsyncTask callback)
+   {
+      synchronized (this)
+      {
+         if (channel == null)
+         {
+            if (callback != null)
+            {
+               callback.onError(HornetQExceptionType.IO_ERROR.getCode(), "File not opened");
+            }
+            return;
+         }
+
+         long start = position.get();
+
+         try
+         {
+            ensureMapped(start + size);
+
+            final MappedByteBuffer target = mapped;
+
+            ByteBuffer region = target.duplicate();
+            region.position((int)start);
+            region.limit((int)start + size);
+
+            writer.write(HornetQBuffers.wrappedBuffer(region.slice()));
+
+            position.addAndGet(size);
+
+            dataSize = Math.max(dataSize, start + size);
+
+            if (maxIOSemaphore != null && callback != null)
+            {
+               // the callbacks have to complete in order, so they all go through the writer
+               // executor even when there is nothing to force, as the writes themselves on NIO
+               final Semaphore semaphore = maxIOSemaphore;
+
+               semaphore.acquire();
+
+               writerExecutor.execute(new Runnable()
+               {
+                  public void run()
+                  {
+                     try
+                     {
+                        if (sync)
+                        {
+                           force(target);
+                        }
+                        callback.done();
+                     }
+                     catch (IOException e)
+                     {
+                        HornetQJournalLogger.LOGGER.errorSubmittingWrite(e);
+                        factory.onIOError(new HornetQIOErrorException(e.getMessage(), e),
+                                          e.getMessage(),
+                                          MappedSequentialFile.this);
+                        callback.onError(HornetQExceptionType.IO_ERROR.getCode(), e.getMessage());
+                     }
+                     catch (Throwable e)
+                     {
+                        HornetQJournalLogger.LOGGER.errorSubmittingWrite(e);
+                        callback.onError(HornetQExceptionType.IO_ERROR.getCode(), e.getMessage());
+                     }
+                     finally
+                     {
+                        semaphore.release();
+                     }
+                  }
+               });
+
+               return;
+            }
+
+            // forcing under the lock, close can't unmap it meanwhile
+            if (sync)
+            {
+               force(target);
+            }
+         }
+         catch (IOException e)
+         {
+            factory.onIOError(new HornetQIOErrorException(e.getMessage(), e), e.getMessage(), this);
+
+            if (callback != null)
+            {
+               callback.onError(HornetQExceptionType.IO_ERROR.getCode(), e.getMessage());
+            }
+            return;
+         }
+         catch (InterruptedException e)
+         {
+            throw new HornetQInterruptedException(e);
+         }
+      }
+
+      if (callback != null)
+      {
+         callback.done();
+      }
+   }
+
+   private void ensureMapped(final long size) throws IOException
+   {
+      if (size > Integer.MAX_VALUE)
+      {
+         throw new IOException("File " + getFileName() + " can't be mapped beyond " + Integer.MAX_VALUE + " bytes");
+      }
+
+      if (mapped == null || mapped.capacity() < size)
+      {
+         long capacity = mapped == null ? 0 : mapped.capacity();
+
+         // doubling keeps the number of mappings of a growing file logarithmic
+         map(Math.min(Integer.MAX_VALUE, Math.max(size, Math.max(capacity * 2, MIN_GROWTH))));
+
+         fileSize = channel.size();
+      }
+   }
+
+   private void map(final long size) throws IOException
+   {
+      // mapping beyond the end of the file extends it
+      mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+   }
+
+   private static void force(final MappedByteBuffer buffer) throws IOException
+   {
+      try
+      {
+         buffer.force();
+      }
+      catch (RuntimeException e)
+      {
+         // force reports I/O failures as unchecked exceptions
+         throw new IOException(e.getMessage(), e);
+      }
+   }
+
+   /**
+    * Releases the mapping now instead of whenever the buffer is collected, so closed and deleted
+    * files don't hold on to their disk space. Only possible through JDK internals: the buffer's
+    * cleaner up to Java 8, {@code sun.misc.Unsafe.invokeCleaner} from Java 9 on.
+    */
+   private static void unmap(final MappedByteBuffer buffer)
+   {
+      try
+      {
+         if (INVOKE_CLEANER != null)
+         {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            return;
+         }
+
+         Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+         cleanerMethod.setAccessible(true);
+         Object cleaner = cleanerMethod.invoke(buffer);
+         if (cleaner != null)
+         {
+            Method clean = cleaner.getClass().getMethod("clean");
+            clean.setAccessible(true);
+            clean.invoke(cleaner);
+         }
+      }
+      catch (Exception e)
+      {
+         // not available on this VM, the garbage collector will release it
+         HornetQJournalLogger.LOGGER.debug("Could not unmap " + buffer, e);
+      }
+   }
+
+   // Inner classes -------------------------------------------------
+
+   private interface MappedWriter
+   {
+      void write(HornetQBuffer target);
+   }
+}
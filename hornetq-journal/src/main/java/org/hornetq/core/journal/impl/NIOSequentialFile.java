@@ -18,6 +18,7 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.Arrays;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
@@ -42,6 +43,9 @@ import org.hornetq.journal.HornetQJournalLogger;
  */
 public final class NIOSequentialFile extends AbstractSequentialFile
 {
+   // Files are filled by writing the same chunk over and over, instead of a buffer as large as the file
+   private static final int FILL_CHUNK_SIZE = 1024 * 1024;
+
    private FileChannel channel;
 
    private RandomAccessFile rfile;
@@ -119,19 +123,21 @@ public final class NIOSequentialFile extends AbstractSequentialFile
 
    public void fill(final int position, final int size, final byte fillCharacter) throws IOException
    {
-      ByteBuffer bb = ByteBuffer.allocate(size);
-
-      for (int i = 0; i < size; i++)
-      {
-         bb.put(fillCharacter);
-      }
+      ByteBuffer bb = ByteBuffer.allocate(Math.min(size, NIOSequentialFile.FILL_CHUNK_SIZE));
 
-      bb.flip();
+      Arrays.fill(bb.array(), fillCharacter);
 
       try
       {
-         channel.position(position);
-         channel.write(bb);
+         int written = 0;
+
+         while (written < size)
+         {
+            bb.clear();
+            bb.limit(Math.min(bb.capacity(), size - written));
+            written += channel.write(bb, position + written);
+         }
+
          channel.force(false);
          channel.position(0);
       }
@@ -0,0 +1,1018 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.journal.impl;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.hornetq.core.journal.EncodingSupport;
+import org.hornetq.core.journal.IOCompletion;
+import org.hornetq.core.journal.JournalLoadInformation;
+import org.hornetq.core.journal.LoaderCallback;
+import org.hornetq.core.journal.PreparedTransactionInfo;
+import org.hornetq.core.journal.RecordInfo;
+import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.TransactionFailureCallback;
+import org.hornetq.core.journal.impl.dataformat.ByteArrayEncoding;
+import org.hornetq.journal.HornetQJournalLogger;
+
+/**
+ * A journal spreading its records across several {@link JournalImpl}s, each one with its own
+ * files, {@link TimedBuffer} and append lock, so records of different IDs are appended and synced
+ * concurrently.
+ * <p>
+ * A record always goes to the shard its ID hashes to, so its updates and its delete find it there.
+ * A transaction is appended to every shard it has records on. When it spans several shards it is
+ * committed in two phases:
+ * <ol>
+ * <li>the transaction is prepared and synced on each of its shards, unless it was prepared already,
+ * <li>a {@link #COMMIT_DECISION_RECORD} with the transaction ID is synced on the shard the
+ * transaction ID hashes to,
+ * <li>the transaction is committed on each of its shards, and the decision deleted once they all
+ * completed.
+ * </ol>
+ * At load, a transaction left prepared on a shard is committed if its decision was stored, rolled
+ * back if it was prepared by this journal only, and reported as prepared otherwise. The records of
+ * the shards, and the records of a transaction prepared on several shards, are then merged, the
+ * record with the lowest ID first among the next record of each shard, so the records of each ID
+ * keep their order.
+ * <p>
+ * The completions of the synced appends are delivered in the order the appends were made, as they
+ * would on a single journal, however fast each shard syncs. Appends that are not synced carry no
+ * such guarantee.
+ * <p>
+ * The IDs of the transactions must not be used as record IDs, and the data of a prepare record must
+ * not be empty.
+ */
+public final class ShardedJournal extends JournalBase
+{
+   // Constants -----------------------------------------------------
+
+   /**
+    * The record type of the decision to commit a transaction spanning several shards.
+    */
+   public static final byte COMMIT_DECISION_RECORD = Byte.MIN_VALUE;
+
+   // a prepare record made by this journal and not by its user, who always has some data to store
+   private static final EncodingSupport SHARDED_PREPARE = new ByteArrayEncoding(new byte[0]);
+
+   private static final byte[] EMPTY_DATA = new byte[0];
+
+   // Attributes ----------------------------------------------------
+
+   private final JournalImpl[] shards;
+
+   private final ConcurrentMap<Long, ShardedTransaction> transactions = new ConcurrentHashMap<Long, ShardedTransaction>();
+
+   private final Queue<ShardedCompletion> completions = new ConcurrentLinkedQueue<ShardedCompletion>();
+
+   private final ReentrantLock deliveryLock = new ReentrantLock();
+
+   // the decisions whose transaction is committed on all its shards
+   private final Queue<Long> completedDecisions = new ConcurrentLinkedQueue<Long>();
+
+   // Constructors --------------------------------------------------
+
+   public ShardedJournal(final JournalImpl... shards)
+   {
+      super(shards[0].getFileFactory().isSupportsCallbacks(), shards[0].getFileSize());
+
+      this.shards = shards;
+   }
+
+   // Public --------------------------------------------------------
+
+   public int getNumberOfShards()
+   {
+      return shards.length;
+   }
+
+   public JournalImpl getShard(final int index)
+   {
+      return shards[index];
+   }
+
+   /**
+    * @return the index of the shard the records of the given ID are appended to
+    */
+   public int getShardIndex(final long id)
+   {
+      // IDs are sequential, mixed so a pattern in their allocation doesn't become a pattern in the
+      // shards they go to
+      long h = id;
+      h ^= h >>> 33;
+      h *= 0xff51afd7ed558ccdL;
+      h ^= h >>> 33;
+      h *= 0xc4ceb9fe1a85ec53L;
+      h ^= h >>> 33;
+
+      return (int)((h & Long.MAX_VALUE) % shards.length);
+   }
+
+   // Journal implementation ----------------------------------------
+
+   @Override
+   public void appendAddRecord(final long id,
+                               final byte recordType,
+                               final EncodingSupport record,
+                               final boolean sync,
+                               final IOCompletion callback) throws Exception
+   {
+      ShardedCompletion completion = newCompletion(callback, sync, 1, true);
+
+      try
+      {
+         shards[getShardIndex(id)].appendAddRecord(id, recordType, record, sync, completion == null ? callback
+                                                                                                 : completion);
+      }
+      catch (Exception e)
+      {
+         abandon(completion);
+         throw e;
+      }
+   }
+
+   @Override
+   public void appendUpdateRecord(final long id,
+                                  final byte recordType,
+                                  final EncodingSupport record,
+                                  final boolean sync,
+                                  final IOCompletion callback) throws Exception
+   {
+      ShardedCompletion completion = newCompletion(callback, sync, 1, true);
+
+      try
+      {
+         shards[getShardIndex(id)].appendUpdateRecord(id, recordType, record, sync, completion == null ? callback
+                                                                                                    : completion);
+      }
+      catch (Exception e)
+      {
+         abandon(completion);
+         throw e;
+      }
+   }
+
+   @Override
+   public void appendDeleteRecord(final long id, final boolean sync, final IOCompletion callback) throws Exception
+   {
+      ShardedCompletion completion = newCompletion(callback, sync, 1, true);
+
+      try
+      {
+         shards[getShardIndex(id)].appendDeleteRecord(id, sync, completion == null ? callback : completion);
+      }
+      catch (Exception e)
+      {
+         abandon(completion);
+         throw e;
+      }
+   }
+
+   @Override
+   public void appendAddRecordTransactional(final long txID,
+                                            final long id,
+                                            final byte recordType,
+                                            final EncodingSupport record) throws Exception
+   {
+      int shard = getShardIndex(id);
+
+      enlist(txID, shard);
+
+      shards[shard].appendAddRecordTransactional(txID, id, recordType, record);
+   }
+
+   @Override
+   public void appendUpdateRecordTransactional(final long txID,
+                                               final long id,
+                                               final byte recordType,
+                                               final EncodingSupport record) throws Exception
+   {
+      int shard = getShardIndex(id);
+
+      enlist(txID, shard);
+
+      shards[shard].appendUpdateRecordTransactional(txID, id, recordType, record);
+   }
+
+   @Override
+   public void appendDeleteRecordTransactional(final long txID, final long id, final EncodingSupport record) throws Exception
+   {
+      int shard = getShardIndex(id);
+
+      enlist(txID, shard);
+
+      shards[shard].appendDeleteRecordTransactional(txID, id, record);
+   }
+
+   @Override
+   public void appendPrepareRecord(final long txID,
+                                   final EncodingSupport transactionData,
+                                   final boolean sync,
+                                   final IOCompletion callback) throws Exception
+   {
+      ShardedTransaction tx = getTransaction(txID);
+
+      int[] participants = tx.prepare(getShardIndex(txID));
+
+      ShardedCompletion completion = newCompletion(callback, sync, participants.length, true);
+
+      try
+      {
+         for (int shard : participants)
+         {
+            shards[shard].appendPrepareRecord(txID, transactionData, sync, completion == null ? callback : completion);
+         }
+      }
+      catch (Exception e)
+      {
+         abandon(completion);
+         throw e;
+      }
+   }
+
+   @Override
+   public void appendCommitRecord(final long txID,
+                                  final boolean sync,
+                                  final IOCompletion callback,
+                                  final boolean lineUpContext) throws Exception
+   {
+      ShardedTransaction tx = transactions.remove(txID);
+
+      int[] participants = tx == null ? new int[] { getShardIndex(txID) } : tx.getShards();
+
+      if (participants.length == 1)
+      {
+         ShardedCompletion completion = newCompletion(callback, sync, 1, lineUpContext);
+
+         try
+         {
+            shards[participants[0]].appendCommitRecord(txID,
+                                                       sync,
+                                                       completion == null ? callback : completion,
+                                                       lineUpContext);
+         }
+         catch (Exception e)
+         {
+            abandon(completion);
+            throw e;
+         }
+
+         return;
+      }
+
+      deleteCompletedDecisions();
+
+      if (!tx.isPrepared())
+      {
+         SimpleWaitIOCallback[] prepared = new SimpleWaitIOCallback[participants.length];
+
+         for (int i = 0; i < participants.length; i++)
+         {
+            prepared[i] = new SimpleWaitIOCallback();
+            shards[participants[i]].appendPrepareRecord(txID, SHARDED_PREPARE, true, prepared[i]);
+         }
+
+         for (SimpleWaitIOCallback wait : prepared)
+         {
+            wait.waitCompletion();
+         }
+      }
+
+      // once the decision is stored the transaction is committed, whatever happens to the commits
+      shards[getShardIndex(txID)].appendAddRecord(txID, COMMIT_DECISION_RECORD, EMPTY_DATA, true);
+
+      ShardedCompletion completion = new ShardedCompletion(callback,
+                                                           sync && callback != null,
+                                                           participants.length,
+                                                           lineUpContext,
+                                                           txID);
+
+      try
+      {
+         for (int shard : participants)
+         {
+            shards[shard].appendCommitRecord(txID, sync, completion, false);
+         }
+      }
+      catch (Exception e)
+      {
+         abandon(completion);
+         throw e;
+      }
+   }
+
+   @Override
+   public void appendRollbackRecord(final long txID, final boolean sync, final IOCompletion callback) throws Exception
+   {
+      ShardedTransaction tx = transactions.remove(txID);
+
+      int[] participants = tx == null ? new int[] { getShardIndex(txID) } : tx.getShards();
+
+      ShardedCompletion completion = newCompletion(callback, sync, participants.length, true);
+
+      try
+      {
+         for (int shard : participants)
+         {
+            shards[shard].appendRollbackRecord(txID, sync, completion == null ? callback : completion);
+         }
+      }
+      catch (Exception e)
+      {
+         abandon(completion);
+         throw e;
+      }
+   }
+
+   @Override
+   public void lineUpContext(final IOCompletion callback)
+   {
+      callback.storeLineUp();
+   }
+
+   @Override
+   public synchronized JournalLoadInformation load(final List<RecordInfo> committedRecords,
+                                                   final List<PreparedTransactionInfo> preparedTransactions,
+                                                   final TransactionFailureCallback transactionFailure) throws Exception
+   {
+      transactions.clear();
+      completedDecisions.clear();
+
+      JournalLoadInformation info = new JournalLoadInformation();
+
+      List<List<RecordInfo>> records = new ArrayList<List<RecordInfo>>(shards.length);
+
+      List<List<PreparedTransactionInfo>> prepared = new ArrayList<List<PreparedTransactionInfo>>(shards.length);
+
+      Set<Long> decisions = new HashSet<Long>();
+
+      for (JournalImpl shard : shards)
+      {
+         List<RecordInfo> shardRecords = new ArrayList<RecordInfo>();
+         List<PreparedTransactionInfo> shardPrepared = new ArrayList<PreparedTransactionInfo>();
+
+         JournalLoadInformation shardInfo = shard.load(shardRecords, shardPrepared, transactionFailure);
+
+         info.setNumberOfRecords(info.getNumberOfRecords() + shardInfo.getNumberOfRecords());
+         info.setMaxID(Math.max(info.getMaxID(), shardInfo.getMaxID()));
+
+         Iterator<RecordInfo> iterator = shardRecords.iterator();
+
+         while (iterator.hasNext())
+         {
+            RecordInfo record = iterator.next();
+
+            if (record.userRecordType == COMMIT_DECISION_RECORD)
+            {
+               decisions.add(record.id);
+               iterator.remove();
+            }
+         }
+
+         records.add(shardRecords);
+         prepared.add(shardPrepared);
+      }
+
+      Map<Long, PreparedTransactionInfo> stillPrepared = new LinkedHashMap<Long, PreparedTransactionInfo>();
+
+      for (int i = 0; i < shards.length; i++)
+      {
+         for (PreparedTransactionInfo tx : prepared.get(i))
+         {
+            if (decisions.contains(tx.id))
+            {
+               commitLoaded(records.get(i), tx);
+
+               shards[i].appendCommitRecord(tx.id, false);
+            }
+            else if (tx.extraData.length == 0)
+            {
+               shards[i].appendRollbackRecord(tx.id, false);
+
+               if (transactionFailure != null)
+               {
+                  transactionFailure.failedTransaction(tx.id, tx.records, tx.recordsToDelete);
+               }
+            }
+            else
+            {
+               PreparedTransactionInfo merged = stillPrepared.get(tx.id);
+
+               if (merged == null)
+               {
+                  stillPrepared.put(tx.id, tx);
+               }
+               else
+               {
+                  mergePrepared(merged.records, tx.records);
+                  mergePrepared(merged.recordsToDelete, tx.recordsToDelete);
+               }
+
+               getTransaction(tx.id).enlistPrepared(i);
+            }
+         }
+      }
+
+      for (Long decision : decisions)
+      {
+         shards[getShardIndex(decision)].appendDeleteRecord(decision, false);
+      }
+
+      merge(records, committedRecords);
+
+      preparedTransactions.addAll(stillPrepared.values());
+
+      return info;
+   }
+
+   @Override
+   public JournalLoadInformation load(final LoaderCallback reloadManager) throws Exception
+   {
+      List<RecordInfo> records = new ArrayList<RecordInfo>();
+      List<PreparedTransactionInfo> prepared = new ArrayList<PreparedTransactionInfo>();
+
+      JournalLoadInformation info = load(records, prepared, reloadManager);
+
+      for (RecordInfo record : records)
+      {
+         if (record.isUpdate)
+         {
+            reloadManager.updateRecord(record);
+         }
+         else
+         {
+            reloadManager.addRecord(record);
+         }
+      }
+
+      for (PreparedTransactionInfo tx : prepared)
+      {
+         reloadManager.addPreparedTransaction(tx);
+      }
+
+      return info;
+   }
+
+   @Override
+   public synchronized JournalLoadInformation loadInternalOnly() throws Exception
+   {
+      JournalLoadInformation info = new JournalLoadInformation();
+
+      for (JournalImpl shard : shards)
+      {
+         JournalLoadInformation shardInfo = shard.loadInternalOnly();
+
+         info.setNumberOfRecords(info.getNumberOfRecords() + shardInfo.getNumberOfRecords());
+         info.setMaxID(Math.max(info.getMaxID(), shardInfo.getMaxID()));
+      }
+
+      return info;
+   }
+
+   @Override
+   public int getAlignment() throws Exception
+   {
+      return shards[0].getAlignment();
+   }
+
+   @Override
+   public int getNumberOfRecords()
+   {
+      int numberOfRecords = 0;
+
+      for (JournalImpl shard : shards)
+      {
+         numberOfRecords += shard.getNumberOfRecords();
+      }
+
+      return numberOfRecords;
+   }
+
+   @Override
+   public int getUserVersion()
+   {
+      return shards[0].getUserVersion();
+   }
+
+   @Override
+   public void perfBlast(final int pages)
+   {
+      for (JournalImpl shard : shards)
+      {
+         shard.perfBlast(pages);
+      }
+   }
+
+   @Override
+   public void runDirectJournalBlast() throws Exception
+   {
+      for (JournalImpl shard : shards)
+      {
+         shard.runDirectJournalBlast();
+      }
+   }
+
+   @Override
+   public void forceMoveNextFile() throws Exception
+   {
+      for (JournalImpl shard : shards)
+      {
+         shard.forceMoveNextFile();
+      }
+   }
+
+   @Override
+   public JournalFile[] getDataFiles()
+   {
+      List<JournalFile> files = new ArrayList<JournalFile>();
+
+      for (JournalImpl shard : shards)
+      {
+         for (JournalFile file : shard.getDataFiles())
+         {
+            files.add(file);
+         }
+      }
+
+      return files.toArray(new JournalFile[files.size()]);
+   }
+
+   /**
+    * @return the file factory of the first shard
+    */
+   @Override
+   public SequentialFileFactory getFileFactory()
+   {
+      return shards[0].getFileFactory();
+   }
+
+   @Override
+   public void scheduleCompactAndBlock(final int timeout) throws Exception
+   {
+      for (JournalImpl shard : shards)
+      {
+         shard.scheduleCompactAndBlock(timeout);
+      }
+   }
+
+   @Override
+   void scheduleReclaim()
+   {
+      for (JournalImpl shard : shards)
+      {
+         shard.scheduleReclaim();
+      }
+   }
+
+   // HornetQComponent implementation -------------------------------
+
+   @Override
+   public synchronized void start() throws Exception
+   {
+      for (JournalImpl shard : shards)
+      {
+         shard.start();
+      }
+   }
+
+   @Override
+   public synchronized void stop() throws Exception
+   {
+      for (JournalImpl shard : shards)
+      {
+         shard.stop();
+      }
+
+      transactions.clear();
+      completedDecisions.clear();
+   }
+
+   @Override
+   public boolean isStarted()
+   {
+      return shards[0].isStarted();
+   }
+
+   @Override
+   public String toString()
+   {
+      return ShardedJournal.class.getSimpleName() + "(shards=" + shards.length + ")";
+   }
+
+   // UNSUPPORTED STUFF, replicating a sharded journal is not supported
+
+   @Override
+   public JournalLoadInformation loadSyncOnly(final JournalState state) throws Exception
+   {
+      throw new UnsupportedOperationException();
+   }
+
+   @Override
+   public Map<Long, JournalFile> createFilesForBackupSync(final long[] fileIds) throws Exception
+   {
+      throw new UnsupportedOperationException();
+   }
+
+   @Override
+   public void synchronizationLock()
+   {
+      throw new UnsupportedOperationException();
+   }
+
+   @Override
+   public void synchronizationUnlock()
+   {
+      throw new UnsupportedOperationException();
+   }
+
+   @Override
+   public void replicationSyncPreserveOldFiles()
+   {
+      throw new UnsupportedOperationException();
+   }
+
+   @Override
+   public void replicationSyncFinished()
+   {
+      throw new UnsupportedOperationException();
+   }
+
+   // Private -------------------------------------------------------
+
+   private ShardedTransaction getTransaction(final long txID)
+   {
+      ShardedTransaction tx = transactions.get(txID);
+
+      if (tx == null)
+      {
+         tx = new ShardedTransaction();
+
+         ShardedTransaction existing = transactions.putIfAbsent(txID, tx);
+
+         if (existing != null)
+         {
+            tx = existing;
+         }
+      }
+
+      return tx;
+   }
+
+   private void enlist(final long txID, final int shard)
+   {
+      getTransaction(txID).enlist(shard);
+   }
+
+   /**
+    * @return the completion to hand to the shards, or {@code null} when the appends don't need to
+    *         be completed in order and the callback can be handed as it is
+    */
+   private ShardedCompletion newCompletion(final IOCompletion callback,
+                                           final boolean sync,
+                                           final int parts,
+                                           final boolean lineUp)
+   {
+      if (!sync || callback == null)
+      {
+         return null;
+      }
+
+      return new ShardedCompletion(callback, true, parts, lineUp, -1);
+   }
+
+   private void abandon(final ShardedCompletion completion)
+   {
+      if (completion != null)
+      {
+         completion.abandon();
+      }
+   }
+
+   private void deleteCompletedDecisions() throws Exception
+   {
+      Long decision;
+
+      while ((decision = completedDecisions.poll()) != null)
+      {
+         shards[getShardIndex(decision)].appendDeleteRecord(decision, false);
+      }
+   }
+
+   /**
+    * Delivers the completions in the order they were created, as long as the oldest one completed.
+    */
+   private void deliverCompletions()
+   {
+      ShardedCompletion head;
+
+      while ((head = completions.peek()) != null && head.completed)
+      {
+         if (!deliveryLock.tryLock())
+         {
+            // the thread holding the lock checks the head again once it released it
+            return;
+         }
+
+         try
+         {
+            while ((head = completions.peek()) != null && head.completed)
+            {
+               completions.poll();
+
+               head.deliver();
+            }
+         }
+         finally
+         {
+            deliveryLock.unlock();
+         }
+      }
+   }
+
+   /**
+    * Applies a transaction committed at load as {@link JournalImpl} applies a committed
+    * transaction: its records after the records already loaded, its deletes on all of them.
+    */
+   private static void commitLoaded(final List<RecordInfo> records, final PreparedTransactionInfo tx)
+   {
+      records.addAll(tx.records);
+
+      if (tx.recordsToDelete.isEmpty())
+      {
+         return;
+      }
+
+      Set<Long> deleted = new HashSet<Long>();
+
+      for (RecordInfo record : tx.recordsToDelete)
+      {
+         deleted.add(record.id);
+      }
+
+      Iterator<RecordInfo> iterator = records.iterator();
+
+      while (iterator.hasNext())
+      {
+         if (deleted.contains(iterator.next().id))
+         {
+            iterator.remove();
+         }
+      }
+   }
+
+   private static void mergePrepared(final List<RecordInfo> records, final List<RecordInfo> shardRecords)
+   {
+      List<List<RecordInfo>> both = new ArrayList<List<RecordInfo>>(2);
+      both.add(new ArrayList<RecordInfo>(records));
+      both.add(shardRecords);
+
+      records.clear();
+
+      merge(both, records);
+   }
+
+   private static void merge(final List<List<RecordInfo>> records, final List<RecordInfo> mergedRecords)
+   {
+      int[] next = new int[records.size()];
+
+      while (true)
+      {
+         int lowest = -1;
+
+         for (int i = 0; i < next.length; i++)
+         {
+            List<RecordInfo> shardRecords = records.get(i);
+
+            if (next[i] < shardRecords.size() &&
+                (lowest == -1 || shardRecords.get(next[i]).id < records.get(lowest).get(next[lowest]).id))
+            {
+               lowest = i;
+            }
+         }
+
+         if (lowest == -1)
+         {
+            return;
+         }
+
+         mergedRecords.add(records.get(lowest).get(next[lowest]++));
+      }
+   }
+
+   // Inner classes -------------------------------------------------
+
+   /**
+    * The shards a transaction has records on.
+    */
+   private static final class ShardedTransaction
+   {
+      private final BitSet shards = new BitSet();
+
+      private boolean prepared;
+
+      synchronized void enlist(final int shard)
+      {
+         shards.set(shard);
+      }
+
+      synchronized void enlistPrepared(final int shard)
+      {
+         shards.set(shard);
+         prepared = true;
+      }
+
+      /**
+       * @param defaultShard where an empty transaction is prepared
+       * @return the shards to prepare the transaction on
+       */
+      synchronized int[] prepare(final int defaultShard)
+      {
+         if (shards.isEmpty())
+         {
+            shards.set(defaultShard);
+         }
+
+         prepared = true;
+
+         return getShards();
+      }
+
+      synchronized boolean isPrepared()
+      {
+         return prepared;
+      }
+
+      synchronized int[] getShards()
+      {
+         int[] indexes = new int[shards.cardinality()];
+
+         for (int i = 0, shard = shards.nextSetBit(0); shard >= 0; i++, shard = shards.nextSetBit(shard + 1))
+         {
+            indexes[i] = shard;
+         }
+
+         return indexes;
+      }
+   }
+
+   /**
+    * The completion handed to the shards an append is made on, completing the callback of the
+    * append once all of them completed.
+    */
+   private final class ShardedCompletion implements IOCompletion
+   {
+      private final IOCompletion callback;
+
+      private final boolean ordered;
+
+      private final AtomicInteger pendingParts;
+
+      private final long decisionID;
+
+      private volatile boolean completed;
+
+      private volatile boolean abandoned;
+
+      private volatile int errorCode;
+
+      private volatile String errorMessage;
+
+      /**
+       * @param ordered whether the callback is completed after the ones created before it
+       * @param decisionID the decision to delete once all the parts completed, or -1
+       */
+      ShardedCompletion(final IOCompletion callback,
+                        final boolean ordered,
+                        final int parts,
+                        final boolean lineUp,
+                        final long decisionID)
+      {
+         this.callback = callback;
+         this.ordered = ordered;
+         this.decisionID = decisionID;
+
+         pendingParts = new AtomicInteger(parts);
+
+         if (callback != null && lineUp)
+         {
+            callback.storeLineUp();
+         }
+
+         if (ordered)
+         {
+            completions.add(this);
+         }
+      }
+
+      public void storeLineUp()
+      {
+         // lined up once on the callback, whatever the number of parts
+      }
+
+      public void done()
+      {
+         if (pendingParts.decrementAndGet() > 0)
+         {
+            return;
+         }
+
+         if (decisionID != -1 && errorMessage == null && !abandoned)
+         {
+            completedDecisions.add(decisionID);
+         }
+
+         if (ordered)
+         {
+            completed = true;
+
+            deliverCompletions();
+         }
+         else
+         {
+            deliver();
+         }
+      }
+
+      public void onError(final int errorCode, final String errorMessage)
+      {
+         if (this.errorMessage == null)
+         {
+            this.errorCode = errorCode;
+            this.errorMessage = errorMessage;
+         }
+
+         done();
+      }
+
+      /**
+       * The append failed before reaching all the shards, the exception being thrown to the caller
+       * instead.
+       */
+      void abandon()
+      {
+         abandoned = true;
+
+         if (ordered)
+         {
+            completed = true;
+
+            deliverCompletions();
+         }
+      }
+
+      void deliver()
+      {
+         if (abandoned || callback == null)
+         {
+            return;
+         }
+
+         if (errorMessage == null)
+         {
+            try
+            {
+               callback.done();
+            }
+            catch (Throwable e)
+            {
+               HornetQJournalLogger.LOGGER.errorCompletingCallback(e);
+            }
+         }
+         else
+         {
+            try
+            {
+               callback.onError(errorCode, errorMessage);
+            }
+            catch (Throwable e)
+            {
+               HornetQJournalLogger.LOGGER.errorCallingErrorCallback(e);
+            }
+         }
+      }
+   }
+}
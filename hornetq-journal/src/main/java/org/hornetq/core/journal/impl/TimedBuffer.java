@@ -43,6 +43,12 @@ public class TimedBuffer
    // The number of tries on sleep before switching to spin
    public static final int MAX_CHECKS_ON_SLEEP = 20;
 
+   // The minimum interval between two samples of the write and flush rates
+   private static final long RATE_SAMPLE_INTERVAL = 1000;
+
+   // Weight of a new sample on the adaptive averages, as a shift: 3 means 1/8
+   private static final int AVERAGE_SHIFT = 3;
+
    // Attributes ----------------------------------------------------
 
    private TimedBufferObserver bufferObserver;
@@ -88,6 +94,30 @@ public class TimedBuffer
 
    private TimerTask logRatesTimerTask;
 
+   private final Object rateLock = new Object();
+
+   private long lastRateSample;
+
+   private long lastBytesFlushed;
+
+   private long lastFlushesDone;
+
+   private double writeRate;
+
+   private double flushRate;
+
+   // for the adaptive timeout
+
+   private final boolean adaptive;
+
+   private final int configuredTimeout;
+
+   private volatile long averageSyncLatency;
+
+   private volatile long averageSyncInterval;
+
+   private long lastSyncRequest;
+
    private boolean useSleep = true;
 
    // no need to be volatile as every access is synchronized
@@ -100,9 +130,23 @@ public class TimedBuffer
    // Public --------------------------------------------------------
 
    public TimedBuffer(final int size, final int timeout, final boolean logRates)
+   {
+      this(size, timeout, logRates, false);
+   }
+
+   /**
+    * @param adaptive if true the timeout is only the starting point: the buffer then measures how
+    *           long syncs take and how often they are requested, and waits for about one sync
+    *           latency when syncs are requested faster than the device completes them, or for as
+    *           little as possible otherwise. The timeout used stays between a tenth and four
+    *           times the configured one.
+    */
+   public TimedBuffer(final int size, final int timeout, final boolean logRates, final boolean adaptive)
    {
       bufferSize = size;
 
+      this.adaptive = adaptive;
+
       this.logRates = logRates;
 
       if (logRates)
@@ -120,6 +164,8 @@ public class TimedBuffer
       callbacks = new ArrayList<IOAsyncTask>();
 
       this.timeout = timeout;
+
+      configuredTimeout = timeout;
    }
 
    // for Debug purposes
@@ -283,6 +329,18 @@ public class TimedBuffer
 
       if (sync)
       {
+         if (adaptive)
+         {
+            long now = System.nanoTime();
+
+            if (lastSyncRequest != 0)
+            {
+               averageSyncInterval = average(averageSyncInterval, now - lastSyncRequest);
+            }
+
+            lastSyncRequest = now;
+         }
+
          pendingSync = true;
 
          startSpin();
@@ -312,10 +370,7 @@ public class TimedBuffer
          {
             int pos = buffer.writerIndex();
 
-            if (logRates)
-            {
-               bytesFlushed.addAndGet(pos);
-            }
+            bytesFlushed.addAndGet(pos);
 
             ByteBuffer bufferToFlush = bufferObserver.newBuffer(bufferSize, pos);
 
@@ -325,6 +380,11 @@ public class TimedBuffer
 
             bufferToFlush.put(buffer.toByteBuffer().array(), 0, pos);
 
+            if (adaptive && pendingSync)
+            {
+               callbacks.add(new SyncLatencyTask());
+            }
+
             bufferObserver.flushBuffer(bufferToFlush, pendingSync, callbacks);
 
             stopSpin();
@@ -343,47 +403,134 @@ public class TimedBuffer
       }
    }
 
+   /**
+    * @return the bytes written per second, averaged since the last sample
+    */
+   public double getWriteRate()
+   {
+      synchronized (rateLock)
+      {
+         sampleRates();
+
+         return writeRate;
+      }
+   }
+
+   /**
+    * @return the flushes done per second, averaged since the last sample
+    */
+   public double getFlushRate()
+   {
+      synchronized (rateLock)
+      {
+         sampleRates();
+
+         return flushRate;
+      }
+   }
+
+   /**
+    * @return the average time in nanoseconds a sync took, 0 if the buffer is not adaptive
+    */
+   public long getSyncLatency()
+   {
+      return averageSyncLatency;
+   }
+
+   /**
+    * @return the timeout in nanoseconds currently in use, which only differs from the configured
+    *         one if the buffer is adaptive
+    */
+   public int getCurrentTimeout()
+   {
+      return timeout;
+   }
+
+   public boolean isAdaptive()
+   {
+      return adaptive;
+   }
+
    // Package protected ---------------------------------------------
 
    // Protected -----------------------------------------------------
 
    // Private -------------------------------------------------------
 
+   private static long average(final long average, final long sample)
+   {
+      return average == 0 ? sample : average + (sample - average >> AVERAGE_SHIFT);
+   }
+
+   private void adjustTimeout()
+   {
+      long latency = averageSyncLatency;
+
+      // If syncs come in slower than the device completes them there is nothing to batch and
+      // waiting only adds latency, otherwise one sync latency worth of requests is batched.
+      // This runs on the thread completing the IO, which must not take the buffer lock
+      long window = averageSyncInterval >= latency ? 0 : latency;
+
+      long min = Math.max(1000, configuredTimeout / 10);
+      long max = (long)configuredTimeout * 4;
+
+      timeout = (int)Math.min(Integer.MAX_VALUE, Math.max(min, Math.min(max, window)));
+   }
+
+   /**
+    * Has to be called holding the rateLock
+    */
+   private void sampleRates()
+   {
+      long now = System.currentTimeMillis();
+
+      if (now - lastRateSample < RATE_SAMPLE_INTERVAL)
+      {
+         return;
+      }
+
+      long bytesF = bytesFlushed.get();
+      long flushesD = flushesDone.get();
+
+      if (lastRateSample != 0)
+      {
+         writeRate = 1000 * (double)(bytesF - lastBytesFlushed) / (now - lastRateSample);
+         flushRate = 1000 * (double)(flushesD - lastFlushesDone) / (now - lastRateSample);
+      }
+
+      lastRateSample = now;
+
+      lastBytesFlushed = bytesF;
+
+      lastFlushesDone = flushesD;
+   }
+
    // Inner classes -------------------------------------------------
 
    private class LogRatesTimerTask extends TimerTask
    {
       private boolean closed;
 
-      private long lastExecution;
-
-      private long lastBytesFlushed;
-
-      private long lastFlushesDone;
+      private boolean sampled;
 
       @Override
       public synchronized void run()
       {
          if (!closed)
          {
-            long now = System.currentTimeMillis();
-
-            long bytesF = bytesFlushed.get();
-            long flushesD = flushesDone.get();
-
-            if (lastExecution != 0)
+            synchronized (rateLock)
             {
-               double rate = 1000 * (double) (bytesF - lastBytesFlushed) / (now - lastExecution);
-               HornetQJournalLogger.LOGGER.writeRate(rate, (long) (rate / (1024 * 1024)));
-               double flushRate = 1000 * (double) (flushesD - lastFlushesDone) / (now - lastExecution);
-               HornetQJournalLogger.LOGGER.flushRate(flushRate);
-            }
-
-            lastExecution = now;
+               sampleRates();
 
-            lastBytesFlushed = bytesF;
+               // the first sample only sets the starting point
+               if (sampled)
+               {
+                  HornetQJournalLogger.LOGGER.writeRate(writeRate, (long)(writeRate / (1024 * 1024)));
+                  HornetQJournalLogger.LOGGER.flushRate(flushRate);
+               }
 
-            lastFlushesDone = flushesD;
+               sampled = true;
+            }
          }
       }
 
@@ -396,6 +543,22 @@ public class TimedBuffer
       }
    }
 
+   private class SyncLatencyTask implements IOAsyncTask
+   {
+      private final long start = System.nanoTime();
+
+      public void done()
+      {
+         averageSyncLatency = average(averageSyncLatency, System.nanoTime() - start);
+
+         adjustTimeout();
+      }
+
+      public void onError(final int errorCode, final String errorMessage)
+      {
+      }
+   }
+
    private class CheckTimer implements Runnable
    {
       private volatile boolean closed = false;
@@ -404,10 +567,6 @@ public class TimedBuffer
       int failedChecks = 0;
       long timeBefore = 0;
 
-      final int sleepMillis = timeout / 1000000; // truncates
-      final int sleepNanos = timeout % 1000000;
-
-
       public void run()
       {
          long lastFlushTime = 0;
@@ -468,9 +627,12 @@ public class TimedBuffer
                timeBefore = System.nanoTime();
             }
 
+            // the timeout may change while running if the buffer is adaptive
+            int currentTimeout = timeout;
+
             try
             {
-               sleep(sleepMillis, sleepNanos);
+               sleep(currentTimeout / 1000000, currentTimeout % 1000000);
             }
             catch (InterruptedException e)
             {
@@ -487,7 +649,7 @@ public class TimedBuffer
                long realTimeSleep = System.nanoTime() - timeBefore;
 
                // I'm letting the real time to be up to 50% than the requested sleep.
-               if (realTimeSleep > timeout * 1.5)
+               if (realTimeSleep > currentTimeout * 1.5)
                {
                   failedChecks++;
                }
@@ -75,12 +75,12 @@ public class JournalAddRecord extends JournalInternalRecord
 
       record.encode(buffer);
 
-      buffer.writeInt(getEncodeSize());
+      encodeCheckSize(buffer);
    }
 
    @Override
    public int getEncodeSize()
    {
-      return JournalImpl.SIZE_ADD_RECORD + record.getEncodeSize() + 1;
+      return JournalImpl.SIZE_ADD_RECORD + record.getEncodeSize() + 1 + getChecksumSize();
    }
 }
\ No newline at end of file
@@ -86,12 +86,12 @@ public class JournalAddRecordTX extends JournalInternalRecord
 
       record.encode(buffer);
 
-      buffer.writeInt(getEncodeSize());
+      encodeCheckSize(buffer);
    }
 
    @Override
    public int getEncodeSize()
    {
-      return JournalImpl.SIZE_ADD_RECORD_TX + record.getEncodeSize() + 1;
+      return JournalImpl.SIZE_ADD_RECORD_TX + record.getEncodeSize() + 1 + getChecksumSize();
    }
 }
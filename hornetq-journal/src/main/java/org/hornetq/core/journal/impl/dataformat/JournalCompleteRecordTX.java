@@ -86,7 +86,7 @@ public class JournalCompleteRecordTX extends JournalInternalRecord
          transactionData.encode(buffer);
       }
 
-      buffer.writeInt(getEncodeSize());
+      encodeCheckSize(buffer);
    }
 
    @Override
@@ -106,11 +106,12 @@ public class JournalCompleteRecordTX extends JournalInternalRecord
    {
       if (txRecordType == TX_RECORD_TYPE.COMMIT)
       {
-         return JournalImpl.SIZE_COMPLETE_TRANSACTION_RECORD + 1;
+         return JournalImpl.SIZE_COMPLETE_TRANSACTION_RECORD + 1 + getChecksumSize();
       }
       else
       {
-         return JournalImpl.SIZE_PREPARE_RECORD + (transactionData != null ? transactionData.getEncodeSize() : 0) + 1;
+         return JournalImpl.SIZE_PREPARE_RECORD + (transactionData != null ? transactionData.getEncodeSize() : 0) + 1 +
+                getChecksumSize();
       }
    }
 }
@@ -15,6 +15,8 @@ package org.hornetq.core.journal.impl.dataformat;
 
 import org.hornetq.api.core.HornetQBuffer;
 import org.hornetq.core.journal.EncodingSupport;
+import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.utils.DataConstants;
 
 /**
  * A InternalEncoder
@@ -30,6 +32,8 @@ public abstract class JournalInternalRecord implements EncodingSupport
 
    protected byte compactCount;
 
+   protected boolean checksum;
+
    public int getFileID()
    {
       return fileID;
@@ -70,5 +74,43 @@ public abstract class JournalInternalRecord implements EncodingSupport
       }
    }
 
+   public boolean isChecksum()
+   {
+      return checksum;
+   }
+
+   /**
+    * @param checksum whether the record is written with a checksum, as it is on the files of a journal with checksums
+    */
+   public void setChecksum(final boolean checksum)
+   {
+      this.checksum = checksum;
+   }
+
    public abstract int getEncodeSize();
+
+   /**
+    * @return the size of the checksum written before the check size, 0 if the record has none
+    */
+   protected int getChecksumSize()
+   {
+      return checksum ? JournalImpl.SIZE_CHECKSUM : 0;
+   }
+
+   /**
+    * Ends the record with the checksum of the bytes written for it, if it has one, and its size.
+    */
+   protected void encodeCheckSize(final HornetQBuffer buffer)
+   {
+      int size = getEncodeSize();
+
+      if (checksum)
+      {
+         int length = size - JournalImpl.SIZE_CHECKSUM - DataConstants.SIZE_INT;
+
+         buffer.writeInt(JournalImpl.calculateChecksum(buffer.toByteBuffer(buffer.writerIndex() - length, length)));
+      }
+
+      buffer.writeInt(size);
+   }
 }
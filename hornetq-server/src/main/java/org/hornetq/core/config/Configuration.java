@@ -573,6 +573,67 @@ public interface Configuration extends Serializable
     */
    void setJournalCompactPercentage(int percentage);
 
+   /**
+    * Returns the maximal number of consecutive journal files compacted at once, 0 meaning the whole
+    * journal is compacted at once. <br>
+    * Default value is {@value HornetQDefaultConfiguration#DEFAULT_JOURNAL_COMPACT_MAX_FILES}.
+    */
+   int getJournalCompactMaxFiles();
+
+   /**
+    * Sets the maximal number of consecutive journal files compacted at once.
+    */
+   void setJournalCompactMaxFiles(int maxFiles);
+
+   /**
+    * Returns the rate (in MiB per second) at which compacting reads and writes journal files, 0
+    * meaning unlimited. <br>
+    * Default value is {@value HornetQDefaultConfiguration#DEFAULT_JOURNAL_COMPACT_IO_RATE}.
+    */
+   int getJournalCompactIORate();
+
+   /**
+    * Sets the rate (in MiB per second) at which compacting reads and writes journal files.
+    */
+   void setJournalCompactIORate(int rate);
+
+   /**
+    * Returns the maximal number of filled journal files kept ready, the number kept following the
+    * rate at which files are used. 0 means only the next file is opened in advance. <br>
+    * Default value is {@value HornetQDefaultConfiguration#DEFAULT_JOURNAL_MAX_READY_FILES}.
+    */
+   int getJournalMaxReadyFiles();
+
+   /**
+    * Sets the maximal number of filled journal files kept ready.
+    */
+   void setJournalMaxReadyFiles(int maxReadyFiles);
+
+   /**
+    * Returns whether a checksum is written with each journal record and verified when the journal is
+    * loaded. <br>
+    * Default value is {@value HornetQDefaultConfiguration#DEFAULT_JOURNAL_CHECKSUMS}.
+    */
+   boolean isJournalChecksums();
+
+   /**
+    * Sets whether a checksum is written with each journal record.
+    */
+   void setJournalChecksums(boolean checksums);
+
+   /**
+    * Returns whether a message routed to several queues is stored with its references in one
+    * journal record, and the acknowledgements of a message on several queues within a transaction
+    * in one record. <br>
+    * Default value is {@value HornetQDefaultConfiguration#DEFAULT_JOURNAL_GROUPED_REFERENCES}.
+    */
+   boolean isJournalGroupedReferences();
+
+   /**
+    * Sets whether the references of a message are grouped in one journal record.
+    */
+   void setJournalGroupedReferences(boolean groupedReferences);
+
    /**
     * Returns the number of journal files to pre-create. <br>
     * Default value is {@value HornetQDefaultConfiguration#DEFAULT_JOURNAL_MIN_FILES}.
@@ -584,6 +645,30 @@ public interface Configuration extends Serializable
     */
    void setJournalMinFiles(int files);
 
+   /**
+    * Returns the number of journal files read concurrently when the journal is loaded, -1 meaning
+    * one per available processor. <br>
+    * Default value is {@value HornetQDefaultConfiguration#DEFAULT_JOURNAL_LOAD_THREADS}.
+    */
+   int getJournalLoadThreads();
+
+   /**
+    * Sets the number of journal files read concurrently when the journal is loaded.
+    */
+   void setJournalLoadThreads(int threads);
+
+   /**
+    * Returns the number of journals the messages journal is made of, each one in its own
+    * sub-directory of the journal directory when there are more than one. <br>
+    * Default value is {@value HornetQDefaultConfiguration#DEFAULT_JOURNAL_SHARDS}.
+    */
+   int getJournalShards();
+
+   /**
+    * Sets the number of journals the messages journal is made of.
+    */
+   void setJournalShards(int shards);
+
    // AIO and NIO need different values for these params
 
    /**
@@ -656,6 +741,19 @@ public interface Configuration extends Serializable
     */
    void setJournalBufferSize_NIO(int journalBufferSize);
 
+   /**
+    * Returns whether the journal adapts its buffer timeout to the measured sync latency, using the
+    * configured timeout as a starting point.
+    * <br>
+    * Default value is {@value org.hornetq.api.config.HornetQDefaultConfiguration#DEFAULT_JOURNAL_BUFFER_ADAPTIVE}.
+    */
+   boolean isJournalBufferAdaptive();
+
+   /**
+    * Sets whether the journal adapts its buffer timeout to the measured sync latency.
+    */
+   void setJournalBufferAdaptive(boolean adaptive);
+
    /**
     * Returns whether the bindings directory is created on this server startup. <br>
     * Default value is {@value HornetQDefaultConfiguration#DEFAULT_CREATE_BINDINGS_DIR}.
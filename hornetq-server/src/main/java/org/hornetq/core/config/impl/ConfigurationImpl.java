@@ -142,10 +142,24 @@ public class ConfigurationImpl implements Configuration
 
    protected int journalCompactPercentage = HornetQDefaultConfiguration.getDefaultJournalCompactPercentage();
 
+   protected int journalCompactMaxFiles = HornetQDefaultConfiguration.getDefaultJournalCompactMaxFiles();
+
+   protected int journalCompactIORate = HornetQDefaultConfiguration.getDefaultJournalCompactIoRate();
+
+   protected int journalMaxReadyFiles = HornetQDefaultConfiguration.getDefaultJournalMaxReadyFiles();
+
+   protected boolean journalChecksums = HornetQDefaultConfiguration.isDefaultJournalChecksums();
+
+   protected boolean journalGroupedReferences = HornetQDefaultConfiguration.isDefaultJournalGroupedReferences();
+
    protected int journalFileSize = HornetQDefaultConfiguration.getDefaultJournalFileSize();
 
    protected int journalMinFiles = HornetQDefaultConfiguration.getDefaultJournalMinFiles();
 
+   protected int journalLoadThreads = HornetQDefaultConfiguration.getDefaultJournalLoadThreads();
+
+   protected int journalShards = HornetQDefaultConfiguration.getDefaultJournalShards();
+
    // AIO and NIO need different values for these attributes
 
    protected int journalMaxIO_AIO = HornetQDefaultConfiguration.getDefaultJournalMaxIoAio();
@@ -160,6 +174,8 @@ public class ConfigurationImpl implements Configuration
 
    protected int journalBufferSize_NIO = HornetQDefaultConfiguration.getDefaultJournalBufferSizeNio();
 
+   protected boolean journalBufferAdaptive = HornetQDefaultConfiguration.isDefaultJournalBufferAdaptive();
+
    protected boolean logJournalWriteRate = HornetQDefaultConfiguration.isDefaultJournalLogWriteRate();
 
    protected int journalPerfBlastPages = HornetQDefaultConfiguration.getDefaultJournalPerfBlastPages();
@@ -581,6 +597,26 @@ public class ConfigurationImpl implements Configuration
       journalMinFiles = files;
    }
 
+   public int getJournalLoadThreads()
+   {
+      return journalLoadThreads;
+   }
+
+   public void setJournalLoadThreads(final int threads)
+   {
+      journalLoadThreads = threads;
+   }
+
+   public int getJournalShards()
+   {
+      return journalShards;
+   }
+
+   public void setJournalShards(final int shards)
+   {
+      journalShards = shards;
+   }
+
    public boolean isLogJournalWriteRate()
    {
       return logJournalWriteRate;
@@ -821,6 +857,56 @@ public class ConfigurationImpl implements Configuration
       journalCompactPercentage = percentage;
    }
 
+   public int getJournalCompactMaxFiles()
+   {
+      return journalCompactMaxFiles;
+   }
+
+   public void setJournalCompactMaxFiles(final int maxFiles)
+   {
+      journalCompactMaxFiles = maxFiles;
+   }
+
+   public int getJournalCompactIORate()
+   {
+      return journalCompactIORate;
+   }
+
+   public void setJournalCompactIORate(final int rate)
+   {
+      journalCompactIORate = rate;
+   }
+
+   public int getJournalMaxReadyFiles()
+   {
+      return journalMaxReadyFiles;
+   }
+
+   public void setJournalMaxReadyFiles(final int maxReadyFiles)
+   {
+      journalMaxReadyFiles = maxReadyFiles;
+   }
+
+   public boolean isJournalChecksums()
+   {
+      return journalChecksums;
+   }
+
+   public void setJournalChecksums(final boolean checksums)
+   {
+      journalChecksums = checksums;
+   }
+
+   public boolean isJournalGroupedReferences()
+   {
+      return journalGroupedReferences;
+   }
+
+   public void setJournalGroupedReferences(final boolean groupedReferences)
+   {
+      journalGroupedReferences = groupedReferences;
+   }
+
    public long getServerDumpInterval()
    {
       return serverDumpInterval;
@@ -901,6 +987,16 @@ public class ConfigurationImpl implements Configuration
       journalBufferTimeout_NIO = journalBufferTimeout;
    }
 
+   public boolean isJournalBufferAdaptive()
+   {
+      return journalBufferAdaptive;
+   }
+
+   public void setJournalBufferAdaptive(final boolean adaptive)
+   {
+      journalBufferAdaptive = adaptive;
+   }
+
    public int getJournalBufferSize_NIO()
    {
       return journalBufferSize_NIO;
@@ -1075,13 +1171,21 @@ public class ConfigurationImpl implements Configuration
       result = prime * result + journalBufferSize_NIO;
       result = prime * result + journalBufferTimeout_AIO;
       result = prime * result + journalBufferTimeout_NIO;
+      result = prime * result + (journalBufferAdaptive ? 1231 : 1237);
       result = prime * result + journalCompactMinFiles;
       result = prime * result + journalCompactPercentage;
+      result = prime * result + journalCompactMaxFiles;
+      result = prime * result + journalCompactIORate;
+      result = prime * result + journalMaxReadyFiles;
+      result = prime * result + (journalChecksums ? 1231 : 1237);
+      result = prime * result + (journalGroupedReferences ? 1231 : 1237);
       result = prime * result + ((journalDirectory == null) ? 0 : journalDirectory.hashCode());
       result = prime * result + journalFileSize;
       result = prime * result + journalMaxIO_AIO;
       result = prime * result + journalMaxIO_NIO;
       result = prime * result + journalMinFiles;
+      result = prime * result + journalLoadThreads;
+      result = prime * result + journalShards;
       result = prime * result + journalPerfBlastPages;
       result = prime * result + (journalSyncNonTransactional ? 1231 : 1237);
       result = prime * result + (journalSyncTransactional ? 1231 : 1237);
@@ -1275,10 +1379,22 @@ public class ConfigurationImpl implements Configuration
          return false;
       if (journalBufferTimeout_NIO != other.journalBufferTimeout_NIO)
          return false;
+      if (journalBufferAdaptive != other.journalBufferAdaptive)
+         return false;
       if (journalCompactMinFiles != other.journalCompactMinFiles)
          return false;
       if (journalCompactPercentage != other.journalCompactPercentage)
          return false;
+      if (journalCompactMaxFiles != other.journalCompactMaxFiles)
+         return false;
+      if (journalCompactIORate != other.journalCompactIORate)
+         return false;
+      if (journalMaxReadyFiles != other.journalMaxReadyFiles)
+         return false;
+      if (journalChecksums != other.journalChecksums)
+         return false;
+      if (journalGroupedReferences != other.journalGroupedReferences)
+         return false;
       if (journalDirectory == null)
       {
          if (other.journalDirectory != null)
@@ -1294,6 +1410,10 @@ public class ConfigurationImpl implements Configuration
          return false;
       if (journalMinFiles != other.journalMinFiles)
          return false;
+      if (journalLoadThreads != other.journalLoadThreads)
+         return false;
+      if (journalShards != other.journalShards)
+         return false;
       if (journalPerfBlastPages != other.journalPerfBlastPages)
          return false;
       if (journalSyncNonTransactional != other.journalSyncNonTransactional)
@@ -133,6 +133,14 @@ public final class FileConfigurationParser extends XMLConfigurationUtil
 
    private static final String SEND_TO_DLA_ON_NO_ROUTE = "send-to-dla-on-no-route";
 
+   private static final String INDEXED_DELIVERY_NODE_NAME = "indexed-delivery";
+
+   private static final String MAX_GROUPS_NODE_NAME = "max-groups";
+
+   private static final String GROUP_IDLE_TIMEOUT_NODE_NAME = "group-idle-timeout";
+
+   private static final String DEDICATED_DELIVERY_THREAD_NODE_NAME = "dedicated-delivery-thread";
+
    // Attributes ----------------------------------------------------
 
    private boolean validateAIO = false;
@@ -212,6 +220,8 @@ public final class FileConfigurationParser extends XMLConfigurationUtil
       config.setThreadPoolMaxSize(getInteger(e, "thread-pool-max-size", config.getThreadPoolMaxSize(),
                                                                   Validators.MINUS_ONE_OR_GT_ZERO));
 
+      config.setJournalShards(getInteger(e, "journal-shards", config.getJournalShards(), Validators.GT_ZERO));
+
       config.setSecurityEnabled(getBoolean(e, "security-enabled", config.isSecurityEnabled()));
 
       config.setJMXManagementEnabled(getBoolean(e, "jmx-management-enabled", config.isJMXManagementEnabled()));
@@ -488,6 +498,10 @@ public final class FileConfigurationParser extends XMLConfigurationUtil
       {
          config.setJournalType(JournalType.NIO);
       }
+      else if (s.equals(JournalType.MAPPED.toString()))
+      {
+         config.setJournalType(JournalType.MAPPED);
+      }
       else if (s.equals(JournalType.ASYNCIO.toString()))
       {
          // https://jira.jboss.org/jira/browse/HORNETQ-295
@@ -555,8 +569,15 @@ public final class FileConfigurationParser extends XMLConfigurationUtil
          config.setJournalMaxIO_NIO(journalMaxIO);
       }
 
+      config.setJournalBufferAdaptive(getBoolean(e, "journal-buffer-adaptive", config.isJournalBufferAdaptive()));
+
       config.setJournalMinFiles(getInteger(e, "journal-min-files", config.getJournalMinFiles(), Validators.GT_ZERO));
 
+      config.setJournalLoadThreads(getInteger(e,
+                                              "journal-load-threads",
+                                              config.getJournalLoadThreads(),
+                                              Validators.MINUS_ONE_OR_GT_ZERO));
+
       config.setJournalCompactMinFiles(getInteger(e, "journal-compact-min-files", config.getJournalCompactMinFiles(),
                                                   Validators.GE_ZERO));
 
@@ -565,6 +586,20 @@ public final class FileConfigurationParser extends XMLConfigurationUtil
                                                                          config.getJournalCompactPercentage(),
                                                                          Validators.PERCENTAGE));
 
+      config.setJournalCompactMaxFiles(getInteger(e, "journal-compact-max-files", config.getJournalCompactMaxFiles(),
+                                                  Validators.GE_ZERO));
+
+      config.setJournalCompactIORate(getInteger(e, "journal-compact-io-rate", config.getJournalCompactIORate(),
+                                                Validators.GE_ZERO));
+
+      config.setJournalMaxReadyFiles(getInteger(e, "journal-max-ready-files", config.getJournalMaxReadyFiles(),
+                                                Validators.GE_ZERO));
+
+      config.setJournalChecksums(getBoolean(e, "journal-checksums", config.isJournalChecksums()));
+
+      config.setJournalGroupedReferences(getBoolean(e, "journal-grouped-references",
+                                                    config.isJournalGroupedReferences()));
+
       config.setLogJournalWriteRate(getBoolean(e,
                                                                     "log-journal-write-rate",
                                                                     HornetQDefaultConfiguration.isDefaultJournalLogWriteRate()));
@@ -858,6 +893,22 @@ public final class FileConfigurationParser extends XMLConfigurationUtil
          {
             addressSettings.setSendToDLAOnNoRoute(XMLUtil.parseBoolean(child));
          }
+         else if (INDEXED_DELIVERY_NODE_NAME.equalsIgnoreCase(name))
+         {
+            addressSettings.setIndexedDelivery(XMLUtil.parseBoolean(child));
+         }
+         else if (MAX_GROUPS_NODE_NAME.equalsIgnoreCase(name))
+         {
+            addressSettings.setMaxGroups(XMLUtil.parseInt(child));
+         }
+         else if (GROUP_IDLE_TIMEOUT_NODE_NAME.equalsIgnoreCase(name))
+         {
+            addressSettings.setGroupIdleTimeout(XMLUtil.parseLong(child));
+         }
+         else if (DEDICATED_DELIVERY_THREAD_NODE_NAME.equalsIgnoreCase(name))
+         {
+            addressSettings.setDedicatedDeliveryThread(XMLUtil.parseBoolean(child));
+         }
       }
       return setting;
    }
@@ -0,0 +1,925 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.filter.impl;
+
+import java.util.Set;
+
+import org.hornetq.api.core.FilterConstants;
+import org.hornetq.api.core.Pair;
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.client.HornetQClientMessageBundle;
+import org.hornetq.core.server.ServerMessage;
+
+/**
+ * Compiles the {@link Operator} tree produced by {@link FilterParser} into an immutable tree of
+ * {@link Expression}s.
+ * <p>
+ * {@link Operator#apply()} keeps the values of its arguments in the operator itself and reads the
+ * message properties through shared {@link Identifier}s, so a parsed filter can only be evaluated by
+ * one thread at a time. A compiled expression reads identifiers straight from the message being
+ * matched and keeps intermediate results on the stack, so it can be evaluated concurrently without
+ * any locking. The evaluation rules (three-valued logic, numeric promotion and type checks) are the
+ * same as the ones implemented by {@link Operator}.
+ *
+ * @see FilterImpl
+ */
+final class FilterCompiler
+{
+   // Constants -----------------------------------------------------
+
+   private static final int HEADER_NONE = 0;
+
+   private static final int HEADER_USERID = 1;
+
+   private static final int HEADER_PRIORITY = 2;
+
+   private static final int HEADER_TIMESTAMP = 3;
+
+   private static final int HEADER_DURABLE = 4;
+
+   private static final int HEADER_EXPIRATION = 5;
+
+   private static final int HEADER_SIZE = 6;
+
+   private FilterCompiler()
+   {
+   }
+
+   // Static --------------------------------------------------------
+
+   /**
+    * @param node the result of {@link FilterParser#parse(SimpleString, java.util.Map)}
+    */
+   static Expression compile(final Object node) throws Exception
+   {
+      if (node instanceof Identifier)
+      {
+         return new PropertyExpression(((Identifier)node).getName());
+      }
+      else if (node instanceof Operator)
+      {
+         return compileOperator((Operator)node);
+      }
+      else
+      {
+         return new ConstantExpression(node);
+      }
+   }
+
+   /**
+    * Looks for a <code>property = 'literal'</code> term that has to be true for the whole filter to
+    * match, i.e. the filter itself or one of the terms of a top level AND. Header fields are not
+    * considered.
+    *
+    * @return the property name and the string literal, or null if there is no such term
+    */
+   static Pair<SimpleString, SimpleString> findRequiredEquality(final Object node)
+   {
+      if (!(node instanceof Operator))
+      {
+         return null;
+      }
+
+      Operator op = (Operator)node;
+
+      if (op.operation == Operator.AND)
+      {
+         Pair<SimpleString, SimpleString> equality = findRequiredEquality(op.oper1);
+
+         return equality != null ? equality : findRequiredEquality(op.oper2);
+      }
+      else if (op.operation == Operator.EQUAL)
+      {
+         Object identifier = op.oper1;
+         Object literal = op.oper2;
+
+         if (!(identifier instanceof Identifier))
+         {
+            identifier = op.oper2;
+            literal = op.oper1;
+         }
+
+         if (identifier instanceof Identifier && literal instanceof SimpleString)
+         {
+            SimpleString name = ((Identifier)identifier).getName();
+
+            if (!name.startsWith(FilterConstants.HORNETQ_PREFIX))
+            {
+               return new Pair<SimpleString, SimpleString>(name, (SimpleString)literal);
+            }
+         }
+      }
+
+      return null;
+   }
+
+   private static Expression compileOperator(final Operator op) throws Exception
+   {
+      switch (op.operation)
+      {
+         case Operator.EQUAL:
+            return new EqualExpression(op, compile(op.oper1), compile(op.oper2), false);
+         case Operator.DIFFERENT:
+            return new EqualExpression(op, compile(op.oper1), compile(op.oper2), true);
+         case Operator.NOT:
+            return new NotExpression(op, compile(op.oper1));
+         case Operator.AND:
+            return new AndExpression(op, compile(op.oper1), compile(op.oper2));
+         case Operator.OR:
+            return new OrExpression(op, compile(op.oper1), compile(op.oper2));
+         case Operator.GT:
+         case Operator.GE:
+         case Operator.LT:
+         case Operator.LE:
+            return new ComparisonExpression(op, compile(op.oper1), compile(op.oper2));
+         case Operator.ADD:
+         case Operator.SUB:
+         case Operator.MUL:
+         case Operator.DIV:
+            return new ArithmeticExpression(op, compile(op.oper1), compile(op.oper2));
+         case Operator.NEG:
+            return new NegateExpression(op, compile(op.oper1));
+         case Operator.BETWEEN:
+            return new BetweenExpression(op, compile(op.oper1), compile(op.oper2), compile(op.oper3), false);
+         case Operator.NOT_BETWEEN:
+            return new BetweenExpression(op, compile(op.oper1), compile(op.oper2), compile(op.oper3), true);
+         case Operator.LIKE:
+            return new LikeExpression(op, compile(op.oper1), op.oper2, null, false);
+         case Operator.NOT_LIKE:
+            return new LikeExpression(op, compile(op.oper1), op.oper2, null, true);
+         case Operator.LIKE_ESCAPE:
+            return new LikeExpression(op, compile(op.oper1), op.oper2, op.oper3, false);
+         case Operator.NOT_LIKE_ESCAPE:
+            return new LikeExpression(op, compile(op.oper1), op.oper2, op.oper3, true);
+         case Operator.IS_NULL:
+            return new IsNullExpression(op, compile(op.oper1), false);
+         case Operator.IS_NOT_NULL:
+            return new IsNullExpression(op, compile(op.oper1), true);
+         case Operator.IN:
+            return new InExpression(op, compile(op.oper1), (Set<?>)op.oper2, false);
+         case Operator.NOT_IN:
+            return new InExpression(op, compile(op.oper1), (Set<?>)op.oper2, true);
+         default:
+            throw HornetQClientMessageBundle.BUNDLE.noOperationMapped(op.operation);
+      }
+   }
+
+   /**
+    * @return the {@link Operator} type constant of the value, or 0 if the value is null
+    */
+   private static int typeOf(final Operator source, final Object value) throws Exception
+   {
+      if (value == null)
+      {
+         return 0;
+      }
+
+      Class<?> type = value.getClass();
+
+      if (type == SimpleString.class)
+      {
+         return Operator.SIMPLE_STRING;
+      }
+      else if (type == Long.class || type == Integer.class || type == Short.class || type == Byte.class)
+      {
+         return Operator.LONG;
+      }
+      else if (type == Double.class || type == Float.class)
+      {
+         return Operator.DOUBLE;
+      }
+      else if (type == Boolean.class)
+      {
+         return Operator.BOOLEAN;
+      }
+      else
+      {
+         source.throwBadObjectException(type);
+         return 0;
+      }
+   }
+
+   private static Boolean valueOf(final boolean value)
+   {
+      return value ? Boolean.TRUE : Boolean.FALSE;
+   }
+
+   private static boolean compare(final int operation, final long value1, final long value2)
+   {
+      switch (operation)
+      {
+         case Operator.GT:
+            return value1 > value2;
+         case Operator.GE:
+            return value1 >= value2;
+         case Operator.LT:
+            return value1 < value2;
+         default:
+            return value1 <= value2;
+      }
+   }
+
+   private static boolean compare(final int operation, final double value1, final double value2)
+   {
+      switch (operation)
+      {
+         case Operator.GT:
+            return value1 > value2;
+         case Operator.GE:
+            return value1 >= value2;
+         case Operator.LT:
+            return value1 < value2;
+         default:
+            return value1 <= value2;
+      }
+   }
+
+   /**
+    * Compares an already evaluated left hand side with <code>right</code>, which is only evaluated
+    * if the left hand side is numeric.
+    */
+   private static Boolean compare(final Operator source,
+                                  final int operation,
+                                  final Object value1,
+                                  final int type1,
+                                  final Expression right,
+                                  final ServerMessage message) throws Exception
+   {
+      if (value1 == null)
+      {
+         return null;
+      }
+
+      if (type1 != Operator.LONG && type1 != Operator.DOUBLE)
+      {
+         return Boolean.FALSE;
+      }
+
+      Object value2 = right.evaluate(message);
+      int type2 = typeOf(source, value2);
+
+      if (value2 == null)
+      {
+         return null;
+      }
+
+      if (type1 == Operator.LONG && type2 == Operator.LONG)
+      {
+         return valueOf(compare(operation, ((Number)value1).longValue(), ((Number)value2).longValue()));
+      }
+      else if (type2 == Operator.LONG || type2 == Operator.DOUBLE)
+      {
+         return valueOf(compare(operation, ((Number)value1).doubleValue(), ((Number)value2).doubleValue()));
+      }
+      else
+      {
+         return Boolean.FALSE;
+      }
+   }
+
+   // Inner classes -------------------------------------------------
+
+   /**
+    * A node of a compiled filter.
+    * <p>
+    * Implementations are immutable and keep no per-evaluation state.
+    */
+   abstract static class Expression
+   {
+      /**
+       * @return a {@link Boolean}, {@link Number} or {@link SimpleString}, or null if the value is
+       *         unknown
+       */
+      abstract Object evaluate(ServerMessage message) throws Exception;
+   }
+
+   private static final class ConstantExpression extends Expression
+   {
+      private final Object value;
+
+      ConstantExpression(final Object value)
+      {
+         this.value = value;
+      }
+
+      @Override
+      Object evaluate(final ServerMessage message)
+      {
+         return value;
+      }
+   }
+
+   private static final class PropertyExpression extends Expression
+   {
+      private final SimpleString name;
+
+      private final int header;
+
+      PropertyExpression(final SimpleString name)
+      {
+         this.name = name;
+
+         if (!name.startsWith(FilterConstants.HORNETQ_PREFIX))
+         {
+            header = HEADER_NONE;
+         }
+         else if (FilterConstants.HORNETQ_USERID.equals(name))
+         {
+            header = HEADER_USERID;
+         }
+         else if (FilterConstants.HORNETQ_PRIORITY.equals(name))
+         {
+            header = HEADER_PRIORITY;
+         }
+         else if (FilterConstants.HORNETQ_TIMESTAMP.equals(name))
+         {
+            header = HEADER_TIMESTAMP;
+         }
+         else if (FilterConstants.HORNETQ_DURABLE.equals(name))
+         {
+            header = HEADER_DURABLE;
+         }
+         else if (FilterConstants.HORNETQ_EXPIRATION.equals(name))
+         {
+            header = HEADER_EXPIRATION;
+         }
+         else if (FilterConstants.HORNETQ_SIZE.equals(name))
+         {
+            header = HEADER_SIZE;
+         }
+         else
+         {
+            header = HEADER_NONE;
+         }
+      }
+
+      @Override
+      Object evaluate(final ServerMessage message)
+      {
+         switch (header)
+         {
+            case HEADER_USERID:
+               // It's the stringified (hex) representation of a user id that can be used in a selector expression
+               return new SimpleString("ID:" + message.getUserID());
+            case HEADER_PRIORITY:
+               return Integer.valueOf(message.getPriority());
+            case HEADER_TIMESTAMP:
+               return message.getTimestamp();
+            case HEADER_DURABLE:
+               return message.isDurable() ? FilterConstants.DURABLE : FilterConstants.NON_DURABLE;
+            case HEADER_EXPIRATION:
+               return message.getExpiration();
+            case HEADER_SIZE:
+               return message.getEncodeSize();
+            default:
+               return message.getObjectProperty(name);
+         }
+      }
+   }
+
+   /**
+    * EQUAL and DIFFERENT
+    */
+   private static final class EqualExpression extends Expression
+   {
+      private final Operator source;
+
+      private final Expression left;
+
+      private final Expression right;
+
+      private final boolean different;
+
+      EqualExpression(final Operator source, final Expression left, final Expression right, final boolean different)
+      {
+         this.source = source;
+         this.left = left;
+         this.right = right;
+         this.different = different;
+      }
+
+      @Override
+      Object evaluate(final ServerMessage message) throws Exception
+      {
+         Object value1 = left.evaluate(message);
+         int type1 = typeOf(source, value1);
+
+         if (value1 == null)
+         {
+            if (different)
+            {
+               Object value2 = right.evaluate(message);
+               typeOf(source, value2);
+               return valueOf(value2 != null);
+            }
+            return Boolean.FALSE;
+         }
+
+         Object value2 = right.evaluate(message);
+         int type2 = typeOf(source, value2);
+
+         switch (type1)
+         {
+            case Operator.LONG:
+            case Operator.DOUBLE:
+               if (value2 == null)
+               {
+                  return null;
+               }
+               if (type2 != Operator.LONG && type2 != Operator.DOUBLE)
+               {
+                  return Boolean.FALSE;
+               }
+               boolean equal;
+               if (type1 == Operator.LONG && type2 == Operator.LONG)
+               {
+                  equal = ((Number)value1).longValue() == ((Number)value2).longValue();
+               }
+               else
+               {
+                  equal = ((Number)value1).doubleValue() == ((Number)value2).doubleValue();
+               }
+               return valueOf(equal != different);
+            default:
+               if (value2 == null)
+               {
+                  return different ? null : Boolean.FALSE;
+               }
+               if (type2 != type1)
+               {
+                  source.throwBadObjectException(type1, type2);
+               }
+               return valueOf(value1.equals(value2) != different);
+         }
+      }
+   }
+
+   private static final class NotExpression extends Expression
+   {
+      private final Operator source;
+
+      private final Expression operand;
+
+      NotExpression(final Operator source, final Expression operand)
+      {
+         this.source = source;
+         this.operand = operand;
+      }
+
+      @Override
+      Object evaluate(final ServerMessage message) throws Exception
+      {
+         Object value = operand.evaluate(message);
+         int type = typeOf(source, value);
+
+         if (value == null)
+         {
+            return null;
+         }
+         if (type != Operator.BOOLEAN)
+         {
+            source.throwBadObjectException(type);
+         }
+         return valueOf(!((Boolean)value).booleanValue());
+      }
+   }
+
+   private static final class AndExpression extends Expression
+   {
+      private final Operator source;
+
+      private final Expression left;
+
+      private final Expression right;
+
+      AndExpression(final Operator source, final Expression left, final Expression right)
+      {
+         this.source = source;
+         this.left = left;
+         this.right = right;
+      }
+
+      @Override
+      Object evaluate(final ServerMessage message) throws Exception
+      {
+         Object value1 = left.evaluate(message);
+         int type1 = typeOf(source, value1);
+
+         if (value1 != null)
+         {
+            if (type1 != Operator.BOOLEAN)
+            {
+               source.throwBadObjectException(type1);
+            }
+            if (!((Boolean)value1).booleanValue())
+            {
+               return Boolean.FALSE;
+            }
+         }
+
+         Object value2 = right.evaluate(message);
+         int type2 = typeOf(source, value2);
+
+         if (value2 == null)
+         {
+            return null;
+         }
+         if (type2 != Operator.BOOLEAN)
+         {
+            source.throwBadObjectException(type2);
+         }
+         if (value1 == null)
+         {
+            // U AND F = F, U AND T = U
+            return ((Boolean)value2).booleanValue() ? null : Boolean.FALSE;
+         }
+         return value2;
+      }
+   }
+
+   private static final class OrExpression extends Expression
+   {
+      private final Operator source;
+
+      private final Expression left;
+
+      private final Expression right;
+
+      OrExpression(final Operator source, final Expression left, final Expression right)
+      {
+         this.source = source;
+         this.left = left;
+         this.right = right;
+      }
+
+      @Override
+      Object evaluate(final ServerMessage message) throws Exception
+      {
+         Object value1 = left.evaluate(message);
+         int type1 = typeOf(source, value1);
+
+         if (value1 != null)
+         {
+            if (type1 != Operator.BOOLEAN)
+            {
+               source.throwBadObjectException(type1);
+            }
+            if (((Boolean)value1).booleanValue())
+            {
+               return Boolean.TRUE;
+            }
+         }
+
+         Object value2 = right.evaluate(message);
+         int type2 = typeOf(source, value2);
+
+         if (value2 == null)
+         {
+            return null;
+         }
+         if (type2 != Operator.BOOLEAN)
+         {
+            source.throwBadObjectException(type2);
+         }
+         if (((Boolean)value2).booleanValue())
+         {
+            return Boolean.TRUE;
+         }
+         // F OR F = F, U OR F = U
+         return value1 == null ? null : Boolean.FALSE;
+      }
+   }
+
+   /**
+    * GT, GE, LT and LE
+    */
+   private static final class ComparisonExpression extends Expression
+   {
+      private final Operator source;
+
+      private final Expression left;
+
+      private final Expression right;
+
+      ComparisonExpression(final Operator source, final Expression left, final Expression right)
+      {
+         this.source = source;
+         this.left = left;
+         this.right = right;
+      }
+
+      @Override
+      Object evaluate(final ServerMessage message) throws Exception
+      {
+         Object value1 = left.evaluate(message);
+         return compare(source, source.operation, value1, typeOf(source, value1), right, message);
+      }
+   }
+
+   /**
+    * BETWEEN and NOT BETWEEN
+    */
+   private static final class BetweenExpression extends Expression
+   {
+      private final Operator source;
+
+      private final Expression value;
+
+      private final Expression lower;
+
+      private final Expression upper;
+
+      private final boolean not;
+
+      BetweenExpression(final Operator source,
+                        final Expression value,
+                        final Expression lower,
+                        final Expression upper,
+                        final boolean not)
+      {
+         this.source = source;
+         this.value = value;
+         this.lower = lower;
+         this.upper = upper;
+         this.not = not;
+      }
+
+      @Override
+      Object evaluate(final ServerMessage message) throws Exception
+      {
+         Object value1 = value.evaluate(message);
+         int type1 = typeOf(source, value1);
+
+         Boolean result = compare(source, not ? Operator.LT : Operator.GE, value1, type1, lower, message);
+
+         // BETWEEN stops on the first false, NOT BETWEEN on the first true
+         if (result == null || result.booleanValue() == not)
+         {
+            return result;
+         }
+
+         return compare(source, not ? Operator.GT : Operator.LE, value1, type1, upper, message);
+      }
+   }
+
+   /**
+    * ADD, SUB, MUL and DIV
+    */
+   private static final class ArithmeticExpression extends Expression
+   {
+      private final Operator source;
+
+      private final Expression left;
+
+      private final Expression right;
+
+      ArithmeticExpression(final Operator source, final Expression left, final Expression right)
+      {
+         this.source = source;
+         this.left = left;
+         this.right = right;
+      }
+
+      @Override
+      Object evaluate(final ServerMessage message) throws Exception
+      {
+         Object value1 = left.evaluate(message);
+         int type1 = typeOf(source, value1);
+         Object value2 = right.evaluate(message);
+         int type2 = typeOf(source, value2);
+
+         if (value1 == null || value2 == null)
+         {
+            return null;
+         }
+
+         if (type1 != Operator.LONG && type1 != Operator.DOUBLE)
+         {
+            source.throwBadObjectException(type1);
+         }
+         if (type2 != Operator.LONG && type2 != Operator.DOUBLE)
+         {
+            source.throwBadObjectException(type2);
+         }
+
+         if (type1 == Operator.LONG && type2 == Operator.LONG)
+         {
+            long long1 = ((Number)value1).longValue();
+            long long2 = ((Number)value2).longValue();
+
+            switch (source.operation)
+            {
+               case Operator.ADD:
+                  return Long.valueOf(long1 + long2);
+               case Operator.SUB:
+                  return Long.valueOf(long1 - long2);
+               case Operator.MUL:
+                  return Long.valueOf(long1 * long2);
+               default:
+                  // Can throw Divide by zero exception...
+                  return Long.valueOf(long1 / long2);
+            }
+         }
+
+         double double1 = ((Number)value1).doubleValue();
+         double double2 = ((Number)value2).doubleValue();
+
+         switch (source.operation)
+         {
+            case Operator.ADD:
+               return Double.valueOf(double1 + double2);
+            case Operator.SUB:
+               return Double.valueOf(double1 - double2);
+            case Operator.MUL:
+               return Double.valueOf(double1 * double2);
+            default:
+               return Double.valueOf(double1 / double2);
+         }
+      }
+   }
+
+   private static final class NegateExpression extends Expression
+   {
+      private final Operator source;
+
+      private final Expression operand;
+
+      NegateExpression(final Operator source, final Expression operand)
+      {
+         this.source = source;
+         this.operand = operand;
+      }
+
+      @Override
+      Object evaluate(final ServerMessage message) throws Exception
+      {
+         Object value = operand.evaluate(message);
+         int type = typeOf(source, value);
+
+         switch (type)
+         {
+            case 0:
+               return null;
+            case Operator.LONG:
+               return Long.valueOf(-((Number)value).longValue());
+            case Operator.DOUBLE:
+               return Double.valueOf(-((Number)value).doubleValue());
+            default:
+               source.throwBadObjectException(type);
+               return null;
+         }
+      }
+   }
+
+   /**
+    * LIKE, NOT LIKE, LIKE ESCAPE and NOT LIKE ESCAPE.
+    * <p>
+    * The grammar only allows string literals for the pattern and the escape character so the
+    * regular expression is built once, at compile time.
+    */
+   private static final class LikeExpression extends Expression
+   {
+      private final Operator source;
+
+      private final Expression operand;
+
+      private final RegExp regExp;
+
+      // An invalid pattern is reported on evaluation, the same way Operator does
+      private final Exception patternError;
+
+      private final boolean not;
+
+      LikeExpression(final Operator source,
+                     final Expression operand,
+                     final Object pattern,
+                     final Object escape,
+                     final boolean not)
+      {
+         this.source = source;
+         this.operand = operand;
+         this.not = not;
+
+         RegExp compiled = null;
+         Exception error = null;
+         try
+         {
+            Character escapeChar = null;
+            if (escape != null)
+            {
+               SimpleString escapeString = (SimpleString)escape;
+               if (escapeString.length() != 1)
+               {
+                  throw new Exception("LIKE ESCAPE: Bad escape character " + escapeString.toString());
+               }
+               escapeChar = Character.valueOf(escapeString.charAt(0));
+            }
+            compiled = new RegExp(pattern.toString(), escapeChar);
+         }
+         catch (Exception e)
+         {
+            error = e;
+         }
+         regExp = compiled;
+         patternError = error;
+      }
+
+      @Override
+      Object evaluate(final ServerMessage message) throws Exception
+      {
+         Object value = operand.evaluate(message);
+         int type = typeOf(source, value);
+
+         if (value == null)
+         {
+            return null;
+         }
+         if (type != Operator.SIMPLE_STRING)
+         {
+            source.throwBadObjectException(type);
+         }
+         if (patternError != null)
+         {
+            throw patternError;
+         }
+         return valueOf(regExp.isMatch(value) != not);
+      }
+   }
+
+   /**
+    * IS NULL and IS NOT NULL
+    */
+   private static final class IsNullExpression extends Expression
+   {
+      private final Operator source;
+
+      private final Expression operand;
+
+      private final boolean not;
+
+      IsNullExpression(final Operator source, final Expression operand, final boolean not)
+      {
+         this.source = source;
+         this.operand = operand;
+         this.not = not;
+      }
+
+      @Override
+      Object evaluate(final ServerMessage message) throws Exception
+      {
+         Object value = operand.evaluate(message);
+         typeOf(source, value);
+         return valueOf((value == null) != not);
+      }
+   }
+
+   /**
+    * IN and NOT IN. The set of string literals is never modified after parsing.
+    */
+   private static final class InExpression extends Expression
+   {
+      private final Operator source;
+
+      private final Expression operand;
+
+      private final Set<?> values;
+
+      private final boolean not;
+
+      InExpression(final Operator source, final Expression operand, final Set<?> values, final boolean not)
+      {
+         this.source = source;
+         this.operand = operand;
+         this.values = values;
+         this.not = not;
+      }
+
+      @Override
+      Object evaluate(final ServerMessage message) throws Exception
+      {
+         Object value = operand.evaluate(message);
+         int type = typeOf(source, value);
+
+         if (value == null)
+         {
+            return not ? null : Boolean.FALSE;
+         }
+         if (type != Operator.SIMPLE_STRING)
+         {
+            source.throwBadObjectException(type);
+         }
+         return valueOf(values.contains(value) != not);
+      }
+   }
+}
@@ -14,10 +14,9 @@
 package org.hornetq.core.filter.impl;
 
 import java.util.HashMap;
-import java.util.Map;
 
-import org.hornetq.api.core.FilterConstants;
 import org.hornetq.api.core.HornetQException;
+import org.hornetq.api.core.Pair;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.filter.Filter;
 import org.hornetq.core.server.HornetQMessageBundle;
@@ -62,11 +61,9 @@ public class FilterImpl implements Filter
 
    private final SimpleString sfilterString;
 
-   private final Map<SimpleString, Identifier> identifiers;
+   private final FilterCompiler.Expression expression;
 
-   private final Object result;
-
-   private final Class<? extends Object> resultType;
+   private final Pair<SimpleString, SimpleString> requiredEquality;
 
    // Static ---------------------------------------------------------
 
@@ -90,29 +87,30 @@ public class FilterImpl implements Filter
          return null;
       }
 
-      HashMap<SimpleString, Identifier> identifierMap = new HashMap<SimpleString, Identifier>();
-      Object result0;
+      Object result;
+      FilterCompiler.Expression expression;
       try
       {
-         result0 = new FilterParser().parse(filterStr, identifierMap);
+         result = new FilterParser().parse(filterStr, new HashMap<SimpleString, Identifier>());
+         expression = FilterCompiler.compile(result);
       }
       catch (Throwable e)
       {
          HornetQServerLogger.LOGGER.invalidFilter(e, filterStr);
          throw HornetQMessageBundle.BUNDLE.invalidFilter(e, filterStr);
       }
-      return new FilterImpl(filterStr, identifierMap, result0);
+      return new FilterImpl(filterStr, expression, FilterCompiler.findRequiredEquality(result));
    }
 
    // Constructors ---------------------------------------------------
 
-   private FilterImpl(final SimpleString str, final HashMap<SimpleString, Identifier> identifierMap,
-                      final Object result0)
+   private FilterImpl(final SimpleString str,
+                      final FilterCompiler.Expression expression,
+                      final Pair<SimpleString, SimpleString> requiredEquality)
    {
       sfilterString = str;
-      identifiers = identifierMap;
-      this.result = result0;
-      resultType = result.getClass();
+      this.expression = expression;
+      this.requiredEquality = requiredEquality;
    }
 
    // Filter implementation ---------------------------------------------------------------------
@@ -122,55 +120,42 @@ public class FilterImpl implements Filter
       return sfilterString;
    }
 
-   public synchronized boolean match(final ServerMessage message)
+   /**
+    * @return the name of a property that must be equal to {@link #getRequiredPropertyValue()} for a
+    *         message to match this filter, or null if the filter has no such term
+    */
+   public SimpleString getRequiredPropertyName()
+   {
+      return requiredEquality == null ? null : requiredEquality.getA();
+   }
+
+   /**
+    * @see #getRequiredPropertyName()
+    */
+   public SimpleString getRequiredPropertyValue()
+   {
+      return requiredEquality == null ? null : requiredEquality.getB();
+   }
+
+   /**
+    * The compiled expression keeps no state between evaluations, so this may be called concurrently
+    * by the routing threads and by every consumer of a queue.
+    */
+   public boolean match(final ServerMessage message)
    {
       try
       {
-         // Set the identifiers values
+         Object result = expression.evaluate(message);
 
-         for (Identifier id : identifiers.values())
+         if (result == null)
          {
-            Object val = null;
-
-            if (id.getName().startsWith(FilterConstants.HORNETQ_PREFIX))
-            {
-               // Look it up as header fields
-               val = getHeaderFieldValue(message, id.getName());
-            }
-
-            if (val == null)
-            {
-               val = message.getObjectProperty(id.getName());
-            }
-
-            id.setValue(val);
-
+            // https://issues.jboss.org/browse/HORNETQ-1188 -
+            // if this was going to NPE anyways, we just return false
+            // invalid properties will just fail the query
+            return false;
          }
 
-         if (resultType.equals(Identifier.class))
-         {
-            return (Boolean)((Identifier)result).getValue();
-         }
-         else if (resultType.equals(Operator.class))
-         {
-            Operator op = (Operator)result;
-            Object result = op.apply();
-            if (result == null)
-            {
-               // https://issues.jboss.org/browse/HORNETQ-1188 -
-               // if this was going to NPE anyways, we just return false
-               // invalid properties will just fail the query
-               return false;
-            }
-            else
-            {
-               return (Boolean)result;
-            }
-         }
-         else
-         {
-            throw new Exception("Bad object type: " + result);
-         }
+         return (Boolean)result;
       }
       catch (Exception e)
       {
@@ -214,39 +199,4 @@ public class FilterImpl implements Filter
    {
       return "FilterImpl [sfilterString=" + sfilterString + "]";
    }
-
-   // Private --------------------------------------------------------------------------
-
-   private Object getHeaderFieldValue(final ServerMessage msg, final SimpleString fieldName)
-   {
-      if (FilterConstants.HORNETQ_USERID.equals(fieldName))
-      {
-         // It's the stringified (hex) representation of a user id that can be used in a selector expression
-         return new SimpleString("ID:" + msg.getUserID());
-      }
-      else if (FilterConstants.HORNETQ_PRIORITY.equals(fieldName))
-      {
-         return Integer.valueOf(msg.getPriority());
-      }
-      else if (FilterConstants.HORNETQ_TIMESTAMP.equals(fieldName))
-      {
-         return msg.getTimestamp();
-      }
-      else if (FilterConstants.HORNETQ_DURABLE.equals(fieldName))
-      {
-         return msg.isDurable() ? FilterConstants.DURABLE : FilterConstants.NON_DURABLE;
-      }
-      else if (FilterConstants.HORNETQ_EXPIRATION.equals(fieldName))
-      {
-         return msg.getExpiration();
-      }
-      else if (FilterConstants.HORNETQ_SIZE.equals(fieldName))
-      {
-         return msg.getEncodeSize();
-      }
-      else
-      {
-         return null;
-      }
-   }
 }
@@ -48,6 +48,8 @@ import org.hornetq.api.core.management.QueueControl;
 import org.hornetq.core.config.BridgeConfiguration;
 import org.hornetq.core.config.Configuration;
 import org.hornetq.core.config.DivertConfiguration;
+import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.core.journal.impl.TimedBuffer;
 import org.hornetq.core.messagecounter.MessageCounterManager;
 import org.hornetq.core.messagecounter.impl.MessageCounterManagerImpl;
 import org.hornetq.core.persistence.StorageManager;
@@ -276,6 +278,57 @@ public class HornetQServerControlImpl extends AbstractControl implements HornetQ
       }
    }
 
+   public boolean isJournalBufferAdaptive()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return configuration.isJournalBufferAdaptive();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public int getJournalCurrentBufferTimeout()
+   {
+      checkStarted();
+
+      TimedBuffer buffer = storageManager.getMessageJournalBuffer();
+
+      return buffer == null ? getJournalBufferTimeout() : buffer.getCurrentTimeout();
+   }
+
+   public long getJournalSyncLatency()
+   {
+      checkStarted();
+
+      TimedBuffer buffer = storageManager.getMessageJournalBuffer();
+
+      return buffer == null ? 0 : buffer.getSyncLatency();
+   }
+
+   public double getJournalWriteRate()
+   {
+      checkStarted();
+
+      TimedBuffer buffer = storageManager.getMessageJournalBuffer();
+
+      return buffer == null ? 0 : buffer.getWriteRate();
+   }
+
+   public double getJournalFlushRate()
+   {
+      checkStarted();
+
+      TimedBuffer buffer = storageManager.getMessageJournalBuffer();
+
+      return buffer == null ? 0 : buffer.getFlushRate();
+   }
+
    public void setFailoverOnServerShutdown(boolean failoverOnServerShutdown)
    {
       checkStarted();
@@ -398,6 +451,141 @@ public class HornetQServerControlImpl extends AbstractControl implements HornetQ
       }
    }
 
+   public int getJournalCompactMaxFiles()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return configuration.getJournalCompactMaxFiles();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public int getJournalCompactIORate()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return configuration.getJournalCompactIORate();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public int getJournalCompactProgress()
+   {
+      checkStarted();
+
+      // the shards compact independently, the least advanced one tells how far the journal is
+      int progress = -1;
+
+      for (JournalImpl shard : storageManager.getMessageJournalShards())
+      {
+         int shardProgress = shard.getCompactProgress();
+
+         if (shardProgress != -1 && (progress == -1 || shardProgress < progress))
+         {
+            progress = shardProgress;
+         }
+      }
+
+      return progress;
+   }
+
+   public long getJournalCompactReclaimedBytes()
+   {
+      checkStarted();
+
+      long reclaimed = 0;
+
+      for (JournalImpl shard : storageManager.getMessageJournalShards())
+      {
+         reclaimed += shard.getCompactReclaimedBytes();
+      }
+
+      return reclaimed;
+   }
+
+   public long getJournalCompactPauseTime()
+   {
+      checkStarted();
+
+      long pause = 0;
+
+      for (JournalImpl shard : storageManager.getMessageJournalShards())
+      {
+         pause += shard.getCompactPauseTime();
+      }
+
+      return pause;
+   }
+
+   public long getJournalLastCompactPauseTime()
+   {
+      checkStarted();
+
+      long pause = 0;
+
+      for (JournalImpl shard : storageManager.getMessageJournalShards())
+      {
+         pause = Math.max(pause, shard.getLastCompactPauseTime());
+      }
+
+      return pause;
+   }
+
+   public int getJournalMaxReadyFiles()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return configuration.getJournalMaxReadyFiles();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getJournalFileStalls()
+   {
+      checkStarted();
+
+      long stalls = 0;
+
+      for (JournalImpl shard : storageManager.getMessageJournalShards())
+      {
+         stalls += shard.getFileStalls();
+      }
+
+      return stalls;
+   }
+
+   public long getJournalFileStallTime()
+   {
+      checkStarted();
+
+      long stallTime = 0;
+
+      for (JournalImpl shard : storageManager.getMessageJournalShards())
+      {
+         stallTime += shard.getFileStallTime();
+      }
+
+      return stallTime;
+   }
+
    public boolean isPersistenceEnabled()
    {
       checkStarted();
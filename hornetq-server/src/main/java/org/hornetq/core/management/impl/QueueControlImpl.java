@@ -30,6 +30,7 @@ import org.hornetq.core.filter.Filter;
 import org.hornetq.core.filter.impl.FilterImpl;
 import org.hornetq.core.messagecounter.MessageCounter;
 import org.hornetq.core.messagecounter.impl.MessageCounterHelper;
+import org.hornetq.core.paging.cursor.PageSubscription;
 import org.hornetq.core.persistence.StorageManager;
 import org.hornetq.core.postoffice.Binding;
 import org.hornetq.core.postoffice.PostOffice;
@@ -257,6 +258,51 @@ public class QueueControlImpl extends AbstractControl implements QueueControl
       }
    }
 
+   public int getGroupCount()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return queue.getGroupCount();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getGroupsEvicted()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return queue.getGroupsEvicted();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getGroupsRebalanced()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         return queue.getGroupsRebalanced();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
    public long getID()
    {
       checkStarted();
@@ -287,6 +333,40 @@ public class QueueControlImpl extends AbstractControl implements QueueControl
       }
    }
 
+   public int getPagePrefetchDepth()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         PageSubscription subscription = queue.getPageSubscription();
+
+         return subscription == null ? 0 : subscription.getPrefetchDepth();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getPageStallTime()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         PageSubscription subscription = queue.getPageSubscription();
+
+         return subscription == null ? 0 : subscription.getPrefetchStallTime();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
    public String getDeadLetterAddress()
    {
       checkStarted();
@@ -909,6 +989,7 @@ public class QueueControlImpl extends AbstractControl implements QueueControl
                obj.put("sessionID", serverConsumer.getSessionID());
                obj.put("browseOnly", serverConsumer.isBrowseOnly());
                obj.put("creationTime", serverConsumer.getCreationTime());
+               obj.put("clientBufferedBytes", serverConsumer.getClientBufferedBytes());
 
                jsonArray.put(obj);
             }
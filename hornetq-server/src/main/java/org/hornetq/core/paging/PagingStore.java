@@ -73,6 +73,10 @@ public interface PagingStore extends HornetQComponent
 
    /**
     * Write message to page if we are paging.
+    * <p>
+    * Once it returns {@code true} the message is written to the page file. It is synced along with
+    * its transaction, if any, or else only with journal-sync-non-transactional. The messages paged
+    * concurrently are written together, if that write fails each of their callers gets the error.
     * @param readLock a read lock from the storage manager. This is an encapsulation violation made
     *           to keep the code less complex. If give {@code null} the method will throw a
     *           {@link NullPointerException}
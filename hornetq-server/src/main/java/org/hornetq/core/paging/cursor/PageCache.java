@@ -14,7 +14,6 @@
 package org.hornetq.core.paging.cursor;
 
 import org.hornetq.core.paging.PagedMessage;
-import org.hornetq.utils.SoftValueHashMap;
 
 /**
  * A PageCache
@@ -23,7 +22,7 @@ import org.hornetq.utils.SoftValueHashMap;
  *
  *
  */
-public interface PageCache extends SoftValueHashMap.ValueCache
+public interface PageCache
 {
    long getPageId();
 
@@ -45,6 +44,16 @@ public interface PageCache extends SoftValueHashMap.ValueCache
     */
    PagedMessage getMessage(int messageNumber);
 
+   /**
+    * @return whether the message can be looked up without waiting for it to be read from the page
+    */
+   boolean isLoaded(int messageNumber);
+
+   /**
+    * @return the memory taken by the messages read so far
+    */
+   long getMemoryEstimate();
+
    /**
     * When the cache is being created,
     * We need to first read the files before other threads can get messages from this.
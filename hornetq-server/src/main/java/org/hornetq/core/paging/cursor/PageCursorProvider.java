@@ -28,10 +28,24 @@ public interface PageCursorProvider
 
    PageCache getPageCache(long pageNr);
 
+   /**
+    * @return whether the page is cached, or being read into the cache, so looking it up does not
+    *         read the page file
+    */
+   boolean isCached(long pageNr);
+
    PagedReference newReference(final PagePosition pos, final PagedMessage msg, PageSubscription sub);
 
    void addPageCache(PageCache cache);
 
+   /**
+    * Reads and decodes the messages of a page in the background, so they are cached by the time a
+    * cursor gets to them.
+    * @return {@code false} if the page can't be prefetched, as it is the page being written or the
+    *         cache has no room left for it
+    */
+   boolean prefetch(long pageNr);
+
    /**
     * @param queueId The cursorID should be the same as the queueId associated for persistence
     * @return
@@ -64,8 +78,32 @@ public interface PageCursorProvider
     */
    void cleanup();
 
+   /**
+    * @param size the number of full pages the cache may hold, it is bounded by the memory they
+    *           would take
+    */
    void setCacheMaxSize(int size);
 
+   /**
+    * @return the number of page lookups found in the cache
+    */
+   long getCacheHits();
+
+   /**
+    * @return the number of page lookups which had to read the page file
+    */
+   long getCacheMisses();
+
+   /**
+    * @return the number of pages evicted from the cache to keep it under its maximum size
+    */
+   long getCacheEvictions();
+
+   /**
+    * @return the memory taken by the messages of the cached pages
+    */
+   long getCacheMemorySize();
+
    /**
     * @param pageCursorImpl
     */
@@ -149,6 +149,16 @@ public interface PageSubscription
     */
    Executor getExecutor();
 
+   /**
+    * @return the number of pages being read ahead of the cursor, as of the last page it moved to
+    */
+   int getPrefetchDepth();
+
+   /**
+    * @return the time in milliseconds the cursor waited for the pages to be read
+    */
+   long getPrefetchStallTime();
+
    /**
     * @param deletedPage
     * @throws Exception
@@ -36,6 +36,8 @@ public class LivePageCacheImpl implements LivePageCache
 
    private boolean isLive = true;
 
+   private long memoryEstimate;
+
    public LivePageCacheImpl(final Page page)
    {
       this.page = page;
@@ -76,6 +78,18 @@ public class LivePageCacheImpl implements LivePageCache
       }
    }
 
+   @Override
+   public boolean isLoaded(int messageNumber)
+   {
+      return true;
+   }
+
+   @Override
+   public synchronized long getMemoryEstimate()
+   {
+      return memoryEstimate;
+   }
+
    @Override
    public void lock()
    {
@@ -102,6 +116,7 @@ public class LivePageCacheImpl implements LivePageCache
          ((LargeServerMessage)message.getMessage()).incrementDelayDeletionCount();
       }
       this.messages.add(message);
+      memoryEstimate += message.getMessage().getMemoryEstimate();
    }
 
    @Override
@@ -13,12 +13,14 @@
 
 package org.hornetq.core.paging.cursor.impl;
 
+import java.util.List;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.hornetq.core.paging.PagedMessage;
 import org.hornetq.core.paging.cursor.PageCache;
 import org.hornetq.core.paging.impl.Page;
+import org.hornetq.core.persistence.StorageManager;
 
 /**
  * The caching associated to a single page.
@@ -32,6 +34,11 @@ class PageCacheImpl implements PageCache
 
    // Constants -----------------------------------------------------
 
+   /**
+    * How much of an indexed page is read at once, from the message requested on.
+    */
+   static final int READ_AHEAD_BYTES = 64 * 1024;
+
    // Attributes ----------------------------------------------------
 
    private final ReadWriteLock lock = new ReentrantReadWriteLock();
@@ -40,6 +47,13 @@ class PageCacheImpl implements PageCache
 
    private final Page page;
 
+   private StorageManager storageManager;
+
+   // the record offsets of an indexed page, whose messages are only read when requested
+   private int[] offsets;
+
+   private volatile long memoryEstimate;
+
    // Static --------------------------------------------------------
 
    // Constructors --------------------------------------------------
@@ -54,12 +68,14 @@ class PageCacheImpl implements PageCache
    @Override
    public PagedMessage getMessage(final int messageNumber)
    {
+      PagedMessage message;
+
       lock.readLock().lock();
       try
       {
          if (messageNumber < messages.length)
          {
-            return messages[messageNumber];
+            message = messages[messageNumber];
          }
          else
          {
@@ -70,6 +86,46 @@ class PageCacheImpl implements PageCache
       {
          lock.readLock().unlock();
       }
+
+      if (message == null && offsets != null)
+      {
+         lock.writeLock().lock();
+         try
+         {
+            message = messages[messageNumber];
+
+            if (message == null)
+            {
+               readMessages(messageNumber, readAheadCount(messageNumber));
+
+               message = messages[messageNumber];
+            }
+         }
+         finally
+         {
+            lock.writeLock().unlock();
+         }
+      }
+
+      return message;
+   }
+
+   @Override
+   public boolean isLoaded(final int messageNumber)
+   {
+      // the write lock is held while the page, or some of its messages, are read
+      if (!lock.readLock().tryLock())
+      {
+         return false;
+      }
+      try
+      {
+         return messageNumber >= messages.length || messages[messageNumber] != null;
+      }
+      finally
+      {
+         lock.readLock().unlock();
+      }
    }
 
    public long getPageId()
@@ -90,6 +146,28 @@ class PageCacheImpl implements PageCache
    public void setMessages(final PagedMessage[] messages)
    {
       this.messages = messages;
+
+      long estimate = 0;
+      for (PagedMessage message : messages)
+      {
+         estimate += message.getMessage().getMemoryEstimate();
+      }
+      memoryEstimate = estimate;
+   }
+
+   /**
+    * Makes the messages of the page read on demand, a few at a time, through the page index.
+    */
+   public void setIndex(final StorageManager storageManager, final int[] offsets)
+   {
+      this.storageManager = storageManager;
+      this.offsets = offsets;
+      this.messages = new PagedMessage[offsets.length];
+   }
+
+   public long getMemoryEstimate()
+   {
+      return memoryEstimate;
    }
 
    public int getNumberOfMessages()
@@ -124,6 +202,76 @@ class PageCacheImpl implements PageCache
    @Override
    public PagedMessage[] getMessages()
    {
-      return messages;
+      lock.writeLock().lock();
+      try
+      {
+         for (int i = 0; i < messages.length; i++)
+         {
+            if (messages[i] == null)
+            {
+               int count = 1;
+               while (i + count < messages.length && messages[i + count] == null)
+               {
+                  count++;
+               }
+               readMessages(i, count);
+               i += count - 1;
+            }
+         }
+
+         return messages;
+      }
+      finally
+      {
+         lock.writeLock().unlock();
+      }
+   }
+
+   // Private -------------------------------------------------------
+
+   /**
+    * The number of messages not read yet from {@code firstMessage} on, up to
+    * {@link #READ_AHEAD_BYTES} of the page file.
+    */
+   private int readAheadCount(final int firstMessage)
+   {
+      int count = 1;
+      while (firstMessage + count < messages.length && messages[firstMessage + count] == null &&
+             offsets[firstMessage + count] - offsets[firstMessage] < READ_AHEAD_BYTES)
+      {
+         count++;
+      }
+      return count;
+   }
+
+   /**
+    * Has to be called holding the write lock.
+    */
+   private void readMessages(final int firstMessage, final int count)
+   {
+      try
+      {
+         storageManager.beforePageRead();
+         try
+         {
+            List<PagedMessage> read = page.read(storageManager, offsets, firstMessage, count);
+
+            long estimate = 0;
+            for (int i = 0; i < count; i++)
+            {
+               messages[firstMessage + i] = read.get(i);
+               estimate += read.get(i).getMessage().getMemoryEstimate();
+            }
+            memoryEstimate += estimate;
+         }
+         finally
+         {
+            storageManager.afterPageRead();
+         }
+      }
+      catch (Exception e)
+      {
+         throw new RuntimeException("Couldn't read messages from page " + page.getPageId() + " - " + e.getMessage(), e);
+      }
    }
 }
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.paging.cursor.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.hornetq.core.paging.cursor.PageCache;
+import org.hornetq.core.server.HornetQServerLogger;
+
+/**
+ * The page caches of an address, by page id, bounded by the memory taken by their messages.
+ * <p>
+ * Once over its maximum size, the least recently used caches are evicted until it fits again. The
+ * cache of the page being written is never evicted, and the caches prefetched for the cursors
+ * are only evicted once there's nothing else left to evict. As the messages of a cache may be
+ * read after it was added, its size is updated every time it is looked up, and the size of all
+ * the caches every time one is added.
+ * <p>
+ * This class is not thread safe.
+ */
+final class PageCacheLRU
+{
+   // Constants -----------------------------------------------------
+
+   private static final boolean isTrace = HornetQServerLogger.LOGGER.isTraceEnabled();
+
+   // Attributes ----------------------------------------------------
+
+   // in access order, the least recently used first
+   private final LinkedHashMap<Long, CacheEntry> entries = new LinkedHashMap<Long, CacheEntry>(16, 0.75f, true);
+
+   private long maxSize;
+
+   private long size;
+
+   private long evictions;
+
+   // Constructors --------------------------------------------------
+
+   /**
+    * @param maxSize the maximum size in bytes, unbounded if {@code <= 0}
+    */
+   PageCacheLRU(final long maxSize)
+   {
+      this.maxSize = maxSize;
+   }
+
+   // Public --------------------------------------------------------
+
+   public void setMaxSize(final long maxSize)
+   {
+      this.maxSize = maxSize;
+      checkSize(null);
+   }
+
+   public long getMaxSize()
+   {
+      return maxSize;
+   }
+
+   public PageCache get(final long pageId)
+   {
+      CacheEntry entry = entries.get(pageId);
+
+      if (entry == null)
+      {
+         return null;
+      }
+
+      entry.prefetched = false;
+
+      updateSize(entry);
+      checkSize(entry);
+
+      return entry.cache;
+   }
+
+   /**
+    * Unlike {@link #get(long)}, it doesn't count as a use of the cache.
+    */
+   public boolean contains(final long pageId)
+   {
+      return entries.containsKey(pageId);
+   }
+
+   public PageCache put(final PageCache cache)
+   {
+      return put(cache, false);
+   }
+
+   /**
+    * @param prefetched whether the cache is read ahead of the cursors, until it is looked up
+    */
+   public PageCache put(final PageCache cache, final boolean prefetched)
+   {
+      CacheEntry entry = new CacheEntry(cache);
+      entry.prefetched = prefetched;
+
+      CacheEntry old = entries.put(cache.getPageId(), entry);
+
+      if (old != null)
+      {
+         size -= old.size;
+      }
+
+      updateSizes();
+      checkSize(entry);
+
+      return old == null ? null : old.cache;
+   }
+
+   /**
+    * Updates the size of the caches, as their messages were read, evicting them as needed.
+    */
+   public void update()
+   {
+      updateSizes();
+      checkSize(null);
+   }
+
+   public PageCache remove(final long pageId)
+   {
+      CacheEntry entry = entries.remove(pageId);
+
+      if (entry == null)
+      {
+         return null;
+      }
+
+      size -= entry.size;
+
+      return entry.cache;
+   }
+
+   public Collection<PageCache> values()
+   {
+      ArrayList<PageCache> values = new ArrayList<PageCache>(entries.size());
+
+      for (CacheEntry entry : entries.values())
+      {
+         values.add(entry.cache);
+      }
+
+      return values;
+   }
+
+   public int size()
+   {
+      return entries.size();
+   }
+
+   /**
+    * The memory taken by the messages of the caches, as of their last lookup.
+    */
+   public long getMemorySize()
+   {
+      return size;
+   }
+
+   /**
+    * The memory taken by the messages of the caches prefetched and not looked up yet.
+    */
+   public long getPrefetchedSize()
+   {
+      long prefetchedSize = 0;
+
+      for (CacheEntry entry : entries.values())
+      {
+         if (entry.prefetched)
+         {
+            prefetchedSize += entry.cache.getMemoryEstimate();
+         }
+      }
+
+      return prefetchedSize;
+   }
+
+   public long getEvictions()
+   {
+      return evictions;
+   }
+
+   public void clear()
+   {
+      entries.clear();
+      size = 0;
+   }
+
+   // Private -------------------------------------------------------
+
+   private void updateSizes()
+   {
+      for (CacheEntry entry : entries.values())
+      {
+         updateSize(entry);
+      }
+   }
+
+   private void updateSize(final CacheEntry entry)
+   {
+      long newSize = entry.cache.getMemoryEstimate();
+      size += newSize - entry.size;
+      entry.size = newSize;
+   }
+
+   /**
+    * Evicts the least recently used caches but {@code accessed} until the size fits, the
+    * prefetched ones last.
+    */
+   private void checkSize(final CacheEntry accessed)
+   {
+      evict(accessed, false);
+      evict(accessed, true);
+   }
+
+   private void evict(final CacheEntry accessed, final boolean evictPrefetched)
+   {
+      if (maxSize <= 0 || size <= maxSize)
+      {
+         return;
+      }
+
+      Iterator<CacheEntry> iterator = entries.values().iterator();
+
+      while (size > maxSize && iterator.hasNext())
+      {
+         CacheEntry entry = iterator.next();
+
+         if (entry != accessed && !entry.cache.isLive() && (evictPrefetched || !entry.prefetched))
+         {
+            iterator.remove();
+            size -= entry.size;
+            evictions++;
+
+            if (isTrace)
+            {
+               HornetQServerLogger.LOGGER.trace("Evicting " + entry.cache + " from the page cache");
+            }
+         }
+      }
+   }
+
+   // Inner classes -------------------------------------------------
+
+   private static final class CacheEntry
+   {
+      final PageCache cache;
+
+      long size;
+
+      boolean prefetched;
+
+      CacheEntry(final PageCache cache)
+      {
+         this.cache = cache;
+      }
+   }
+}
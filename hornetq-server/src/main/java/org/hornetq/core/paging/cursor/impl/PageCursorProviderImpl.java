@@ -35,8 +35,8 @@ import org.hornetq.core.persistence.StorageManager;
 import org.hornetq.core.server.HornetQServerLogger;
 import org.hornetq.core.transaction.Transaction;
 import org.hornetq.core.transaction.impl.TransactionImpl;
+import org.hornetq.utils.ExecutorFactory;
 import org.hornetq.utils.FutureLatch;
-import org.hornetq.utils.SoftValueHashMap;
 /**
  * A PageProviderIMpl
  *
@@ -69,7 +69,21 @@ public class PageCursorProviderImpl implements PageCursorProvider
    // This is the same executor used at the PageStoreImpl. One Executor per pageStore
    private final Executor executor;
 
-   private final SoftValueHashMap<Long, PageCache> softCache;
+   // the pages are prefetched on executors of their own so they are read and decoded in parallel,
+   // or on the executor of the pageStore when null
+   private final ExecutorFactory prefetchExecutorFactory;
+
+   private final AtomicInteger pendingPrefetches = new AtomicInteger(0);
+
+   // the memory taken by the messages of the last page prefetched
+   private volatile long pageMemoryEstimate;
+
+   private final PageCacheLRU pageCaches;
+
+   // the page cache lookups, guarded by the cache
+   private long cacheHits;
+
+   private long cacheMisses;
 
    private final ConcurrentMap<Long, PageSubscription> activeCursors = new ConcurrentHashMap<Long, PageSubscription>();
 
@@ -81,11 +95,21 @@ public class PageCursorProviderImpl implements PageCursorProvider
                                  final StorageManager storageManager,
                                  final Executor executor,
                                  final int maxCacheSize)
+   {
+      this(pagingStore, storageManager, executor, null, maxCacheSize);
+   }
+
+   public PageCursorProviderImpl(final PagingStore pagingStore,
+                                 final StorageManager storageManager,
+                                 final Executor executor,
+                                 final ExecutorFactory prefetchExecutorFactory,
+                                 final int maxCacheSize)
    {
       this.pagingStore = pagingStore;
       this.storageManager = storageManager;
       this.executor = executor;
-      this.softCache = new SoftValueHashMap<Long, PageCache>(maxCacheSize);
+      this.prefetchExecutorFactory = prefetchExecutorFactory;
+      this.pageCaches = new PageCacheLRU(getCacheMaxBytes(maxCacheSize));
    }
 
    // Public --------------------------------------------------------
@@ -134,19 +158,32 @@ public class PageCursorProviderImpl implements PageCursorProvider
    }
 
    public PageCache getPageCache(final long pageId)
+   {
+      return getPageCache(pageId, false);
+   }
+
+   public boolean isCached(final long pageId)
+   {
+      synchronized (pageCaches)
+      {
+         return pageCaches.contains(pageId);
+      }
+   }
+
+   private PageCache getPageCache(final long pageId, final boolean prefetch)
    {
       try
       {
          boolean needToRead = false;
          PageCache cache = null;
-         synchronized (softCache)
+         synchronized (pageCaches)
          {
             if (pageId > pagingStore.getCurrentWritingPage())
             {
                return null;
             }
 
-            cache = softCache.get(pageId);
+            cache = pageCaches.get(pageId);
             if (cache == null)
             {
                if (!pagingStore.checkPageFileExists((int)pageId))
@@ -154,6 +191,11 @@ public class PageCursorProviderImpl implements PageCursorProvider
                   return null;
                }
 
+               if (!prefetch)
+               {
+                  cacheMisses++;
+               }
+
                cache = createPageCache(pageId);
                needToRead = true;
                // anyone reading from this cache will have to wait reading to finish first
@@ -163,7 +205,11 @@ public class PageCursorProviderImpl implements PageCursorProvider
                {
                   HornetQServerLogger.LOGGER.trace("adding " + pageId +  " into cursor = " + this.pagingStore.getAddress());
                }
-               softCache.put(pageId, cache);
+               pageCaches.put(cache, prefetch);
+            }
+            else if (!prefetch)
+            {
+               cacheHits++;
             }
          }
 
@@ -177,10 +223,22 @@ public class PageCursorProviderImpl implements PageCursorProvider
                page = pagingStore.createPage((int)pageId);
 
                storageManager.beforePageRead();
-               page.open();
 
-               List<PagedMessage> pgdMessages = page.read(storageManager);
-               cache.setMessages(pgdMessages.toArray(new PagedMessage[pgdMessages.size()]));
+               int[] index = page.readIndex();
+
+               if (index != null)
+               {
+                  // the messages are read as the cursors get to them
+                  ((PageCacheImpl)cache).setIndex(storageManager, index);
+                  page = null;
+               }
+               else
+               {
+                  page.open();
+
+                  List<PagedMessage> pgdMessages = page.read(storageManager);
+                  cache.setMessages(pgdMessages.toArray(new PagedMessage[pgdMessages.size()]));
+               }
             }
             finally
             {
@@ -207,32 +265,143 @@ public class PageCursorProviderImpl implements PageCursorProvider
       }
    }
 
+   public boolean prefetch(final long pageId)
+   {
+      synchronized (pageCaches)
+      {
+         // the page being written is already cached
+         if (pageId >= pagingStore.getCurrentWritingPage())
+         {
+            return false;
+         }
+
+         if (pageCaches.contains(pageId))
+         {
+            return true;
+         }
+
+         long maxSize = pageCaches.getMaxSize();
+
+         // the messages of a page usually take more memory than the page file
+         long pageSize = Math.max(pagingStore.getPageSizeBytes(), pageMemoryEstimate);
+
+         // the pages being prefetched are accounted as full pages until they are read, and room is
+         // left for the page the cursors are reading
+         if (maxSize > 0 &&
+             pageCaches.getPrefetchedSize() + (pendingPrefetches.get() + 2) * pageSize > maxSize)
+         {
+            return false;
+         }
+
+         pendingPrefetches.incrementAndGet();
+      }
+
+      Executor prefetchExecutor = prefetchExecutorFactory == null ? executor : prefetchExecutorFactory.getExecutor();
+
+      prefetchExecutor.execute(new Runnable()
+      {
+         public void run()
+         {
+            try
+            {
+               if (!pagingStore.isStarted())
+               {
+                  return;
+               }
+
+               PageCache cache = getPageCache(pageId, true);
+
+               if (cache != null)
+               {
+                  // the messages of an indexed page are only decoded when asked for
+                  cache.getMessages();
+
+                  if (!cache.isLive())
+                  {
+                     pageMemoryEstimate = cache.getMemoryEstimate();
+                  }
+               }
+            }
+            catch (Exception e)
+            {
+               HornetQServerLogger.LOGGER.debug("Couldn't prefetch page " + pageId, e);
+            }
+            finally
+            {
+               synchronized (pageCaches)
+               {
+                  pendingPrefetches.decrementAndGet();
+                  // accounts for the messages just read
+                  pageCaches.update();
+               }
+            }
+         }
+      });
+
+      return true;
+   }
+
    public void addPageCache(PageCache cache)
    {
-      synchronized (softCache)
+      synchronized (pageCaches)
       {
-         softCache.put(cache.getPageId(), cache);
+         pageCaches.put(cache);
       }
    }
 
    public void setCacheMaxSize(final int size)
    {
-      softCache.setMaxElements(size);
+      synchronized (pageCaches)
+      {
+         pageCaches.setMaxSize(getCacheMaxBytes(size));
+      }
    }
 
    public int getCacheSize()
    {
-      synchronized (softCache)
+      synchronized (pageCaches)
       {
-         return softCache.size();
+         return pageCaches.size();
+      }
+   }
+
+   public long getCacheHits()
+   {
+      synchronized (pageCaches)
+      {
+         return cacheHits;
+      }
+   }
+
+   public long getCacheMisses()
+   {
+      synchronized (pageCaches)
+      {
+         return cacheMisses;
+      }
+   }
+
+   public long getCacheEvictions()
+   {
+      synchronized (pageCaches)
+      {
+         return pageCaches.getEvictions();
+      }
+   }
+
+   public long getCacheMemorySize()
+   {
+      synchronized (pageCaches)
+      {
+         return pageCaches.getMemorySize();
       }
    }
 
    public void clearCache()
    {
-      synchronized (softCache)
+      synchronized (pageCaches)
       {
-         softCache.clear();
+         pageCaches.clear();
       }
    }
 
@@ -514,9 +683,9 @@ public class PageCursorProviderImpl implements PageCursorProvider
          {
             PageCache cache;
             PagedMessage[] pgdMessages;
-            synchronized (softCache)
+            synchronized (pageCaches)
             {
-               cache = softCache.get((long)depagedPage.getPageId());
+               cache = pageCaches.get((long)depagedPage.getPageId());
             }
 
             if (isTrace)
@@ -560,9 +729,9 @@ public class PageCursorProviderImpl implements PageCursorProvider
             depagedPage.delete(pgdMessages);
             onDeletePage(depagedPage);
 
-            synchronized (softCache)
+            synchronized (pageCaches)
             {
-               softCache.remove((long)depagedPage.getPageId());
+               pageCaches.remove((long)depagedPage.getPageId());
             }
          }
       }
@@ -625,7 +794,7 @@ public class PageCursorProviderImpl implements PageCursorProvider
    public void printDebug()
    {
       System.out.println("Debug information for PageCursorProviderImpl:");
-      for (PageCache cache : softCache.values())
+      for (PageCache cache : pageCaches.values())
       {
          System.out.println("Cache " + cache);
       }
@@ -643,6 +812,14 @@ public class PageCursorProviderImpl implements PageCursorProvider
 
    // Private -------------------------------------------------------
 
+   /**
+    * The cache is bounded by the memory {@code maxCacheSize} full pages would take.
+    */
+   private long getCacheMaxBytes(final int maxCacheSize)
+   {
+      return (long)maxCacheSize * pagingStore.getPageSizeBytes();
+   }
+
    /**
     * This method is synchronized because we want it to be atomic with the cursors being used
     */
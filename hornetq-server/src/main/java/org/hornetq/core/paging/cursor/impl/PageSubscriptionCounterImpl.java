@@ -14,7 +14,9 @@
 package org.hornetq.core.paging.cursor.impl;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -103,16 +105,9 @@ public class PageSubscriptionCounterImpl implements PageSubscriptionCounter
       }
       else
       {
-         if (persistent)
-         {
-            tx.setContainsPersistent();
-            long id = storage.storePageCounterInc(tx.getID(), this.subscriptionID, add);
-            applyIncrement(tx, id, add);
-         }
-         else
-         {
-            applyIncrement(tx, -1, add);
-         }
+         // stored as a single record with the other increments of the transaction when it is
+         // prepared or committed
+         getOperations(tx).addIncrement(this, add);
       }
    }
 
@@ -123,6 +118,11 @@ public class PageSubscriptionCounterImpl implements PageSubscriptionCounter
     * @param add
     */
    public void applyIncrement(Transaction tx, long recordID1, int add)
+   {
+      getOperations(tx).operations.add(new ItemOper(this, recordID1, add));
+   }
+
+   private static CounterOperations getOperations(final Transaction tx)
    {
       CounterOperations oper = (CounterOperations)tx.getProperty(TransactionPropertyIndexes.PAGE_COUNT_INC);
 
@@ -133,7 +133,7 @@ public class PageSubscriptionCounterImpl implements PageSubscriptionCounter
          tx.addOperation(oper);
       }
 
-      oper.operations.add(new ItemOper(this, recordID1, add));
+      return oper;
    }
 
    public synchronized void loadValue(final long recordID1, final long value1)
@@ -326,6 +326,57 @@ public class PageSubscriptionCounterImpl implements PageSubscriptionCounter
    {
       LinkedList<ItemOper> operations = new LinkedList<ItemOper>();
 
+      // the increments not stored yet, added up by counter
+      final Map<PageSubscriptionCounterImpl, ItemOper> pendingOperations =
+               new LinkedHashMap<PageSubscriptionCounterImpl, ItemOper>();
+
+      void addIncrement(final PageSubscriptionCounterImpl counter, final int add)
+      {
+         ItemOper oper = pendingOperations.get(counter);
+
+         if (oper == null)
+         {
+            pendingOperations.put(counter, new ItemOper(counter, -1, add));
+         }
+         else
+         {
+            oper.ammount += add;
+         }
+      }
+
+      @Override
+      public void beforePrepare(Transaction tx) throws Exception
+      {
+         storePendingOperations(tx);
+      }
+
+      @Override
+      public void beforeCommit(Transaction tx) throws Exception
+      {
+         storePendingOperations(tx);
+      }
+
+      private void storePendingOperations(final Transaction tx) throws Exception
+      {
+         for (ItemOper oper : pendingOperations.values())
+         {
+            if (oper.ammount == 0)
+            {
+               continue;
+            }
+
+            if (oper.counter.persistent)
+            {
+               tx.setContainsPersistent();
+               oper.id = oper.counter.storage.storePageCounterInc(tx.getID(), oper.counter.subscriptionID, oper.ammount);
+            }
+
+            operations.add(oper);
+         }
+
+         pendingOperations.clear();
+      }
+
       @Override
       public void afterCommit(Transaction tx)
       {
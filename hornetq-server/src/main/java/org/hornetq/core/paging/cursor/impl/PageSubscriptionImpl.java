@@ -26,6 +26,7 @@ import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -61,6 +62,9 @@ import org.hornetq.utils.LinkedListIterator;
  */
 final class PageSubscriptionImpl implements PageSubscription
 {
+   // the number of pages read ahead of the cursor, as long as the page cache has room for them
+   private static final int PREFETCH_PAGES = 4;
+
    private final boolean isTrace = HornetQServerLogger.LOGGER.isTraceEnabled();
 
    private boolean empty = true;
@@ -96,6 +100,11 @@ final class PageSubscriptionImpl implements PageSubscription
 
    private final AtomicLong deliveredCount = new AtomicLong(0);
 
+   private volatile int prefetchDepth;
+
+   // the time the cursor waited for the pages to be read, in nanoseconds
+   private final AtomicLong stallTime = new AtomicLong(0);
+
    // We only store the position for redeliveries. They will be read from the SoftCache again during delivery.
    private final java.util.Queue<PagePosition> redeliveries = new LinkedList<PagePosition>();
 
@@ -383,7 +392,7 @@ final class PageSubscriptionImpl implements PageSubscription
    {
       PagePosition retPos = pos.nextMessage();
 
-      PageCache cache = cursorProvider.getPageCache(pos.getPageNr());
+      PageCache cache = getPageCache(pos.getPageNr());
 
       if (cache != null && !cache.isLive() && retPos.getMessageNr() >= cache.getNumberOfMessages())
       {
@@ -396,7 +405,7 @@ final class PageSubscriptionImpl implements PageSubscription
       {
          retPos = moveNextPage(retPos);
 
-         cache = cursorProvider.getPageCache(retPos.getPageNr());
+         cache = getPageCache(retPos.getPageNr());
       }
 
       if (cache == null)
@@ -405,7 +414,12 @@ final class PageSubscriptionImpl implements PageSubscription
       }
       else
       {
-         PagedMessage serverMessage = cache.getMessage(retPos.getMessageNr());
+         if (retPos.getPageNr() != pos.getPageNr() || pos.getMessageNr() < 0)
+         {
+            prefetch(retPos.getPageNr());
+         }
+
+         PagedMessage serverMessage = getMessage(cache, retPos.getMessageNr());
 
          if (serverMessage != null)
          {
@@ -418,6 +432,65 @@ final class PageSubscriptionImpl implements PageSubscription
       }
    }
 
+   /**
+    * Looks up the cache of a page, accounting for the time it takes to read the page when it is not
+    * cached yet.
+    */
+   private PageCache getPageCache(final long pageNr)
+   {
+      if (cursorProvider.isCached(pageNr))
+      {
+         return cursorProvider.getPageCache(pageNr);
+      }
+
+      long start = System.nanoTime();
+      try
+      {
+         return cursorProvider.getPageCache(pageNr);
+      }
+      finally
+      {
+         stallTime.addAndGet(System.nanoTime() - start);
+      }
+   }
+
+   /**
+    * The messages of an indexed page are read as they are looked up, or once another thread is
+    * done prefetching them. Only the lookups which wait for that count as stalls.
+    */
+   private PagedMessage getMessage(final PageCache cache, final int messageNr)
+   {
+      if (cache.isLoaded(messageNr))
+      {
+         return cache.getMessage(messageNr);
+      }
+
+      long start = System.nanoTime();
+      try
+      {
+         return cache.getMessage(messageNr);
+      }
+      finally
+      {
+         stallTime.addAndGet(System.nanoTime() - start);
+      }
+   }
+
+   /**
+    * Reads the pages following the one the cursor just moved to in the background.
+    */
+   private void prefetch(final long pageNr)
+   {
+      int depth = 0;
+
+      while (depth < PREFETCH_PAGES && cursorProvider.prefetch(pageNr + depth + 1))
+      {
+         depth++;
+      }
+
+      prefetchDepth = depth;
+   }
+
    private PagePosition moveNextPage(final PagePosition pos)
    {
       PagePosition retPos = pos;
@@ -822,6 +895,16 @@ final class PageSubscriptionImpl implements PageSubscription
       return executor;
    }
 
+   public int getPrefetchDepth()
+   {
+      return prefetchDepth;
+   }
+
+   public long getPrefetchStallTime()
+   {
+      return TimeUnit.NANOSECONDS.toMillis(stallTime.get());
+   }
+
 
    public void reloadPageInfo(long pageNr)
    {
@@ -15,14 +15,19 @@ package org.hornetq.core.paging.impl;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.hornetq.api.core.HornetQBuffer;
 import org.hornetq.api.core.HornetQBuffers;
+import org.hornetq.api.core.HornetQIOErrorException;
 import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.journal.EncodingSupport;
 import org.hornetq.core.journal.SequentialFile;
 import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.impl.MappedSequentialFile;
 import org.hornetq.core.paging.PagedMessage;
 import org.hornetq.core.paging.cursor.LivePageCache;
 import org.hornetq.core.persistence.StorageManager;
@@ -48,6 +53,12 @@ public final class Page implements Comparable<Page>
 
    private static final byte END_BYTE = (byte)'}';
 
+   /**
+    * The extension of the index written next to a page file when it is closed, see
+    * {@link #readIndex()}.
+    */
+   public static final String INDEX_EXTENSION = "pidx";
+
    // Attributes ----------------------------------------------------
 
    private final int pageId;
@@ -71,6 +82,20 @@ public final class Page implements Comparable<Page>
 
    private final SimpleString storeName;
 
+   // the records appended but not written to the file yet, see flush()
+   private PageRecords pendingRecords;
+
+   private final ReentrantLock flushLock = new ReentrantLock();
+
+   // the file offset of each record appended, written as the page index on close
+   private int[] recordOffsets;
+
+   private int appendedRecords;
+
+   // false if the file already had records when the first one was appended, as their offsets are
+   // unknown the page can't be indexed
+   private boolean indexable;
+
    public Page(final SimpleString storeName,
                    final StorageManager storageManager,
                    final SequentialFileFactory factory,
@@ -94,7 +119,14 @@ public final class Page implements Comparable<Page>
       this.pageCache = pageCache;
    }
 
-   public synchronized List<PagedMessage> read(StorageManager storage) throws Exception
+   public List<PagedMessage> read(StorageManager storage) throws Exception
+   {
+      flush();
+
+      return readFile(storage);
+   }
+
+   private synchronized List<PagedMessage> readFile(StorageManager storage) throws Exception
    {
       if (isDebug)
       {
@@ -109,100 +141,159 @@ public final class Page implements Comparable<Page>
       ArrayList<PagedMessage> messages = new ArrayList<PagedMessage>();
 
       size.set((int)file.size());
-      // Using direct buffer, as described on https://jira.jboss.org/browse/HORNETQ-467
-      ByteBuffer directBuffer = storage.allocateDirectBuffer((int)file.size());
+
+      readRecords(storage, 0, (int)file.size(), messages);
+
+      numberOfMessages.set(messages.size());
+
+      return messages;
+   }
+
+   /**
+    * Reads {@code count} messages starting at message number {@code firstMessage}, through the
+    * record offsets returned by {@link #readIndex()}, without decoding the rest of the page.
+    * <p>
+    * The file is opened for the read if it is not open already.
+    */
+   public synchronized List<PagedMessage> read(final StorageManager storage,
+                                               final int[] offsets,
+                                               final int firstMessage,
+                                               final int count) throws Exception
+   {
+      if (isDebug)
+      {
+         HornetQServerLogger.LOGGER.debug("reading " + count + " messages from " + firstMessage + " on page " +
+            this.pageId + " on address = " + storeName);
+      }
+
+      boolean opened = !file.isOpen();
+
+      if (opened)
+      {
+         file.open();
+      }
 
       try
       {
+         int lastMessage = firstMessage + count;
+         int start = offsets[firstMessage];
+         int end = lastMessage < offsets.length ? offsets[lastMessage] : (int)file.size();
 
-         file.position(0);
-         file.read(directBuffer);
+         ArrayList<PagedMessage> messages = new ArrayList<PagedMessage>(count);
 
-         directBuffer.rewind();
+         readRecords(storage, start, end - start, messages);
 
-         HornetQBuffer fileBuffer = HornetQBuffers.wrappedBuffer(directBuffer);
-         fileBuffer.writerIndex(fileBuffer.capacity());
+         if (messages.size() != count)
+         {
+            throw new IllegalStateException("The index of " + file.getFileName() + " doesn't match its records");
+         }
 
-         while (fileBuffer.readable())
+         return messages;
+      }
+      finally
+      {
+         if (opened)
          {
-            final int position = fileBuffer.readerIndex();
+            file.close();
+         }
+      }
+   }
 
-            byte byteRead = fileBuffer.readByte();
+   /**
+    * Returns the file offset of each message of the page, from the index written when the page was
+    * closed, or {@code null} if there is no valid index and the page has to be read entirely.
+    */
+   public int[] readIndex() throws Exception
+   {
+      SequentialFile indexFile = fileFactory.createSequentialFile(getIndexFileName(), 1);
 
-            if (byteRead == Page.START_BYTE)
-            {
-               if (fileBuffer.readerIndex() + DataConstants.SIZE_INT < fileBuffer.capacity())
-               {
-                  int messageSize = fileBuffer.readInt();
-                  int oldPos = fileBuffer.readerIndex();
-                  if (fileBuffer.readerIndex() + messageSize < fileBuffer.capacity() &&
-                           fileBuffer.getByte(oldPos + messageSize) == Page.END_BYTE)
-                  {
-                     PagedMessage msg = new PagedMessageImpl();
-                     msg.decode(fileBuffer);
-                     byte b = fileBuffer.readByte();
-                     if (b != Page.END_BYTE)
-                     {
-                        // Sanity Check: This would only happen if there is a bug on decode or any internal code, as
-                        // this
-                        // constraint was already checked
-                        throw new IllegalStateException("Internal error, it wasn't possible to locate END_BYTE " + b);
-                     }
-                     msg.initMessage(storage);
-                     if (isTrace)
-                     {
-                        HornetQServerLogger.LOGGER.trace("Reading message " + msg + " on pageId=" + this.pageId + " for address=" + storeName);
-                     }
-                     messages.add(msg);
-                  }
-                  else
-                  {
-                     markFileAsSuspect(file.getFileName(), position, messages.size());
-                     break;
-                  }
-               }
-            }
-            else
-            {
-               markFileAsSuspect(file.getFileName(), position, messages.size());
-               break;
-            }
+      if (!indexFile.exists())
+      {
+         return null;
+      }
+
+      indexFile.open();
+
+      try
+      {
+         int indexSize = (int)indexFile.size();
+
+         if (indexSize < 2 * DataConstants.SIZE_INT)
+         {
+            return null;
+         }
+
+         ByteBuffer buffer = ByteBuffer.allocate(indexSize);
+         indexFile.position(0);
+         indexFile.read(buffer);
+         buffer.rewind();
+
+         int dataSize = buffer.getInt();
+         int count = buffer.getInt();
+
+         // an index left behind by a page which got more records after a restart, or written
+         // partially, is ignored
+         if (dataSize != file.size() || indexSize != (2 + count) * DataConstants.SIZE_INT)
+         {
+            return null;
+         }
+
+         int[] offsets = new int[count];
+         for (int i = 0; i < count; i++)
+         {
+            offsets[i] = buffer.getInt();
          }
+         return offsets;
       }
       finally
       {
-         storage.freeDirectBuffer(directBuffer);
+         indexFile.close();
       }
+   }
 
-      numberOfMessages.set(messages.size());
-
-      return messages;
+   /**
+    * Writes the message to the file, along with the messages appended by other threads meanwhile.
+    */
+   public void write(final PagedMessage message) throws Exception
+   {
+      flush(append(message));
    }
 
-   public synchronized void write(final PagedMessage message) throws Exception
+   /**
+    * Adds the message to the page without writing it to the file yet, see
+    * {@link #flush(PageRecords)}.
+    * @return the records the message will be written with, null if the page is closed
+    */
+   public synchronized PageRecords append(final PagedMessage message) throws Exception
    {
       if (!file.isOpen())
       {
 
-         return;
+         return null;
       }
 
-      ByteBuffer buffer = fileFactory.newBuffer(message.getEncodeSize() + Page.SIZE_RECORD);
+      int recordSize = message.getEncodeSize() + Page.SIZE_RECORD;
 
-      HornetQBuffer wrap = HornetQBuffers.wrappedBuffer(buffer);
-      wrap.clear();
+      if (pendingRecords == null)
+      {
+         pendingRecords = new PageRecords();
+      }
 
-      wrap.writeByte(Page.START_BYTE);
-      wrap.writeInt(0);
-      int startIndex = wrap.writerIndex();
-      message.encode(wrap);
-      int endIndex = wrap.writerIndex();
-      wrap.setInt(1, endIndex - startIndex); // The encoded length
-      wrap.writeByte(Page.END_BYTE);
+      pendingRecords.add(message, recordSize);
 
-      buffer.rewind();
+      int offset = size.get();
 
-      file.writeDirect(buffer, false);
+      if (recordOffsets == null)
+      {
+         indexable = offset == 0;
+         recordOffsets = new int[16];
+      }
+      else if (appendedRecords == recordOffsets.length)
+      {
+         recordOffsets = Arrays.copyOf(recordOffsets, appendedRecords * 2);
+      }
+
+      recordOffsets[appendedRecords++] = offset;
 
       if (pageCache != null)
       {
@@ -210,13 +301,68 @@ public final class Page implements Comparable<Page>
       }
 
       numberOfMessages.incrementAndGet();
-      size.addAndGet(buffer.limit());
+      size.addAndGet(recordSize);
 
       storageManager.pageWrite(message, pageId);
+
+      return pendingRecords;
+   }
+
+   /**
+    * Writes the appended messages to the file, in a single write. The messages appended meanwhile
+    * by other threads wait for the next one.
+    */
+   public void flush() throws Exception
+   {
+      flushLock.lock();
+
+      try
+      {
+         flushPendingRecords();
+      }
+      finally
+      {
+         flushLock.unlock();
+      }
+   }
+
+   /**
+    * Returns once the records are written to the file. They are written along with every record
+    * appended so far, unless another thread already wrote them. The threads appending while a write
+    * is in progress wait for it, and then share the next write.
+    * @throws HornetQIOErrorException if another thread failed to write the records
+    */
+   public void flush(final PageRecords records) throws Exception
+   {
+      if (records == null)
+      {
+         return;
+      }
+
+      flushLock.lock();
+
+      try
+      {
+         if (!records.isDone())
+         {
+            flushPendingRecords();
+         }
+
+         if (records.failure != null)
+         {
+            throw HornetQMessageBundle.BUNDLE.pageWriteFailed(records.failure, file.getFileName());
+         }
+      }
+      finally
+      {
+         flushLock.unlock();
+      }
    }
 
    public void sync() throws Exception
    {
+      flush();
+
       file.sync();
    }
 
@@ -230,19 +376,44 @@ public final class Page implements Comparable<Page>
       file.position(0);
    }
 
-   public synchronized void close() throws Exception
+   public void close() throws Exception
    {
-      if (storageManager != null)
+      // the flush lock is always taken before the page monitor
+      flushLock.lock();
+
+      try
       {
-         storageManager.pageClosed(storeName, pageId);
+         synchronized (this)
+         {
+            flushPendingRecords();
+
+            pendingRecords = null;
+
+            if (indexable && appendedRecords > 0 && file.isOpen())
+            {
+               writeIndex();
+            }
+
+            recordOffsets = null;
+            appendedRecords = 0;
+
+            if (storageManager != null)
+            {
+               storageManager.pageClosed(storeName, pageId);
+            }
+            if (pageCache != null)
+            {
+               pageCache.close();
+               // leave it to the page cache to decide when to release it now
+               pageCache = null;
+            }
+            file.close();
+         }
       }
-      if (pageCache != null)
+      finally
       {
-         pageCache.close();
-         // leave it to the soft cache to decide when to release it now
-         pageCache = null;
+         flushLock.unlock();
       }
-      file.close();
    }
 
    public boolean isLive()
@@ -280,6 +451,8 @@ public final class Page implements Comparable<Page>
 
       try
       {
+         deleteIndex();
+
          if (suspiciousRecords)
          {
             HornetQServerLogger.LOGGER.pageInvalid(file.getFileName(), file.getFileName());
@@ -375,4 +548,268 @@ public final class Page implements Comparable<Page>
    {
       return file;
    }
+
+   /**
+    * Has to be called holding the flush lock, which keeps the flushing records to this thread.
+    */
+   private void flushPendingRecords() throws Exception
+   {
+      PageRecords records;
+
+      synchronized (this)
+      {
+         if (pendingRecords == null || !file.isOpen())
+         {
+            return;
+         }
+
+         records = pendingRecords;
+         pendingRecords = null;
+      }
+
+      try
+      {
+         // files that can, such as mapped ones, encode the records in place
+         file.write(records, false);
+
+         records.written = true;
+      }
+      catch (Exception e)
+      {
+         // failed for every thread waiting on these records
+         records.failure = e;
+
+         throw e;
+      }
+   }
+
+   /**
+    * Writes the message between the start and end bytes of a record, after the size of its encoding.
+    */
+   private static void encodeRecord(final HornetQBuffer buffer, final PagedMessage message)
+   {
+      int recordStart = buffer.writerIndex();
+      buffer.writeByte(Page.START_BYTE);
+      buffer.writeInt(0);
+      int startIndex = buffer.writerIndex();
+      message.encode(buffer);
+      int endIndex = buffer.writerIndex();
+      buffer.setInt(recordStart + 1, endIndex - startIndex); // The encoded length
+      buffer.writeByte(Page.END_BYTE);
+   }
+
+   private static boolean isZeroFilled(final HornetQBuffer buffer)
+   {
+      for (int i = buffer.readerIndex(); i < buffer.writerIndex(); i++)
+      {
+         if (buffer.getByte(i) != 0)
+         {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private void readRecords(final StorageManager storage,
+                            final int position,
+                            final int length,
+                            final List<PagedMessage> messages) throws Exception
+   {
+      // Using direct buffer, as described on https://jira.jboss.org/browse/HORNETQ-467
+      ByteBuffer directBuffer = storage.allocateDirectBuffer(length);
+
+      try
+      {
+
+         file.position(position);
+         file.read(directBuffer);
+
+         directBuffer.rewind();
+
+         HornetQBuffer fileBuffer = HornetQBuffers.wrappedBuffer(directBuffer);
+         fileBuffer.writerIndex(fileBuffer.capacity());
+
+         while (fileBuffer.readable())
+         {
+            final int recordPosition = position + fileBuffer.readerIndex();
+
+            byte byteRead = fileBuffer.readByte();
+
+            if (byteRead == Page.START_BYTE)
+            {
+               if (fileBuffer.readerIndex() + DataConstants.SIZE_INT < fileBuffer.capacity())
+               {
+                  int messageSize = fileBuffer.readInt();
+                  int oldPos = fileBuffer.readerIndex();
+                  if (fileBuffer.readerIndex() + messageSize < fileBuffer.capacity() &&
+                           fileBuffer.getByte(oldPos + messageSize) == Page.END_BYTE)
+                  {
+                     PagedMessage msg = new PagedMessageImpl();
+                     msg.decode(fileBuffer);
+                     byte b = fileBuffer.readByte();
+                     if (b != Page.END_BYTE)
+                     {
+                        // Sanity Check: This would only happen if there is a bug on decode or any internal code, as
+                        // this
+                        // constraint was already checked
+                        throw new IllegalStateException("Internal error, it wasn't possible to locate END_BYTE " + b);
+                     }
+                     msg.initMessage(storage);
+                     if (isTrace)
+                     {
+                        HornetQServerLogger.LOGGER.trace("Reading message " + msg + " on pageId=" + this.pageId + " for address=" + storeName);
+                     }
+                     messages.add(msg);
+                  }
+                  else
+                  {
+                     markFileAsSuspect(file.getFileName(), recordPosition, messages.size());
+                     break;
+                  }
+               }
+            }
+            else if (byteRead == 0 && file instanceof MappedSequentialFile && isZeroFilled(fileBuffer))
+            {
+               // the end of the data on a mapped page file which was not closed, the file was
+               // extended ahead of the writes
+               break;
+            }
+            else
+            {
+               markFileAsSuspect(file.getFileName(), recordPosition, messages.size());
+               break;
+            }
+         }
+      }
+      finally
+      {
+         storage.freeDirectBuffer(directBuffer);
+      }
+   }
+
+   private String getIndexFileName()
+   {
+      String fileName = file.getFileName();
+      int extension = fileName.lastIndexOf('.');
+      return (extension < 0 ? fileName : fileName.substring(0, extension)) + "." + INDEX_EXTENSION;
+   }
+
+   /**
+    * Writes the size of the page file, the number of records and the offset of each one. Has to be
+    * called holding the page monitor, once the records are written.
+    */
+   private void writeIndex()
+   {
+      try
+      {
+         SequentialFile indexFile = fileFactory.createSequentialFile(getIndexFileName(), 1);
+
+         ByteBuffer buffer = fileFactory.newBuffer((2 + appendedRecords) * DataConstants.SIZE_INT);
+         buffer.putInt(size.get());
+         buffer.putInt(appendedRecords);
+         for (int i = 0; i < appendedRecords; i++)
+         {
+            buffer.putInt(recordOffsets[i]);
+         }
+         buffer.rewind();
+
+         indexFile.open();
+         try
+         {
+            indexFile.position(0);
+            indexFile.writeDirect(buffer, false);
+         }
+         finally
+         {
+            indexFile.close();
+         }
+      }
+      catch (Exception e)
+      {
+         HornetQServerLogger.LOGGER.pageIndexWriteError(e, file.getFileName());
+      }
+   }
+
+   private void deleteIndex() throws Exception
+   {
+      SequentialFile indexFile = fileFactory.createSequentialFile(getIndexFileName(), 1);
+
+      if (indexFile.exists())
+      {
+         indexFile.delete();
+      }
+   }
+
+   // Inner classes -------------------------------------------------
+
+   /**
+    * The records appended to the page since it was last flushed, written in a single write.
+    */
+   public static final class PageRecords implements EncodingSupport
+   {
+      private final List<PagedMessage> messages = new ArrayList<PagedMessage>();
+
+      private int encodeSize;
+
+      // set by the thread writing the records, holding the flush lock
+      private boolean written;
+
+      private Exception failure;
+
+      private PageRecords()
+      {
+      }
+
+      boolean isDone()
+      {
+         return written || failure != null;
+      }
+
+      void add(final PagedMessage message, final int recordSize)
+      {
+         messages.add(message);
+         encodeSize += recordSize;
+      }
+
+      public int getEncodeSize()
+      {
+         return encodeSize;
+      }
+
+      public void encode(final HornetQBuffer buffer)
+      {
+         for (PagedMessage message : messages)
+         {
+            encodeRecord(buffer, message);
+         }
+      }
+
+      public void decode(final HornetQBuffer buffer)
+      {
+         messages.clear();
+         encodeSize = 0;
+
+         while (buffer.readable())
+         {
+            int recordStart = buffer.readerIndex();
+
+            if (buffer.readByte() != Page.START_BYTE)
+            {
+               throw new IllegalStateException("Invalid record start at " + recordStart);
+            }
+
+            buffer.readInt();
+
+            PagedMessage message = new PagedMessageImpl();
+            message.decode(buffer);
+
+            if (buffer.readByte() != Page.END_BYTE)
+            {
+               throw new IllegalStateException("Invalid record end for the record at " + recordStart);
+            }
+
+            add(message, buffer.readerIndex() - recordStart);
+         }
+      }
+   }
 }
@@ -37,6 +37,7 @@ import org.hornetq.core.settings.impl.AddressSettings;
 import org.hornetq.core.transaction.Transaction;
 import org.hornetq.core.transaction.TransactionOperation;
 import org.hornetq.core.transaction.TransactionPropertyIndexes;
+import org.hornetq.utils.ExecutorFactory;
 import org.hornetq.utils.FutureLatch;
 
 import java.text.DecimalFormat;
@@ -128,6 +129,37 @@ public class PagingStoreImpl implements PagingStore
                           final AddressSettings addressSettings,
                           final Executor executor,
                           final boolean syncNonTransactional)
+   {
+      this(address,
+           scheduledExecutor,
+           syncTimeout,
+           pagingManager,
+           storageManager,
+           fileFactory,
+           storeFactory,
+           storeName,
+           addressSettings,
+           executor,
+           null,
+           syncNonTransactional);
+   }
+
+   /**
+    * @param prefetchExecutorFactory the executors the pages are prefetched on, the pages are
+    *           prefetched on {@code executor} when null
+    */
+   public PagingStoreImpl(final SimpleString address,
+                          final ScheduledExecutorService scheduledExecutor,
+                          final long syncTimeout,
+                          final PagingManager pagingManager,
+                          final StorageManager storageManager,
+                          final SequentialFileFactory fileFactory,
+                          final PagingStoreFactory storeFactory,
+                          final SimpleString storeName,
+                          final AddressSettings addressSettings,
+                          final Executor executor,
+                          final ExecutorFactory prefetchExecutorFactory,
+                          final boolean syncNonTransactional)
    {
       if (pagingManager == null)
       {
@@ -174,6 +206,7 @@ public class PagingStoreImpl implements PagingStore
       this.cursorProvider = new PageCursorProviderImpl(this,
          this.storageManager,
          executor,
+         prefetchExecutorFactory,
          addressSettings.getPageCacheMaxSize());
 
    }
@@ -858,6 +891,9 @@ public class PagingStoreImpl implements PagingStore
          lock.readLock().unlock();
       }
 
+      Page written;
+
+      Page.PageRecords records;
 
       managerLock.lock();
       try
@@ -895,7 +931,9 @@ public class PagingStoreImpl implements PagingStore
                currentPageSize.addAndGet(bytesToWrite);
             }
 
-            currentPage.write(pagedMessage);
+            records = currentPage.append(pagedMessage);
+
+            written = currentPage;
 
             if (isTrace)
             {
@@ -912,8 +950,6 @@ public class PagingStoreImpl implements PagingStore
             {
                sync();
             }
-
-            return true;
          }
          finally
          {
@@ -924,6 +960,12 @@ public class PagingStoreImpl implements PagingStore
       {
          managerLock.unlock();
       }
+
+      // written out of the locks, so the messages paged by other threads meanwhile are appended to
+      // the page and written along in a single write
+      written.flush(records);
+
+      return true;
    }
 
    /**
@@ -27,6 +27,8 @@ import org.hornetq.core.journal.IOAsyncTask;
 import org.hornetq.core.journal.Journal;
 import org.hornetq.core.journal.JournalLoadInformation;
 import org.hornetq.core.journal.SequentialFile;
+import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.core.journal.impl.TimedBuffer;
 import org.hornetq.core.message.impl.MessageInternal;
 import org.hornetq.core.paging.PageTransactionInfo;
 import org.hornetq.core.paging.PagedMessage;
@@ -147,6 +149,13 @@ public interface StorageManager extends HornetQComponent
 
    void storeReference(long queueID, long messageID, boolean last) throws Exception;
 
+   /**
+    * Stores the references of a message to all the durable queues it was routed to, along with
+    * the message if {@code storeMessage}, in as few records as possible when the journal groups
+    * references.
+    */
+   void storeMessageReferences(ServerMessage message, boolean storeMessage, long[] queueIDs) throws Exception;
+
    void deleteMessage(long messageID) throws Exception;
 
    void storeAcknowledge(long queueID, long messageID) throws Exception;
@@ -165,6 +174,11 @@ public interface StorageManager extends HornetQComponent
 
    void storeReferenceTransactional(long txID, long queueID, long messageID) throws Exception;
 
+   /**
+    * @see #storeMessageReferences(ServerMessage, boolean, long[])
+    */
+   void storeMessageReferencesTransactional(long txID, ServerMessage message, boolean storeMessage, long[] queueIDs) throws Exception;
+
    void storeAcknowledgeTransactional(long txID, long queueID, long messageID) throws Exception;
 
    void storeCursorAcknowledgeTransactional(long txID, long queueID, PagePosition position) throws Exception;
@@ -309,6 +323,16 @@ public interface StorageManager extends HornetQComponent
     */
    Journal getMessageJournal();
 
+   /**
+    * @return the buffer writes to the message journal are batched on, or null if there is none
+    */
+   TimedBuffer getMessageJournalBuffer();
+
+   /**
+    * @return the journals the messages are stored on, one per shard, or an empty array if there is none
+    */
+   JournalImpl[] getMessageJournalShards();
+
    /**
     * @see JournalStorageManager#startReplication(ReplicationManager, PagingManager, String,
     *      boolean)
@@ -2,11 +2,14 @@ package org.hornetq.core.persistence.impl.journal;
 
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.ACKNOWLEDGE_CURSOR;
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.ACKNOWLEDGE_REF;
+import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.ACKNOWLEDGE_REFS;
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.ADDRESS_SETTING_RECORD;
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.ADD_LARGE_MESSAGE;
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.ADD_LARGE_MESSAGE_PENDING;
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.ADD_MESSAGE;
+import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.ADD_MESSAGE_REFS;
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.ADD_REF;
+import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.ADD_REFS;
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.DUPLICATE_ID;
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.HEURISTIC_COMPLETION;
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.ID_COUNTER_RECORD;
@@ -47,6 +50,7 @@ import org.hornetq.core.paging.cursor.impl.PageSubscriptionCounterImpl;
 import org.hornetq.core.paging.impl.PageTransactionInfoImpl;
 import org.hornetq.core.persistence.impl.journal.BatchingIDGenerator.IDCounterEncoding;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.AckDescribe;
+import org.hornetq.core.persistence.impl.journal.JournalStorageManager.AcksDescribe;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.CursorAckRecordEncoding;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.DeliveryCountUpdateEncoding;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.DuplicateIDEncoding;
@@ -57,6 +61,7 @@ import org.hornetq.core.persistence.impl.journal.JournalStorageManager.PageCount
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.PageUpdateTXEncoding;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.PendingLargeMessageEncoding;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.RefEncoding;
+import org.hornetq.core.persistence.impl.journal.JournalStorageManager.RefsEncoding;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.ScheduledDeliveryEncoding;
 import org.hornetq.core.server.LargeServerMessage;
 import org.hornetq.core.server.ServerMessage;
@@ -281,32 +286,28 @@ public final class DescribeJournal
          {
             messageCount++;
          }
+         else if (info.getUserRecordType() == JournalRecordIds.ADD_MESSAGE_REFS)
+         {
+            messageCount++;
+            countReferences(messageRefCounts, ((MessageReferencesDescribe)o).refsEncoding.queueIDs);
+         }
          else if (info.getUserRecordType() == JournalRecordIds.ADD_REF)
          {
             ReferenceDescribe ref = (ReferenceDescribe)o;
-            Integer count = messageRefCounts.get(ref.refEncoding.queueID);
-            if (count == null)
-            {
-               count = 1;
-               messageRefCounts.put(ref.refEncoding.queueID, count);
-            }
-            else
-            {
-               messageRefCounts.put(ref.refEncoding.queueID, count + 1);
-            }
+            countReferences(messageRefCounts, ref.refEncoding.queueID);
+         }
+         else if (info.getUserRecordType() == JournalRecordIds.ADD_REFS)
+         {
+            countReferences(messageRefCounts, ((ReferencesDescribe)o).refsEncoding.queueIDs);
          }
          else if (info.getUserRecordType() == JournalRecordIds.ACKNOWLEDGE_REF)
          {
             AckDescribe ref = (AckDescribe)o;
-            Integer count = messageRefCounts.get(ref.refEncoding.queueID);
-            if (count == null)
-            {
-               messageRefCounts.put(ref.refEncoding.queueID, 0);
-            }
-            else
-            {
-               messageRefCounts.put(ref.refEncoding.queueID, count - 1);
-            }
+            countAcknowledgements(messageRefCounts, ref.refEncoding.queueID);
+         }
+         else if (info.getUserRecordType() == JournalRecordIds.ACKNOWLEDGE_REFS)
+         {
+            countAcknowledgements(messageRefCounts, ((AcksDescribe)o).refsEncoding.queueIDs);
          }
          else if (info.getUserRecordType() == JournalRecordIds.PAGE_CURSOR_COUNTER_VALUE)
          {
@@ -362,16 +363,16 @@ public final class DescribeJournal
             else if (info.getUserRecordType() == 32)
             {
                ReferenceDescribe ref = (ReferenceDescribe)o;
-               Integer count = preparedMessageRefCount.get(ref.refEncoding.queueID);
-               if (count == null)
-               {
-                  count = 1;
-                  preparedMessageRefCount.put(ref.refEncoding.queueID, count);
-               }
-               else
-               {
-                  preparedMessageRefCount.put(ref.refEncoding.queueID, count + 1);
-               }
+               countReferences(preparedMessageRefCount, ref.refEncoding.queueID);
+            }
+            else if (info.getUserRecordType() == JournalRecordIds.ADD_MESSAGE_REFS)
+            {
+               preparedMessageCount++;
+               countReferences(preparedMessageRefCount, ((MessageReferencesDescribe)o).refsEncoding.queueIDs);
+            }
+            else if (info.getUserRecordType() == JournalRecordIds.ADD_REFS)
+            {
+               countReferences(preparedMessageRefCount, ((ReferencesDescribe)o).refsEncoding.queueIDs);
             }
          }
 
@@ -409,6 +410,38 @@ public final class DescribeJournal
       journal.stop();
    }
 
+   private static void countReferences(final Map<Long, Integer> messageRefCounts, final long... queueIDs)
+   {
+      for (long queueID : queueIDs)
+      {
+         Integer count = messageRefCounts.get(queueID);
+         if (count == null)
+         {
+            messageRefCounts.put(queueID, 1);
+         }
+         else
+         {
+            messageRefCounts.put(queueID, count + 1);
+         }
+      }
+   }
+
+   private static void countAcknowledgements(final Map<Long, Integer> messageRefCounts, final long... queueIDs)
+   {
+      for (long queueID : queueIDs)
+      {
+         Integer count = messageRefCounts.get(queueID);
+         if (count == null)
+         {
+            messageRefCounts.put(queueID, 0);
+         }
+         else
+         {
+            messageRefCounts.put(queueID, count - 1);
+         }
+      }
+   }
+
    protected static void printCounters(final PrintStream out, final Map<Long, PageSubscriptionCounterImpl> counters)
    {
       for (Map.Entry<Long, PageSubscriptionCounterImpl> entry: counters.entrySet())
@@ -497,6 +530,17 @@ public final class DescribeJournal
 
             return new MessageDescribe(message);
          }
+         case ADD_MESSAGE_REFS:
+         {
+            final RefsEncoding encoding = new RefsEncoding();
+            encoding.decode(buffer);
+
+            ServerMessage message = new ServerMessageImpl(rec, 50);
+
+            message.decode(buffer);
+
+            return new MessageReferencesDescribe(message, encoding);
+         }
          case ADD_REF:
          {
             final RefEncoding encoding = new RefEncoding();
@@ -504,6 +548,13 @@ public final class DescribeJournal
             return new ReferenceDescribe(encoding);
          }
 
+         case ADD_REFS:
+         {
+            final RefsEncoding encoding = new RefsEncoding();
+            encoding.decode(buffer);
+            return new ReferencesDescribe(encoding);
+         }
+
          case ACKNOWLEDGE_REF:
          {
             final RefEncoding encoding = new RefEncoding();
@@ -511,6 +562,13 @@ public final class DescribeJournal
             return new AckDescribe(encoding);
          }
 
+         case ACKNOWLEDGE_REFS:
+         {
+            final RefsEncoding encoding = new RefsEncoding();
+            encoding.decode(buffer);
+            return new AcksDescribe(encoding);
+         }
+
          case UPDATE_DELIVERY_COUNT:
          {
             DeliveryCountUpdateEncoding updateDeliveryCount = new DeliveryCountUpdateEncoding();
@@ -676,6 +734,41 @@ public final class DescribeJournal
 
    }
 
+   public static final class MessageReferencesDescribe
+   {
+      public final MessageDescribe message;
+
+      public final RefsEncoding refsEncoding;
+
+      public MessageReferencesDescribe(Message msg, RefsEncoding refsEncoding)
+      {
+         this.message = new MessageDescribe(msg);
+         this.refsEncoding = refsEncoding;
+      }
+
+      @Override
+      public String toString()
+      {
+         return message + ";AddRefs;" + refsEncoding;
+      }
+   }
+
+   public static final class ReferencesDescribe
+   {
+      public final RefsEncoding refsEncoding;
+
+      public ReferencesDescribe(RefsEncoding refsEncoding)
+      {
+         this.refsEncoding = refsEncoding;
+      }
+
+      @Override
+      public String toString()
+      {
+         return "AddRefs;" + refsEncoding;
+      }
+   }
+
    public static final class ReferenceDescribe
    {
       public RefEncoding refEncoding;
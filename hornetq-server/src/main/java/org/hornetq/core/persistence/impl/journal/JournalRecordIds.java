@@ -66,4 +66,20 @@ public final class JournalRecordIds
    public static final byte PAGE_CURSOR_COUNTER_INC = 41;
 
    public static final byte PAGE_CURSOR_COMPLETE = 42;
+
+   /**
+    * A message along with the IDs of the queues it was routed to, stored as a single record instead
+    * of an {@link #ADD_MESSAGE} record followed by an {@link #ADD_REF} record per queue.
+    */
+   public static final byte ADD_MESSAGE_REFS = 43;
+
+   /**
+    * The references of a message already stored to several queues.
+    */
+   public static final byte ADD_REFS = 44;
+
+   /**
+    * The acknowledgements of a message on several queues, within the same transaction.
+    */
+   public static final byte ACKNOWLEDGE_REFS = 45;
 }
@@ -21,8 +21,13 @@ import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.PAGE_CU
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.PAGE_CURSOR_COUNTER_VALUE;
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.SET_SCHEDULED_DELIVERY_TIME;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.ByteBuffer;
 import java.security.AccessController;
 import java.security.DigestInputStream;
@@ -41,6 +46,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
@@ -73,7 +79,10 @@ import org.hornetq.core.journal.TransactionFailureCallback;
 import org.hornetq.core.journal.impl.AIOSequentialFileFactory;
 import org.hornetq.core.journal.impl.JournalFile;
 import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.core.journal.impl.MappedSequentialFileFactory;
 import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
+import org.hornetq.core.journal.impl.ShardedJournal;
+import org.hornetq.core.journal.impl.TimedBuffer;
 import org.hornetq.core.message.impl.MessageInternal;
 import org.hornetq.core.paging.PageTransactionInfo;
 import org.hornetq.core.paging.PagedMessage;
@@ -141,6 +150,8 @@ public class JournalStorageManager implements StorageManager
 {
    private static final long CHECKPOINT_BATCH_SIZE = Integer.MAX_VALUE;
 
+   private static final String JOURNAL_SHARDS_FILE = "journal-shards";
+
    private final Semaphore pageMaxConcurrentIO;
 
    private final BatchingIDGenerator idGenerator;
@@ -171,6 +182,8 @@ public class JournalStorageManager implements StorageManager
 
    private final SequentialFileFactory journalFF;
 
+   private final TimedBuffer journalBuffer;
+
    private Journal messageJournal;
 
    private Journal bindingsJournal;
@@ -194,6 +207,10 @@ public class JournalStorageManager implements StorageManager
 
    private final boolean syncNonTransactional;
 
+   // whether the ADD_MESSAGE_REFS, ADD_REFS and ACKNOWLEDGE_REFS records are written, which older
+   // versions can't load
+   private final boolean groupedReferences;
+
    private final int perfBlastPages;
 
    private final boolean createBindingsDir;
@@ -204,6 +221,11 @@ public class JournalStorageManager implements StorageManager
 
    private final String journalDir;
 
+   // the directories of the shards of the messages journal, only the journal directory if not sharded
+   private final String[] journalShardDirs;
+
+   private final JournalImpl[] messageJournalShards;
+
    private final String largeMessagesDirectory;
 
    private boolean journalLoaded = false;
@@ -217,6 +239,11 @@ public class JournalStorageManager implements StorageManager
 
    private final Set<Long> largeMessagesToDelete = new HashSet<Long>();
 
+   // the acknowledgements of the transactions not stored yet, so the acknowledgements of a message
+   // on several queues are stored as a single record once the transaction is prepared or committed
+   private final ConcurrentMap<Long, PendingAcknowledgements> pendingAcknowledgements =
+      new ConcurrentHashMap<Long, PendingAcknowledgements>();
+
    public JournalStorageManager(final Configuration config, final ExecutorFactory executorFactory)
    {
       this(config, executorFactory, null);
@@ -229,7 +256,8 @@ public class JournalStorageManager implements StorageManager
 
       executor = executorFactory.getExecutor();
 
-      if (config.getJournalType() != JournalType.NIO && config.getJournalType() != JournalType.ASYNCIO)
+      if (config.getJournalType() != JournalType.NIO && config.getJournalType() != JournalType.ASYNCIO &&
+               config.getJournalType() != JournalType.MAPPED)
       {
          throw HornetQMessageBundle.BUNDLE.invalidJournal();
       }
@@ -246,7 +274,7 @@ public class JournalStorageManager implements StorageManager
 
       SequentialFileFactory bindingsFF = new NIOSequentialFileFactory(bindingsDir, criticalErrorListener);
 
-      Journal localBindings = new JournalImpl(1024 * 1024,
+      JournalImpl localBindings = new JournalImpl(1024 * 1024,
          2,
          config.getJournalCompactMinFiles(),
          config.getJournalCompactPercentage(),
@@ -255,6 +283,8 @@ public class JournalStorageManager implements StorageManager
          "bindings",
          1);
 
+      localBindings.setChecksums(config.isJournalChecksums());
+
       bindingsJournal = localBindings;
       originalBindingsJournal = localBindings;
 
@@ -269,42 +299,72 @@ public class JournalStorageManager implements StorageManager
 
       syncTransactional = config.isJournalSyncTransactional();
 
+      groupedReferences = config.isJournalGroupedReferences();
+
       if (config.getJournalType() == JournalType.ASYNCIO)
       {
          HornetQServerLogger.LOGGER.journalUseAIO();
-
-         journalFF = new AIOSequentialFileFactory(journalDir,
-            config.getJournalBufferSize_AIO(),
-            config.getJournalBufferTimeout_AIO(),
-            config.isLogJournalWriteRate(),
-            criticalErrorListener);
       }
       else if (config.getJournalType() == JournalType.NIO)
       {
          HornetQServerLogger.LOGGER.journalUseNIO();
-         journalFF = new NIOSequentialFileFactory(journalDir,
-            true,
-            config.getJournalBufferSize_NIO(),
-            config.getJournalBufferTimeout_NIO(),
-            config.isLogJournalWriteRate(),
-            criticalErrorListener);
       }
       else
       {
-         throw HornetQMessageBundle.BUNDLE.invalidJournalType2(config.getJournalType());
+         HornetQServerLogger.LOGGER.journalUseMapped();
       }
 
       idGenerator = new BatchingIDGenerator(0, JournalStorageManager.CHECKPOINT_BATCH_SIZE, this);
 
-      Journal localMessage = new JournalImpl(config.getJournalFileSize(),
-         config.getJournalMinFiles(),
-         config.getJournalCompactMinFiles(),
-         config.getJournalCompactPercentage(),
-         journalFF,
-         "hornetq-data",
-         "hq",
-         config.getJournalType() == JournalType.ASYNCIO ? config.getJournalMaxIO_AIO()
-            : config.getJournalMaxIO_NIO());
+      int shards = config.getJournalShards();
+
+      if (shards == 1)
+      {
+         journalShardDirs = new String[] { journalDir };
+      }
+      else
+      {
+         journalShardDirs = new String[shards];
+
+         for (int i = 0; i < shards; i++)
+         {
+            journalShardDirs[i] = new File(journalDir, "shard-" + i).getPath();
+         }
+      }
+
+      JournalImpl[] localMessageShards = new JournalImpl[shards];
+
+      for (int i = 0; i < shards; i++)
+      {
+         SequentialFileFactory shardFF = createJournalFileFactory(config, journalShardDirs[i], criticalErrorListener);
+
+         localMessageShards[i] = new JournalImpl(config.getJournalFileSize(),
+            config.getJournalMinFiles(),
+            config.getJournalCompactMinFiles(),
+            config.getJournalCompactPercentage(),
+            shardFF,
+            "hornetq-data",
+            "hq",
+            config.getJournalType() == JournalType.ASYNCIO ? config.getJournalMaxIO_AIO()
+               : config.getJournalMaxIO_NIO());
+
+         localMessageShards[i].setLoadThreads(config.getJournalLoadThreads() == -1 ? Runtime.getRuntime()
+                                                                                        .availableProcessors()
+                                                                                  : config.getJournalLoadThreads());
+         localMessageShards[i].setCompactMaxFiles(config.getJournalCompactMaxFiles());
+         localMessageShards[i].setCompactIORate(config.getJournalCompactIORate());
+         localMessageShards[i].setChecksums(config.isJournalChecksums());
+         localMessageShards[i].setMaxReadyFiles(config.getJournalMaxReadyFiles());
+      }
+
+      messageJournalShards = localMessageShards;
+
+      // the buffers of the other shards behave the same, only the first one is exposed
+      journalFF = localMessageShards[0].getFileFactory();
+      journalBuffer = journalFF instanceof AIOSequentialFileFactory ? ((AIOSequentialFileFactory)journalFF).getTimedBuffer()
+                                                                    : ((NIOSequentialFileFactory)journalFF).getTimedBuffer();
+
+      Journal localMessage = shards == 1 ? localMessageShards[0] : new ShardedJournal(localMessageShards);
 
       messageJournal = localMessage;
       originalMessageJournal = localMessage;
@@ -856,6 +916,8 @@ public class JournalStorageManager implements StorageManager
       readLock();
       try
       {
+         storePendingAcknowledgements(tx.getID());
+
          installLargeMessageConfirmationOnTX(tx, recordID);
          messageJournal.appendDeleteRecordTransactional(tx.getID(), recordID,
                                                         new DeleteEncoding(JournalRecordIds.ADD_LARGE_MESSAGE_PENDING,
@@ -927,6 +989,71 @@ public class JournalStorageManager implements StorageManager
       }
    }
 
+   public void storeMessageReferences(final ServerMessage message, final boolean storeMessage, final long[] queueIDs) throws Exception
+   {
+      if (!groupedReferences)
+      {
+         if (storeMessage)
+         {
+            storeMessage(message);
+         }
+
+         for (int i = 0; i < queueIDs.length; i++)
+         {
+            storeReference(queueIDs[i], message.getMessageID(), i == queueIDs.length - 1);
+         }
+
+         return;
+      }
+
+      if (storeMessage && !message.isLargeMessage())
+      {
+         if (message.getMessageID() <= 0)
+         {
+            // Sanity check only... this shouldn't happen unless there is a bug
+            throw HornetQMessageBundle.BUNDLE.messageIdNotAssigned();
+         }
+
+         readLock();
+         try
+         {
+            messageJournal.appendAddRecord(message.getMessageID(), JournalRecordIds.ADD_MESSAGE_REFS,
+               new MessageRefsEncoding(message, queueIDs), syncNonTransactional,
+               getContext(syncNonTransactional));
+         }
+         finally
+         {
+            readUnLock();
+         }
+
+         return;
+      }
+
+      if (storeMessage)
+      {
+         // the large message has its own record, the body being stored apart
+         storeMessage(message);
+      }
+
+      if (queueIDs.length == 1)
+      {
+         storeReference(queueIDs[0], message.getMessageID(), true);
+
+         return;
+      }
+
+      readLock();
+      try
+      {
+         messageJournal.appendUpdateRecord(message.getMessageID(), JournalRecordIds.ADD_REFS,
+            new RefsEncoding(queueIDs), syncNonTransactional, getContext(syncNonTransactional));
+      }
+      finally
+      {
+         readUnLock();
+      }
+   }
+
    @Override
    public void readLock()
    {
@@ -1052,6 +1179,8 @@ public class JournalStorageManager implements StorageManager
       readLock();
       try
       {
+         storePendingAcknowledgements(txID);
+
          if (message.isLargeMessage())
          {
             messageJournal.appendAddRecordTransactional(txID, message.getMessageID(),
@@ -1077,6 +1206,8 @@ public class JournalStorageManager implements StorageManager
       readLock();
       try
       {
+         storePendingAcknowledgements(txID);
+
          pageTransaction.setRecordID(generateUniqueID());
          messageJournal.appendAddRecordTransactional(txID, pageTransaction.getRecordID(),
                                                      JournalRecordIds.PAGE_TRANSACTION, pageTransaction);
@@ -1093,6 +1224,8 @@ public class JournalStorageManager implements StorageManager
       readLock();
       try
       {
+         storePendingAcknowledgements(txID);
+
          messageJournal.appendUpdateRecordTransactional(txID, pageTransaction.getRecordID(),
                                                         JournalRecordIds.PAGE_TRANSACTION,
             new PageUpdateTXEncoding(pageTransaction.getTransactionID(),
@@ -1125,6 +1258,8 @@ public class JournalStorageManager implements StorageManager
       readLock();
       try
       {
+         storePendingAcknowledgements(txID);
+
          messageJournal.appendUpdateRecordTransactional(txID, messageID, JournalRecordIds.ADD_REF,
             new RefEncoding(queueID));
       }
@@ -1134,14 +1269,67 @@ public class JournalStorageManager implements StorageManager
       }
    }
 
-   public void storeAcknowledgeTransactional(final long txID, final long queueID, final long messageID)
-      throws Exception
+   public void storeMessageReferencesTransactional(final long txID,
+                                                   final ServerMessage message,
+                                                   final boolean storeMessage,
+                                                   final long[] queueIDs) throws Exception
    {
+      if (!groupedReferences)
+      {
+         if (storeMessage)
+         {
+            storeMessageTransactional(txID, message);
+         }
+
+         for (long queueID : queueIDs)
+         {
+            storeReferenceTransactional(txID, queueID, message.getMessageID());
+         }
+
+         return;
+      }
+
+      if (storeMessage && !message.isLargeMessage())
+      {
+         if (message.getMessageID() <= 0)
+         {
+            // Sanity check only... this shouldn't happen unless there is a bug
+            throw HornetQMessageBundle.BUNDLE.messageIdNotAssigned();
+         }
+
+         readLock();
+         try
+         {
+            messageJournal.appendAddRecordTransactional(txID, message.getMessageID(),
+               JournalRecordIds.ADD_MESSAGE_REFS, new MessageRefsEncoding(message, queueIDs));
+         }
+         finally
+         {
+            readUnLock();
+         }
+
+         return;
+      }
+
+      if (storeMessage)
+      {
+         storeMessageTransactional(txID, message);
+      }
+
+      if (queueIDs.length == 1)
+      {
+         storeReferenceTransactional(txID, queueIDs[0], message.getMessageID());
+
+         return;
+      }
+
       readLock();
       try
       {
-         messageJournal.appendUpdateRecordTransactional(txID, messageID, JournalRecordIds.ACKNOWLEDGE_REF,
-            new RefEncoding(queueID));
+         storePendingAcknowledgements(txID);
+
+         messageJournal.appendUpdateRecordTransactional(txID, message.getMessageID(), JournalRecordIds.ADD_REFS,
+            new RefsEncoding(queueIDs));
       }
       finally
       {
@@ -1149,11 +1337,54 @@ public class JournalStorageManager implements StorageManager
       }
    }
 
+   /**
+    * With grouped references, the acknowledgement is only stored along with the next record of the
+    * transaction, or once it is prepared or committed, along with the acknowledgements of the same
+    * message on other queues.
+    */
+   public void storeAcknowledgeTransactional(final long txID, final long queueID, final long messageID)
+      throws Exception
+   {
+      if (!groupedReferences)
+      {
+         readLock();
+         try
+         {
+            messageJournal.appendUpdateRecordTransactional(txID, messageID, JournalRecordIds.ACKNOWLEDGE_REF,
+               new RefEncoding(queueID));
+         }
+         finally
+         {
+            readUnLock();
+         }
+
+         return;
+      }
+
+      PendingAcknowledgements acks = pendingAcknowledgements.get(txID);
+
+      if (acks == null)
+      {
+         acks = new PendingAcknowledgements();
+
+         PendingAcknowledgements previous = pendingAcknowledgements.putIfAbsent(txID, acks);
+
+         if (previous != null)
+         {
+            acks = previous;
+         }
+      }
+
+      acks.add(messageID, queueID);
+   }
+
    public void storeCursorAcknowledgeTransactional(long txID, long queueID, PagePosition position) throws Exception
    {
       readLock();
       try
       {
+         storePendingAcknowledgements(txID);
+
          long ackID = idGenerator.generateID();
          position.setRecordID(ackID);
          messageJournal.appendAddRecordTransactional(txID,
@@ -1169,6 +1400,8 @@ public class JournalStorageManager implements StorageManager
 
    public void storePageCompleteTransactional(long txID, long queueID, PagePosition position) throws Exception
    {
+      storePendingAcknowledgements(txID);
+
       long recordID = idGenerator.generateID();
       position.setRecordID(recordID);
       messageJournal.appendAddRecordTransactional(txID,
@@ -1187,6 +1420,8 @@ public class JournalStorageManager implements StorageManager
       readLock();
       try
       {
+         storePendingAcknowledgements(txID);
+
          messageJournal.appendDeleteRecordTransactional(txID, ackID);
       }
       finally
@@ -1254,6 +1489,7 @@ public class JournalStorageManager implements StorageManager
       readLock();
       try
       {
+         storePendingAcknowledgements(txID);
 
          messageJournal.appendUpdateRecordTransactional(txID,
             ref.getMessage().getMessageID(),
@@ -1271,6 +1507,8 @@ public class JournalStorageManager implements StorageManager
       readLock();
       try
       {
+         storePendingAcknowledgements(txID);
+
          messageJournal.appendPrepareRecord(txID, new XidEncoding(xid), syncTransactional, getContext(syncTransactional));
       }
       finally
@@ -1300,6 +1538,8 @@ public class JournalStorageManager implements StorageManager
       readLock();
       try
       {
+         storePendingAcknowledgements(txID);
+
          messageJournal.appendCommitRecord(txID, syncTransactional, getContext(syncTransactional), lineUpContext);
          if (!lineUpContext && !syncTransactional)
          {
@@ -1324,6 +1564,9 @@ public class JournalStorageManager implements StorageManager
       readLock();
       try
       {
+         // the journal only rolls back the transactions it has records of
+         storePendingAcknowledgements(txID);
+
          messageJournal.appendRollbackRecord(txID, syncTransactional, getContext(syncTransactional));
       }
       finally
@@ -1332,6 +1575,26 @@ public class JournalStorageManager implements StorageManager
       }
    }
 
+   /**
+    * Stores the acknowledgements of the transaction not stored yet, before any other record of the
+    * transaction, so the records are reloaded in the order they were added. Must be called holding
+    * the read lock.
+    */
+   private void storePendingAcknowledgements(final long txID) throws Exception
+   {
+      if (pendingAcknowledgements.isEmpty())
+      {
+         return;
+      }
+
+      PendingAcknowledgements acks = pendingAcknowledgements.remove(txID);
+
+      if (acks != null)
+      {
+         acks.store(txID, messageJournal);
+      }
+   }
+
 
    public void storeDuplicateIDTransactional(final long txID,
                                              final SimpleString address,
@@ -1343,6 +1606,8 @@ public class JournalStorageManager implements StorageManager
       readLock();
       try
       {
+         storePendingAcknowledgements(txID);
+
          messageJournal.appendAddRecordTransactional(txID, recordID, JournalRecordIds.DUPLICATE_ID, encoding);
       }
       finally
@@ -1361,6 +1626,8 @@ public class JournalStorageManager implements StorageManager
       readLock();
       try
       {
+         storePendingAcknowledgements(txID);
+
          messageJournal.appendUpdateRecordTransactional(txID, recordID, JournalRecordIds.DUPLICATE_ID, encoding);
       }
       finally
@@ -1374,6 +1641,8 @@ public class JournalStorageManager implements StorageManager
       readLock();
       try
       {
+         storePendingAcknowledgements(txID);
+
          messageJournal.appendDeleteRecordTransactional(txID, recordID);
       }
       finally
@@ -1591,58 +1860,68 @@ public class JournalStorageManager implements StorageManager
 
                   break;
                }
-               case JournalRecordIds.ADD_REF:
+               case JournalRecordIds.ADD_MESSAGE_REFS:
                {
-                  long messageID = record.id;
-
-                  RefEncoding encoding = new RefEncoding();
+                  RefsEncoding encoding = new RefsEncoding();
 
                   encoding.decode(buff);
 
-                  Map<Long, AddMessageRecord> queueMessages = queueMap.get(encoding.queueID);
-
-                  if (queueMessages == null)
-                  {
-                     queueMessages = new LinkedHashMap<Long, AddMessageRecord>();
+                  // the message follows the queue IDs
+                  ServerMessage message = new ServerMessageImpl(record.id, 50);
 
-                     queueMap.put(encoding.queueID, queueMessages);
-                  }
+                  message.decode(buff);
 
-                  ServerMessage message = messages.get(messageID);
+                  messages.put(record.id, message);
 
-                  if (message == null)
+                  for (long queueID : encoding.queueIDs)
                   {
-                     HornetQServerLogger.LOGGER.cannotFindMessage(record.id);
+                     loadReference(messages, queueMap, record.id, queueID);
                   }
-                  else
+
+                  break;
+               }
+               case JournalRecordIds.ADD_REF:
+               {
+                  RefEncoding encoding = new RefEncoding();
+
+                  encoding.decode(buff);
+
+                  loadReference(messages, queueMap, record.id, encoding.queueID);
+
+                  break;
+               }
+               case JournalRecordIds.ADD_REFS:
+               {
+                  RefsEncoding encoding = new RefsEncoding();
+
+                  encoding.decode(buff);
+
+                  for (long queueID : encoding.queueIDs)
                   {
-                     queueMessages.put(messageID, new AddMessageRecord(message));
+                     loadReference(messages, queueMap, record.id, queueID);
                   }
 
                   break;
                }
                case JournalRecordIds.ACKNOWLEDGE_REF:
                {
-                  long messageID = record.id;
-
                   RefEncoding encoding = new RefEncoding();
 
                   encoding.decode(buff);
 
-                  Map<Long, AddMessageRecord> queueMessages = queueMap.get(encoding.queueID);
+                  loadAcknowledge(queueMap, record.id, encoding.queueID);
 
-                  if (queueMessages == null)
-                  {
-                     HornetQServerLogger.LOGGER.journalCannotFindQueue(encoding.queueID, messageID);
-                  }
-                  else
-                  {
-                     AddMessageRecord rec = queueMessages.remove(messageID);
+                  break;
+               }
+               case JournalRecordIds.ACKNOWLEDGE_REFS:
+               {
+                  RefsEncoding encoding = new RefsEncoding();
 
-                     if (rec == null)
-                     {
-                        HornetQServerLogger.LOGGER.cannotFindMessage(messageID);
-                     }
+                  encoding.decode(buff);
+
+                  for (long queueID : encoding.queueIDs)
+                  {
+                     loadAcknowledge(queueMap, record.id, queueID);
                   }
 
                   break;
@@ -2089,6 +2368,8 @@ public class JournalStorageManager implements StorageManager
       readLock();
       try
       {
+         storePendingAcknowledgements(txID);
+
          long recordID = idGenerator.generateID();
          messageJournal.appendAddRecordTransactional(txID, recordID, JournalRecordIds.PAGE_CURSOR_COUNTER_INC,
             new PageCountRecordInc(queueID, value));
@@ -2125,6 +2406,8 @@ public class JournalStorageManager implements StorageManager
       readLock();
       try
       {
+         storePendingAcknowledgements(txID);
+
          final long recordID = idGenerator.generateID();
          messageJournal.appendAddRecordTransactional(txID, recordID, JournalRecordIds.PAGE_CURSOR_COUNTER_VALUE,
             new PageCountRecord(queueID, value));
@@ -2141,6 +2424,8 @@ public class JournalStorageManager implements StorageManager
       readLock();
       try
       {
+         storePendingAcknowledgements(txID);
+
          messageJournal.appendDeleteRecordTransactional(txID, recordID);
       }
       finally
@@ -2154,6 +2439,8 @@ public class JournalStorageManager implements StorageManager
       readLock();
       try
       {
+         storePendingAcknowledgements(txID);
+
          messageJournal.appendDeleteRecordTransactional(txID, recordID);
       }
       finally
@@ -2241,6 +2528,13 @@ public class JournalStorageManager implements StorageManager
 
       checkAndCreateDir(journalDir, createJournalDir);
 
+      checkJournalShards();
+
+      for (String journalShardDir : journalShardDirs)
+      {
+         checkAndCreateDir(journalShardDir, createJournalDir);
+      }
+
       checkAndCreateDir(largeMessagesDirectory, createJournalDir);
 
       cleanupIncompleteFiles();
@@ -2308,6 +2602,8 @@ public class JournalStorageManager implements StorageManager
 
       singleThreadExecutor.shutdown();
 
+      pendingAcknowledgements.clear();
+
       journalLoaded = false;
 
       started = false;
@@ -2371,6 +2667,16 @@ public class JournalStorageManager implements StorageManager
       return messageJournal;
    }
 
+   public TimedBuffer getMessageJournalBuffer()
+   {
+      return journalBuffer;
+   }
+
+   public JournalImpl[] getMessageJournalShards()
+   {
+      return messageJournalShards;
+   }
+
    public Journal getBindingsJournal()
    {
       return bindingsJournal;
@@ -2465,24 +2771,264 @@ public class JournalStorageManager implements StorageManager
 
    // Private ----------------------------------------------------------------------------------
 
-   private void checkAndCreateDir(final String dir, final boolean create)
+   private static SequentialFileFactory createJournalFileFactory(final Configuration config,
+                                                                 final String directory,
+                                                                 final IOCriticalErrorListener criticalErrorListener)
    {
-      File f = new File(dir);
-
-      if (!f.exists())
+      if (config.getJournalType() == JournalType.ASYNCIO)
       {
-         if (create)
-         {
-            if (!f.mkdirs())
-            {
-               throw new IllegalStateException("Failed to create directory " + dir);
-            }
-         }
-         else
-         {
-            throw HornetQMessageBundle.BUNDLE.cannotCreateDir(dir);
-         }
-      }
+         return new AIOSequentialFileFactory(directory,
+            config.getJournalBufferSize_AIO(),
+            config.getJournalBufferTimeout_AIO(),
+            config.isLogJournalWriteRate(),
+            config.isJournalBufferAdaptive(),
+            criticalErrorListener);
+      }
+      else if (config.getJournalType() == JournalType.NIO)
+      {
+         return new NIOSequentialFileFactory(directory,
+            true,
+            config.getJournalBufferSize_NIO(),
+            config.getJournalBufferTimeout_NIO(),
+            config.isLogJournalWriteRate(),
+            config.isJournalBufferAdaptive(),
+            criticalErrorListener);
+      }
+      else if (config.getJournalType() == JournalType.MAPPED)
+      {
+         return new MappedSequentialFileFactory(directory,
+            true,
+            config.getJournalBufferSize_NIO(),
+            config.getJournalBufferTimeout_NIO(),
+            config.isLogJournalWriteRate(),
+            config.isJournalBufferAdaptive(),
+            criticalErrorListener);
+      }
+      else
+      {
+         throw HornetQMessageBundle.BUNDLE.invalidJournalType2(config.getJournalType());
+      }
+   }
+
+   private void checkAndCreateDir(final String dir, final boolean create)
+   {
+      File f = new File(dir);
+
+      if (!f.exists())
+      {
+         if (create)
+         {
+            if (!f.mkdirs())
+            {
+               throw new IllegalStateException("Failed to create directory " + dir);
+            }
+         }
+         else
+         {
+            throw HornetQMessageBundle.BUNDLE.cannotCreateDir(dir);
+         }
+      }
+   }
+
+   /**
+    * Refuses to start on a message journal written with a different number of shards, since each
+    * record would then be looked up in, and updated on, another journal than the one holding it.
+    * The number is kept in a file of the journal directory; a journal written before that file
+    * existed has its number found from where its files are.
+    */
+   private void checkJournalShards() throws Exception
+   {
+      int shards = journalShardDirs.length;
+
+      File shardsFile = new File(journalDir, JOURNAL_SHARDS_FILE);
+
+      int storedShards;
+
+      if (shardsFile.exists())
+      {
+         BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(shardsFile), "UTF-8"));
+         try
+         {
+            storedShards = Integer.parseInt(reader.readLine().trim());
+         }
+         finally
+         {
+            reader.close();
+         }
+      }
+      else
+      {
+         storedShards = findJournalShards();
+      }
+
+      if (storedShards != 0 && storedShards != shards)
+      {
+         throw HornetQMessageBundle.BUNDLE.journalShardsChanged(journalDir, storedShards, shards);
+      }
+
+      if (!shardsFile.exists())
+      {
+         Writer writer = new OutputStreamWriter(new FileOutputStream(shardsFile), "UTF-8");
+         try
+         {
+            writer.write(Integer.toString(shards));
+         }
+         finally
+         {
+            writer.close();
+         }
+      }
+   }
+
+   /**
+    * @return the number of shards the files of the journal directory were written with, or 0 if
+    *         it holds no journal file
+    */
+   private int findJournalShards()
+   {
+      if (hasJournalFiles(new File(journalDir)))
+      {
+         return 1;
+      }
+
+      int shards = 0;
+
+      File[] dirs = new File(journalDir).listFiles();
+
+      if (dirs != null)
+      {
+         for (File dir : dirs)
+         {
+            if (dir.isDirectory() && dir.getName().startsWith("shard-") && hasJournalFiles(dir))
+            {
+               try
+               {
+                  shards = Math.max(shards, Integer.parseInt(dir.getName().substring("shard-".length())) + 1);
+               }
+               catch (NumberFormatException ignored)
+               {
+                  // not a shard directory
+               }
+            }
+         }
+      }
+
+      return shards;
+   }
+
+   private static boolean hasJournalFiles(final File dir)
+   {
+      String[] names = dir.list();
+
+      if (names != null)
+      {
+         for (String name : names)
+         {
+            if (name.startsWith("hornetq-data") && name.endsWith(".hq"))
+            {
+               return true;
+            }
+         }
+      }
+
+      return false;
+   }
+
+   private static void loadReference(final Map<Long, ServerMessage> messages,
+                                     final Map<Long, Map<Long, AddMessageRecord>> queueMap,
+                                     final long messageID,
+                                     final long queueID)
+   {
+      Map<Long, AddMessageRecord> queueMessages = queueMap.get(queueID);
+
+      if (queueMessages == null)
+      {
+         queueMessages = new LinkedHashMap<Long, AddMessageRecord>();
+
+         queueMap.put(queueID, queueMessages);
+      }
+
+      ServerMessage message = messages.get(messageID);
+
+      if (message == null)
+      {
+         HornetQServerLogger.LOGGER.cannotFindMessage(messageID);
+      }
+      else
+      {
+         queueMessages.put(messageID, new AddMessageRecord(message));
+      }
+   }
+
+   private static void loadAcknowledge(final Map<Long, Map<Long, AddMessageRecord>> queueMap,
+                                       final long messageID,
+                                       final long queueID)
+   {
+      Map<Long, AddMessageRecord> queueMessages = queueMap.get(queueID);
+
+      if (queueMessages == null)
+      {
+         HornetQServerLogger.LOGGER.journalCannotFindQueue(queueID, messageID);
+      }
+      else
+      {
+         AddMessageRecord rec = queueMessages.remove(messageID);
+
+         if (rec == null)
+         {
+            HornetQServerLogger.LOGGER.cannotFindMessage(messageID);
+         }
+      }
+   }
+
+   private static void reloadReference(final PostOffice postOffice,
+                                       final Map<Long, Queue> queues,
+                                       final Map<Long, ServerMessage> messages,
+                                       final Transaction tx,
+                                       final long messageID,
+                                       final long queueID) throws Exception
+   {
+      Queue queue = queues.get(queueID);
+
+      if (queue == null)
+      {
+         HornetQServerLogger.LOGGER.journalMessageInPreparedTX(queueID);
+      }
+      else
+      {
+         ServerMessage message = messages.get(messageID);
+
+         if (message == null)
+         {
+            throw new IllegalStateException("Cannot find message with id " + messageID);
+         }
+
+         postOffice.reroute(message, queue, tx);
+      }
+   }
+
+   private static void reloadAcknowledge(final Map<Long, Queue> queues,
+                                         final List<MessageReference> referencesToAck,
+                                         final long messageID,
+                                         final long queueID) throws Exception
+   {
+      Queue queue = queues.get(queueID);
+
+      if (queue == null)
+      {
+         throw new IllegalStateException("Cannot find queue with id " + queueID);
+      }
+
+      MessageReference removed = queue.removeReferenceWithID(messageID);
+
+      if (removed == null)
+      {
+         HornetQServerLogger.LOGGER.journalErrorRemovingRef(messageID);
+      }
+      else
+      {
+         referencesToAck.add(removed);
+      }
    }
 
    /**
@@ -2575,58 +3121,67 @@ public class JournalStorageManager implements StorageManager
 
                   break;
                }
-               case JournalRecordIds.ADD_REF:
+               case JournalRecordIds.ADD_MESSAGE_REFS:
                {
-                  long messageID = record.id;
-
-                  RefEncoding encoding = new RefEncoding();
+                  RefsEncoding encoding = new RefsEncoding();
 
                   encoding.decode(buff);
 
-                  Queue queue = queues.get(encoding.queueID);
+                  ServerMessage message = new ServerMessageImpl(record.id, 50);
+
+                  message.decode(buff);
 
-                  if (queue == null)
+                  messages.put(record.id, message);
+
+                  for (long queueID : encoding.queueIDs)
                   {
-                     HornetQServerLogger.LOGGER.journalMessageInPreparedTX(encoding.queueID);
+                     reloadReference(postOffice, queues, messages, tx, record.id, queueID);
                   }
-                  else
-                  {
-                     ServerMessage message = messages.get(messageID);
 
-                     if (message == null)
-                     {
-                        throw new IllegalStateException("Cannot find message with id " + messageID);
-                     }
+                  break;
+               }
+               case JournalRecordIds.ADD_REF:
+               {
+                  RefEncoding encoding = new RefEncoding();
+
+                  encoding.decode(buff);
+
+                  reloadReference(postOffice, queues, messages, tx, record.id, encoding.queueID);
+
+                  break;
+               }
+               case JournalRecordIds.ADD_REFS:
+               {
+                  RefsEncoding encoding = new RefsEncoding();
 
-                     postOffice.reroute(message, queue, tx);
+                  encoding.decode(buff);
+
+                  for (long queueID : encoding.queueIDs)
+                  {
+                     reloadReference(postOffice, queues, messages, tx, record.id, queueID);
                   }
 
                   break;
                }
                case JournalRecordIds.ACKNOWLEDGE_REF:
                {
-                  long messageID = record.id;
-
                   RefEncoding encoding = new RefEncoding();
 
                   encoding.decode(buff);
 
-                  Queue queue = queues.get(encoding.queueID);
+                  reloadAcknowledge(queues, referencesToAck, record.id, encoding.queueID);
 
-                  if (queue == null)
-                  {
-                     throw new IllegalStateException("Cannot find queue with id " + encoding.queueID);
-                  }
+                  break;
+               }
+               case JournalRecordIds.ACKNOWLEDGE_REFS:
+               {
+                  RefsEncoding encoding = new RefsEncoding();
 
-                  MessageReference removed = queue.removeReferenceWithID(messageID);
+                  encoding.decode(buff);
 
-                  if (removed == null)
+                  for (long queueID : encoding.queueIDs)
                   {
-                     HornetQServerLogger.LOGGER.journalErrorRemovingRef(messageID);
-                  }
-                  else
-                  {
-                     referencesToAck.add(removed);
+                     reloadAcknowledge(queues, referencesToAck, record.id, queueID);
                   }
 
                   break;
@@ -3309,6 +3864,83 @@ public class JournalStorageManager implements StorageManager
       }
    }
 
+   /**
+    * A list of queue IDs.
+    */
+   public static class RefsEncoding implements EncodingSupport
+   {
+      public long[] queueIDs;
+
+      public RefsEncoding()
+      {
+         super();
+      }
+
+      public RefsEncoding(final long[] queueIDs)
+      {
+         super();
+         this.queueIDs = queueIDs;
+      }
+
+      public void decode(final HornetQBuffer buffer)
+      {
+         queueIDs = new long[buffer.readInt()];
+
+         for (int i = 0; i < queueIDs.length; i++)
+         {
+            queueIDs[i] = buffer.readLong();
+         }
+      }
+
+      public void encode(final HornetQBuffer buffer)
+      {
+         buffer.writeInt(queueIDs.length);
+
+         for (long queueID : queueIDs)
+         {
+            buffer.writeLong(queueID);
+         }
+      }
+
+      public int getEncodeSize()
+      {
+         return DataConstants.SIZE_INT + DataConstants.SIZE_LONG * queueIDs.length;
+      }
+
+      @Override
+      public String toString()
+      {
+         return "RefsEncoding [queueIDs=" + Arrays.toString(queueIDs) + "]";
+      }
+   }
+
+   /**
+    * The queue IDs followed by the message, decoded as a {@link RefsEncoding} and a message.
+    */
+   private static final class MessageRefsEncoding extends RefsEncoding
+   {
+      private final ServerMessage message;
+
+      MessageRefsEncoding(final ServerMessage message, final long[] queueIDs)
+      {
+         super(queueIDs);
+         this.message = message;
+      }
+
+      @Override
+      public void encode(final HornetQBuffer buffer)
+      {
+         super.encode(buffer);
+         message.encode(buffer);
+      }
+
+      @Override
+      public int getEncodeSize()
+      {
+         return super.getEncodeSize() + message.getEncodeSize();
+      }
+   }
+
    public static class PageUpdateTXEncoding implements EncodingSupport
    {
 
@@ -3595,6 +4227,55 @@ public class JournalStorageManager implements StorageManager
       int deliveryCount;
    }
 
+   /**
+    * The acknowledgements of a transaction, by message.
+    */
+   private static final class PendingAcknowledgements
+   {
+      // the queue IDs by message ID, in the order the messages were acknowledged
+      private final Map<Long, List<Long>> queueIDs = new LinkedHashMap<Long, List<Long>>();
+
+      synchronized void add(final long messageID, final long queueID)
+      {
+         List<Long> messageQueueIDs = queueIDs.get(messageID);
+
+         if (messageQueueIDs == null)
+         {
+            messageQueueIDs = new ArrayList<Long>(1);
+
+            queueIDs.put(messageID, messageQueueIDs);
+         }
+
+         messageQueueIDs.add(queueID);
+      }
+
+      synchronized void store(final long txID, final Journal journal) throws Exception
+      {
+         for (Map.Entry<Long, List<Long>> entry : queueIDs.entrySet())
+         {
+            List<Long> messageQueueIDs = entry.getValue();
+
+            if (messageQueueIDs.size() == 1)
+            {
+               journal.appendUpdateRecordTransactional(txID, entry.getKey(), JournalRecordIds.ACKNOWLEDGE_REF,
+                  new RefEncoding(messageQueueIDs.get(0)));
+            }
+            else
+            {
+               long[] ids = new long[messageQueueIDs.size()];
+
+               for (int i = 0; i < ids.length; i++)
+               {
+                  ids[i] = messageQueueIDs.get(i);
+               }
+
+               journal.appendUpdateRecordTransactional(txID, entry.getKey(), JournalRecordIds.ACKNOWLEDGE_REFS,
+                  new RefsEncoding(ids));
+            }
+         }
+      }
+   }
+
    public static class CursorAckRecordEncoding implements EncodingSupport
    {
       public CursorAckRecordEncoding(final long queueID, final PagePosition position)
@@ -3676,6 +4357,23 @@ public class JournalStorageManager implements StorageManager
 
    }
 
+   public static final class AcksDescribe
+   {
+      public RefsEncoding refsEncoding;
+
+      public AcksDescribe(RefsEncoding refsEncoding)
+      {
+         this.refsEncoding = refsEncoding;
+      }
+
+      @Override
+      public String toString()
+      {
+         return "ACKS;" + refsEncoding;
+      }
+
+   }
+
    public static final class AckDescribe
    {
       public RefEncoding refEncoding;
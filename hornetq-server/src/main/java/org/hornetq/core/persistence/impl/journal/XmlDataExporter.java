@@ -15,9 +15,12 @@ package org.hornetq.core.persistence.impl.journal;
 
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.ACKNOWLEDGE_CURSOR;
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.ACKNOWLEDGE_REF;
+import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.ACKNOWLEDGE_REFS;
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.ADD_LARGE_MESSAGE;
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.ADD_MESSAGE;
+import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.ADD_MESSAGE_REFS;
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.ADD_REF;
+import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.ADD_REFS;
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.PAGE_TRANSACTION;
 import static org.hornetq.core.persistence.impl.journal.JournalRecordIds.QUEUE_BINDING_RECORD;
 
@@ -66,11 +69,15 @@ import org.hornetq.core.paging.impl.PagingManagerImpl;
 import org.hornetq.core.paging.impl.PagingStoreFactoryNIO;
 import org.hornetq.core.persistence.StorageManager;
 import org.hornetq.core.persistence.impl.journal.DescribeJournal.MessageDescribe;
+import org.hornetq.core.persistence.impl.journal.DescribeJournal.MessageReferencesDescribe;
 import org.hornetq.core.persistence.impl.journal.DescribeJournal.ReferenceDescribe;
+import org.hornetq.core.persistence.impl.journal.DescribeJournal.ReferencesDescribe;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.AckDescribe;
+import org.hornetq.core.persistence.impl.journal.JournalStorageManager.AcksDescribe;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.CursorAckRecordEncoding;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.PageUpdateTXEncoding;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.PersistentQueueBindingEncoding;
+import org.hornetq.core.persistence.impl.journal.JournalStorageManager.RefEncoding;
 import org.hornetq.core.persistence.impl.nullpm.NullStorageManager;
 import org.hornetq.core.server.HornetQServerLogger;
 import org.hornetq.core.server.JournalType;
@@ -272,22 +279,27 @@ public final class XmlDataExporter
          {
             messages.put(info.id, ((MessageDescribe) o).msg);
          }
-         else if (info.getUserRecordType() == ADD_REF)
+         else if (info.getUserRecordType() == ADD_MESSAGE_REFS)
          {
-            ReferenceDescribe ref = (ReferenceDescribe) o;
-            HashMap<Long, ReferenceDescribe> map = messageRefs.get(info.id);
-            if (map == null)
+            MessageReferencesDescribe messageRefsDescribe = (MessageReferencesDescribe) o;
+            messages.put(info.id, messageRefsDescribe.message.msg);
+            for (long queueID : messageRefsDescribe.refsEncoding.queueIDs)
             {
-               HashMap<Long, ReferenceDescribe> newMap = new HashMap<Long, ReferenceDescribe>();
-               newMap.put(ref.refEncoding.queueID, ref);
-               messageRefs.put(info.id, newMap);
+               addReference(info.id, new ReferenceDescribe(new RefEncoding(queueID)));
             }
-            else
+         }
+         else if (info.getUserRecordType() == ADD_REF)
+         {
+            addReference(info.id, (ReferenceDescribe) o);
+         }
+         else if (info.getUserRecordType() == ADD_REFS)
+         {
+            for (long queueID : ((ReferencesDescribe) o).refsEncoding.queueIDs)
             {
-               map.put(ref.refEncoding.queueID, ref);
+               addReference(info.id, new ReferenceDescribe(new RefEncoding(queueID)));
             }
          }
-         else if (info.getUserRecordType() == ACKNOWLEDGE_REF)
+         else if (info.getUserRecordType() == ACKNOWLEDGE_REF || info.getUserRecordType() == ACKNOWLEDGE_REFS)
          {
             acks.add(info);
          }
@@ -341,9 +353,21 @@ public final class XmlDataExporter
    {
       for (RecordInfo info : acks)
       {
-         AckDescribe ack = (AckDescribe)DescribeJournal.newObjectEncoding(info, null);
+         Object o = DescribeJournal.newObjectEncoding(info, null);
+         long[] queueIDs;
+         if (o instanceof AcksDescribe)
+         {
+            queueIDs = ((AcksDescribe)o).refsEncoding.queueIDs;
+         }
+         else
+         {
+            queueIDs = new long[]{((AckDescribe)o).refEncoding.queueID};
+         }
          HashMap<Long, ReferenceDescribe> referenceDescribeHashMap = messageRefs.get(info.id);
-         referenceDescribeHashMap.remove(ack.refEncoding.queueID);
+         for (long queueID : queueIDs)
+         {
+            referenceDescribeHashMap.remove(queueID);
+         }
          if (referenceDescribeHashMap.size() == 0)
          {
             messages.remove(info.id);
@@ -352,6 +376,21 @@ public final class XmlDataExporter
       }
    }
 
+   private void addReference(long messageID, ReferenceDescribe ref)
+   {
+      HashMap<Long, ReferenceDescribe> map = messageRefs.get(messageID);
+      if (map == null)
+      {
+         HashMap<Long, ReferenceDescribe> newMap = new HashMap<Long, ReferenceDescribe>();
+         newMap.put(ref.refEncoding.queueID, ref);
+         messageRefs.put(messageID, newMap);
+      }
+      else
+      {
+         map.put(ref.refEncoding.queueID, ref);
+      }
+   }
+
    /**
     * Open the bindings journal and extract all bindings data.
     *
@@ -29,6 +29,8 @@ import org.hornetq.core.journal.IOAsyncTask;
 import org.hornetq.core.journal.Journal;
 import org.hornetq.core.journal.JournalLoadInformation;
 import org.hornetq.core.journal.SequentialFile;
+import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.core.journal.impl.TimedBuffer;
 import org.hornetq.core.message.impl.MessageInternal;
 import org.hornetq.core.paging.PageTransactionInfo;
 import org.hornetq.core.paging.PagedMessage;
@@ -167,6 +169,19 @@ public class NullStorageManager implements StorageManager
    {
    }
 
+   @Override
+   public void storeMessageReferences(final ServerMessage message, final boolean storeMessage, final long[] queueIDs) throws Exception
+   {
+   }
+
+   @Override
+   public void storeMessageReferencesTransactional(final long txID,
+                                                   final ServerMessage message,
+                                                   final boolean storeMessage,
+                                                   final long[] queueIDs) throws Exception
+   {
+   }
+
    @Override
    public void storeAcknowledge(final long queueID, final long messageID) throws Exception
    {
@@ -544,6 +559,18 @@ public class NullStorageManager implements StorageManager
       return null;
    }
 
+   @Override
+   public TimedBuffer getMessageJournalBuffer()
+   {
+      return null;
+   }
+
+   @Override
+   public JournalImpl[] getMessageJournalShards()
+   {
+      return new JournalImpl[0];
+   }
+
    @Override
    public void startReplication(final ReplicationManager replicationManager, final PagingManager pagingManager,
                                 final String nodeID, final boolean autoFailBack) throws Exception
@@ -16,6 +16,7 @@ package org.hornetq.core.postoffice.impl;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -54,6 +55,10 @@ public final class BindingsImpl implements Bindings
 
    private final ConcurrentMap<SimpleString, List<Binding>> routingNameBindingMap = new ConcurrentHashMap<SimpleString, List<Binding>>();
 
+   // a snapshot of routingNameBindingMap for routing, iterating the map would allocate an entry per
+   // routing name for every message
+   private volatile RoutingNameBindings[] routingNameBindings = new RoutingNameBindings[0];
+
    private final Map<SimpleString, Integer> routingNamePositions = new ConcurrentHashMap<SimpleString, Integer>();
 
    private final Map<Long, Binding> bindingsMap = new ConcurrentHashMap<Long, Binding>();
@@ -114,6 +119,8 @@ public final class BindingsImpl implements Bindings
          }
 
          bindings.add(binding);
+
+         refreshRoutingNameBindings();
       }
 
       bindingsMap.put(binding.getID(), binding);
@@ -146,6 +153,8 @@ public final class BindingsImpl implements Bindings
                routingNameBindingMap.remove(routingName);
             }
          }
+
+         refreshRoutingNameBindings();
       }
 
       bindingsMap.remove(binding.getID());
@@ -283,20 +292,9 @@ public final class BindingsImpl implements Bindings
             {
                HornetQServerLogger.LOGGER.trace("Routing message " + message + " on binding=" + this);
             }
-            for (Map.Entry<SimpleString, List<Binding>> entry : routingNameBindingMap.entrySet())
+            for (RoutingNameBindings routing : routingNameBindings)
             {
-               SimpleString routingName = entry.getKey();
-
-               List<Binding> bindings = entry.getValue();
-
-               if (bindings == null)
-               {
-                  // The value can become null if it's concurrently removed while we're iterating - this is expected
-                  // ConcurrentHashMap behaviour!
-                  continue;
-               }
-
-               Binding theBinding = getNextBinding(message, routingName, bindings);
+               Binding theBinding = getNextBinding(message, routing.routingName, routing.bindings);
 
                if (theBinding != null)
                {
@@ -610,4 +608,29 @@ public final class BindingsImpl implements Bindings
       return pos;
    }
 
+   private synchronized void refreshRoutingNameBindings()
+   {
+      List<RoutingNameBindings> snapshot = new ArrayList<RoutingNameBindings>(routingNameBindingMap.size());
+
+      for (Map.Entry<SimpleString, List<Binding>> entry : routingNameBindingMap.entrySet())
+      {
+         snapshot.add(new RoutingNameBindings(entry.getKey(), entry.getValue()));
+      }
+
+      routingNameBindings = snapshot.toArray(new RoutingNameBindings[snapshot.size()]);
+   }
+
+   private static final class RoutingNameBindings
+   {
+      final SimpleString routingName;
+
+      // the list is updated in place as bindings come and go, the snapshot only changes with the routing names
+      final List<Binding> bindings;
+
+      RoutingNameBindings(final SimpleString routingName, final List<Binding> bindings)
+      {
+         this.routingName = routingName;
+         this.bindings = bindings;
+      }
+   }
 }
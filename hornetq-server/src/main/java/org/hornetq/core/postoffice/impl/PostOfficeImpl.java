@@ -17,7 +17,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -26,7 +25,6 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.hornetq.api.core.HornetQDuplicateIdException;
 import org.hornetq.api.core.HornetQInterruptedException;
@@ -201,6 +199,23 @@ public class PostOfficeImpl implements PostOffice, NotificationListener, Binding
          reaperThread = null;
       }
 
+      // the queues go away with the post office, closing them also stops the delivery threads of the
+      // queues that have one
+      for (Binding binding : addressManager.getBindings().values())
+      {
+         if (binding.getType() == BindingType.LOCAL_QUEUE)
+         {
+            try
+            {
+               ((Queue)binding.getBindable()).close();
+            }
+            catch (Exception e)
+            {
+               HornetQServerLogger.LOGGER.warn(e.getMessage(), e);
+            }
+         }
+      }
+
       addressManager.clear();
 
       queueInfos.clear();
@@ -608,15 +623,18 @@ public class PostOfficeImpl implements PostOffice, NotificationListener, Binding
 
       setPagingStore(message);
 
-      AtomicBoolean startedTX = new AtomicBoolean(false);
-
       applyExpiryDelay(message, address);
 
-      if (!checkDuplicateID(message, context, rejectDuplicates, startedTX))
+      boolean hadTX = context.getTransaction() != null;
+
+      if (!checkDuplicateID(message, context, rejectDuplicates))
       {
          return;
       }
 
+      // the duplicate detection starts a transaction when it has none to store the id with
+      boolean startedTX = !hadTX && context.getTransaction() != null;
+
 
       if (message.hasInternalProperties())
       {
@@ -691,7 +709,7 @@ public class PostOfficeImpl implements PostOffice, NotificationListener, Binding
          processRoute(message, context, direct);
       }
 
-      if (startedTX.get())
+      if (startedTX)
       {
          context.getTransaction().commit();
       }
@@ -973,12 +991,70 @@ public class PostOfficeImpl implements PostOffice, NotificationListener, Binding
 
    }
 
+   /**
+    * Stores the references of a message to durable queues, along with the message if it wasn't
+    * stored yet.
+    */
+   private void storeDurableReferences(final ServerMessage message,
+                                       final boolean storeMessage,
+                                       final List<MessageReference> durableRefs,
+                                       final Transaction tx,
+                                       final boolean scheduled) throws Exception
+   {
+      long[] queueIDs = new long[durableRefs.size()];
+
+      for (int i = 0; i < queueIDs.length; i++)
+      {
+         queueIDs[i] = durableRefs.get(i).getQueue().getID();
+      }
+
+      if (tx != null)
+      {
+         storageManager.storeMessageReferencesTransactional(tx.getID(), message, storeMessage, queueIDs);
+
+         tx.setContainsPersistent();
+      }
+      else
+      {
+         storageManager.storeMessageReferences(message, storeMessage, queueIDs);
+      }
+
+      if (storeMessage && message.isLargeMessage())
+      {
+         confirmLargeMessageSend(tx, message);
+      }
+
+      if (scheduled)
+      {
+         for (MessageReference reference : durableRefs)
+         {
+            if (tx != null)
+            {
+               storageManager.updateScheduledDeliveryTimeTransactional(tx.getID(), reference);
+            }
+            else
+            {
+               storageManager.updateScheduledDeliveryTime(reference);
+            }
+         }
+      }
+   }
+
    public void processRoute(final ServerMessage message, final RoutingContext context, final boolean direct) throws Exception
    {
-      final List<MessageReference> refs = new ArrayList<MessageReference>();
+      final List<MessageReference> refs = new ArrayList<MessageReference>(context.getQueueCount());
 
       Transaction tx = context.getTransaction();
 
+      // looked up once rather than for every queue the message is fanned out to
+      Long scheduledDeliveryTime = message.containsProperty(Message.HDR_SCHEDULED_DELIVERY_TIME)
+         ? message.getLongProperty(Message.HDR_SCHEDULED_DELIVERY_TIME) : null;
+
+      // the references to the durable queues of all the addresses are stored at once
+      List<MessageReference> durableRefs = null;
+
+      boolean storeMessage = false;
+
       for (Map.Entry<SimpleString, RouteContextList> entry : context.getContexListing().entrySet())
       {
          PagingStore store = pagingManager.getPageStore(entry.getKey());
@@ -995,88 +1071,62 @@ public class PostOfficeImpl implements PostOffice, NotificationListener, Binding
             continue;
          }
 
-         for (Queue queue : entry.getValue().getNonDurableQueues())
+         // the lists are array lists, indexing them spares an iterator per address
+         List<Queue> nonDurableQueues = entry.getValue().getNonDurableQueues();
+
+         for (int i = 0, size = nonDurableQueues.size(); i < size; i++)
          {
-            MessageReference reference = message.createReference(queue);
+            MessageReference reference = message.createReference(nonDurableQueues.get(i));
 
             refs.add(reference);
 
-            if (message.containsProperty(Message.HDR_SCHEDULED_DELIVERY_TIME))
+            if (scheduledDeliveryTime != null)
             {
-               Long scheduledDeliveryTime = message.getLongProperty(Message.HDR_SCHEDULED_DELIVERY_TIME);
-
                reference.setScheduledDeliveryTime(scheduledDeliveryTime);
             }
 
             message.incrementRefCount();
          }
 
-         Iterator<Queue> iter = entry.getValue().getDurableQueues().iterator();
+         List<Queue> durableQueues = entry.getValue().getDurableQueues();
 
-         while (iter.hasNext())
+         for (int i = 0, size = durableQueues.size(); i < size; i++)
          {
-            Queue queue = iter.next();
+            Queue queue = durableQueues.get(i);
 
             MessageReference reference = message.createReference(queue);
 
             refs.add(reference);
 
-            if (message.containsProperty(Message.HDR_SCHEDULED_DELIVERY_TIME))
+            if (scheduledDeliveryTime != null)
             {
-               Long scheduledDeliveryTime = message.getLongProperty(Message.HDR_SCHEDULED_DELIVERY_TIME);
-
                reference.setScheduledDeliveryTime(scheduledDeliveryTime);
             }
 
             if (message.isDurable())
             {
-               int durableRefCount = message.incrementDurableRefCount();
-
-               if (durableRefCount == 1)
+               if (message.incrementDurableRefCount() == 1)
                {
-                  if (tx != null)
-                  {
-                     storageManager.storeMessageTransactional(tx.getID(), message);
-                  }
-                  else
-                  {
-                     storageManager.storeMessage(message);
-                  }
-
-                  if (message.isLargeMessage())
-                  {
-                     confirmLargeMessageSend(tx, message);
-                  }
+                  storeMessage = true;
                }
 
-               if (tx != null)
+               if (durableRefs == null)
                {
-                  storageManager.storeReferenceTransactional(tx.getID(), queue.getID(), message.getMessageID());
-
-                  tx.setContainsPersistent();
-               }
-               else
-               {
-                  storageManager.storeReference(queue.getID(), message.getMessageID(), !iter.hasNext());
+                  durableRefs = new ArrayList<MessageReference>(size);
                }
 
-               if (message.containsProperty(Message.HDR_SCHEDULED_DELIVERY_TIME))
-               {
-                  if (tx != null)
-                  {
-                     storageManager.updateScheduledDeliveryTimeTransactional(tx.getID(), reference);
-                  }
-                  else
-                  {
-                     storageManager.updateScheduledDeliveryTime(reference);
-                  }
-               }
+               durableRefs.add(reference);
             }
 
             message.incrementRefCount();
          }
       }
 
+      if (durableRefs != null)
+      {
+         storeDurableReferences(message, storeMessage, durableRefs, tx, scheduledDeliveryTime != null);
+      }
+
       if (tx != null)
       {
          tx.addOperation(new AddOperation(refs));
@@ -1175,8 +1225,7 @@ public class PostOfficeImpl implements PostOffice, NotificationListener, Binding
 
    private boolean checkDuplicateID(final ServerMessage message,
                                     final RoutingContext context,
-                                    boolean rejectDuplicates,
-                                    AtomicBoolean startedTX) throws Exception
+                                    boolean rejectDuplicates) throws Exception
    {
       // Check the DuplicateCache for the Bridge first
 
@@ -1206,7 +1255,6 @@ public class PostOfficeImpl implements PostOffice, NotificationListener, Binding
             if (context.getTransaction() == null)
             {
                context.setTransaction(new TransactionImpl(storageManager));
-               startedTX.set(true);
             }
          }
 
@@ -1254,8 +1302,6 @@ public class PostOfficeImpl implements PostOffice, NotificationListener, Binding
             {
                // We need to store the duplicate id atomically with the message storage, so we need to create a tx for this
                context.setTransaction(new TransactionImpl(storageManager));
-
-               startedTX.set(true);
             }
 
             cache.addToCache(duplicateIDBytes, context.getTransaction());
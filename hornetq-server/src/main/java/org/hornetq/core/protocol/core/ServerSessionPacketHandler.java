@@ -450,7 +450,9 @@ public class ServerSessionPacketHandler implements ChannelHandler
                case SESS_FLOWTOKEN:
                {
                   SessionConsumerFlowCreditMessage message = (SessionConsumerFlowCreditMessage)packet;
-                  session.receiveConsumerCredits(message.getConsumerID(), message.getCredits());
+                  session.receiveConsumerCredits(message.getConsumerID(),
+                                                 message.getCredits(),
+                                                 message.getBufferedBytes());
                   break;
                }
                case SESS_SEND:
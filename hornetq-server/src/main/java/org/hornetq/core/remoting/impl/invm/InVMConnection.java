@@ -138,7 +138,10 @@ public class InVMConnection implements Connection
 
    public void write(final HornetQBuffer buffer, final boolean flush, final boolean batch)
    {
-      final HornetQBuffer copied = buffer.copy(0, buffer.capacity());
+      // packets may be composed of several buffers, whose copies would not be dynamic
+      final HornetQBuffer copied = HornetQBuffers.dynamicBuffer(buffer.capacity());
+
+      copied.writeBytes(buffer, 0, buffer.capacity());
 
       copied.setIndex(buffer.readerIndex(), buffer.writerIndex());
 
@@ -56,6 +56,7 @@ import org.hornetq.utils.TypedProperties;
 import org.hornetq.utils.VersionLoader;
 import org.jboss.netty.bootstrap.ServerBootstrap;
 import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelException;
 import org.jboss.netty.channel.ChannelFactory;
 import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.ChannelFutureListener;
@@ -340,7 +341,17 @@ public class NettyAcceptor implements Acceptor
             threadsToUse = this.nioRemotingThreads;
          }
 
-         channelFactory = new NioServerSocketChannelFactory(bossExecutor, workerExecutor, threadsToUse);
+         try
+         {
+            channelFactory = new NioServerSocketChannelFactory(bossExecutor, workerExecutor, threadsToUse);
+         }
+         catch (ChannelException e)
+         {
+            // the selectors couldn't be opened
+            HornetQServerLogger.LOGGER.nioUnavailable(e, host, port);
+
+            channelFactory = new OioServerSocketChannelFactory(bossExecutor, workerExecutor);
+         }
       }
       else
       {
@@ -475,7 +486,18 @@ public class NettyAcceptor implements Acceptor
 
       serverChannelGroup = new DefaultChannelGroup("hornetq-acceptor-channels");
 
-      startServerChannels();
+      try
+      {
+         startServerChannels();
+      }
+      catch (ChannelException e)
+      {
+         // the NIO factory has started its threads already
+         serverChannelGroup.close().awaitUninterruptibly();
+         channelFactory.releaseExternalResources();
+         channelFactory = null;
+         throw e;
+      }
 
       paused = false;
 
@@ -254,9 +254,31 @@ public class RemotingServiceImpl implements RemotingService, ConnectionLifeCycle
          }
       }
 
-      for (Acceptor a : acceptors)
+      try
       {
-         a.start();
+         for (Acceptor a : acceptors)
+         {
+            a.start();
+         }
+      }
+      catch (Exception e)
+      {
+         // not started, so stop() won't release the acceptors started already and the threads of their pool
+         for (Acceptor a : acceptors)
+         {
+            a.stop();
+         }
+
+         acceptors.clear();
+
+         if (managementService != null)
+         {
+            managementService.unregisterAcceptors();
+         }
+
+         threadPool.shutdown();
+
+         throw e;
       }
 
       // This thread checks connections that need to be closed, and also flushes confirmations
@@ -371,5 +371,16 @@ public interface HornetQMessageBundle
 
    @Message(id = 119098, value =  "Queue {0} has a different filter than requested", format = Message.Format.MESSAGE_FORMAT)
    HornetQInvalidTransientQueueUseException queueSubscriptionBelongsToDifferentFilter(SimpleString queueName);
+
+   @Message(id = 119099, value = "The message journal in {0} was written with {1} shard(s) but journal-shards is set to {2}",
+      format = Message.Format.MESSAGE_FORMAT)
+   HornetQIllegalStateException journalShardsChanged(String journalDir, Integer storedShards, Integer shards);
+
+   @Message(id = 119100, value = "journal-shards is set to {0} but a sharded message journal can not be replicated, set journal-shards to 1 or use a shared store",
+      format = Message.Format.MESSAGE_FORMAT)
+   HornetQIllegalStateException journalShardsReplicated(Integer shards);
+
+   @Message(id = 119101, value = "The paged messages could not be written to {0}", format = Message.Format.MESSAGE_FORMAT)
+   HornetQIOErrorException pageWriteFailed(@Cause Throwable e, String fileName);
    
 }
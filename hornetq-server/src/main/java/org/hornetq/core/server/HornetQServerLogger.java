@@ -255,6 +255,10 @@ public interface HornetQServerLogger extends BasicLogger
             format = Message.Format.MESSAGE_FORMAT)
    void deprecatedConfigurationOption(String deprecatedOption);
 
+   @LogMessage(level = Logger.Level.INFO)
+   @Message(id = 221039, value = "Using memory mapped Journal", format = Message.Format.MESSAGE_FORMAT)
+   void journalUseMapped();
+
    @LogMessage(level = Logger.Level.WARN)
    @Message(id = 222000, value = "HornetQServer is being finalized and has not been stopped. Please remember to stop the server before letting it go out of scope",
          format = Message.Format.MESSAGE_FORMAT)
@@ -992,6 +996,14 @@ public interface HornetQServerLogger extends BasicLogger
    @Message(id = 222166, value = "Error stopping naming server", format = Message.Format.MESSAGE_FORMAT)
    void unableToStopNamingServer(@Cause Exception e);
 
+   @LogMessage(level = Logger.Level.WARN)
+   @Message(id = 222167, value = "Error writing the index of page file {0}, the page will be read entirely", format = Message.Format.MESSAGE_FORMAT)
+   void pageIndexWriteError(@Cause Exception e, String fileName);
+
+   @LogMessage(level = Logger.Level.WARN)
+   @Message(id = 222168, value = "Unable to use non blocking IO on the acceptor for {0}:{1,number,#}, falling back to blocking IO", format = Message.Format.MESSAGE_FORMAT)
+   void nioUnavailable(@Cause Exception e, String host, Integer port);
+
    @LogMessage(level = Logger.Level.ERROR)
    @Message(id = 224000, value = "Failure in initialisation", format = Message.Format.MESSAGE_FORMAT)
    void initializationError(@Cause Throwable e);
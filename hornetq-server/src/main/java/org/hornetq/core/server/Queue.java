@@ -134,6 +134,22 @@ public interface Queue extends Bindable
     */
    long getMessagesAdded();
 
+   /**
+    * @return the number of message groups currently owned by a consumer of this queue
+    */
+   int getGroupCount();
+
+   /**
+    * @return the number of message groups dropped because they were idle or too many groups were
+    *         owned
+    */
+   long getGroupsEvicted();
+
+   /**
+    * @return the number of message groups that lost their owner because the consumer went away
+    */
+   long getGroupsRebalanced();
+
    /**
     * This method will return the messages added after waiting some time on the flush executors.
     * If the executor couldn't be flushed within the timeout we will just return the current value without any warn
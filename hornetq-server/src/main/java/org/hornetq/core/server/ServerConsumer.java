@@ -38,6 +38,18 @@ public interface ServerConsumer extends Consumer
 
    void receiveCredits(int credits) throws Exception;
 
+   /**
+    * @param clientBufferedBytes the size of the messages buffered by the client, as sent with its
+    *           credits
+    */
+   void setClientBufferedBytes(int clientBufferedBytes);
+
+   /**
+    * @return the size of the messages buffered by the client as of the last credits it sent, or -1
+    *         if it doesn't send it
+    */
+   int getClientBufferedBytes();
+
    Queue getQueue();
 
    MessageReference removeReferenceByID(long messageID) throws Exception;
@@ -107,6 +107,11 @@ public interface ServerSession
 
    void receiveConsumerCredits(long consumerID, int credits) throws Exception;
 
+   /**
+    * @param clientBufferedBytes the size of the messages buffered by the consumer, -1 if unknown
+    */
+   void receiveConsumerCredits(long consumerID, int credits, int clientBufferedBytes) throws Exception;
+
    void sendContinuations(int packetSize, long totalBodySize, byte[] body, boolean continues) throws Exception;
 
    void send(ServerMessage message, boolean direct) throws Exception;
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.server.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.server.Consumer;
+
+/**
+ * The table of message group owners of a queue.
+ * <p>
+ * Groups are spread over a fixed number of stripes, each one an access ordered map guarded by its
+ * own lock, so that management and the periodic idle sweep never block deliveries on other
+ * stripes. Within a stripe the least recently used group comes first, which makes both evictions
+ * cheap: groups idle for longer than the idle timeout are dropped from the head of the stripe, and
+ * when a stripe is over its share of the maximum number of groups its least recently used group is
+ * dropped as well.
+ * <p>
+ * Looking up the owner of a group does not allocate. Evicting a group only means its next message
+ * may be given to a different consumer, exactly as if the group was new.
+ *
+ * @see QueueImpl
+ */
+final class GroupTable
+{
+   // Constants -----------------------------------------------------
+
+   static final int DEFAULT_STRIPES = 16;
+
+   // Attributes ----------------------------------------------------
+
+   private final Stripe[] stripes;
+
+   private final AtomicInteger size = new AtomicInteger(0);
+
+   private final AtomicLong evicted = new AtomicLong(0);
+
+   private final AtomicLong rebalanced = new AtomicLong(0);
+
+   // a value <= 0 means unbounded
+   private volatile int maxGroupsPerStripe = -1;
+
+   // a value <= 0 means groups never expire
+   private volatile long idleTimeout = -1;
+
+   // Constructors --------------------------------------------------
+
+   /**
+    * @param stripes the number of stripes, rounded up to a power of 2
+    */
+   GroupTable(final int stripes)
+   {
+      int n = 1;
+      while (n < stripes)
+      {
+         n <<= 1;
+      }
+
+      this.stripes = new Stripe[n];
+
+      for (int i = 0; i < n; i++)
+      {
+         this.stripes[i] = new Stripe();
+      }
+   }
+
+   // Public --------------------------------------------------------
+
+   /**
+    * @param maxGroups the maximum number of groups, or -1 for no limit
+    * @param idleTimeout the time in milliseconds after which an unused group is dropped, or -1
+    */
+   void configure(final int maxGroups, final long idleTimeout)
+   {
+      maxGroupsPerStripe = maxGroups <= 0 ? -1 : Math.max(1, (maxGroups + stripes.length - 1) / stripes.length);
+      this.idleTimeout = idleTimeout;
+   }
+
+   /**
+    * @return the consumer owning the group, or null if the group has no owner
+    */
+   Consumer get(final SimpleString groupID)
+   {
+      Stripe stripe = stripeFor(groupID);
+
+      synchronized (stripe)
+      {
+         Owner owner = stripe.get(groupID);
+
+         if (owner == null)
+         {
+            return null;
+         }
+
+         if (idleTimeout > 0)
+         {
+            owner.lastUsed = System.currentTimeMillis();
+         }
+
+         return owner.consumer;
+      }
+   }
+
+   void put(final SimpleString groupID, final Consumer consumer)
+   {
+      Stripe stripe = stripeFor(groupID);
+
+      long now = System.currentTimeMillis();
+
+      synchronized (stripe)
+      {
+         Owner owner = stripe.get(groupID);
+
+         if (owner != null)
+         {
+            owner.consumer = consumer;
+            owner.lastUsed = now;
+            return;
+         }
+
+         evictIdle(stripe, now);
+
+         int max = maxGroupsPerStripe;
+
+         if (max > 0)
+         {
+            Iterator<Owner> iter = stripe.values().iterator();
+
+            while (stripe.size() >= max && iter.hasNext())
+            {
+               iter.next();
+               iter.remove();
+               size.decrementAndGet();
+               evicted.incrementAndGet();
+            }
+         }
+
+         stripe.put(groupID, new Owner(consumer, now));
+         size.incrementAndGet();
+      }
+   }
+
+   /**
+    * Drops the groups owned by a consumer that went away, their next messages will pick a new owner.
+    *
+    * @return the number of groups dropped
+    */
+   int removeConsumer(final Consumer consumer)
+   {
+      int removed = 0;
+
+      for (Stripe stripe : stripes)
+      {
+         synchronized (stripe)
+         {
+            Iterator<Owner> iter = stripe.values().iterator();
+
+            while (iter.hasNext())
+            {
+               if (iter.next().consumer == consumer)
+               {
+                  iter.remove();
+                  removed++;
+               }
+            }
+         }
+      }
+
+      if (removed > 0)
+      {
+         size.addAndGet(-removed);
+         rebalanced.addAndGet(removed);
+      }
+
+      return removed;
+   }
+
+   /**
+    * Drops the groups that have not been used for longer than the idle timeout.
+    */
+   void evictIdle()
+   {
+      if (idleTimeout <= 0)
+      {
+         return;
+      }
+
+      long now = System.currentTimeMillis();
+
+      for (Stripe stripe : stripes)
+      {
+         synchronized (stripe)
+         {
+            evictIdle(stripe, now);
+         }
+      }
+   }
+
+   void clear()
+   {
+      for (Stripe stripe : stripes)
+      {
+         synchronized (stripe)
+         {
+            size.addAndGet(-stripe.size());
+            stripe.clear();
+         }
+      }
+   }
+
+   int size()
+   {
+      return size.get();
+   }
+
+   /**
+    * @return the number of groups dropped because they were idle or the table was full
+    */
+   long getEvictedCount()
+   {
+      return evicted.get();
+   }
+
+   /**
+    * @return the number of groups dropped because their consumer went away
+    */
+   long getRebalancedCount()
+   {
+      return rebalanced.get();
+   }
+
+   // Private -------------------------------------------------------
+
+   private Stripe stripeFor(final SimpleString groupID)
+   {
+      int h = groupID.hashCode();
+
+      return stripes[(h ^ (h >>> 16)) & (stripes.length - 1)];
+   }
+
+   private void evictIdle(final Stripe stripe, final long now)
+   {
+      long timeout = idleTimeout;
+
+      if (timeout <= 0)
+      {
+         return;
+      }
+
+      Iterator<Owner> iter = stripe.values().iterator();
+
+      // least recently used first, so we can stop at the first group still in use
+      while (iter.hasNext() && now - iter.next().lastUsed > timeout)
+      {
+         iter.remove();
+         size.decrementAndGet();
+         evicted.incrementAndGet();
+      }
+   }
+
+   // Inner classes -------------------------------------------------
+
+   private static final class Stripe extends LinkedHashMap<SimpleString, Owner>
+   {
+      private static final long serialVersionUID = 4371402634137546238L;
+
+      Stripe()
+      {
+         super(16, 0.75f, true);
+      }
+   }
+
+   private static final class Owner
+   {
+      Consumer consumer;
+
+      long lastUsed;
+
+      Owner(final Consumer consumer, final long lastUsed)
+      {
+         this.consumer = consumer;
+         this.lastUsed = lastUsed;
+      }
+   }
+}
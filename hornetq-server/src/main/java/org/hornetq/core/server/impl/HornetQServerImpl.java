@@ -396,6 +396,8 @@ public class HornetQServerImpl implements HornetQServer
       {
          checkJournalDirectory();
 
+         checkJournalShards();
+
          nodeManager =
                   createNodeManager(configuration.getJournalDirectory(), configuration.getBackupGroupName(), false);
 
@@ -1382,7 +1384,8 @@ public class HornetQServerImpl implements HornetQServer
          scheduledPool,
          executorFactory,
          configuration.isJournalSyncNonTransactional(),
-         shutdownOnCriticalIO),
+         shutdownOnCriticalIO,
+         configuration.getJournalType() == JournalType.MAPPED),
       addressSettingsRepository);
    }
 
@@ -2013,6 +2016,19 @@ public class HornetQServerImpl implements HornetQServer
       }
    }
 
+   /**
+    * A sharded message journal can't be synchronized with a backup, nor can a backup load one while
+    * it is being replicated.
+    */
+   private void checkJournalShards() throws HornetQIllegalStateException
+   {
+      if (configuration.getJournalShards() > 1 && configuration.isPersistenceEnabled() &&
+         !configuration.isSharedStore())
+      {
+         throw HornetQMessageBundle.BUNDLE.journalShardsReplicated(configuration.getJournalShards());
+      }
+   }
+
    /**
     * To be called by backup trying to fail back the server
     */
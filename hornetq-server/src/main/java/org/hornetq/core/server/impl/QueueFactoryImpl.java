@@ -13,7 +13,14 @@
 
 package org.hornetq.core.server.impl;
 
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.filter.Filter;
@@ -25,6 +32,7 @@ import org.hornetq.core.server.QueueFactory;
 import org.hornetq.core.settings.HierarchicalRepository;
 import org.hornetq.core.settings.impl.AddressSettings;
 import org.hornetq.utils.ExecutorFactory;
+import org.hornetq.utils.HornetQThreadFactory;
 
 /**
  *
@@ -36,6 +44,8 @@ import org.hornetq.utils.ExecutorFactory;
  */
 public class QueueFactoryImpl implements QueueFactory
 {
+   private static final long DELIVERY_THREAD_KEEP_ALIVE = 60000;
+
    protected final HierarchicalRepository<AddressSettings> addressSettingsRepository;
 
    protected final ScheduledExecutorService scheduledExecutor;
@@ -76,6 +86,9 @@ public class QueueFactoryImpl implements QueueFactory
    {
       AddressSettings addressSettings = addressSettingsRepository.getMatch(address.toString());
 
+      Executor executor = addressSettings.isDedicatedDeliveryThread() ? createDeliveryExecutor(name)
+                                                                      : executorFactory.getExecutor();
+
       Queue queue;
       if (addressSettings.isLastValueQueue())
       {
@@ -90,7 +103,7 @@ public class QueueFactoryImpl implements QueueFactory
                                     postOffice,
                                     storageManager,
                                     addressSettingsRepository,
-                                    executorFactory.getExecutor());
+                                    executor);
       }
       else
       {
@@ -105,9 +118,44 @@ public class QueueFactoryImpl implements QueueFactory
                                postOffice,
                                storageManager,
                                addressSettingsRepository,
-                               executorFactory.getExecutor());
+                               executor);
       }
 
       return queue;
    }
+
+   /**
+    * A single thread executor for the queue alone, its thread goes away when the queue is idle.
+    */
+   private Executor createDeliveryExecutor(final SimpleString name)
+   {
+      final ClassLoader tccl = AccessController.doPrivileged(new PrivilegedAction<ClassLoader>()
+      {
+         public ClassLoader run()
+         {
+            return QueueFactoryImpl.class.getClassLoader();
+         }
+      });
+
+      return new DeliveryExecutor(new HornetQThreadFactory("HornetQ-queue-" + name, true, tccl));
+   }
+
+   /**
+    * The executor of a queue delivering from a thread of its own, which the queue shuts down when
+    * it is closed.
+    */
+   static final class DeliveryExecutor extends ThreadPoolExecutor
+   {
+      DeliveryExecutor(final ThreadFactory threadFactory)
+      {
+         super(1,
+               1,
+               DELIVERY_THREAD_KEEP_ALIVE,
+               TimeUnit.MILLISECONDS,
+               new LinkedBlockingQueue<Runnable>(),
+               threadFactory);
+
+         allowCoreThreadTimeOut(true);
+      }
+   }
 }
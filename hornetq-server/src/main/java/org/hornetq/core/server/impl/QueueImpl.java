@@ -23,18 +23,20 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.hornetq.api.core.Message;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.filter.Filter;
+import org.hornetq.core.filter.impl.FilterImpl;
 import org.hornetq.core.paging.cursor.PageSubscription;
 import org.hornetq.core.paging.cursor.PagedReference;
 import org.hornetq.core.persistence.StorageManager;
@@ -62,6 +64,7 @@ import org.hornetq.core.transaction.impl.TransactionImpl;
 import org.hornetq.utils.ConcurrentHashSet;
 import org.hornetq.utils.FutureLatch;
 import org.hornetq.utils.LinkedListIterator;
+import org.hornetq.utils.MultiProducerRingBuffer;
 import org.hornetq.utils.PriorityLinkedList;
 import org.hornetq.utils.PriorityLinkedListImpl;
 import org.hornetq.utils.ReferenceCounter;
@@ -97,6 +100,9 @@ public class QueueImpl implements Queue
 
    private static final int FLUSH_TIMEOUT = 10000;
 
+   /** Capacity of the ring producers hand references off to the delivery executor through */
+   public static final int INTERMEDIATE_CAPACITY = 1024;
+
    private final long id;
 
    private final SimpleString name;
@@ -111,6 +117,8 @@ public class QueueImpl implements Queue
 
    private volatile boolean queueDestroyed = false;
 
+   private final AtomicBoolean closed = new AtomicBoolean(false);
+
    private final PageSubscription pageSubscription;
 
    private ReferenceCounter refCountForConsumers;
@@ -120,7 +128,8 @@ public class QueueImpl implements Queue
    // Messages will first enter intermediateMessageReferences
    // Before they are added to messageReferences
    // This is to avoid locking the queue on the producer
-   private final ConcurrentLinkedQueue<MessageReference> intermediateMessageReferences = new ConcurrentLinkedQueue<MessageReference>();
+   // Only the holder of the queue's monitor may poll it
+   private final MultiProducerRingBuffer<MessageReference> intermediateMessageReferences = new MultiProducerRingBuffer<MessageReference>(INTERMEDIATE_CAPACITY);
 
    // This is where messages are stored
    private final PriorityLinkedList<MessageReference> messageReferences = new PriorityLinkedListImpl<MessageReference>(QueueImpl.NUM_PRIORITIES);
@@ -175,7 +184,7 @@ public class QueueImpl implements Queue
 
    private final Set<Consumer> consumerSet = new HashSet<Consumer>();
 
-   private final Map<SimpleString, Consumer> groups = new HashMap<SimpleString, Consumer>();
+   private final GroupTable groups = new GroupTable(GroupTable.DEFAULT_STRIPES);
 
    private volatile SimpleString expiryAddress;
 
@@ -189,6 +198,11 @@ public class QueueImpl implements Queue
 
    private volatile boolean directDeliver = true;
 
+   private volatile boolean indexedDelivery;
+
+   // The message property consumer filters are indexed by, see PriorityLinkedList#iterator(Object)
+   private SimpleString indexedProperty;
+
    private AddressSettingsRepositoryListener addressSettingsRepositoryListener;
 
    private final ExpiryScanner expiryScanner = new ExpiryScanner();
@@ -312,7 +326,10 @@ public class QueueImpl implements Queue
 
       if (addressSettingsRepository != null)
       {
-         expiryAddress = addressSettingsRepository.getMatch(address.toString()).getExpiryAddress();
+         AddressSettings addressSettings = addressSettingsRepository.getMatch(address.toString());
+         expiryAddress = addressSettings.getExpiryAddress();
+         indexedDelivery = addressSettings.isIndexedDelivery();
+         groups.configure(addressSettings.getMaxGroups(), addressSettings.getGroupIdleTimeout());
          addressSettingsRepositoryListener = new AddressSettingsRepositoryListener();
          addressSettingsRepository.registerListener(addressSettingsRepositoryListener);
       }
@@ -500,7 +517,11 @@ public class QueueImpl implements Queue
       // We only add queueMemorySize if not being delivered directly
       queueMemorySize.addAndGet(ref.getMessageMemoryEstimate());
 
-      intermediateMessageReferences.add(ref);
+      while (!intermediateMessageReferences.offer(ref))
+      {
+         // the delivery executor is lagging behind, move the references to messageReferences ourselves
+         doInternalPoll();
+      }
 
       directDeliver = false;
 
@@ -572,6 +593,12 @@ public class QueueImpl implements Queue
 
    public void close() throws Exception
    {
+      if (!closed.compareAndSet(false, true))
+      {
+         // already closed, its executor may take no more tasks
+         return;
+      }
+
       if (checkQueueSizeFuture != null)
       {
          checkQueueSizeFuture.cancel(false);
@@ -593,6 +620,12 @@ public class QueueImpl implements Queue
          }
       });
 
+      if (executor instanceof QueueFactoryImpl.DeliveryExecutor)
+      {
+         // the tasks handed to it already, such as the one above, still run
+         ((ExecutorService)executor).shutdown();
+      }
+
       if (addressSettingsRepository != null)
       {
          addressSettingsRepository.unRegisterListener(addressSettingsRepositoryListener);
@@ -636,9 +669,32 @@ public class QueueImpl implements Queue
    {
       FutureLatch future = new FutureLatch();
 
-      getExecutor().execute(future);
+      boolean result;
 
-      boolean result = future.await(timeout);
+      try
+      {
+         getExecutor().execute(future);
+
+         result = future.await(timeout);
+      }
+      catch (RejectedExecutionException e)
+      {
+         if (!(executor instanceof QueueFactoryImpl.DeliveryExecutor))
+         {
+            throw e;
+         }
+
+         // the queue was closed along with its delivery thread, which still runs the tasks it was given
+         try
+         {
+            result = ((ExecutorService)executor).awaitTermination(timeout, TimeUnit.MILLISECONDS);
+         }
+         catch (InterruptedException interrupted)
+         {
+            Thread.currentThread().interrupt();
+            result = false;
+         }
+      }
 
       if (!result)
       {
@@ -662,7 +718,7 @@ public class QueueImpl implements Queue
 
          cancelRedistributor();
 
-         consumerList.add(new ConsumerHolder(consumer));
+         consumerList.add(new ConsumerHolder(consumer, getIndexKey(consumer)));
 
          consumerSet.add(consumer);
 
@@ -686,10 +742,18 @@ public class QueueImpl implements Queue
                       holder.iter.close();
                   }
                   consumerList.remove(holder);
+                  if (holder.indexKey != null && !isIndexInUse(holder.indexKey)) {
+                      messageReferences.removeIndex(holder.indexKey);
+                  }
                   break;
               }
           }
 
+         if (indexedProperty != null && !isIndexInUse())
+         {
+            indexedProperty = null;
+         }
+
          if (pos > 0 && pos >= consumerList.size())
          {
             pos = consumerList.size() - 1;
@@ -697,30 +761,7 @@ public class QueueImpl implements Queue
 
          consumerSet.remove(consumer);
 
-         LinkedList<SimpleString> groupsToRemove = null;
-
-         for (SimpleString groupID : groups.keySet())
-         {
-            if (consumer == groups.get(groupID))
-            {
-               if (groupsToRemove == null)
-               {
-                  groupsToRemove = new LinkedList<SimpleString>();
-               }
-               groupsToRemove.add(groupID);
-            }
-         }
-
-         // We use an auxiliary List here to avoid concurrent modification exceptions on the keySet
-         // while the iteration is being done.
-         // Since that's a simple HashMap there's no Iterator's support with a remove operation
-         if (groupsToRemove != null)
-         {
-            for (SimpleString groupID: groupsToRemove)
-            {
-               groups.remove(groupID);
-            }
-         }
+         groups.removeConsumer(consumer);
 
          if (refCountForConsumers != null)
          {
@@ -1108,6 +1149,21 @@ public class QueueImpl implements Queue
       return getMessagesAdded(FLUSH_TIMEOUT);
    }
 
+   public int getGroupCount()
+   {
+      return groups.size();
+   }
+
+   public long getGroupsEvicted()
+   {
+      return groups.getEvictedCount();
+   }
+
+   public long getGroupsRebalanced()
+   {
+      return groups.getRebalancedCount();
+   }
+
    public long getMessagesAdded(final long timeout)
    {
       if (timeout > 0) internalFlushExecutor(timeout);
@@ -1418,6 +1474,9 @@ public class QueueImpl implements Queue
 
    public void expireReferences()
    {
+      // piggy back on the reaper to drop the message groups nobody used for a while
+      groups.evictIdle();
+
       if (expiryAddress != null && expiryAddress.equals(this.address))
       {
          // check expire with itself would be silly (waste of time)
@@ -1429,7 +1488,15 @@ public class QueueImpl implements Queue
       if (!queueDestroyed && expiryScanner.scannerRunning.get() == 0)
       {
          expiryScanner.scannerRunning.incrementAndGet();
-         getExecutor().execute(expiryScanner);
+         try
+         {
+            getExecutor().execute(expiryScanner);
+         }
+         catch (RejectedExecutionException ignored)
+         {
+            // the queue was closed, there is nothing left to scan
+            expiryScanner.scannerRunning.decrementAndGet();
+         }
       }
    }
 
@@ -1900,7 +1967,8 @@ public class QueueImpl implements Queue
 
             if (holder.iter == null)
             {
-               holder.iter = messageReferences.iterator();
+               holder.iter = holder.indexKey == null ? messageReferences.iterator()
+                                                     : messageReferences.iterator(holder.indexKey);
             }
 
             if (holder.iter.hasNext())
@@ -2145,7 +2213,7 @@ public class QueueImpl implements Queue
                                            executor,
                                            QueueImpl.REDISTRIBUTOR_BATCH_SIZE);
 
-         consumerList.add(new ConsumerHolder(redistributor));
+         consumerList.add(new ConsumerHolder(redistributor, null));
 
          consumersChanged = true;
 
@@ -2591,18 +2659,85 @@ public class QueueImpl implements Queue
    }
 
 
+   /**
+    * With indexed delivery, a consumer whose filter requires a string property to have a given
+    * value (e.g. <code>region = 'EU' AND ...</code>) only iterates over the references having that
+    * value, instead of checking every reference of the queue against its filter. A single property
+    * is indexed at a time: the one of the first such consumer.
+    *
+    * @return the value the consumer's references are indexed by, or null if the consumer has to go
+    *         through all the references
+    */
+   private SimpleString getIndexKey(final Consumer consumer)
+   {
+      if (!indexedDelivery || !(consumer.getFilter() instanceof FilterImpl))
+      {
+         return null;
+      }
+
+      FilterImpl filter = (FilterImpl)consumer.getFilter();
+
+      SimpleString property = filter.getRequiredPropertyName();
+
+      if (property == null)
+      {
+         return null;
+      }
+
+      if (indexedProperty == null)
+      {
+         indexedProperty = property;
+
+         messageReferences.setKeyExtractor(new PropertyKeyExtractor(property));
+      }
+
+      return property.equals(indexedProperty) ? filter.getRequiredPropertyValue() : null;
+   }
+
+   private boolean isIndexInUse()
+   {
+      for (ConsumerHolder holder : consumerList)
+      {
+         if (holder.indexKey != null)
+         {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * The references stay indexed by a key while some consumer iterates over it, so its iterator can
+    * be reset without going through the whole queue again.
+    */
+   private boolean isIndexInUse(final SimpleString indexKey)
+   {
+      for (ConsumerHolder holder : consumerList)
+      {
+         if (indexKey.equals(holder.indexKey))
+         {
+            return true;
+         }
+      }
+      return false;
+   }
+
    // Inner classes
    // --------------------------------------------------------------------------
 
    private static class ConsumerHolder
    {
-      ConsumerHolder(final Consumer consumer)
+      ConsumerHolder(final Consumer consumer, final SimpleString indexKey)
       {
          this.consumer = consumer;
+         this.indexKey = indexKey;
       }
 
       final Consumer consumer;
 
+      // when not null the consumer only iterates over the references with this value on indexedProperty
+      final SimpleString indexKey;
+
       LinkedListIterator<MessageReference> iter;
 
    }
@@ -2919,7 +3054,31 @@ public class QueueImpl implements Queue
       @Override
       public void onChange()
       {
-         expiryAddress = addressSettingsRepository.getMatch(address.toString()).getExpiryAddress();
+         AddressSettings addressSettings = addressSettingsRepository.getMatch(address.toString());
+         expiryAddress = addressSettings.getExpiryAddress();
+         indexedDelivery = addressSettings.isIndexedDelivery();
+         groups.configure(addressSettings.getMaxGroups(), addressSettings.getGroupIdleTimeout());
+      }
+   }
+
+   /**
+    * Extracts the value of the indexed property from a reference, only string values are indexed
+    * as those are the only ones the filters are indexed by.
+    */
+   private static final class PropertyKeyExtractor implements PriorityLinkedList.KeyExtractor<MessageReference>
+   {
+      private final SimpleString property;
+
+      PropertyKeyExtractor(final SimpleString property)
+      {
+         this.property = property;
+      }
+
+      public Object getKey(final MessageReference ref)
+      {
+         Object value = ref.getMessage().getObjectProperty(property);
+
+         return value instanceof SimpleString ? value : null;
       }
    }
 }
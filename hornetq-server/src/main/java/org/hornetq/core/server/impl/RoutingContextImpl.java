@@ -34,6 +34,10 @@ public final class RoutingContextImpl implements RoutingContext
    // The pair here is Durable and NonDurable
    private final Map<SimpleString, RouteContextList> map = new HashMap<SimpleString, RouteContextList>();
 
+   // the listings of the previous routes, kept with their lists for the next ones as contexts are
+   // reused by the sessions for every message they send
+   private final List<ContextListing> freeListings = new ArrayList<ContextListing>(1);
+
    private Transaction transaction;
 
    private int queueCount;
@@ -47,6 +51,13 @@ public final class RoutingContextImpl implements RoutingContext
    {
       transaction = null;
 
+      for (RouteContextList listing : map.values())
+      {
+         ContextListing contextListing = (ContextListing)listing;
+         contextListing.clear();
+         freeListings.add(contextListing);
+      }
+
       map.clear();
 
       queueCount = 0;
@@ -74,7 +85,8 @@ public final class RoutingContextImpl implements RoutingContext
       RouteContextList listing = map.get(address);
       if (listing == null)
       {
-         listing = new ContextListing();
+         int free = freeListings.size();
+         listing = free == 0 ? new ContextListing() : freeListings.remove(free - 1);
          map.put(address, listing);
       }
       return listing;
@@ -138,6 +150,12 @@ public final class RoutingContextImpl implements RoutingContext
       {
          return nonDurableQueue;
       }
+
+      void clear()
+      {
+         durableQueue.clear();
+         nonDurableQueue.clear();
+      }
    }
 
 }
@@ -96,6 +96,8 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
 
    private volatile AtomicInteger availableCredits = new AtomicInteger(0);
 
+   private volatile int clientBufferedBytes = -1;
+
    private boolean started;
 
    private volatile LargeMessageDeliverer largeMessageDeliverer = null;
@@ -237,6 +239,16 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
       return this.session.getName();
    }
 
+   public void setClientBufferedBytes(final int clientBufferedBytes)
+   {
+      this.clientBufferedBytes = clientBufferedBytes;
+   }
+
+   public int getClientBufferedBytes()
+   {
+      return clientBufferedBytes;
+   }
+
    public void getDeliveringMessages(List<MessageReference> refList)
    {
       synchronized(lock)
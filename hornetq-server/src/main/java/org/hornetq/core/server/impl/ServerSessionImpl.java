@@ -1228,6 +1228,11 @@ public class ServerSessionImpl implements ServerSession, FailureListener
    }
 
    public void receiveConsumerCredits(final long consumerID, final int credits) throws Exception
+   {
+      receiveConsumerCredits(consumerID, credits, -1);
+   }
+
+   public void receiveConsumerCredits(final long consumerID, final int credits, final int clientBufferedBytes) throws Exception
    {
       ServerConsumer consumer = consumers.get(consumerID);
 
@@ -1238,6 +1243,11 @@ public class ServerSessionImpl implements ServerSession, FailureListener
          return;
       }
 
+      if (clientBufferedBytes >= 0)
+      {
+         consumer.setClientBufferedBytes(clientBufferedBytes);
+      }
+
       consumer.receiveCredits(credits);
    }
 
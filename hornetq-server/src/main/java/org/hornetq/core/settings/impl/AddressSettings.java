@@ -59,6 +59,14 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
 
    public static final boolean DEFAULT_SEND_TO_DLA_ON_NO_ROUTE = false;
 
+   public static final boolean DEFAULT_INDEXED_DELIVERY = false;
+
+   public static final int DEFAULT_MAX_GROUPS = -1;
+
+   public static final long DEFAULT_GROUP_IDLE_TIMEOUT = -1L;
+
+   public static final boolean DEFAULT_DEDICATED_DELIVERY_THREAD = false;
+
    private AddressFullMessagePolicy addressFullMessagePolicy = null;
 
    private Long maxSizeBytes = null;
@@ -91,6 +99,14 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
 
    private Boolean sendToDLAOnNoRoute = null;
 
+   private Boolean indexedDelivery = null;
+
+   private Integer maxGroups = null;
+
+   private Long groupIdleTimeout = null;
+
+   private Boolean dedicatedDeliveryThread = null;
+
    public boolean isLastValueQueue()
    {
       return lastValueQueue != null ? lastValueQueue : AddressSettings.DEFAULT_LAST_VALUE_QUEUE;
@@ -243,6 +259,46 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       this.redistributionDelay = redistributionDelay;
    }
 
+   public boolean isIndexedDelivery()
+   {
+      return indexedDelivery != null ? indexedDelivery : AddressSettings.DEFAULT_INDEXED_DELIVERY;
+   }
+
+   public void setIndexedDelivery(final boolean indexedDelivery)
+   {
+      this.indexedDelivery = indexedDelivery;
+   }
+
+   public int getMaxGroups()
+   {
+      return maxGroups != null ? maxGroups : AddressSettings.DEFAULT_MAX_GROUPS;
+   }
+
+   public void setMaxGroups(final int maxGroups)
+   {
+      this.maxGroups = maxGroups;
+   }
+
+   public long getGroupIdleTimeout()
+   {
+      return groupIdleTimeout != null ? groupIdleTimeout : AddressSettings.DEFAULT_GROUP_IDLE_TIMEOUT;
+   }
+
+   public void setGroupIdleTimeout(final long groupIdleTimeout)
+   {
+      this.groupIdleTimeout = groupIdleTimeout;
+   }
+
+   public boolean isDedicatedDeliveryThread()
+   {
+      return dedicatedDeliveryThread != null ? dedicatedDeliveryThread : AddressSettings.DEFAULT_DEDICATED_DELIVERY_THREAD;
+   }
+
+   public void setDedicatedDeliveryThread(final boolean dedicatedDeliveryThread)
+   {
+      this.dedicatedDeliveryThread = dedicatedDeliveryThread;
+   }
+
    /**
     * merge 2 objects in to 1
     * @param merged
@@ -305,6 +361,22 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       {
          sendToDLAOnNoRoute = merged.sendToDLAOnNoRoute;
       }
+      if (indexedDelivery == null)
+      {
+         indexedDelivery = merged.indexedDelivery;
+      }
+      if (maxGroups == null)
+      {
+         maxGroups = merged.maxGroups;
+      }
+      if (groupIdleTimeout == null)
+      {
+         groupIdleTimeout = merged.groupIdleTimeout;
+      }
+      if (dedicatedDeliveryThread == null)
+      {
+         dedicatedDeliveryThread = merged.dedicatedDeliveryThread;
+      }
       if (addressFullMessagePolicy == null)
       {
          addressFullMessagePolicy = merged.addressFullMessagePolicy;
@@ -354,6 +426,27 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       redistributionDelay = BufferHelper.readNullableLong(buffer);
 
       sendToDLAOnNoRoute = BufferHelper.readNullableBoolean(buffer);
+
+      // settings added later may be absent from records written by older versions
+      if (buffer.readable())
+      {
+         indexedDelivery = BufferHelper.readNullableBoolean(buffer);
+      }
+
+      if (buffer.readable())
+      {
+         maxGroups = BufferHelper.readNullableInteger(buffer);
+      }
+
+      if (buffer.readable())
+      {
+         groupIdleTimeout = BufferHelper.readNullableLong(buffer);
+      }
+
+      if (buffer.readable())
+      {
+         dedicatedDeliveryThread = BufferHelper.readNullableBoolean(buffer);
+      }
    }
 
    @Override
@@ -375,7 +468,11 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
              BufferHelper.sizeOfNullableLong(expiryDelay) +
              BufferHelper.sizeOfNullableBoolean(lastValueQueue) +
              BufferHelper.sizeOfNullableLong(redistributionDelay) +
-             BufferHelper.sizeOfNullableBoolean(sendToDLAOnNoRoute);
+             BufferHelper.sizeOfNullableBoolean(sendToDLAOnNoRoute) +
+             BufferHelper.sizeOfNullableBoolean(indexedDelivery) +
+             BufferHelper.sizeOfNullableInteger(maxGroups) +
+             BufferHelper.sizeOfNullableLong(groupIdleTimeout) +
+             BufferHelper.sizeOfNullableBoolean(dedicatedDeliveryThread);
    }
 
    @Override
@@ -413,6 +510,14 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       BufferHelper.writeNullableLong(buffer, redistributionDelay);
 
       BufferHelper.writeNullableBoolean(buffer, sendToDLAOnNoRoute);
+
+      BufferHelper.writeNullableBoolean(buffer, indexedDelivery);
+
+      BufferHelper.writeNullableInteger(buffer, maxGroups);
+
+      BufferHelper.writeNullableLong(buffer, groupIdleTimeout);
+
+      BufferHelper.writeNullableBoolean(buffer, dedicatedDeliveryThread);
    }
 
    /* (non-Javadoc)
@@ -440,6 +545,10 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       result = prime * result + ((maxRedeliveryDelay == null) ? 0 : maxRedeliveryDelay.hashCode());
       result = prime * result + ((redistributionDelay == null) ? 0 : redistributionDelay.hashCode());
       result = prime * result + ((sendToDLAOnNoRoute == null) ? 0 : sendToDLAOnNoRoute.hashCode());
+      result = prime * result + ((indexedDelivery == null) ? 0 : indexedDelivery.hashCode());
+      result = prime * result + ((maxGroups == null) ? 0 : maxGroups.hashCode());
+      result = prime * result + ((groupIdleTimeout == null) ? 0 : groupIdleTimeout.hashCode());
+      result = prime * result + ((dedicatedDeliveryThread == null) ? 0 : dedicatedDeliveryThread.hashCode());
       return result;
    }
 
@@ -568,6 +677,34 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       }
       else if (!sendToDLAOnNoRoute.equals(other.sendToDLAOnNoRoute))
          return false;
+      if (indexedDelivery == null)
+      {
+         if (other.indexedDelivery != null)
+            return false;
+      }
+      else if (!indexedDelivery.equals(other.indexedDelivery))
+         return false;
+      if (maxGroups == null)
+      {
+         if (other.maxGroups != null)
+            return false;
+      }
+      else if (!maxGroups.equals(other.maxGroups))
+         return false;
+      if (groupIdleTimeout == null)
+      {
+         if (other.groupIdleTimeout != null)
+            return false;
+      }
+      else if (!groupIdleTimeout.equals(other.groupIdleTimeout))
+         return false;
+      if (dedicatedDeliveryThread == null)
+      {
+         if (other.dedicatedDeliveryThread != null)
+            return false;
+      }
+      else if (!dedicatedDeliveryThread.equals(other.dedicatedDeliveryThread))
+         return false;
       return true;
    }
 
@@ -608,6 +745,14 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
              redistributionDelay +
              ", sendToDLAOnNoRoute=" +
              sendToDLAOnNoRoute +
+             ", indexedDelivery=" +
+             indexedDelivery +
+             ", maxGroups=" +
+             maxGroups +
+             ", groupIdleTimeout=" +
+             groupIdleTimeout +
+             ", dedicatedDeliveryThread=" +
+             dedicatedDeliveryThread +
              "]";
    }
 }
@@ -61,6 +61,8 @@ public class ConfigurationImplTest extends UnitTestCase
                           conf.isJournalSyncNonTransactional());
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalFileSize(), conf.getJournalFileSize());
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalMinFiles(), conf.getJournalMinFiles());
+      Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalLoadThreads(), conf.getJournalLoadThreads());
+      Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalShards(), conf.getJournalShards());
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalMaxIoAio(), conf.getJournalMaxIO_AIO());
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalMaxIoNio(), conf.getJournalMaxIO_NIO());
       Assert.assertEquals(HornetQDefaultConfiguration.isDefaultWildcardRoutingEnabled(), conf.isWildcardRoutingEnabled());
@@ -88,11 +90,18 @@ public class ConfigurationImplTest extends UnitTestCase
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultPagingDir(), conf.getPagingDirectory());
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultLargeMessagesDir(), conf.getLargeMessagesDirectory());
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalCompactPercentage(), conf.getJournalCompactPercentage());
+      Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalCompactMaxFiles(), conf.getJournalCompactMaxFiles());
+      Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalCompactIoRate(), conf.getJournalCompactIORate());
+      Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalMaxReadyFiles(), conf.getJournalMaxReadyFiles());
+      Assert.assertEquals(HornetQDefaultConfiguration.isDefaultJournalChecksums(), conf.isJournalChecksums());
+      Assert.assertEquals(HornetQDefaultConfiguration.isDefaultJournalGroupedReferences(),
+                          conf.isJournalGroupedReferences());
       Assert.assertEquals(JournalConstants.DEFAULT_JOURNAL_BUFFER_TIMEOUT_AIO, conf.getJournalBufferTimeout_AIO());
       Assert.assertEquals(JournalConstants.DEFAULT_JOURNAL_BUFFER_TIMEOUT_NIO, conf.getJournalBufferTimeout_NIO());
       Assert.assertEquals(JournalConstants.DEFAULT_JOURNAL_BUFFER_SIZE_AIO, conf.getJournalBufferSize_AIO());
       Assert.assertEquals(JournalConstants.DEFAULT_JOURNAL_BUFFER_SIZE_NIO, conf.getJournalBufferSize_NIO());
       Assert.assertEquals(HornetQDefaultConfiguration.isDefaultJournalLogWriteRate(), conf.isLogJournalWriteRate());
+      Assert.assertEquals(HornetQDefaultConfiguration.isDefaultJournalBufferAdaptive(), conf.isJournalBufferAdaptive());
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalPerfBlastPages(), conf.getJournalPerfBlastPages());
       Assert.assertEquals(HornetQDefaultConfiguration.isDefaultMessageCounterEnabled(), conf.isMessageCounterEnabled());
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultMessageCounterMaxDayHistory(),
@@ -167,6 +176,14 @@ public class ConfigurationImplTest extends UnitTestCase
          conf.setJournalMinFiles(i);
          Assert.assertEquals(i, conf.getJournalMinFiles());
 
+         i = RandomUtil.randomInt();
+         conf.setJournalLoadThreads(i);
+         Assert.assertEquals(i, conf.getJournalLoadThreads());
+
+         i = RandomUtil.randomInt();
+         conf.setJournalShards(i);
+         Assert.assertEquals(i, conf.getJournalShards());
+
          i = RandomUtil.randomInt();
          conf.setJournalMaxIO_AIO(i);
          Assert.assertEquals(i, conf.getJournalMaxIO_AIO());
@@ -243,6 +260,26 @@ public class ConfigurationImplTest extends UnitTestCase
          conf.setJournalCompactPercentage(i);
          Assert.assertEquals(i, conf.getJournalCompactPercentage());
 
+         i = RandomUtil.randomInt();
+         conf.setJournalCompactMaxFiles(i);
+         Assert.assertEquals(i, conf.getJournalCompactMaxFiles());
+
+         i = RandomUtil.randomInt();
+         conf.setJournalCompactIORate(i);
+         Assert.assertEquals(i, conf.getJournalCompactIORate());
+
+         i = RandomUtil.randomInt();
+         conf.setJournalMaxReadyFiles(i);
+         Assert.assertEquals(i, conf.getJournalMaxReadyFiles());
+
+         b = RandomUtil.randomBoolean();
+         conf.setJournalChecksums(b);
+         Assert.assertEquals(b, conf.isJournalChecksums());
+
+         b = RandomUtil.randomBoolean();
+         conf.setJournalGroupedReferences(b);
+         Assert.assertEquals(b, conf.isJournalGroupedReferences());
+
          i = RandomUtil.randomInt();
          conf.setJournalBufferSize_AIO(i);
          Assert.assertEquals(i, conf.getJournalBufferSize_AIO());
@@ -259,6 +296,10 @@ public class ConfigurationImplTest extends UnitTestCase
          conf.setJournalBufferTimeout_NIO(i);
          Assert.assertEquals(i, conf.getJournalBufferTimeout_NIO());
 
+         b = RandomUtil.randomBoolean();
+         conf.setJournalBufferAdaptive(b);
+         Assert.assertEquals(b, conf.isJournalBufferAdaptive());
+
          b = RandomUtil.randomBoolean();
          conf.setLogJournalWriteRate(b);
          Assert.assertEquals(b, conf.isLogJournalWriteRate());
@@ -382,6 +423,14 @@ public class ConfigurationImplTest extends UnitTestCase
       conf.setJournalMinFiles(i);
       Assert.assertEquals(i, conf.getJournalMinFiles());
 
+      i = RandomUtil.randomInt();
+      conf.setJournalLoadThreads(i);
+      Assert.assertEquals(i, conf.getJournalLoadThreads());
+
+      i = RandomUtil.randomInt();
+      conf.setJournalShards(i);
+      Assert.assertEquals(i, conf.getJournalShards());
+
       i = RandomUtil.randomInt();
       conf.setJournalMaxIO_AIO(i);
       Assert.assertEquals(i, conf.getJournalMaxIO_AIO());
@@ -459,6 +508,26 @@ public class ConfigurationImplTest extends UnitTestCase
       conf.setJournalCompactPercentage(i);
       Assert.assertEquals(i, conf.getJournalCompactPercentage());
 
+      i = RandomUtil.randomInt();
+      conf.setJournalCompactMaxFiles(i);
+      Assert.assertEquals(i, conf.getJournalCompactMaxFiles());
+
+      i = RandomUtil.randomInt();
+      conf.setJournalCompactIORate(i);
+      Assert.assertEquals(i, conf.getJournalCompactIORate());
+
+      i = RandomUtil.randomInt();
+      conf.setJournalMaxReadyFiles(i);
+      Assert.assertEquals(i, conf.getJournalMaxReadyFiles());
+
+      b = RandomUtil.randomBoolean();
+      conf.setJournalChecksums(b);
+      Assert.assertEquals(b, conf.isJournalChecksums());
+
+      b = RandomUtil.randomBoolean();
+      conf.setJournalGroupedReferences(b);
+      Assert.assertEquals(b, conf.isJournalGroupedReferences());
+
       i = RandomUtil.randomInt();
       conf.setJournalBufferSize_AIO(i);
       Assert.assertEquals(i, conf.getJournalBufferSize_AIO());
@@ -475,6 +544,10 @@ public class ConfigurationImplTest extends UnitTestCase
       conf.setJournalBufferTimeout_NIO(i);
       Assert.assertEquals(i, conf.getJournalBufferTimeout_NIO());
 
+      b = RandomUtil.randomBoolean();
+      conf.setJournalBufferAdaptive(b);
+      Assert.assertEquals(b, conf.isJournalBufferAdaptive());
+
       b = RandomUtil.randomBoolean();
       conf.setLogJournalWriteRate(b);
       Assert.assertEquals(b, conf.isLogJournalWriteRate());
@@ -105,6 +105,17 @@ public class DefaultsFileConfigurationTest extends ConfigurationImplTest
 
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalCompactPercentage(), conf.getJournalCompactPercentage());
 
+      Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalCompactMaxFiles(), conf.getJournalCompactMaxFiles());
+
+      Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalCompactIoRate(), conf.getJournalCompactIORate());
+
+      Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalMaxReadyFiles(), conf.getJournalMaxReadyFiles());
+
+      Assert.assertEquals(HornetQDefaultConfiguration.isDefaultJournalChecksums(), conf.isJournalChecksums());
+
+      Assert.assertEquals(HornetQDefaultConfiguration.isDefaultJournalGroupedReferences(),
+                          conf.isJournalGroupedReferences());
+
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalMinFiles(), conf.getJournalMinFiles());
 
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalMaxIoAio(), conf.getJournalMaxIO_AIO());
@@ -81,14 +81,22 @@ public class FileConfigurationTest extends ConfigurationImplTest
       Assert.assertEquals(JournalType.NIO, conf.getJournalType());
       Assert.assertEquals(10000, conf.getJournalBufferSize_NIO());
       Assert.assertEquals(1000, conf.getJournalBufferTimeout_NIO());
+      Assert.assertEquals(true, conf.isJournalBufferAdaptive());
       Assert.assertEquals(56546, conf.getJournalMaxIO_NIO());
 
       Assert.assertEquals(false, conf.isJournalSyncTransactional());
       Assert.assertEquals(true, conf.isJournalSyncNonTransactional());
       Assert.assertEquals(12345678, conf.getJournalFileSize());
       Assert.assertEquals(100, conf.getJournalMinFiles());
+      Assert.assertEquals(3, conf.getJournalLoadThreads());
+      Assert.assertEquals(2, conf.getJournalShards());
       Assert.assertEquals(123, conf.getJournalCompactMinFiles());
       Assert.assertEquals(33, conf.getJournalCompactPercentage());
+      Assert.assertEquals(4, conf.getJournalCompactMaxFiles());
+      Assert.assertEquals(50, conf.getJournalCompactIORate());
+      Assert.assertEquals(3, conf.getJournalMaxReadyFiles());
+      Assert.assertEquals(true, conf.isJournalChecksums());
+      Assert.assertEquals(true, conf.isJournalGroupedReferences());
 
       Assert.assertEquals("largemessagesdir", conf.getLargeMessagesDirectory());
       Assert.assertEquals(95, conf.getMemoryWarningThreshold());
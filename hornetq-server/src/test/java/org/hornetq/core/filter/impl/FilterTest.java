@@ -12,6 +12,9 @@
  */
 
 package org.hornetq.core.filter.impl;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.Before;
 
 import org.junit.Test;
@@ -711,6 +714,104 @@ public class FilterTest extends SilentTestCase
       parse.getNextToken();
    }
 
+   @Test
+   public void testArithmeticAndBetween() throws Exception
+   {
+      filter = FilterImpl.createFilter(new SimpleString("price * 2 BETWEEN 10 AND 20.5"));
+      Assert.assertFalse(filter.match(message));
+
+      message.putIntProperty(new SimpleString("price"), 5);
+      Assert.assertTrue(filter.match(message));
+
+      message.putDoubleProperty(new SimpleString("price"), 10.5);
+      Assert.assertFalse(filter.match(message));
+
+      filter = FilterImpl.createFilter(new SimpleString("price NOT BETWEEN 10 AND 11"));
+      Assert.assertFalse(filter.match(message));
+
+      filter = FilterImpl.createFilter(new SimpleString("price >= 10 AND price < 10.6"));
+      Assert.assertTrue(filter.match(message));
+   }
+
+   @Test
+   public void testRequiredProperty() throws Exception
+   {
+      FilterImpl impl = (FilterImpl)FilterImpl.createFilter("a > 1 AND (b = 'x' OR c = 'y') AND 'z' = d");
+      Assert.assertEquals(new SimpleString("d"), impl.getRequiredPropertyName());
+      Assert.assertEquals(new SimpleString("z"), impl.getRequiredPropertyValue());
+
+      impl = (FilterImpl)FilterImpl.createFilter("b = 'x' OR c = 'y'");
+      Assert.assertNull(impl.getRequiredPropertyName());
+
+      impl = (FilterImpl)FilterImpl.createFilter("NOT (b = 'x')");
+      Assert.assertNull(impl.getRequiredPropertyName());
+
+      impl = (FilterImpl)FilterImpl.createFilter("b = 1");
+      Assert.assertNull(impl.getRequiredPropertyName());
+
+      impl = (FilterImpl)FilterImpl.createFilter("HQDurable = 'DURABLE'");
+      Assert.assertNull(impl.getRequiredPropertyName());
+   }
+
+   @Test
+   public void testConcurrentMatch() throws Exception
+   {
+      final int THREADS = 8;
+      final int ITERATIONS = 10000;
+
+      filter = FilterImpl.createFilter(new SimpleString("region = 'EU' AND amount > 100"));
+
+      final ServerMessage[] messages = new ServerMessage[THREADS];
+      for (int i = 0; i < THREADS; i++)
+      {
+         messages[i] = new ServerMessageImpl(i, 1000);
+         messages[i].putStringProperty(new SimpleString("region"), new SimpleString(i % 2 == 0 ? "EU" : "US"));
+         messages[i].putLongProperty(new SimpleString("amount"), 1000L);
+      }
+
+      final CountDownLatch start = new CountDownLatch(1);
+      final AtomicInteger errors = new AtomicInteger(0);
+
+      Thread[] threads = new Thread[THREADS];
+      for (int i = 0; i < THREADS; i++)
+      {
+         final ServerMessage threadMessage = messages[i];
+         final boolean expected = i % 2 == 0;
+         threads[i] = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               try
+               {
+                  start.await();
+                  for (int j = 0; j < ITERATIONS; j++)
+                  {
+                     if (filter.match(threadMessage) != expected)
+                     {
+                        errors.incrementAndGet();
+                     }
+                  }
+               }
+               catch (InterruptedException e)
+               {
+                  errors.incrementAndGet();
+               }
+            }
+         };
+         threads[i].start();
+      }
+
+      start.countDown();
+
+      for (Thread t : threads)
+      {
+         t.join();
+      }
+
+      Assert.assertEquals(0, errors.get());
+   }
+
    // Private -----------------------------------------------------------------------------------
 
    private void doPutStringProperty(final String key, final String value)
@@ -12,6 +12,8 @@
  */
 
 package org.hornetq.core.list;
+import java.lang.ref.WeakReference;
+
 import org.junit.Before;
 import org.junit.After;
 
@@ -21,6 +23,7 @@ import org.junit.Assert;
 
 
 import org.hornetq.utils.LinkedListIterator;
+import org.hornetq.utils.PriorityLinkedList;
 import org.hornetq.utils.PriorityLinkedListImpl;
 
 /**
@@ -896,6 +899,190 @@ public final class PriorityLinkedListTest extends Assert
       iter.remove();
    }
 
+   @Test
+   public void testKeyIterator()
+   {
+      list.setKeyExtractor(new ParityExtractor());
+
+      list.addTail(a, 5);
+      list.addTail(b, 5);
+      list.addTail(c, 2);
+      list.addTail(d, 2);
+
+      LinkedListIterator<Wibble> even = list.iterator("even");
+
+      assertTrue(even.hasNext());
+      assertEquals(a, even.next());
+      even.repeat();
+      assertEquals(a, even.next());
+
+      // picked up by the index as it has an open iterator
+      list.addTail(e, 7);
+      list.addTail(f, 7);
+
+      assertTrue(even.hasNext());
+      assertEquals(e, even.next());
+      even.remove();
+
+      assertEquals(5, list.size());
+
+      // removed through the main list, the index must skip it
+      LinkedListIterator<Wibble> all = list.iterator();
+      assertTrue(all.hasNext());
+      assertEquals(f, all.next());
+      assertTrue(all.hasNext());
+      assertEquals(a, all.next());
+      all.remove();
+      all.close();
+
+      assertTrue(even.hasNext());
+      assertEquals(c, even.next());
+      even.remove();
+      assertFalse(even.hasNext());
+
+      assertEquals(3, list.size());
+
+      all = list.iterator();
+      assertTrue(all.hasNext());
+      assertEquals(f, all.next());
+      assertTrue(all.hasNext());
+      assertEquals(b, all.next());
+      assertTrue(all.hasNext());
+      assertEquals(d, all.next());
+      assertFalse(all.hasNext());
+      all.close();
+
+      LinkedListIterator<Wibble> odd = list.iterator("odd");
+      assertTrue(odd.hasNext());
+      assertEquals(f, odd.next());
+      assertTrue(odd.hasNext());
+      assertEquals(b, odd.next());
+      assertTrue(odd.hasNext());
+      assertEquals(d, odd.next());
+      assertFalse(odd.hasNext());
+
+      even.close();
+      odd.close();
+   }
+
+   @Test
+   public void testIndexKeptAfterIteratorsClose()
+   {
+      ParityExtractor extractor = new ParityExtractor();
+      list.setKeyExtractor(extractor);
+
+      list.addTail(a, 5);
+      list.addTail(b, 5);
+      list.addTail(c, 2);
+
+      LinkedListIterator<Wibble> even = list.iterator("even");
+      assertEquals(a, even.next());
+      even.close();
+
+      list.addTail(e, 7);
+
+      int keys = extractor.keys;
+
+      // a new iterator for the key starts from the index kept up to date, not a scan of the list
+      even = list.iterator("even");
+      assertEquals(keys, extractor.keys);
+      assertEquals(e, even.next());
+      assertEquals(a, even.next());
+      assertEquals(c, even.next());
+      assertFalse(even.hasNext());
+      even.close();
+
+      list.removeIndex("even");
+
+      list.addTail(f, 7);
+      keys = extractor.keys;
+
+      // the index has to be built again
+      even = list.iterator("even");
+      assertEquals(keys + list.size(), extractor.keys);
+      even.close();
+   }
+
+   @Test
+   public void testIndexPrunedOfElementsRemovedThroughList() throws Exception
+   {
+      list.setKeyExtractor(new ParityExtractor());
+
+      list.iterator("even").close();
+
+      WeakReference<?>[] refs = new WeakReference<?>[20];
+
+      for (int x = 0; x < refs.length; x++)
+      {
+         Wibble wibble = new Wibble("e" + x);
+         refs[x] = new WeakReference<Wibble>(wibble);
+         list.addTail(wibble, x % 10);
+      }
+
+      // removed by some other consumer while the index isn't iterated
+      for (int x = 0; x < refs.length / 2; x++)
+      {
+         assertNotNull(list.poll());
+      }
+
+      LinkedListIterator<Wibble> iter = list.iterator();
+      while (iter.hasNext())
+      {
+         iter.next();
+         iter.remove();
+      }
+      iter.close();
+
+      assertEquals(0, list.size());
+
+      long timeout = System.currentTimeMillis() + 5000;
+
+      for (WeakReference<?> ref : refs)
+      {
+         while (ref.get() != null && System.currentTimeMillis() < timeout)
+         {
+            System.gc();
+            Thread.sleep(10);
+         }
+
+         assertNull(ref.get());
+      }
+   }
+
+   @Test
+   public void testKeyExtractorCannotChangeWhileIndexed()
+   {
+      list.setKeyExtractor(new ParityExtractor());
+
+      LinkedListIterator<Wibble> iter = list.iterator("odd");
+
+      iter.close();
+
+      try
+      {
+         list.setKeyExtractor(new ParityExtractor());
+         fail("Exception expected");
+      }
+      catch (IllegalStateException expected)
+      {
+      }
+
+      list.removeIndex("odd");
+
+      list.setKeyExtractor(new ParityExtractor());
+   }
+
+   static class ParityExtractor implements PriorityLinkedList.KeyExtractor<Wibble>
+   {
+      int keys;
+
+      public Object getKey(final Wibble wibble)
+      {
+         keys++;
+         return (wibble.s1.charAt(0) - 'a') % 2 == 0 ? "even" : "odd";
+      }
+   }
+
    static class Wibble
    {
       String s1;
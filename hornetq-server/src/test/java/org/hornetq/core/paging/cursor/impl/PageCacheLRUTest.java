@@ -0,0 +1,218 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.paging.cursor.impl;
+
+import org.hornetq.core.paging.PagedMessage;
+import org.hornetq.core.paging.cursor.PageCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PageCacheLRUTest extends Assert
+{
+   @Test
+   public void testEvictLeastRecentlyUsed()
+   {
+      PageCacheLRU caches = new PageCacheLRU(300);
+
+      DummyPageCache page1 = new DummyPageCache(1, 100);
+      DummyPageCache page2 = new DummyPageCache(2, 100);
+      DummyPageCache page3 = new DummyPageCache(3, 100);
+
+      caches.put(page1);
+      caches.put(page2);
+      caches.put(page3);
+
+      assertEquals(3, caches.size());
+      assertEquals(300, caches.getMemorySize());
+
+      // page 2 becomes the least recently used
+      assertSame(page1, caches.get(1));
+
+      caches.put(new DummyPageCache(4, 100));
+
+      assertEquals(3, caches.size());
+      assertEquals(300, caches.getMemorySize());
+      assertEquals(1, caches.getEvictions());
+      assertNull(caches.get(2));
+      assertSame(page1, caches.get(1));
+      assertSame(page3, caches.get(3));
+   }
+
+   @Test
+   public void testSizeUpdatedOnLookup()
+   {
+      PageCacheLRU caches = new PageCacheLRU(300);
+
+      DummyPageCache page1 = new DummyPageCache(1, 0);
+      DummyPageCache page2 = new DummyPageCache(2, 0);
+
+      caches.put(page1);
+      caches.put(page2);
+
+      assertEquals(0, caches.getMemorySize());
+
+      // the messages of page 1 are read once it is cached
+      page1.memoryEstimate = 250;
+      page2.memoryEstimate = 100;
+
+      assertSame(page2, caches.get(2));
+      assertEquals(100, caches.getMemorySize());
+
+      // the cache being looked up is never the one evicted
+      assertSame(page1, caches.get(1));
+
+      assertEquals(1, caches.size());
+      assertEquals(250, caches.getMemorySize());
+      assertNull(caches.get(2));
+
+      caches.remove(1);
+
+      assertEquals(0, caches.size());
+      assertEquals(0, caches.getMemorySize());
+   }
+
+   @Test
+   public void testLiveCacheIsNotEvicted()
+   {
+      PageCacheLRU caches = new PageCacheLRU(100);
+
+      DummyPageCache live = new DummyPageCache(1, 50);
+      live.live = true;
+
+      caches.put(live);
+      caches.put(new DummyPageCache(2, 50));
+      caches.put(new DummyPageCache(3, 50));
+
+      assertEquals(2, caches.size());
+      assertSame(live, caches.get(1));
+      assertNull(caches.get(2));
+      assertEquals(1, caches.getEvictions());
+
+      caches.setMaxSize(0);
+
+      caches.put(new DummyPageCache(4, 1000));
+
+      assertEquals(3, caches.size());
+   }
+
+   @Test
+   public void testPrefetchedEvictedLast()
+   {
+      PageCacheLRU caches = new PageCacheLRU(300);
+
+      DummyPageCache prefetched = new DummyPageCache(2, 100);
+
+      caches.put(prefetched, true);
+      caches.put(new DummyPageCache(1, 100));
+      caches.put(new DummyPageCache(3, 100));
+
+      assertTrue(caches.contains(2));
+      assertEquals(100, caches.getPrefetchedSize());
+
+      caches.put(new DummyPageCache(4, 100));
+
+      // page 1 is evicted even though the prefetched page is the least recently used
+      assertFalse(caches.contains(1));
+      assertTrue(caches.contains(2));
+
+      // it is evicted as any other once looked up
+      assertSame(prefetched, caches.get(2));
+      assertEquals(0, caches.getPrefetchedSize());
+
+      caches.put(new DummyPageCache(5, 100));
+
+      assertFalse(caches.contains(3));
+      assertTrue(caches.contains(2));
+
+      prefetched.memoryEstimate = 200;
+      caches.update();
+
+      assertFalse(caches.contains(4));
+      assertEquals(2, caches.size());
+   }
+
+   // Inner classes -------------------------------------------------
+
+   private static final class DummyPageCache implements PageCache
+   {
+      private final long pageId;
+
+      long memoryEstimate;
+
+      boolean live;
+
+      DummyPageCache(final long pageId, final long memoryEstimate)
+      {
+         this.pageId = pageId;
+         this.memoryEstimate = memoryEstimate;
+      }
+
+      public long getPageId()
+      {
+         return pageId;
+      }
+
+      public int getNumberOfMessages()
+      {
+         return 0;
+      }
+
+      public void setMessages(final PagedMessage[] messages)
+      {
+      }
+
+      public PagedMessage[] getMessages()
+      {
+         return new PagedMessage[0];
+      }
+
+      public boolean isLive()
+      {
+         return live;
+      }
+
+      public PagedMessage getMessage(final int messageNumber)
+      {
+         return null;
+      }
+
+      public boolean isLoaded(final int messageNumber)
+      {
+         return true;
+      }
+
+      public long getMemoryEstimate()
+      {
+         return memoryEstimate;
+      }
+
+      public void lock()
+      {
+      }
+
+      public void unlock()
+      {
+      }
+
+      public void close()
+      {
+      }
+
+      @Override
+      public String toString()
+      {
+         return "DummyPageCache::page=" + pageId;
+      }
+   }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.server.impl;
+
+import java.util.List;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.filter.Filter;
+import org.hornetq.core.server.Consumer;
+import org.hornetq.core.server.HandleStatus;
+import org.hornetq.core.server.MessageReference;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GroupTableTest extends Assert
+{
+   private final Consumer consumer1 = new DummyConsumer();
+
+   private final Consumer consumer2 = new DummyConsumer();
+
+   @Test
+   public void testPutGetAndRemoveConsumer()
+   {
+      GroupTable table = new GroupTable(4);
+
+      for (int i = 0; i < 100; i++)
+      {
+         table.put(new SimpleString("group" + i), i % 2 == 0 ? consumer1 : consumer2);
+      }
+
+      assertEquals(100, table.size());
+      assertSame(consumer1, table.get(new SimpleString("group10")));
+      assertSame(consumer2, table.get(new SimpleString("group11")));
+      assertNull(table.get(new SimpleString("group100")));
+
+      assertEquals(50, table.removeConsumer(consumer1));
+
+      assertEquals(50, table.size());
+      assertEquals(50, table.getRebalancedCount());
+      assertNull(table.get(new SimpleString("group10")));
+      assertSame(consumer2, table.get(new SimpleString("group11")));
+
+      table.clear();
+
+      assertEquals(0, table.size());
+      assertNull(table.get(new SimpleString("group11")));
+   }
+
+   @Test
+   public void testMaxGroups()
+   {
+      GroupTable table = new GroupTable(1);
+
+      table.configure(10, -1);
+
+      for (int i = 0; i < 10; i++)
+      {
+         table.put(new SimpleString("group" + i), consumer1);
+      }
+
+      // group0 is now the most recently used
+      assertSame(consumer1, table.get(new SimpleString("group0")));
+
+      table.put(new SimpleString("group10"), consumer2);
+
+      assertEquals(10, table.size());
+      assertEquals(1, table.getEvictedCount());
+      assertNull(table.get(new SimpleString("group1")));
+      assertSame(consumer1, table.get(new SimpleString("group0")));
+      assertSame(consumer2, table.get(new SimpleString("group10")));
+   }
+
+   @Test
+   public void testIdleTimeout() throws Exception
+   {
+      GroupTable table = new GroupTable(4);
+
+      table.configure(-1, 100);
+
+      table.put(new SimpleString("idle"), consumer1);
+      table.put(new SimpleString("busy"), consumer1);
+
+      long start = System.currentTimeMillis();
+
+      while (System.currentTimeMillis() - start < 300)
+      {
+         assertSame(consumer1, table.get(new SimpleString("busy")));
+         Thread.sleep(10);
+      }
+
+      table.evictIdle();
+
+      assertEquals(1, table.size());
+      assertEquals(1, table.getEvictedCount());
+      assertNull(table.get(new SimpleString("idle")));
+      assertSame(consumer1, table.get(new SimpleString("busy")));
+   }
+
+   private static final class DummyConsumer implements Consumer
+   {
+      public HandleStatus handle(final MessageReference reference) throws Exception
+      {
+         return HandleStatus.BUSY;
+      }
+
+      public void proceedDeliver(final MessageReference reference) throws Exception
+      {
+      }
+
+      public Filter getFilter()
+      {
+         return null;
+      }
+
+      public void getDeliveringMessages(final List<MessageReference> refList)
+      {
+      }
+
+      public String debug()
+      {
+         return toString();
+      }
+
+      public String toManagementString()
+      {
+         return toString();
+      }
+   }
+}
@@ -75,7 +75,9 @@ import org.hornetq.core.journal.SequentialFileFactory;
 import org.hornetq.core.journal.impl.JournalImpl;
 import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
 import org.hornetq.core.persistence.impl.journal.DescribeJournal;
+import org.hornetq.core.persistence.impl.journal.DescribeJournal.MessageReferencesDescribe;
 import org.hornetq.core.persistence.impl.journal.DescribeJournal.ReferenceDescribe;
+import org.hornetq.core.persistence.impl.journal.DescribeJournal.ReferencesDescribe;
 import org.hornetq.core.persistence.impl.journal.JournalRecordIds;
 import org.hornetq.core.persistence.impl.journal.OperationContextImpl;
 import org.hornetq.core.postoffice.Binding;
@@ -1606,15 +1608,20 @@ public abstract class UnitTestCase extends CoreUnitTestCase
          if (info.getUserRecordType() == JournalRecordIds.ADD_REF)
          {
             ReferenceDescribe ref = (ReferenceDescribe)o;
-            AtomicInteger count = messageRefCounts.get(ref.refEncoding.queueID);
-            if (count == null)
+            countReference(messageRefCounts, ref.refEncoding.queueID);
+         }
+         else if (info.getUserRecordType() == JournalRecordIds.ADD_MESSAGE_REFS)
+         {
+            for (long queueID : ((MessageReferencesDescribe)o).refsEncoding.queueIDs)
             {
-               count = new AtomicInteger(1);
-               messageRefCounts.put(ref.refEncoding.queueID, count);
+               countReference(messageRefCounts, queueID);
             }
-            else
+         }
+         else if (info.getUserRecordType() == JournalRecordIds.ADD_REFS)
+         {
+            for (long queueID : ((ReferencesDescribe)o).refsEncoding.queueIDs)
             {
-               count.incrementAndGet();
+               countReference(messageRefCounts, queueID);
             }
          }
       }
@@ -1625,6 +1632,20 @@ public abstract class UnitTestCase extends CoreUnitTestCase
 
    }
 
+   private static void countReference(final Map<Long, AtomicInteger> messageRefCounts, final long queueID)
+   {
+      AtomicInteger count = messageRefCounts.get(queueID);
+      if (count == null)
+      {
+         count = new AtomicInteger(1);
+         messageRefCounts.put(queueID, count);
+      }
+      else
+      {
+         count.incrementAndGet();
+      }
+   }
+
    protected final ServerLocator createInVMNonHALocator()
    {
       return createNonHALocator(false);
@@ -18,9 +18,13 @@ import org.junit.After;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.filter.Filter;
+import org.hornetq.core.server.Consumer;
 import org.hornetq.core.server.HandleStatus;
 import org.hornetq.core.server.MessageReference;
 import org.hornetq.core.server.Queue;
@@ -116,8 +120,183 @@ public class QueueTest extends UnitTestCase
 
    }
 
+   /*
+    * Many producers adding to the same queue, measures the throughput of the hand off from the
+    * producers to the delivery executor and checks the order of each producer is kept
+    */
+   @Test
+   public void testManyProducersThroughput() throws Exception
+   {
+      final int numProducers = 64;
+
+      final int numMessages = 5000;
+
+      final QueueImpl queue = (QueueImpl)queueFactory.createQueue(1,
+                                                                   new SimpleString("address1"),
+                                                                   new SimpleString("queue1"),
+                                                                   null,
+                                                                   null,
+                                                                   false,
+                                                                   false);
+
+      OrderCheckingConsumer consumer = new OrderCheckingConsumer(numProducers, numMessages);
+
+      queue.addConsumer(consumer);
+
+      final CountDownLatch latchAlign = new CountDownLatch(numProducers);
+
+      final CountDownLatch latchStart = new CountDownLatch(1);
+
+      Thread[] producers = new Thread[numProducers];
+
+      for (int i = 0; i < numProducers; i++)
+      {
+         final int producer = i;
+
+         producers[i] = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               // create the messages up front so we only measure the queue
+               MessageReference[] refs = new MessageReference[numMessages];
+
+               for (int j = 0; j < numMessages; j++)
+               {
+                  refs[j] = generateMessage((long)producer * numMessages + j).createReference(queue);
+               }
+
+               latchAlign.countDown();
+
+               try
+               {
+                  UnitTestCase.waitForLatch(latchStart);
+               }
+               catch (InterruptedException e)
+               {
+                  return;
+               }
+
+               for (MessageReference ref : refs)
+               {
+                  queue.addTail(ref, false);
+               }
+            }
+         };
+
+         producers[i].start();
+      }
+
+      UnitTestCase.waitForLatch(latchAlign);
+
+      long start = System.currentTimeMillis();
+
+      latchStart.countDown();
+
+      for (Thread producer : producers)
+      {
+         producer.join();
+      }
+
+      assertTrue(consumer.waitFor(numProducers * numMessages, 60000));
+
+      long time = Math.max(1, System.currentTimeMillis() - start);
+
+      QueueTest.log.info(numProducers + " producers: " + (numProducers * numMessages * 1000L / time) + " msgs/sec");
+
+      assertEquals(0, consumer.getOutOfOrder());
+   }
+
    // Inner classes ---------------------------------------------------------------
 
+   /**
+    * Counts the references and checks each producer's messages arrive in order, the message ID
+    * being producer * numMessages + sequence
+    */
+   class OrderCheckingConsumer implements Consumer
+   {
+      private final long[] lastIDs;
+
+      private final int numMessages;
+
+      private int received;
+
+      private int outOfOrder;
+
+      OrderCheckingConsumer(final int numProducers, final int numMessages)
+      {
+         lastIDs = new long[numProducers];
+
+         this.numMessages = numMessages;
+
+         Arrays.fill(lastIDs, -1);
+      }
+
+      public synchronized HandleStatus handle(final MessageReference reference)
+      {
+         long id = reference.getMessage().getMessageID();
+
+         int producer = (int)(id / numMessages);
+
+         if (id <= lastIDs[producer])
+         {
+            outOfOrder++;
+         }
+
+         lastIDs[producer] = id;
+
+         reference.getQueue().referenceHandled();
+
+         if (++received % 1000 == 0)
+         {
+            notifyAll();
+         }
+
+         return HandleStatus.HANDLED;
+      }
+
+      public void proceedDeliver(final MessageReference reference)
+      {
+      }
+
+      public synchronized boolean waitFor(final int count, final long timeout) throws InterruptedException
+      {
+         long deadline = System.currentTimeMillis() + timeout;
+
+         while (received < count && System.currentTimeMillis() < deadline)
+         {
+            wait(100);
+         }
+
+         return received >= count;
+      }
+
+      public synchronized int getOutOfOrder()
+      {
+         return outOfOrder;
+      }
+
+      public Filter getFilter()
+      {
+         return null;
+      }
+
+      public void getDeliveringMessages(final List<MessageReference> refList)
+      {
+      }
+
+      public String debug()
+      {
+         return toString();
+      }
+
+      public String toManagementString()
+      {
+         return toString();
+      }
+   }
+
+
    class Sender extends Thread
    {
       private volatile Exception e;
@@ -1583,4 +1583,66 @@ public class ConsumerWindowSizeTest extends ServiceTestBase
       }
    }
 
+   @Test
+   public void testAdaptiveWindowShrinksForSlowConsumer() throws Exception
+   {
+      HornetQServer server = createServer(false, isNetty());
+
+      server.start();
+
+      int windowSize = 1024 * 1024;
+
+      locator.setConsumerWindowSize(windowSize);
+      locator.setConsumerMinWindowSize(10 * 1024);
+      locator.setConsumerMaxWindowSize(windowSize);
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+
+      ClientSession session = addClientSession(sf.createSession(false, true, true));
+
+      session.createQueue(addressA, queueA, false);
+
+      ClientProducer producer = session.createProducer(addressA);
+
+      int numberOfMessages = 2000;
+
+      for (int i = 0; i < numberOfMessages; i++)
+      {
+         ClientMessage message = session.createMessage(false);
+         message.getBodyBuffer().writeBytes(new byte[1024]);
+         producer.send(message);
+      }
+
+      ClientConsumerInternal consumer = (ClientConsumerInternal)session.createConsumer(queueA);
+
+      session.start();
+
+      ServerConsumerImpl serverConsumer = (ServerConsumerImpl)server.locateQueue(queueA).getConsumers().iterator().next();
+
+      // slower than the server delivers, it ends up with a window of the minimum size
+      for (int i = 0; i < 1500; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+         assertNotNull(message);
+         message.acknowledge();
+         Thread.sleep(1);
+      }
+
+      assertTrue("window size " + consumer.getWindowSize(), consumer.getWindowSize() < windowSize / 4);
+
+      assertTrue(consumer.getBufferedBytes() > 0);
+      assertTrue(serverConsumer.getClientBufferedBytes() > 0);
+      assertTrue(serverConsumer.getClientBufferedBytes() <= windowSize);
+
+      for (int i = 1500; i < numberOfMessages; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+         assertNotNull(message);
+         message.acknowledge();
+      }
+
+      assertNull(consumer.receiveImmediate());
+
+      assertEquals(0, consumer.getBufferedBytes());
+   }
 }
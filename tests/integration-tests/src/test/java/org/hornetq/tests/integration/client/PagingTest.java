@@ -59,9 +59,12 @@ import org.hornetq.core.paging.cursor.impl.PagePositionImpl;
 import org.hornetq.core.paging.impl.Page;
 import org.hornetq.core.persistence.OperationContext;
 import org.hornetq.core.persistence.impl.journal.DescribeJournal;
+import org.hornetq.core.persistence.impl.journal.DescribeJournal.MessageReferencesDescribe;
 import org.hornetq.core.persistence.impl.journal.DescribeJournal.ReferenceDescribe;
+import org.hornetq.core.persistence.impl.journal.DescribeJournal.ReferencesDescribe;
 import org.hornetq.core.persistence.impl.journal.JournalRecordIds;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager.AckDescribe;
+import org.hornetq.core.persistence.impl.journal.JournalStorageManager.AcksDescribe;
 import org.hornetq.core.persistence.impl.journal.OperationContextImpl;
 import org.hornetq.core.server.HornetQServer;
 import org.hornetq.core.server.Queue;
@@ -862,6 +865,30 @@ public class PagingTest extends ServiceTestBase
                deletedQueueReferences.add(new Long(info.id));
             }
          }
+         else if (info.getUserRecordType() == JournalRecordIds.ADD_MESSAGE_REFS)
+         {
+            MessageReferencesDescribe ref = (MessageReferencesDescribe)DescribeJournal.newObjectEncoding(info);
+
+            for (long queueID : ref.refsEncoding.queueIDs)
+            {
+               if (queueID == deletedQueueID)
+               {
+                  deletedQueueReferences.add(new Long(info.id));
+               }
+            }
+         }
+         else if (info.getUserRecordType() == JournalRecordIds.ADD_REFS)
+         {
+            ReferencesDescribe ref = (ReferencesDescribe)DescribeJournal.newObjectEncoding(info);
+
+            for (long queueID : ref.refsEncoding.queueIDs)
+            {
+               if (queueID == deletedQueueID)
+               {
+                  deletedQueueReferences.add(new Long(info.id));
+               }
+            }
+         }
          else if (info.getUserRecordType() == JournalRecordIds.ACKNOWLEDGE_REF)
          {
             AckDescribe ref = (AckDescribe)DescribeJournal.newObjectEncoding(info);
@@ -871,6 +898,18 @@ public class PagingTest extends ServiceTestBase
                deletedQueueReferences.remove(new Long(info.id));
             }
          }
+         else if (info.getUserRecordType() == JournalRecordIds.ACKNOWLEDGE_REFS)
+         {
+            AcksDescribe ref = (AcksDescribe)DescribeJournal.newObjectEncoding(info);
+
+            for (long queueID : ref.refsEncoding.queueIDs)
+            {
+               if (queueID == deletedQueueID)
+               {
+                  deletedQueueReferences.remove(new Long(info.id));
+               }
+            }
+         }
       }
 
       if (!deletedQueueReferences.isEmpty())
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.integration.journal;
+
+import java.nio.ByteBuffer;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.core.journal.EncodingSupport;
+import org.hornetq.core.journal.SequentialFile;
+import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.impl.MappedSequentialFileFactory;
+import org.hornetq.tests.unit.core.journal.impl.SequentialFileFactoryTestBase;
+import org.junit.Test;
+
+public class MappedSequentialFileFactoryTest extends SequentialFileFactoryTestBase
+{
+   @Override
+   protected SequentialFileFactory createFactory()
+   {
+      return new MappedSequentialFileFactory(getTestDir(), true, null);
+   }
+
+   /**
+    * Page files are not filled up front, the mapping has to grow with them and the file must not
+    * keep the extra space once closed.
+    */
+   @Test
+   public void testWritePastTheEnd() throws Exception
+   {
+      SequentialFileFactory unbuffered = new MappedSequentialFileFactory(getTestDir(), false, null);
+
+      SequentialFile file = unbuffered.createSequentialFile("growing.page", 1);
+
+      file.open();
+
+      final int recordSize = 100 * 1024;
+
+      final int records = 30;
+
+      for (int i = 0; i < records; i++)
+      {
+         final byte value = (byte)i;
+
+         file.write(new EncodingSupport()
+         {
+            public int getEncodeSize()
+            {
+               return recordSize;
+            }
+
+            public void encode(final HornetQBuffer buffer)
+            {
+               for (int j = 0; j < recordSize; j++)
+               {
+                  buffer.writeByte(value);
+               }
+            }
+
+            public void decode(final HornetQBuffer buffer)
+            {
+            }
+         }, i == records - 1);
+      }
+
+      assertEquals(records * recordSize, file.size());
+
+      file.close();
+
+      assertEquals(records * recordSize, file.getJavaFile().length());
+
+      file.open();
+
+      assertEquals(records * recordSize, file.size());
+
+      ByteBuffer buffer = ByteBuffer.allocate(records * recordSize);
+
+      file.position(0);
+
+      assertEquals(records * recordSize, file.read(buffer));
+
+      for (int i = 0; i < records * recordSize; i++)
+      {
+         assertEquals((byte)(i / recordSize), buffer.get(i));
+      }
+
+      // appending after a read, as a page reopened by the paging store
+      file.writeDirect(ByteBuffer.wrap(new byte[]{1, 2, 3}), true);
+
+      assertEquals(records * recordSize + 3, file.size());
+
+      file.close();
+
+      assertEquals(records * recordSize + 3, file.getJavaFile().length());
+   }
+}
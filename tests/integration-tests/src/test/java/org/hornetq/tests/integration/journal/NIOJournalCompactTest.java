@@ -1266,6 +1266,332 @@ public class NIOJournalCompactTest extends JournalImplTestBase
 
    }
 
+   @Test
+   public void testIncrementalCompacting() throws Exception
+   {
+      setup(2, 60 * 1024, false);
+
+      createJournal();
+      startJournal();
+      load();
+
+      ((JournalImpl)journal).setCompactMaxFiles(3);
+
+      long[][] ids = fillFiles(5, 100);
+
+      // records added on the first file and updated on the files that will be compacted
+      for (int i = 0; i < 10; i++)
+      {
+         update(ids[0][i]);
+      }
+
+      // the middle files keep only one record out of ten
+      for (int file = 1; file <= 3; file++)
+      {
+         for (int i = 0; i < ids[file].length; i++)
+         {
+            if (i % 10 != 0)
+            {
+               delete(ids[file][i]);
+            }
+         }
+      }
+
+      journal.forceMoveNextFile();
+
+      int filesBefore = journal.getDataFilesCount();
+
+      journal.testCompactIncrementally();
+
+      assertTrue(journal.getDataFilesCount() <= filesBefore - 2);
+      assertTrue(((JournalImpl)journal).getCompactReclaimedBytes() > 0);
+      assertEquals(-1, ((JournalImpl)journal).getCompactProgress());
+
+      // records untouched by the compacting are still there
+      update(ids[0][0], ids[4][0]);
+      delete(ids[0][1]);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   @Test
+   public void testIncrementalCompactingKeepsDeletesAndCommits() throws Exception
+   {
+      setup(2, 60 * 1024, false);
+
+      createJournal();
+      startJournal();
+      load();
+
+      ((JournalImpl)journal).setCompactMaxFiles(2);
+
+      long[] previousIDs = fillFiles(1, 50)[0];
+
+      // a transaction with records before the compacted files, committed on them
+      long txID = idGenerator.generateID();
+      long[] txIDs = new long[40];
+      for (int i = 0; i < txIDs.length; i++)
+      {
+         txIDs[i] = idGenerator.generateID();
+         addTx(txID, txIDs[i]);
+         if (i == 19)
+         {
+            journal.forceMoveNextFile();
+         }
+      }
+
+      long[] deadIDs = new long[30];
+      for (int i = 0; i < deadIDs.length; i++)
+      {
+         deadIDs[i] = idGenerator.generateID();
+         add(deadIDs[i]);
+      }
+
+      // deletes of records before the compacted files
+      for (int i = 0; i < 25; i++)
+      {
+         delete(previousIDs[i]);
+      }
+
+      commit(txID);
+
+      journal.forceMoveNextFile();
+
+      long[] moreDeadIDs = fillFiles(1, 50)[0];
+
+      delete(deadIDs);
+      delete(moreDeadIDs);
+      for (int i = 20; i < txIDs.length; i++)
+      {
+         delete(txIDs[i]);
+      }
+
+      journal.forceMoveNextFile();
+
+      int filesBefore = journal.getDataFilesCount();
+
+      journal.testCompactIncrementally();
+
+      assertTrue(journal.getDataFilesCount() < filesBefore);
+
+      // the file with the last record of the transaction is only reclaimed if it has too many negatives
+      journal.setAutoReclaim(true);
+      for (int i = 0; i < 19; i++)
+      {
+         delete(txIDs[i]);
+      }
+      journal.forceMoveNextFile();
+      journal.checkReclaimStatus();
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+
+      // the file with the last deletes is only reclaimed if it has all the negatives
+      for (int i = 25; i < previousIDs.length; i++)
+      {
+         delete(previousIDs[i]);
+      }
+      delete(txIDs[19]);
+
+      journal.forceMoveNextFile();
+      journal.setAutoReclaim(true);
+      journal.checkReclaimStatus();
+
+      assertEquals(0, journal.getDataFilesCount());
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   @Test
+   public void testIncrementalCompactingWithConcurrentUpdateAndDeletes() throws Exception
+   {
+      setup(2, 60 * 1024, false);
+
+      createJournal();
+      startJournal();
+      load();
+
+      ((JournalImpl)journal).setCompactMaxFiles(3);
+
+      long[][] ids = fillFiles(5, 100);
+
+      for (int file = 1; file <= 3; file++)
+      {
+         for (int i = 0; i < ids[file].length; i++)
+         {
+            if (i % 10 != 0)
+            {
+               delete(ids[file][i]);
+            }
+         }
+      }
+
+      journal.forceMoveNextFile();
+
+      startCompact(true);
+
+      for (int file = 0; file <= 4; file++)
+      {
+         update(ids[file][0]);
+         delete(ids[file][10]);
+      }
+
+      long txID = idGenerator.generateID();
+      updateTx(txID, ids[2][20]);
+      deleteTx(txID, ids[3][20]);
+      commit(txID);
+
+      add(idGenerator.generateID());
+
+      finishCompact();
+
+      assertTrue(((JournalImpl)journal).getCompactReclaimedBytes() > 0);
+
+      update(ids[2][30]);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   @Test
+   public void testIncrementalCompactingWithPendingTransaction() throws Exception
+   {
+      setup(2, 60 * 1024, false);
+
+      createJournal();
+      startJournal();
+      load();
+
+      ((JournalImpl)journal).setCompactMaxFiles(3);
+
+      long[][] ids = fillFiles(2, 50);
+
+      long txID = idGenerator.generateID();
+      addTx(txID, idGenerator.generateID());
+      journal.forceMoveNextFile();
+
+      long[][] moreIDs = fillFiles(2, 50);
+
+      // only a window including the file with the pending transaction would be worth compacting
+      for (long[] fileIDs : new long[][]{ids[1], moreIDs[0]})
+      {
+         for (int i = 0; i < fileIDs.length; i += 2)
+         {
+            delete(fileIDs[i]);
+         }
+      }
+
+      journal.forceMoveNextFile();
+
+      int filesBefore = journal.getDataFilesCount();
+
+      journal.testCompactIncrementally();
+
+      assertEquals(filesBefore, journal.getDataFilesCount());
+      assertEquals(0, ((JournalImpl)journal).getCompactReclaimedBytes());
+
+      commit(txID);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   @Test
+   public void testCompactingWithChecksums() throws Exception
+   {
+      setup(2, 60 * 1024, false);
+
+      createJournal();
+      startJournal();
+      load();
+
+      // files written before the checksums were enabled
+      long[][] oldIDs = fillFiles(2, 100);
+
+      stopJournal();
+      createJournal();
+      ((JournalImpl)journal).setChecksums(true);
+      ((JournalImpl)journal).setCompactMaxFiles(2);
+      startJournal();
+      loadAndCheck();
+
+      long[][] ids = fillFiles(3, 100);
+
+      // deletes of the old records, written on the files that will be compacted
+      for (int i = 0; i < oldIDs[0].length; i += 2)
+      {
+         delete(oldIDs[0][i]);
+      }
+
+      for (int file = 0; file < ids.length; file++)
+      {
+         for (int i = 0; i < ids[file].length; i++)
+         {
+            if (i % 10 != 0)
+            {
+               delete(ids[file][i]);
+            }
+         }
+      }
+
+      long txID = idGenerator.generateID();
+      addTx(txID, idGenerator.generateID(), idGenerator.generateID());
+      deleteTx(txID, oldIDs[1][0]);
+      commit(txID);
+
+      journal.forceMoveNextFile();
+
+      journal.testCompactIncrementally();
+
+      stopJournal();
+      createJournal();
+      ((JournalImpl)journal).setChecksums(true);
+      startJournal();
+      loadAndCheck();
+
+      journal.testCompact();
+
+      for (JournalFile file : ((JournalImpl)journal).getDataFiles())
+      {
+         assertEquals(JournalImpl.CHECKSUM_FORMAT_VERSION, file.getJournalVersion());
+      }
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   /**
+    * Adds the given number of records to each of the given number of files.
+    */
+   private long[][] fillFiles(final int files, final int recordsPerFile) throws Exception
+   {
+      long[][] ids = new long[files][recordsPerFile];
+      for (int file = 0; file < files; file++)
+      {
+         for (int i = 0; i < recordsPerFile; i++)
+         {
+            ids[file][i] = idGenerator.generateID();
+            add(ids[file][i]);
+         }
+         journal.forceMoveNextFile();
+      }
+      return ids;
+   }
+
    @Test
    public void testLiveSize() throws Exception
    {
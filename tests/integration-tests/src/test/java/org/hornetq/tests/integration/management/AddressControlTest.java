@@ -26,6 +26,7 @@ import org.junit.Assert;
 import org.hornetq.api.config.HornetQDefaultConfiguration;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.api.core.TransportConfiguration;
+import org.hornetq.api.core.client.ClientConsumer;
 import org.hornetq.api.core.client.ClientMessage;
 import org.hornetq.api.core.client.ClientProducer;
 import org.hornetq.api.core.client.ClientSession;
@@ -296,6 +297,61 @@ public class AddressControlTest extends ManagementTestBase
          Assert.assertEquals(1024, addressControl.getNumberOfBytesPerPage());
    }
 
+   @Test
+   public void testGetPageCacheCounters() throws Exception
+   {
+      session.close();
+      server.stop();
+      server.getConfiguration().setPersistenceEnabled(true);
+
+      SimpleString address = RandomUtil.randomSimpleString();
+
+      AddressSettings addressSettings = new AddressSettings();
+      addressSettings.setPageSizeBytes(1024);
+      addressSettings.setMaxSizeBytes(10 * 1024);
+
+      server.getAddressSettingsRepository().addMatch(address.toString(), addressSettings);
+      server.start();
+      ServerLocator locator2 =
+               HornetQClient.createServerLocatorWithoutHA(new TransportConfiguration(
+                                                                                     UnitTestCase.INVM_CONNECTOR_FACTORY));
+      addServerLocator(locator2);
+      ClientSessionFactory sf2 = createSessionFactory(locator2);
+
+      session = sf2.createSession(false, true, true);
+      session.start();
+      session.createQueue(address, address, true);
+
+      AddressControl addressControl = createManagementControl(address);
+      Assert.assertEquals(0, addressControl.getPageCacheHits());
+      Assert.assertEquals(0, addressControl.getPageCacheMisses());
+
+      ClientProducer producer = session.createProducer(address);
+
+      for (int i = 0; i < 50; i++)
+      {
+         ClientMessage msg = session.createMessage(true);
+         msg.getBodyBuffer().writeBytes(new byte[512]);
+         producer.send(msg);
+      }
+
+      Assert.assertTrue(addressControl.getNumberOfPages() > 1);
+
+      ClientConsumer consumer = session.createConsumer(address);
+
+      for (int i = 0; i < 50; i++)
+      {
+         ClientMessage msg = consumer.receive(5000);
+         Assert.assertNotNull(msg);
+         msg.acknowledge();
+      }
+
+      Assert.assertTrue(addressControl.getPageCacheMisses() > 0);
+      Assert.assertTrue(addressControl.getPageCacheHits() > 0);
+      Assert.assertTrue(addressControl.getPageCacheEvictions() >= 0);
+      Assert.assertTrue(addressControl.getPageCacheSize() >= 0);
+   }
+
    // Package protected ---------------------------------------------
 
    // Protected -----------------------------------------------------
@@ -137,6 +137,7 @@ public class HornetQServerControlTest extends ManagementTestBase
          Assert.assertEquals(conf.getJournalBufferSize_AIO(), serverControl.getJournalBufferSize());
          Assert.assertEquals(conf.getJournalBufferTimeout_AIO(), serverControl.getJournalBufferTimeout());
       }
+      Assert.assertEquals(conf.isJournalBufferAdaptive(), serverControl.isJournalBufferAdaptive());
       Assert.assertEquals(conf.isCreateBindingsDir(), serverControl.isCreateBindingsDir());
       Assert.assertEquals(conf.isCreateJournalDir(), serverControl.isCreateJournalDir());
       Assert.assertEquals(conf.getPagingDirectory(), serverControl.getPagingDirectory());
@@ -149,6 +150,11 @@ public class HornetQServerControlTest extends ManagementTestBase
       Assert.assertEquals(conf.getMessageExpiryThreadPriority(), serverControl.getMessageExpiryThreadPriority());
       Assert.assertEquals(conf.getJournalCompactMinFiles(), serverControl.getJournalCompactMinFiles());
       Assert.assertEquals(conf.getJournalCompactPercentage(), serverControl.getJournalCompactPercentage());
+      Assert.assertEquals(conf.getJournalCompactMaxFiles(), serverControl.getJournalCompactMaxFiles());
+      Assert.assertEquals(conf.getJournalCompactIORate(), serverControl.getJournalCompactIORate());
+      Assert.assertEquals(-1, serverControl.getJournalCompactProgress());
+      Assert.assertEquals(conf.getJournalMaxReadyFiles(), serverControl.getJournalMaxReadyFiles());
+      Assert.assertTrue(serverControl.getJournalFileStalls() >= 0);
       Assert.assertEquals(conf.isPersistenceEnabled(), serverControl.isPersistenceEnabled());
       Assert.assertEquals(conf.isFailoverOnServerShutdown(), serverControl.isFailoverOnServerShutdown());
    }
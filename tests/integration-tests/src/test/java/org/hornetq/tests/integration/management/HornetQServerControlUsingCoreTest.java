@@ -469,6 +469,31 @@ public class HornetQServerControlUsingCoreTest extends HornetQServerControlTest
             return (Integer)proxy.retrieveAttributeValue("JournalBufferTimeout");
          }
 
+         public boolean isJournalBufferAdaptive()
+         {
+            return (Boolean)proxy.retrieveAttributeValue("JournalBufferAdaptive");
+         }
+
+         public int getJournalCurrentBufferTimeout()
+         {
+            return (Integer)proxy.retrieveAttributeValue("JournalCurrentBufferTimeout");
+         }
+
+         public long getJournalSyncLatency()
+         {
+            return ((Number)proxy.retrieveAttributeValue("JournalSyncLatency")).longValue();
+         }
+
+         public double getJournalWriteRate()
+         {
+            return ((Number)proxy.retrieveAttributeValue("JournalWriteRate")).doubleValue();
+         }
+
+         public double getJournalFlushRate()
+         {
+            return ((Number)proxy.retrieveAttributeValue("JournalFlushRate")).doubleValue();
+         }
+
          public int getJournalCompactMinFiles()
          {
             return (Integer)proxy.retrieveAttributeValue("JournalCompactMinFiles");
@@ -479,6 +504,51 @@ public class HornetQServerControlUsingCoreTest extends HornetQServerControlTest
             return (Integer)proxy.retrieveAttributeValue("JournalCompactPercentage");
          }
 
+         public int getJournalCompactMaxFiles()
+         {
+            return (Integer)proxy.retrieveAttributeValue("JournalCompactMaxFiles");
+         }
+
+         public int getJournalCompactIORate()
+         {
+            return (Integer)proxy.retrieveAttributeValue("JournalCompactIORate");
+         }
+
+         public int getJournalCompactProgress()
+         {
+            return (Integer)proxy.retrieveAttributeValue("JournalCompactProgress");
+         }
+
+         public long getJournalCompactReclaimedBytes()
+         {
+            return ((Number)proxy.retrieveAttributeValue("JournalCompactReclaimedBytes")).longValue();
+         }
+
+         public long getJournalCompactPauseTime()
+         {
+            return ((Number)proxy.retrieveAttributeValue("JournalCompactPauseTime")).longValue();
+         }
+
+         public long getJournalLastCompactPauseTime()
+         {
+            return ((Number)proxy.retrieveAttributeValue("JournalLastCompactPauseTime")).longValue();
+         }
+
+         public int getJournalMaxReadyFiles()
+         {
+            return (Integer)proxy.retrieveAttributeValue("JournalMaxReadyFiles");
+         }
+
+         public long getJournalFileStalls()
+         {
+            return ((Number)proxy.retrieveAttributeValue("JournalFileStalls")).longValue();
+         }
+
+         public long getJournalFileStallTime()
+         {
+            return ((Number)proxy.retrieveAttributeValue("JournalFileStallTime")).longValue();
+         }
+
          public boolean isPersistenceEnabled()
          {
             return (Boolean)proxy.retrieveAttributeValue("PersistenceEnabled");
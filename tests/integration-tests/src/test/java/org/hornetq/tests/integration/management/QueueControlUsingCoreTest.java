@@ -107,6 +107,21 @@ public class QueueControlUsingCoreTest extends QueueControlTest
          {
             return (Integer)proxy.retrieveAttributeValue("messagesAdded");
          }
+
+         public int getGroupCount()
+         {
+            return (Integer)proxy.retrieveAttributeValue("groupCount");
+         }
+
+         public long getGroupsEvicted()
+         {
+            return ((Number)proxy.retrieveAttributeValue("groupsEvicted")).longValue();
+         }
+
+         public long getGroupsRebalanced()
+         {
+            return ((Number)proxy.retrieveAttributeValue("groupsRebalanced")).longValue();
+         }
          
          public void resetMessagesAdded() throws Exception
          {
@@ -128,6 +143,16 @@ public class QueueControlUsingCoreTest extends QueueControlTest
             return (Long)proxy.retrieveAttributeValue("scheduledCount", Long.class);
          }
 
+         public int getPagePrefetchDepth()
+         {
+            return (Integer)proxy.retrieveAttributeValue("pagePrefetchDepth");
+         }
+
+         public long getPageStallTime()
+         {
+            return (Long)proxy.retrieveAttributeValue("pageStallTime", Long.class);
+         }
+
          public boolean isDurable()
          {
             return (Boolean)proxy.retrieveAttributeValue("durable");
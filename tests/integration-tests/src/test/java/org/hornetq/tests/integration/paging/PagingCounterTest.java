@@ -16,6 +16,9 @@ import org.junit.Before;
 
 import org.junit.Test;
 
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import javax.transaction.xa.Xid;
 
 import org.hornetq.api.core.SimpleString;
@@ -26,6 +29,7 @@ import org.hornetq.core.paging.cursor.PageSubscription;
 import org.hornetq.core.paging.cursor.PageSubscriptionCounter;
 import org.hornetq.core.paging.cursor.impl.PageSubscriptionCounterImpl;
 import org.hornetq.core.persistence.StorageManager;
+import org.hornetq.core.persistence.impl.journal.JournalRecordIds;
 import org.hornetq.core.persistence.impl.journal.OperationContextImpl;
 import org.hornetq.core.server.HornetQServer;
 import org.hornetq.core.server.Queue;
@@ -255,6 +259,65 @@ public class PagingCounterTest extends ServiceTestBase
 
    }
 
+   @Test
+   public void testCounterRecordPerTransactionRestart() throws Exception
+   {
+      Queue queue = server.createQueue(new SimpleString("A1"), new SimpleString("A1"), null, true, false);
+
+      PageSubscriptionCounter counter = locateCounter(queue);
+
+      StorageManager storage = server.getStorageManager();
+
+      Transaction tx = new TransactionImpl(server.getStorageManager());
+
+      for (int i = 0; i < 500; i++)
+      {
+         counter.increment(tx, 1);
+      }
+
+      tx.commit();
+
+      tx = new TransactionImpl(server.getStorageManager());
+
+      for (int i = 0; i < 200; i++)
+      {
+         counter.increment(tx, -1);
+      }
+
+      tx.commit();
+
+      // rolled back increments are never stored
+      tx = new TransactionImpl(server.getStorageManager());
+
+      counter.increment(tx, 10);
+
+      tx.rollback();
+
+      storage.waitOnOperations();
+
+      assertEquals(300, counter.getValue());
+
+      sl.close();
+
+      server.stop();
+
+      HashMap<Integer, AtomicInteger> counts = countJournalLivingRecords(server.getConfiguration());
+
+      assertEquals(2, counts.get((int)JournalRecordIds.PAGE_CURSOR_COUNTER_INC).get());
+
+      server = newHornetQServer();
+
+      server.start();
+
+      queue = server.locateQueue(new SimpleString("A1"));
+
+      assertNotNull(queue);
+
+      counter = locateCounter(queue);
+
+      assertEquals(300, counter.getValue());
+   }
+
    /**
     * @param queue
     * @return
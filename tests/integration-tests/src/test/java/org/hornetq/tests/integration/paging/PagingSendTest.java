@@ -30,6 +30,7 @@ import org.hornetq.api.core.client.ClientSession;
 import org.hornetq.api.core.client.ClientSessionFactory;
 import org.hornetq.api.core.client.ServerLocator;
 import org.hornetq.core.server.HornetQServer;
+import org.hornetq.core.server.JournalType;
 import org.hornetq.core.settings.impl.AddressSettings;
 import org.hornetq.tests.util.ServiceTestBase;
 
@@ -53,6 +54,11 @@ public class PagingSendTest extends ServiceTestBase
       return false;
    }
 
+   protected boolean isMapped()
+   {
+      return false;
+   }
+
    @Override
    @Before
    public void setUp() throws Exception
@@ -68,6 +74,11 @@ public class PagingSendTest extends ServiceTestBase
    {
       HornetQServer server = createServer(true, isNetty());
 
+      if (isMapped())
+      {
+         server.getConfiguration().setJournalType(JournalType.MAPPED);
+      }
+
       AddressSettings defaultSetting = new AddressSettings();
       defaultSetting.setPageSizeBytes(10 * 1024);
       defaultSetting.setMaxSizeBytes(20 * 1024);
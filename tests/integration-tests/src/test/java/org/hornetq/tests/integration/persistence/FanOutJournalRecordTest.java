@@ -0,0 +1,241 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.integration.persistence;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.api.core.client.ClientConsumer;
+import org.hornetq.api.core.client.ClientMessage;
+import org.hornetq.api.core.client.ClientProducer;
+import org.hornetq.api.core.client.ClientSession;
+import org.hornetq.api.core.client.ClientSessionFactory;
+import org.hornetq.api.core.client.ServerLocator;
+import org.hornetq.core.config.Configuration;
+import org.hornetq.core.persistence.impl.journal.JournalRecordIds;
+import org.hornetq.core.server.HornetQServer;
+import org.hornetq.tests.util.ServiceTestBase;
+import org.junit.Test;
+
+/**
+ * With journal-grouped-references, messages routed to several durable queues are stored with their
+ * references in a single record, and acknowledged on several queues within a transaction with a
+ * single record.
+ */
+public class FanOutJournalRecordTest extends ServiceTestBase
+{
+
+   // Constants -----------------------------------------------------
+
+   private static final SimpleString ADDRESS = new SimpleString("ADDRESS");
+
+   private static final int NUMBER_OF_MESSAGES = 20;
+
+   private static final int NUMBER_OF_QUEUES = 3;
+
+   // Attributes ----------------------------------------------------
+
+   private HornetQServer server;
+
+   private ServerLocator locator;
+
+   // Public --------------------------------------------------------
+
+   @Test
+   public void testReferencesReloaded() throws Exception
+   {
+      start(true);
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+
+      send(sf.createSession(), NUMBER_OF_MESSAGES / 2);
+      send(sf.createSession(false, false), NUMBER_OF_MESSAGES / 2);
+
+      restart();
+
+      for (int i = 0; i < NUMBER_OF_QUEUES; i++)
+      {
+         assertEquals(NUMBER_OF_MESSAGES, server.locateQueue(queue(i)).getMessageCount());
+      }
+
+      server.stop();
+
+      HashMap<Integer, AtomicInteger> records = countJournal(server.getConfiguration());
+
+      assertEquals(NUMBER_OF_MESSAGES, records.get((int)JournalRecordIds.ADD_MESSAGE_REFS).get());
+      assertNull(records.get((int)JournalRecordIds.ADD_MESSAGE));
+      assertNull(records.get((int)JournalRecordIds.ADD_REF));
+   }
+
+   @Test
+   public void testAcknowledgementsOnSeveralQueuesCommitted() throws Exception
+   {
+      start(true);
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+
+      send(sf.createSession(), NUMBER_OF_MESSAGES);
+
+      consumeFromTwoQueues(sf.createSession(false, false), true);
+
+      restart();
+
+      assertEquals(0, server.locateQueue(queue(0)).getMessageCount());
+      assertEquals(0, server.locateQueue(queue(1)).getMessageCount());
+      assertEquals(NUMBER_OF_MESSAGES, server.locateQueue(queue(2)).getMessageCount());
+
+      server.stop();
+
+      HashMap<Integer, AtomicInteger> records = countJournal(server.getConfiguration());
+
+      assertEquals(NUMBER_OF_MESSAGES, records.get((int)JournalRecordIds.ACKNOWLEDGE_REFS).get());
+      assertNull(records.get((int)JournalRecordIds.ACKNOWLEDGE_REF));
+   }
+
+   @Test
+   public void testAcknowledgementsOnSeveralQueuesRolledBack() throws Exception
+   {
+      start(true);
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+
+      send(sf.createSession(), NUMBER_OF_MESSAGES);
+
+      consumeFromTwoQueues(sf.createSession(false, false), false);
+
+      restart();
+
+      for (int i = 0; i < NUMBER_OF_QUEUES; i++)
+      {
+         assertEquals(NUMBER_OF_MESSAGES, server.locateQueue(queue(i)).getMessageCount());
+      }
+   }
+
+   @Test
+   public void testReferencesNotGroupedByDefault() throws Exception
+   {
+      start(false);
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+
+      send(sf.createSession(), NUMBER_OF_MESSAGES / 2);
+      send(sf.createSession(false, false), NUMBER_OF_MESSAGES / 2);
+
+      consumeFromTwoQueues(sf.createSession(false, false), true);
+
+      restart();
+
+      assertEquals(0, server.locateQueue(queue(0)).getMessageCount());
+      assertEquals(0, server.locateQueue(queue(1)).getMessageCount());
+      assertEquals(NUMBER_OF_MESSAGES, server.locateQueue(queue(2)).getMessageCount());
+
+      server.stop();
+
+      HashMap<Integer, AtomicInteger> records = countJournal(server.getConfiguration());
+
+      // the journal stays readable by servers which don't know the grouped records
+      assertNull(records.get((int)JournalRecordIds.ADD_MESSAGE_REFS));
+      assertNull(records.get((int)JournalRecordIds.ADD_REFS));
+      assertNull(records.get((int)JournalRecordIds.ACKNOWLEDGE_REFS));
+      assertEquals(NUMBER_OF_MESSAGES, records.get((int)JournalRecordIds.ADD_MESSAGE).get());
+   }
+
+   // Private -------------------------------------------------------
+
+   private void start(final boolean groupedReferences) throws Exception
+   {
+      Configuration config = createDefaultConfig();
+      config.setJournalGroupedReferences(groupedReferences);
+
+      server = createServer(true, config);
+
+      server.start();
+
+      locator = createInVMNonHALocator();
+
+      locator.setBlockOnDurableSend(true);
+      locator.setBlockOnAcknowledge(true);
+
+      for (int i = 0; i < NUMBER_OF_QUEUES; i++)
+      {
+         server.createQueue(ADDRESS, queue(i), null, true, false);
+      }
+   }
+
+   private void restart() throws Exception
+   {
+      locator.close();
+
+      server.stop();
+
+      server.start();
+
+      locator = createInVMNonHALocator();
+   }
+
+   private void send(final ClientSession session, final int numberOfMessages) throws Exception
+   {
+      ClientProducer producer = session.createProducer(ADDRESS);
+
+      for (int i = 0; i < numberOfMessages; i++)
+      {
+         ClientMessage message = session.createMessage(true);
+         message.getBodyBuffer().writeInt(i);
+         producer.send(message);
+      }
+
+      if (!session.isAutoCommitSends())
+      {
+         session.commit();
+      }
+
+      session.close();
+   }
+
+   private void consumeFromTwoQueues(final ClientSession session, final boolean commit) throws Exception
+   {
+      ClientConsumer consumer0 = session.createConsumer(queue(0));
+      ClientConsumer consumer1 = session.createConsumer(queue(1));
+
+      session.start();
+
+      for (int i = 0; i < NUMBER_OF_MESSAGES; i++)
+      {
+         ClientMessage message0 = consumer0.receive(5000);
+         assertNotNull(message0);
+         message0.acknowledge();
+
+         ClientMessage message1 = consumer1.receive(5000);
+         assertNotNull(message1);
+         message1.acknowledge();
+      }
+
+      if (commit)
+      {
+         session.commit();
+      }
+      else
+      {
+         session.rollback();
+      }
+
+      session.close();
+   }
+
+   private static SimpleString queue(final int i)
+   {
+      return new SimpleString("queue" + i);
+   }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.integration.persistence;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.hornetq.api.core.HornetQIllegalStateException;
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.api.core.client.ClientConsumer;
+import org.hornetq.api.core.client.ClientMessage;
+import org.hornetq.api.core.client.ClientProducer;
+import org.hornetq.api.core.client.ClientSession;
+import org.hornetq.api.core.client.ClientSessionFactory;
+import org.hornetq.api.core.client.ServerLocator;
+import org.hornetq.core.config.Configuration;
+import org.hornetq.core.journal.impl.ShardedJournal;
+import org.hornetq.core.persistence.impl.journal.JournalStorageManager;
+import org.hornetq.core.server.HornetQServer;
+import org.hornetq.tests.util.ServiceTestBase;
+import org.hornetq.utils.OrderedExecutorFactory;
+import org.junit.Test;
+
+/**
+ * Messages stored on a messages journal made of several shards are reloaded in the order they were
+ * sent, whether they were sent within transactions or not.
+ */
+public class ShardedMessageJournalTest extends ServiceTestBase
+{
+
+   // Constants -----------------------------------------------------
+
+   private static final SimpleString QUEUE = new SimpleString("queue");
+
+   private static final int SHARDS = 3;
+
+   private static final int NUMBER_OF_MESSAGES = 60;
+
+   // Attributes ----------------------------------------------------
+
+   private HornetQServer server;
+
+   private ServerLocator locator;
+
+   // Public --------------------------------------------------------
+
+   @Test
+   public void testMessagesReloaded() throws Exception
+   {
+      Configuration config = createDefaultConfig();
+      config.setJournalShards(SHARDS);
+
+      server = createServer(true, config);
+      server.start();
+
+      assertTrue(server.getStorageManager().getMessageJournal() instanceof ShardedJournal);
+
+      server.createQueue(QUEUE, QUEUE, null, true, false);
+
+      locator = createInVMNonHALocator();
+      locator.setBlockOnDurableSend(true);
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+
+      send(sf.createSession(), 0, NUMBER_OF_MESSAGES / 2);
+      send(sf.createSession(false, false), NUMBER_OF_MESSAGES / 2, NUMBER_OF_MESSAGES);
+
+      // a transaction acknowledging messages stored on several shards
+      receive(sf.createSession(false, false), 0, 10);
+
+      locator.close();
+      server.stop();
+
+      for (int i = 0; i < SHARDS; i++)
+      {
+         assertTrue(new File(getJournalDir(), "shard-" + i).list().length > 0);
+      }
+
+      server.start();
+
+      assertEquals(NUMBER_OF_MESSAGES - 10, server.locateQueue(QUEUE).getMessageCount());
+
+      locator = createInVMNonHALocator();
+
+      receive(createSessionFactory(locator).createSession(false, false), 10, NUMBER_OF_MESSAGES);
+   }
+
+   @Test
+   public void testShardsChanged() throws Exception
+   {
+      Configuration config = createDefaultConfig();
+      config.setJournalShards(SHARDS);
+
+      server = createServer(true, config);
+      server.start();
+      server.stop();
+
+      assertStartFails(1);
+      assertStartFails(SHARDS + 1);
+      assertStartFails(SHARDS - 1);
+   }
+
+   @Test
+   public void testUnshardedJournalNotSharded() throws Exception
+   {
+      server = createServer(true, createDefaultConfig());
+      server.start();
+      server.stop();
+
+      // as left by a server from before the number of shards was kept
+      assertTrue(new File(getJournalDir(), "journal-shards").delete());
+
+      assertStartFails(SHARDS);
+   }
+
+   @Test
+   public void testShardsNotReplicated() throws Exception
+   {
+      Configuration config = createDefaultConfig();
+      config.setJournalShards(SHARDS);
+      config.setSharedStore(false);
+
+      server = createServer(true, config);
+
+      try
+      {
+         server.start();
+         fail("started a replicated server with " + SHARDS + " shards");
+      }
+      catch (HornetQIllegalStateException expected)
+      {
+         // expected
+      }
+   }
+
+   // Private -------------------------------------------------------
+
+   private void assertStartFails(final int shards) throws Exception
+   {
+      Configuration config = createDefaultConfig();
+      config.setJournalShards(shards);
+
+      ExecutorService executor = Executors.newCachedThreadPool();
+
+      try
+      {
+         JournalStorageManager storage = new JournalStorageManager(config, new OrderedExecutorFactory(executor));
+
+         try
+         {
+            storage.start();
+            storage.stop();
+            fail("started with " + shards + " shards");
+         }
+         catch (HornetQIllegalStateException expected)
+         {
+            // expected
+         }
+      }
+      finally
+      {
+         executor.shutdown();
+      }
+   }
+
+   private void send(final ClientSession session, final int from, final int to) throws Exception
+   {
+      ClientProducer producer = session.createProducer(QUEUE);
+
+      for (int i = from; i < to; i++)
+      {
+         ClientMessage message = session.createMessage(true);
+         message.putIntProperty("count", i);
+         producer.send(message);
+      }
+
+      if (!session.isAutoCommitSends())
+      {
+         session.commit();
+      }
+
+      session.close();
+   }
+
+   private void receive(final ClientSession session, final int from, final int to) throws Exception
+   {
+      ClientConsumer consumer = session.createConsumer(QUEUE);
+
+      session.start();
+
+      for (int i = from; i < to; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+         assertNotNull(message);
+         assertEquals(i, message.getIntProperty("count").intValue());
+         message.acknowledge();
+      }
+
+      session.commit();
+      session.close();
+   }
+}
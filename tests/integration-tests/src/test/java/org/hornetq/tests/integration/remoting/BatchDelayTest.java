@@ -125,4 +125,46 @@ public class BatchDelayTest extends ServiceTestBase
 
       msg.acknowledge();
    }
+
+   @Test
+   public void testSendReceiveMixedSizes() throws Exception
+   {
+      ClientSessionFactory sf = createSessionFactory();
+
+      ClientSession session = sf.createSession();
+
+      final String foo = "foo";
+
+      session.createQueue(foo, foo);
+
+      ClientProducer prod = session.createProducer(foo);
+
+      ClientConsumer cons = session.createConsumer(foo);
+
+      session.start();
+
+      // the larger messages don't fit in the batch buffer
+      for (int i = 0; i < N; i++)
+      {
+         ClientMessage msg = session.createMessage(false);
+         msg.putIntProperty("i", i);
+         msg.getBodyBuffer().writeBytes(new byte[i % 3 == 0 ? 20 * 1024 : 100]);
+         msg.getBodyBuffer().writeInt(i);
+         prod.send(msg);
+      }
+
+      for (int i = 0; i < N; i++)
+      {
+         ClientMessage msg = cons.receive(10000);
+         assertNotNull(msg);
+         assertEquals(i, msg.getIntProperty("i").intValue());
+
+         int bodySize = i % 3 == 0 ? 20 * 1024 : 100;
+         assertEquals(bodySize + 4, msg.getBodySize());
+         msg.getBodyBuffer().readBytes(new byte[bodySize]);
+         assertEquals(i, msg.getBodyBuffer().readInt());
+
+         msg.acknowledge();
+      }
+   }
 }
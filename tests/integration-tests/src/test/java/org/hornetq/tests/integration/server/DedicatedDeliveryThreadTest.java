@@ -0,0 +1,145 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.integration.server;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.api.core.client.ClientConsumer;
+import org.hornetq.api.core.client.ClientMessage;
+import org.hornetq.api.core.client.ClientProducer;
+import org.hornetq.api.core.client.ClientSession;
+import org.hornetq.api.core.client.ClientSessionFactory;
+import org.hornetq.api.core.client.ServerLocator;
+import org.hornetq.core.server.HornetQServer;
+import org.hornetq.core.server.Queue;
+import org.hornetq.core.settings.impl.AddressSettings;
+import org.hornetq.tests.util.ServiceTestBase;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The thread a queue with dedicated-delivery-thread delivers from is stopped along with the queue.
+ */
+public class DedicatedDeliveryThreadTest extends ServiceTestBase
+{
+
+   // Constants -----------------------------------------------------
+
+   private static final SimpleString QUEUE = new SimpleString("dedicated");
+
+   // Attributes ----------------------------------------------------
+
+   private HornetQServer server;
+
+   private ServerLocator locator;
+
+   // Public --------------------------------------------------------
+
+   @Override
+   @Before
+   public void setUp() throws Exception
+   {
+      super.setUp();
+
+      server = createServer(false);
+
+      AddressSettings settings = new AddressSettings();
+      settings.setDedicatedDeliveryThread(true);
+      server.getAddressSettingsRepository().addMatch(QUEUE.toString(), settings);
+
+      server.start();
+
+      server.createQueue(QUEUE, QUEUE, null, false, false);
+
+      locator = createInVMNonHALocator();
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+
+      ClientSession session = sf.createSession();
+
+      ClientProducer producer = session.createProducer(QUEUE);
+      producer.send(session.createMessage(false));
+
+      ClientConsumer consumer = session.createConsumer(QUEUE);
+      session.start();
+
+      ClientMessage message = consumer.receive(5000);
+      assertNotNull(message);
+      message.acknowledge();
+
+      session.close();
+
+      assertTrue(isDeliveryThreadAlive());
+   }
+
+   @Test
+   public void testThreadStoppedWhenQueueDeleted() throws Exception
+   {
+      server.destroyQueue(QUEUE);
+
+      assertDeliveryThreadStops();
+   }
+
+   @Test
+   public void testThreadStoppedWhenServerStopped() throws Exception
+   {
+      locator.close();
+
+      server.stop();
+
+      assertDeliveryThreadStops();
+   }
+
+   @Test
+   public void testClosedQueueRejectsNoWork() throws Exception
+   {
+      Queue queue = server.locateQueue(QUEUE);
+
+      queue.close();
+
+      // none of these may throw once the delivery executor is shut down
+      queue.close();
+      queue.deliverAsync();
+      assertTrue(queue.flushExecutor());
+
+      assertDeliveryThreadStops();
+   }
+
+   // Private -------------------------------------------------------
+
+   private void assertDeliveryThreadStops() throws InterruptedException
+   {
+      // well before the minute an idle thread waits for more work
+      long timeout = System.currentTimeMillis() + 5000;
+
+      while (isDeliveryThreadAlive() && System.currentTimeMillis() < timeout)
+      {
+         Thread.sleep(10);
+      }
+
+      assertFalse(isDeliveryThreadAlive());
+   }
+
+   private static boolean isDeliveryThreadAlive()
+   {
+      for (Thread thread : Thread.getAllStackTraces().keySet())
+      {
+         if (thread.isAlive() && thread.getName().contains("HornetQ-queue-" + QUEUE))
+         {
+            return true;
+         }
+      }
+
+      return false;
+   }
+}
@@ -39,6 +39,27 @@ public class FakeStorageManager extends NullStorageManager
       messageIds.add(message.getMessageID());
    }
 
+   @Override
+   public void storeMessageReferences(final ServerMessage message, final boolean storeMessage, final long[] queueIDs) throws Exception
+   {
+      if (storeMessage)
+      {
+         messageIds.add(message.getMessageID());
+      }
+   }
+
+   @Override
+   public void storeMessageReferencesTransactional(final long txID,
+                                                   final ServerMessage message,
+                                                   final boolean storeMessage,
+                                                   final long[] queueIDs) throws Exception
+   {
+      if (storeMessage)
+      {
+         messageIds.add(message.getMessageID());
+      }
+   }
+
    @Override
    public void deleteMessage(final long messageID) throws Exception
    {
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.performance.filter;
+
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.filter.Filter;
+import org.hornetq.core.filter.impl.FilterImpl;
+import org.hornetq.core.filter.impl.FilterParser;
+import org.hornetq.core.filter.impl.Identifier;
+import org.hornetq.core.filter.impl.Operator;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.impl.ServerMessageImpl;
+import org.hornetq.tests.util.UnitTestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Compares the compiled filters used by {@link FilterImpl} with the {@link Operator} interpreter,
+ * which has to be serialized because it keeps its state in the parsed tree.
+ *
+ * @see FilterImpl
+ */
+public class FilterMatchPerformanceTest extends UnitTestCase
+{
+   private static final String SELECTOR = "region = 'EU' AND (amount * 2 > 100 OR category IN ('a', 'b', 'c')) AND " +
+                                          "name LIKE 'order-%' AND HQPriority BETWEEN 2 AND 8";
+
+   private static final int ITERATIONS = 1000000;
+
+   private static final int WARMUP = 200000;
+
+   @Test
+   public void testSingleThread() throws Exception
+   {
+      runComparison(1);
+   }
+
+   @Test
+   public void testMultipleThreads() throws Exception
+   {
+      runComparison(Math.max(2, Runtime.getRuntime().availableProcessors()));
+   }
+
+   // Private -------------------------------------------------------
+
+   private void runComparison(final int threads) throws Exception
+   {
+      final ServerMessage message = createMessage();
+
+      final Filter compiled = FilterImpl.createFilter(SELECTOR);
+      final Filter interpreted = new InterpretedFilter(new SimpleString(SELECTOR));
+
+      Assert.assertTrue(compiled.match(message));
+      Assert.assertTrue(interpreted.match(message));
+
+      // warm up both paths before measuring
+      measure(interpreted, message, threads, WARMUP);
+      measure(compiled, message, threads, WARMUP);
+
+      long interpretedTime = measure(interpreted, message, threads, ITERATIONS);
+      long compiledTime = measure(compiled, message, threads, ITERATIONS);
+
+      System.out.println(threads + " thread(s): interpreted " +
+                         rate(threads, interpretedTime) +
+                         " matches/sec, compiled " +
+                         rate(threads, compiledTime) +
+                         " matches/sec");
+   }
+
+   private long rate(final int threads, final long timeMillis)
+   {
+      return (long)threads * ITERATIONS * 1000 / Math.max(1, timeMillis);
+   }
+
+   private long measure(final Filter filter, final ServerMessage message, final int threads, final int iterations) throws Exception
+   {
+      final CountDownLatch latchAlign = new CountDownLatch(threads);
+      final CountDownLatch latchStart = new CountDownLatch(1);
+
+      Thread[] matchers = new Thread[threads];
+
+      for (int i = 0; i < threads; i++)
+      {
+         matchers[i] = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               latchAlign.countDown();
+               try
+               {
+                  UnitTestCase.waitForLatch(latchStart);
+               }
+               catch (InterruptedException e)
+               {
+                  return;
+               }
+               for (int j = 0; j < iterations; j++)
+               {
+                  filter.match(message);
+               }
+            }
+         };
+         matchers[i].start();
+      }
+
+      UnitTestCase.waitForLatch(latchAlign);
+
+      long start = System.currentTimeMillis();
+
+      latchStart.countDown();
+
+      for (Thread t : matchers)
+      {
+         t.join();
+      }
+
+      return System.currentTimeMillis() - start;
+   }
+
+   private ServerMessage createMessage()
+   {
+      ServerMessage message = new ServerMessageImpl(1, 1000);
+      message.setPriority((byte)4);
+      message.putStringProperty(new SimpleString("region"), new SimpleString("EU"));
+      message.putIntProperty(new SimpleString("amount"), 20);
+      message.putStringProperty(new SimpleString("category"), new SimpleString("b"));
+      message.putStringProperty(new SimpleString("name"), new SimpleString("order-1234"));
+      return message;
+   }
+
+   /**
+    * The way filters used to be evaluated: the message values are copied into the shared
+    * identifiers before the operator tree is applied, hence the lock.
+    */
+   private static final class InterpretedFilter implements Filter
+   {
+      private final SimpleString filterString;
+
+      private final HashMap<SimpleString, Identifier> identifiers = new HashMap<SimpleString, Identifier>();
+
+      private final Operator operator;
+
+      InterpretedFilter(final SimpleString filterString) throws Exception
+      {
+         this.filterString = filterString;
+         operator = (Operator)new FilterParser().parse(filterString, identifiers);
+      }
+
+      public synchronized boolean match(final ServerMessage message)
+      {
+         try
+         {
+            for (Identifier id : identifiers.values())
+            {
+               Object val = null;
+               if (id.getName().toString().equals("HQPriority"))
+               {
+                  val = Integer.valueOf(message.getPriority());
+               }
+               if (val == null)
+               {
+                  val = message.getObjectProperty(id.getName());
+               }
+               id.setValue(val);
+            }
+            Object result = operator.apply();
+            return result != null && (Boolean)result;
+         }
+         catch (Exception e)
+         {
+            return false;
+         }
+      }
+
+      public SimpleString getFilterString()
+      {
+         return filterString;
+      }
+   }
+}
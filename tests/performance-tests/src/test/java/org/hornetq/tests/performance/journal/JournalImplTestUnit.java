@@ -187,6 +187,51 @@ public abstract class JournalImplTestUnit extends JournalImplTestBase
       stopJournal();
    }
 
+   /**
+    * Measures how long a journal holding many live records takes to reload and how much heap its
+    * record index takes. Run it with -Dhornetq.perf.journal.records=10000000 (or 50000000) and a heap
+    * to match for the figures of a large broker.
+    */
+   @Test
+   public void testReloadManyRecords() throws Exception
+   {
+      final int numberOfRecords = Integer.getInteger("hornetq.perf.journal.records", 1000000);
+
+      setup(10, 10 * 1024 * 1024, false);
+      createJournal();
+      startJournal();
+      load();
+
+      byte[] record = generateRecord(10);
+
+      for (int i = 0; i < numberOfRecords; i++)
+      {
+         journal.appendAddRecord(i, (byte)0, record, false);
+      }
+
+      stopJournal(false);
+
+      long heapBefore = usedHeap();
+
+      createJournal();
+      startJournal();
+
+      long start = System.currentTimeMillis();
+
+      journal.loadInternalOnly();
+
+      long end = System.currentTimeMillis();
+
+      long heapAfter = usedHeap();
+
+      Assert.assertEquals(numberOfRecords, journal.getIDMapSize());
+
+      JournalImplTestUnit.log.info("Reloaded " + numberOfRecords + " records in " + (end - start) + " ms, " +
+                                   (heapAfter - heapBefore) / numberOfRecords + " bytes of heap per record");
+
+      stopJournal(false);
+   }
+
    @Test
    public void testSpeedNonTransactional() throws Exception
    {
@@ -298,4 +343,17 @@ public abstract class JournalImplTestUnit extends JournalImplTestBase
 
    }
 
+   private static long usedHeap() throws InterruptedException
+   {
+      Runtime runtime = Runtime.getRuntime();
+
+      for (int i = 0; i < 3; i++)
+      {
+         System.gc();
+         Thread.sleep(100);
+      }
+
+      return runtime.totalMemory() - runtime.freeMemory();
+   }
+
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.performance.journal;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.config.Configuration;
+import org.hornetq.core.journal.RecordInfo;
+import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.impl.JournalFile;
+import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.core.journal.impl.JournalReaderCallbackAbstract;
+import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
+import org.hornetq.core.persistence.StorageManager;
+import org.hornetq.core.server.HornetQServer;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.impl.ServerMessageImpl;
+import org.hornetq.tests.util.ServiceTestBase;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Compares the journal bytes per message and the time to load the journal once messages routed to
+ * many durable queues are stored as a message record followed by a reference record per queue, or
+ * as a single record with the queue IDs.
+ */
+public class MessageReferencesRecordPerformanceTest extends ServiceTestBase
+{
+   private static final SimpleString ADDRESS = new SimpleString("orders");
+
+   private static final int NUMBER_OF_MESSAGES = 20000;
+
+   private static final int BODY_SIZE = 256;
+
+   @Test
+   public void testSeparateRecordsTo1Queue() throws Exception
+   {
+      measure(1, false);
+   }
+
+   @Test
+   public void testSingleRecordTo1Queue() throws Exception
+   {
+      measure(1, true);
+   }
+
+   @Test
+   public void testSeparateRecordsTo10Queues() throws Exception
+   {
+      measure(10, false);
+   }
+
+   @Test
+   public void testSingleRecordTo10Queues() throws Exception
+   {
+      measure(10, true);
+   }
+
+   // Private -------------------------------------------------------
+
+   private void measure(final int queues, final boolean singleRecord) throws Exception
+   {
+      Configuration config = createDefaultConfig();
+
+      config.setJournalFileSize(10 * 1024 * 1024);
+
+      config.setJournalGroupedReferences(singleRecord);
+
+      HornetQServer server = createServer(true, config);
+
+      server.start();
+
+      long[] queueIDs = new long[queues];
+
+      for (int i = 0; i < queues; i++)
+      {
+         queueIDs[i] = server.createQueue(ADDRESS, new SimpleString("subscription." + i), null, true, false).getID();
+      }
+
+      StorageManager storageManager = server.getStorageManager();
+
+      long start = System.currentTimeMillis();
+
+      for (int i = 0; i < NUMBER_OF_MESSAGES; i++)
+      {
+         ServerMessage message = new ServerMessageImpl(storageManager.generateUniqueID(), 100 + BODY_SIZE);
+         message.setAddress(ADDRESS);
+         message.setDurable(true);
+         message.getBodyBuffer().writeBytes(new byte[BODY_SIZE]);
+
+         if (singleRecord)
+         {
+            storageManager.storeMessageReferences(message, true, queueIDs);
+         }
+         else
+         {
+            storageManager.storeMessage(message);
+
+            for (int j = 0; j < queues; j++)
+            {
+               storageManager.storeReference(queueIDs[j], message.getMessageID(), j == queues - 1);
+            }
+         }
+      }
+
+      storageManager.waitOnOperations();
+
+      long storeTime = System.currentTimeMillis() - start;
+
+      server.stop();
+
+      long bytes = countMessageJournalBytes(config);
+
+      start = System.currentTimeMillis();
+
+      server.start();
+
+      long loadTime = System.currentTimeMillis() - start;
+
+      for (int i = 0; i < queues; i++)
+      {
+         Assert.assertEquals(NUMBER_OF_MESSAGES, server.locateQueue(new SimpleString("subscription." + i))
+                                                       .getMessageCount());
+      }
+
+      server.stop();
+
+      System.out.println(queues + " queue(s), " +
+                         (singleRecord ? "single record" : "separate records") +
+                         ": " +
+                         bytes / NUMBER_OF_MESSAGES +
+                         " journal bytes per message, stored in " +
+                         storeTime +
+                         " ms, server started in " +
+                         loadTime +
+                         " ms");
+   }
+
+   private long countMessageJournalBytes(final Configuration config) throws Exception
+   {
+      SequentialFileFactory messagesFF = new NIOSequentialFileFactory(getJournalDir(), null);
+
+      JournalImpl messagesJournal = new JournalImpl(config.getJournalFileSize(),
+                                                    config.getJournalMinFiles(),
+                                                    0,
+                                                    0,
+                                                    messagesFF,
+                                                    "hornetq-data",
+                                                    "hq",
+                                                    1);
+
+      final long[] bytes = new long[1];
+
+      for (JournalFile file : messagesJournal.orderFiles())
+      {
+         JournalImpl.readJournalFile(messagesFF, file, new JournalReaderCallbackAbstract()
+         {
+            @Override
+            public void onReadAddRecord(final RecordInfo info) throws Exception
+            {
+               bytes[0] += JournalImpl.SIZE_ADD_RECORD + 1 + info.data.length;
+            }
+
+            @Override
+            public void onReadUpdateRecord(final RecordInfo info) throws Exception
+            {
+               bytes[0] += JournalImpl.SIZE_ADD_RECORD + 1 + info.data.length;
+            }
+         });
+      }
+
+      return bytes[0];
+   }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.performance.postoffice;
+
+import java.lang.management.ManagementFactory;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.postoffice.PostOffice;
+import org.hornetq.core.server.HornetQServer;
+import org.hornetq.core.server.Queue;
+import org.hornetq.core.server.RoutingContext;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.impl.RoutingContextImpl;
+import org.hornetq.core.server.impl.ServerMessageImpl;
+import org.hornetq.tests.util.ServiceTestBase;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Measures the bytes allocated by {@link PostOffice#route(ServerMessage, RoutingContext, boolean)}
+ * for each non durable message fanned out to many non durable subscriptions, the way a session
+ * routes them with its own routing context.
+ * <p>
+ * Only the allocations of the routing thread are counted: the messages are created before and
+ * the queues emptied after each measured batch.
+ */
+public class RouteAllocationPerformanceTest extends ServiceTestBase
+{
+   private static final SimpleString ADDRESS = new SimpleString("market.data");
+
+   private static final int BATCH = 1000;
+
+   private static final int WARMUP_BATCHES = 50;
+
+   private static final int BATCHES = 100;
+
+   @Test
+   public void testFanOutTo1Queue() throws Exception
+   {
+      measure(1);
+   }
+
+   @Test
+   public void testFanOutTo100Queues() throws Exception
+   {
+      measure(100);
+   }
+
+   // Private -------------------------------------------------------
+
+   private void measure(final int queues) throws Exception
+   {
+      com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+      Assert.assertTrue(threads.isThreadAllocatedMemorySupported());
+
+      HornetQServer server = createServer(false);
+
+      server.start();
+
+      Queue[] subscriptions = new Queue[queues];
+
+      for (int i = 0; i < queues; i++)
+      {
+         subscriptions[i] = server.createQueue(ADDRESS, new SimpleString("subscription." + i), null, false, false);
+      }
+
+      PostOffice postOffice = server.getPostOffice();
+
+      RoutingContext context = new RoutingContextImpl(null);
+
+      long threadID = Thread.currentThread().getId();
+
+      long allocated = 0;
+
+      long start = 0;
+
+      for (int batch = 0; batch < WARMUP_BATCHES + BATCHES; batch++)
+      {
+         if (batch == WARMUP_BATCHES)
+         {
+            allocated = 0;
+            start = System.currentTimeMillis();
+         }
+
+         ServerMessage[] messages = new ServerMessage[BATCH];
+
+         for (int i = 0; i < BATCH; i++)
+         {
+            messages[i] = new ServerMessageImpl(i, 100);
+            messages[i].setAddress(ADDRESS);
+            messages[i].setDurable(false);
+         }
+
+         long before = threads.getThreadAllocatedBytes(threadID);
+
+         for (ServerMessage message : messages)
+         {
+            postOffice.route(message, context, false);
+
+            context.clear();
+         }
+
+         allocated += threads.getThreadAllocatedBytes(threadID) - before;
+
+         for (Queue subscription : subscriptions)
+         {
+            subscription.deleteAllReferences();
+         }
+      }
+
+      long time = System.currentTimeMillis() - start;
+
+      System.out.println(queues + " queue(s): " +
+                         allocated / ((long)BATCHES * BATCH) +
+                         " bytes allocated per routed message, " +
+                         (long)BATCHES * BATCH * 1000 / Math.max(1, time) +
+                         " messages/sec including the queue cleanup");
+
+      server.stop();
+   }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.performance.remoting;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.HornetQBuffers;
+import org.hornetq.api.core.Message;
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.api.core.TransportConfiguration;
+import org.hornetq.core.client.impl.ClientMessageImpl;
+import org.hornetq.core.protocol.ClientPacketDecoder;
+import org.hornetq.core.protocol.core.Channel;
+import org.hornetq.core.protocol.core.impl.RemotingConnectionImpl;
+import org.hornetq.core.protocol.core.impl.wireformat.PacketsConfirmedMessage;
+import org.hornetq.core.protocol.core.impl.wireformat.SessionSendMessage;
+import org.hornetq.core.security.HornetQPrincipal;
+import org.hornetq.spi.core.remoting.Connection;
+import org.hornetq.spi.core.remoting.ReadyListener;
+import org.hornetq.tests.util.UnitTestCase;
+import org.junit.Test;
+
+/**
+ * Measures the non blocking sends per second per session through {@link Channel#send}, with a
+ * transport that drops what it's given so that only the channel is measured.
+ * <p>
+ * With a confirmation window, the packets sent are kept in the resend cache until another thread
+ * confirms them, as the server would.
+ */
+public class ChannelSendPerformanceTest extends UnitTestCase
+{
+   private static final int SENDS = 2000000;
+
+   private static final int WARMUP = 500000;
+
+   private static final int CONFIRMATION_WINDOW_SIZE = 1024 * 1024;
+
+   @Test
+   public void testSendWithoutResendCache() throws Exception
+   {
+      runSends(1, -1);
+   }
+
+   @Test
+   public void testSendWithResendCache() throws Exception
+   {
+      runSends(1, CONFIRMATION_WINDOW_SIZE);
+   }
+
+   @Test
+   public void testSendWithResendCacheMultipleSessions() throws Exception
+   {
+      runSends(Math.max(2, Runtime.getRuntime().availableProcessors()), CONFIRMATION_WINDOW_SIZE);
+   }
+
+   // Private -------------------------------------------------------
+
+   private void runSends(final int sessions, final int confWindowSize) throws Exception
+   {
+      RemotingConnectionImpl connection = new RemotingConnectionImpl(ClientPacketDecoder.INSTANCE,
+                                                                     new NullConnection(),
+                                                                     30000,
+                                                                     -1,
+                                                                     null,
+                                                                     null);
+
+      Channel[] channels = new Channel[sessions];
+
+      for (int i = 0; i < sessions; i++)
+      {
+         channels[i] = connection.getChannel(10 + i, confWindowSize);
+      }
+
+      measure(channels, WARMUP);
+
+      long time = measure(channels, SENDS);
+
+      System.out.println(sessions + " session(s), confirmation window " +
+                         confWindowSize +
+                         ": " +
+                         (long)SENDS *
+                         1000 /
+                         Math.max(1, time) +
+                         " sends/sec per session");
+   }
+
+   private long measure(final Channel[] channels, final int sends) throws Exception
+   {
+      final CountDownLatch latchAlign = new CountDownLatch(channels.length);
+      final CountDownLatch latchStart = new CountDownLatch(1);
+
+      Thread[] senders = new Thread[channels.length];
+
+      final AtomicInteger running = new AtomicInteger(channels.length);
+
+      final AtomicInteger[] sent = new AtomicInteger[channels.length];
+
+      for (int i = 0; i < channels.length; i++)
+      {
+         final Channel channel = channels[i];
+
+         final AtomicInteger channelSent = sent[i] = new AtomicInteger();
+
+         senders[i] = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               ClientMessageImpl message = new ClientMessageImpl(Message.BYTES_TYPE, false, 0, 0, (byte)4, 1024);
+               message.setAddress(new SimpleString("perf"));
+               message.getBodyBuffer().writeBytes(new byte[100]);
+
+               latchAlign.countDown();
+               try
+               {
+                  UnitTestCase.waitForLatch(latchStart);
+
+                  for (int j = 0; j < sends; j++)
+                  {
+                     channel.send(new SessionSendMessage(message, false, null));
+                     channelSent.lazySet(j + 1);
+                  }
+               }
+               catch (InterruptedException e)
+               {
+                  return;
+               }
+               finally
+               {
+                  running.decrementAndGet();
+               }
+            }
+         };
+         senders[i].start();
+      }
+
+      UnitTestCase.waitForLatch(latchAlign);
+
+      long start = System.currentTimeMillis();
+
+      latchStart.countDown();
+
+      // confirms the packets received, as the server does once per confirmation window
+      int[] confirmed = new int[channels.length];
+
+      while (running.get() > 0)
+      {
+         for (int i = 0; i < channels.length; i++)
+         {
+            int count = sent[i].get();
+
+            if (count > confirmed[i])
+            {
+               channels[i].handlePacket(new PacketsConfirmedMessage(count - 1));
+               confirmed[i] = count;
+            }
+         }
+
+         Thread.sleep(1);
+      }
+
+      for (Thread t : senders)
+      {
+         t.join();
+      }
+
+      long time = System.currentTimeMillis() - start;
+
+      for (Channel channel : channels)
+      {
+         channel.clearCommands();
+      }
+
+      return time;
+   }
+
+   // Inner classes -------------------------------------------------
+
+   private static final class NullConnection implements Connection
+   {
+      public HornetQBuffer createBuffer(final int size)
+      {
+         return HornetQBuffers.fixedBuffer(size);
+      }
+
+      public Object getID()
+      {
+         return 1;
+      }
+
+      public void write(final HornetQBuffer buffer, final boolean flush, final boolean batched)
+      {
+      }
+
+      public void write(final HornetQBuffer buffer)
+      {
+      }
+
+      public void close()
+      {
+      }
+
+      public String getRemoteAddress()
+      {
+         return "null";
+      }
+
+      public void checkFlushBatchBuffer()
+      {
+      }
+
+      public void addReadyListener(final ReadyListener listener)
+      {
+      }
+
+      public void removeReadyListener(final ReadyListener listener)
+      {
+      }
+
+      public TransportConfiguration getConnectorConfig()
+      {
+         return null;
+      }
+
+      public HornetQPrincipal getDefaultHornetQPrincipal()
+      {
+         return null;
+      }
+   }
+}
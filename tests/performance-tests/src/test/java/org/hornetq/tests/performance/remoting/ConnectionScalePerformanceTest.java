@@ -0,0 +1,206 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.performance.remoting;
+
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hornetq.api.core.TransportConfiguration;
+import org.hornetq.api.core.client.ClientProducer;
+import org.hornetq.api.core.client.ClientSession;
+import org.hornetq.api.core.client.ClientSessionFactory;
+import org.hornetq.api.core.client.HornetQClient;
+import org.hornetq.api.core.client.ServerLocator;
+import org.hornetq.core.config.Configuration;
+import org.hornetq.core.remoting.impl.netty.TransportConstants;
+import org.hornetq.core.server.HornetQServer;
+import org.hornetq.tests.util.ServiceTestBase;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Measures the CPU time and the threads the Netty acceptor takes per connection, with non blocking
+ * and blocking IO.
+ * <p>
+ * The idle connections are plain sockets, the active ones core clients sending a message every
+ * {@link #SEND_PERIOD} ms. Their number is set with {@code -Dhornetq.perf.connections} and
+ * {@code -Dhornetq.perf.activeConnections}, e.g. 1000, 10000 and 50000 idle connections given a
+ * high enough limit of open files. The CPU time includes the clients, which run in the same VM.
+ */
+public class ConnectionScalePerformanceTest extends ServiceTestBase
+{
+   private static final int IDLE_CONNECTIONS = Integer.getInteger("hornetq.perf.connections", 1000);
+
+   private static final int ACTIVE_CONNECTIONS = Integer.getInteger("hornetq.perf.activeConnections", 100);
+
+   private static final long MEASURE_TIME = 10000;
+
+   private static final long SEND_PERIOD = 100;
+
+   private static final String QUEUE = "scale";
+
+   private HornetQServer server;
+
+   private final List<Socket> sockets = new ArrayList<Socket>();
+
+   @Override
+   @After
+   public void tearDown() throws Exception
+   {
+      for (Socket socket : sockets)
+      {
+         socket.close();
+      }
+      sockets.clear();
+      super.tearDown();
+   }
+
+   @Test
+   public void testIdleConnectionsNIO() throws Exception
+   {
+      measureIdle(true);
+   }
+
+   @Test
+   public void testIdleConnectionsOIO() throws Exception
+   {
+      measureIdle(false);
+   }
+
+   @Test
+   public void testActiveConnectionsNIO() throws Exception
+   {
+      measureActive(true);
+   }
+
+   @Test
+   public void testActiveConnectionsOIO() throws Exception
+   {
+      measureActive(false);
+   }
+
+   // Private -------------------------------------------------------
+
+   private void measureIdle(final boolean nio) throws Exception
+   {
+      startServer(nio);
+
+      for (int i = 0; i < IDLE_CONNECTIONS; i++)
+      {
+         sockets.add(new Socket(TransportConstants.DEFAULT_HOST, TransportConstants.DEFAULT_PORT));
+      }
+
+      waitForConnections(IDLE_CONNECTIONS);
+
+      long cpuTime = getProcessCpuTime();
+
+      Thread.sleep(MEASURE_TIME);
+
+      report("idle", nio, IDLE_CONNECTIONS, getProcessCpuTime() - cpuTime);
+   }
+
+   private void measureActive(final boolean nio) throws Exception
+   {
+      startServer(nio);
+
+      Map<String, Object> params = new HashMap<String, Object>();
+      params.put(TransportConstants.USE_NIO_PROP_NAME, true);
+      params.put(TransportConstants.USE_NIO_GLOBAL_WORKER_POOL_PROP_NAME, true);
+
+      ServerLocator locator = addServerLocator(HornetQClient.createServerLocatorWithoutHA(createTransportConfiguration(true,
+                                                                                                                       false,
+                                                                                                                       params)));
+      locator.setBlockOnNonDurableSend(false);
+
+      ClientSession[] sessions = new ClientSession[ACTIVE_CONNECTIONS];
+      ClientProducer[] producers = new ClientProducer[ACTIVE_CONNECTIONS];
+
+      for (int i = 0; i < ACTIVE_CONNECTIONS; i++)
+      {
+         ClientSessionFactory sf = createSessionFactory(locator);
+         sessions[i] = addClientSession(sf.createSession());
+         producers[i] = sessions[i].createProducer(QUEUE);
+      }
+
+      sessions[0].createQueue(QUEUE, QUEUE, false);
+
+      waitForConnections(ACTIVE_CONNECTIONS);
+
+      long cpuTime = getProcessCpuTime();
+
+      long end = System.currentTimeMillis() + MEASURE_TIME;
+
+      while (System.currentTimeMillis() < end)
+      {
+         for (int i = 0; i < ACTIVE_CONNECTIONS; i++)
+         {
+            producers[i].send(sessions[i].createMessage(false));
+         }
+
+         Thread.sleep(SEND_PERIOD);
+      }
+
+      report("active", nio, ACTIVE_CONNECTIONS, getProcessCpuTime() - cpuTime);
+   }
+
+   private void startServer(final boolean nio) throws Exception
+   {
+      Map<String, Object> params = new HashMap<String, Object>();
+      params.put(TransportConstants.USE_NIO_PROP_NAME, nio);
+
+      TransportConfiguration tc = new TransportConfiguration(NETTY_ACCEPTOR_FACTORY, params);
+
+      Configuration config = createBasicConfig();
+      config.getAcceptorConfigurations().add(tc);
+      config.setSecurityEnabled(false);
+
+      server = createServer(false, config);
+      server.start();
+   }
+
+   private void waitForConnections(final int connections) throws Exception
+   {
+      long timeout = System.currentTimeMillis() + 60000;
+
+      while (server.getRemotingService().getConnections().size() < connections &&
+             System.currentTimeMillis() < timeout)
+      {
+         Thread.sleep(100);
+      }
+
+      assertTrue(server.getRemotingService().getConnections().size() >= connections);
+   }
+
+   private void report(final String type, final boolean nio, final int connections, final long cpuTime)
+   {
+      System.out.println((nio ? "NIO" : "OIO") + ", " +
+                         connections +
+                         " " +
+                         type +
+                         " connections: " +
+                         cpuTime / 1000 / connections * 1000 / MEASURE_TIME +
+                         " us of CPU per connection per second, " +
+                         ManagementFactory.getThreadMXBean().getThreadCount() +
+                         " threads");
+   }
+
+   private static long getProcessCpuTime()
+   {
+      return ((com.sun.management.OperatingSystemMXBean)ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+   }
+}
@@ -81,7 +81,7 @@ public class PageCursorStressTest extends ServiceTestBase
 
    private static final int PAGE_SIZE = 10 * 1024 * 1024;
 
-   // Read more cache than what would fit on the memory, and validate if the memory would be cleared through soft-caches
+   // Read more cache than what would fit on the memory, and validate if the memory would be bounded by the cache
    @Test
    public void testReadCache() throws Exception
    {
@@ -100,6 +100,8 @@ public class PageCursorStressTest extends ServiceTestBase
       for (int i = 0; i < numberOfPages; i++)
       {
          PageCache cache = cursorProvider.getPageCache(i + 1);
+         // indexed pages are only read as their messages are requested
+         cache.getMessages();
          System.out.println("Page " + i + " had " + cache.getNumberOfMessages() + " messages");
 
       }
@@ -111,6 +113,117 @@ public class PageCursorStressTest extends ServiceTestBase
       System.out.println("Cache size = " + cursorProvider.getCacheSize());
    }
 
+   @Test
+   public void testPrefetchBoundedByCache() throws Exception
+   {
+      final int NUM_MESSAGES = 100;
+
+      int numberOfPages = addMessages(NUM_MESSAGES, 1024 * 1024);
+
+      PageCursorProviderImpl cursorProvider = new PageCursorProviderImpl(lookupPageStore(ADDRESS),
+                                                                         server.getStorageManager(),
+                                                                         server.getExecutorFactory().getExecutor(),
+                                                                         server.getExecutorFactory(),
+                                                                         5);
+
+      int prefetched = 0;
+      while (cursorProvider.prefetch(prefetched + 1))
+      {
+         prefetched++;
+      }
+
+      System.out.println("Prefetched " + prefetched + " out of " + numberOfPages + " pages");
+
+      // the cache has room for about 5 pages
+      assertTrue(prefetched > 0);
+      assertTrue(prefetched < numberOfPages - 1);
+
+      long timeout = System.currentTimeMillis() + 5000;
+      while (cursorProvider.getCacheSize() < prefetched && System.currentTimeMillis() < timeout)
+      {
+         Thread.sleep(10);
+      }
+
+      cursorProvider.getPageCache(1).getMessages();
+
+      assertEquals(0, cursorProvider.getCacheMisses());
+      assertTrue(cursorProvider.getCacheMemorySize() <= 5L * PAGE_SIZE);
+   }
+
+   @Test
+   public void testCursorPrefetchesPages() throws Exception
+   {
+      final int NUM_MESSAGES = 100;
+
+      PageSubscription cursor = lookupPageStore(ADDRESS).getCursorProvider().getSubscription(queue.getID());
+
+      int numberOfPages = addMessages(NUM_MESSAGES, 1024 * 1024);
+
+      // only the page being written is cached
+      lookupPageStore(ADDRESS).forceAnotherPage();
+      ((PageCursorProviderImpl)lookupCursorProvider()).clearCache();
+
+      PagedReference msg;
+
+      LinkedListIterator<PagedReference> iterator = cursor.iterator();
+      int key = 0;
+      while ((msg = iterator.next()) != null)
+      {
+         assertEquals(key++, msg.getMessage().getIntProperty("key").intValue());
+
+         if (key == 1)
+         {
+            assertTrue(cursor.getPrefetchDepth() > 0);
+         }
+      }
+      assertEquals(NUM_MESSAGES, key);
+
+      System.out.println("Cache misses = " + lookupCursorProvider().getCacheMisses() + ", stall time = " +
+                         cursor.getPrefetchStallTime() + " ms");
+
+      // the cursor only had to read the first page itself
+      assertTrue(lookupCursorProvider().getCacheMisses() < numberOfPages);
+      assertTrue(lookupCursorProvider().getCacheHits() > 0);
+   }
+
+   @Test
+   public void testNoStallTimeOnCachedPages() throws Exception
+   {
+      final int NUM_MESSAGES = 20000;
+
+      PageSubscription cursor = lookupPageStore(ADDRESS).getCursorProvider().getSubscription(queue.getID());
+
+      addMessages(NUM_MESSAGES, 100);
+
+      lookupPageStore(ADDRESS).forceAnotherPage();
+      ((PageCursorProviderImpl)lookupCursorProvider()).clearCache();
+
+      // the first pass reads the page into the cache
+      LinkedListIterator<PagedReference> iterator = cursor.iterator();
+      int count = 0;
+      while (iterator.next() != null)
+      {
+         count++;
+      }
+      assertEquals(NUM_MESSAGES, count);
+
+      long stallTime = cursor.getPrefetchStallTime();
+
+      // the next passes find every message in memory, they never wait
+      for (int i = 0; i < 5; i++)
+      {
+         iterator = cursor.iterator();
+         count = 0;
+         while (iterator.next() != null)
+         {
+            count++;
+         }
+         assertEquals(NUM_MESSAGES, count);
+      }
+
+      assertEquals(stallTime, cursor.getPrefetchStallTime());
+   }
+
    @Test
    public void testSimpleCursor() throws Exception
    {
@@ -26,6 +26,7 @@ import org.hornetq.api.core.HornetQIOErrorException;
 import org.hornetq.core.journal.EncodingSupport;
 import org.hornetq.core.journal.RecordInfo;
 import org.hornetq.core.journal.SequentialFile;
+import org.hornetq.core.journal.impl.JournalFile;
 import org.hornetq.core.journal.impl.JournalImpl;
 import org.hornetq.tests.unit.UnitTestLogger;
 import org.hornetq.tests.unit.core.journal.impl.fakes.SimpleEncoding;
@@ -2258,6 +2259,245 @@ public abstract class JournalImplTestUnit extends JournalImplTestBase
       loadAndCheck();
    }
 
+   @Test
+   public void testParallelLoad() throws Exception
+   {
+      setup(10, 10 * 1024, true);
+      createJournal();
+      startJournal();
+      load();
+
+      // a transaction spanning most of the files, committed at the end
+      addTx(1, 10000, 10001);
+
+      for (long i = 0; i < 500; i++)
+      {
+         add(i);
+         if (i % 3 == 0)
+         {
+            update(i);
+         }
+         if (i % 5 == 0)
+         {
+            delete(i);
+         }
+         if (i == 250)
+         {
+            updateTx(1, 1, 2);
+            deleteTx(1, 3);
+         }
+      }
+
+      // and another one left prepared
+      addTx(2, 20000);
+      prepare(2, new SimpleEncoding(10, (byte)0));
+
+      commit(1);
+
+      Assert.assertTrue(journal.getDataFilesCount() > 4);
+
+      stopJournal();
+
+      createJournal();
+      ((JournalImpl)journal).setLoadThreads(4);
+      startJournal();
+      loadAndCheck();
+   }
+
+   @Test
+   public void testChecksums() throws Exception
+   {
+      setup(10, 10 * 1024, true);
+      createJournal();
+      ((JournalImpl)journal).setChecksums(true);
+      startJournal();
+      load();
+
+      addTx(1, 10000, 10001);
+
+      for (long i = 0; i < 200; i++)
+      {
+         add(i);
+         if (i % 3 == 0)
+         {
+            update(i);
+         }
+         if (i % 5 == 0)
+         {
+            delete(i);
+         }
+      }
+
+      deleteTx(1, 3);
+      commit(1);
+
+      addTx(2, 20000);
+      prepare(2, new SimpleEncoding(10, (byte)0));
+
+      for (JournalFile file : ((JournalImpl)journal).getDataFiles())
+      {
+         Assert.assertEquals(JournalImpl.CHECKSUM_FORMAT_VERSION, file.getJournalVersion());
+      }
+
+      stopJournal();
+      createJournal();
+      ((JournalImpl)journal).setChecksums(true);
+      startJournal();
+      loadAndCheck();
+
+      // the sizes taken on load match the written records
+      for (long i = 0; i < 200; i++)
+      {
+         if (i % 5 != 0 && i != 3)
+         {
+            delete(i);
+         }
+      }
+      delete(10000, 10001);
+
+      checkAndReclaimFiles();
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   @Test
+   public void testChecksumMismatch() throws Exception
+   {
+      setup(10, 10 * 1024, true);
+      createJournal();
+      ((JournalImpl)journal).setChecksums(true);
+      startJournal();
+      load();
+
+      String fileName = ((JournalImpl)journal).getCurrentFile().getFile().getFileName();
+
+      add(1, 2, 3);
+
+      stopJournal();
+
+      // damages a byte of the body of the first record, leaving its sizes right
+      fileFactory.start();
+
+      SequentialFile file = fileFactory.createSequentialFile(fileName, 1);
+
+      ByteBuffer buffer = fileFactory.newBuffer(1);
+
+      buffer.put((byte)(records.get(0).data[1] + 1));
+
+      buffer.rewind();
+
+      file.open();
+
+      // type, fileID, compactCount, recordID, bodySize and userType come before the body
+      file.position(JournalImpl.SIZE_HEADER + 19 + 1);
+
+      file.writeDirect(buffer, sync);
+
+      file.close();
+
+      fileFactory.stop();
+
+      records.remove(0);
+
+      createJournal();
+      startJournal();
+      loadAndCheck();
+
+      stopJournal();
+   }
+
+   @Test
+   public void testSwitchChecksums() throws Exception
+   {
+      setup(10, 10 * 1024, true);
+      createJournal();
+      startJournal();
+      load();
+
+      for (long i = 0; i < 100; i++)
+      {
+         add(i);
+      }
+
+      stopJournal();
+      createJournal();
+      ((JournalImpl)journal).setChecksums(true);
+      startJournal();
+      loadAndCheck();
+
+      // the current file was written without checksums, so the records go on a new file
+      for (long i = 0; i < 100; i++)
+      {
+         update(i);
+         add(i + 100);
+      }
+
+      Assert.assertEquals(JournalImpl.CHECKSUM_FORMAT_VERSION,
+                          ((JournalImpl)journal).getCurrentFile().getJournalVersion());
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+
+      for (long i = 0; i < 100; i++)
+      {
+         delete(i);
+      }
+
+      Assert.assertEquals(JournalImpl.FORMAT_VERSION, ((JournalImpl)journal).getCurrentFile().getJournalVersion());
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   @Test
+   public void testMaxReadyFiles() throws Exception
+   {
+      setup(2, 10 * 1024, true);
+      createJournal();
+      ((JournalImpl)journal).setMaxReadyFiles(5);
+      startJournal();
+      load();
+
+      for (long i = 0; i < 20; i++)
+      {
+         add(i);
+         journal.forceMoveNextFile();
+      }
+
+      // the files are filled one at a time on the files executor
+      for (int i = 0; i <= 5; i++)
+      {
+         journal.debugWait();
+      }
+
+      int target = ((JournalImpl)journal).getReadyFilesTarget();
+
+      Assert.assertTrue(target >= 1 && target <= 5);
+
+      Assert.assertTrue(journal.getFreeFilesCount() + journal.getOpenedFilesCount() >= target);
+
+      Assert.assertTrue(((JournalImpl)journal).getFileStalls() >= 0);
+
+      for (long i = 0; i < 20; i++)
+      {
+         delete(i);
+      }
+
+      checkAndReclaimFiles();
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
    @Test
    public void testMultipleAddUpdateDelete() throws Exception
    {
@@ -16,8 +16,10 @@ import org.junit.Before;
 
 import org.junit.Test;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -1001,6 +1003,24 @@ public class ReclaimerTest extends UnitTestCase
          return totalDep;
       }
 
+      public void addTransactionCompletion(final JournalFile completionFile)
+      {
+      }
+
+      public long getLastTransactionCompletionID()
+      {
+         return -1;
+      }
+
+      public void addCompletedTransaction(final long transactionID, final JournalFile transactionFile)
+      {
+      }
+
+      public List<JournalFile> getCompletedTransactionFiles(final long transactionID)
+      {
+         return Collections.emptyList();
+      }
+
       /* (non-Javadoc)
        * @see org.hornetq.core.journal.impl.JournalFile#getJournalVersion()
        */
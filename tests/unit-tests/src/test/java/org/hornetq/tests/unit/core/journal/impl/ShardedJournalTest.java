@@ -0,0 +1,344 @@
+/*
+ * Copyright 2013 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.unit.core.journal.impl;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hornetq.core.journal.IOCompletion;
+import org.hornetq.core.journal.PreparedTransactionInfo;
+import org.hornetq.core.journal.RecordInfo;
+import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
+import org.hornetq.core.journal.impl.ShardedJournal;
+import org.hornetq.core.journal.impl.SimpleWaitIOCallback;
+import org.hornetq.tests.util.UnitTestCase;
+import org.junit.After;
+import org.junit.Test;
+
+public class ShardedJournalTest extends UnitTestCase
+{
+   // Constants -----------------------------------------------------
+
+   private static final int SHARDS = 4;
+
+   private static final byte RECORD_TYPE = 1;
+
+   // Attributes ----------------------------------------------------
+
+   private ShardedJournal journal;
+
+   private final List<RecordInfo> committed = new ArrayList<RecordInfo>();
+
+   private final List<PreparedTransactionInfo> prepared = new ArrayList<PreparedTransactionInfo>();
+
+   // Public --------------------------------------------------------
+
+   @Override
+   @After
+   public void tearDown() throws Exception
+   {
+      stopComponent(journal);
+
+      super.tearDown();
+   }
+
+   @Test
+   public void testRecordsSpreadAcrossShards() throws Exception
+   {
+      load();
+
+      for (long id = 1; id <= 200; id++)
+      {
+         journal.appendAddRecord(id, RECORD_TYPE, new byte[] { 1 }, id == 200);
+      }
+
+      for (long id = 2; id <= 200; id += 2)
+      {
+         journal.appendUpdateRecord(id, RECORD_TYPE, new byte[] { 2 }, false);
+      }
+
+      for (long id = 5; id <= 200; id += 5)
+      {
+         journal.appendDeleteRecord(id, id == 200);
+      }
+
+      for (int i = 0; i < SHARDS; i++)
+      {
+         assertTrue(journal.getShard(i).getNumberOfRecords() > 0);
+      }
+
+      load();
+
+      Map<Long, List<RecordInfo>> byID = groupByID(committed);
+
+      assertEquals(160, byID.size());
+
+      for (long id = 1; id <= 200; id++)
+      {
+         List<RecordInfo> records = byID.get(id);
+
+         if (id % 5 == 0)
+         {
+            assertNull(records);
+         }
+         else if (id % 2 == 0)
+         {
+            assertEquals(2, records.size());
+            assertFalse(records.get(0).isUpdate);
+            assertTrue(records.get(1).isUpdate);
+         }
+         else
+         {
+            assertEquals(1, records.size());
+         }
+      }
+   }
+
+   @Test
+   public void testTransactionSpanningShardsCommitted() throws Exception
+   {
+      load();
+
+      long[] ids = idsOnDifferentShards();
+
+      journal.appendAddRecordTransactional(1000, ids[0], RECORD_TYPE, new byte[] { 1 });
+      journal.appendAddRecordTransactional(1000, ids[1], RECORD_TYPE, new byte[] { 1 });
+
+      CountingCompletion completion = new CountingCompletion();
+
+      journal.appendCommitRecord(1000, true, completion, true);
+
+      completion.waitCompletion();
+
+      assertEquals(1, completion.lineUps.get());
+      assertEquals(1, completion.dones.get());
+
+      load();
+
+      assertEquals(2, committed.size());
+      assertTrue(prepared.isEmpty());
+   }
+
+   @Test
+   public void testTransactionSpanningShardsRolledBack() throws Exception
+   {
+      load();
+
+      long[] ids = idsOnDifferentShards();
+
+      journal.appendAddRecord(ids[0], RECORD_TYPE, new byte[] { 1 }, true);
+
+      journal.appendDeleteRecordTransactional(1000, ids[0]);
+      journal.appendAddRecordTransactional(1000, ids[1], RECORD_TYPE, new byte[] { 1 });
+
+      journal.appendRollbackRecord(1000, true);
+
+      load();
+
+      assertEquals(1, committed.size());
+      assertEquals(ids[0], committed.get(0).id);
+   }
+
+   @Test
+   public void testInterruptedCommitCompletedAtLoad() throws Exception
+   {
+      load();
+
+      long txID = 1000;
+      long[] ids = idsOnDifferentShards();
+
+      JournalImpl first = journal.getShard(journal.getShardIndex(ids[0]));
+      JournalImpl second = journal.getShard(journal.getShardIndex(ids[1]));
+
+      // as the sharded journal does, up to the commit of the first shard
+      first.appendAddRecordTransactional(txID, ids[0], RECORD_TYPE, new byte[] { 1 });
+      second.appendAddRecordTransactional(txID, ids[1], RECORD_TYPE, new byte[] { 1 });
+      first.appendPrepareRecord(txID, new byte[0], true);
+      second.appendPrepareRecord(txID, new byte[0], true);
+      journal.getShard(journal.getShardIndex(txID)).appendAddRecord(txID,
+                                                                    ShardedJournal.COMMIT_DECISION_RECORD,
+                                                                    new byte[0],
+                                                                    true);
+      first.appendCommitRecord(txID, true);
+
+      load();
+
+      assertEquals(2, committed.size());
+      assertTrue(prepared.isEmpty());
+
+      load();
+
+      assertEquals(2, committed.size());
+      assertTrue(prepared.isEmpty());
+   }
+
+   @Test
+   public void testInterruptedCommitRolledBackAtLoad() throws Exception
+   {
+      load();
+
+      long txID = 1000;
+      long[] ids = idsOnDifferentShards();
+
+      JournalImpl first = journal.getShard(journal.getShardIndex(ids[0]));
+      JournalImpl second = journal.getShard(journal.getShardIndex(ids[1]));
+
+      // prepared, but the decision to commit was never stored
+      first.appendAddRecordTransactional(txID, ids[0], RECORD_TYPE, new byte[] { 1 });
+      second.appendAddRecordTransactional(txID, ids[1], RECORD_TYPE, new byte[] { 1 });
+      first.appendPrepareRecord(txID, new byte[0], true);
+      second.appendPrepareRecord(txID, new byte[0], true);
+
+      load();
+
+      assertTrue(committed.isEmpty());
+      assertTrue(prepared.isEmpty());
+
+      load();
+
+      assertTrue(committed.isEmpty());
+      assertTrue(prepared.isEmpty());
+   }
+
+   @Test
+   public void testPreparedTransactionSpanningShards() throws Exception
+   {
+      load();
+
+      long[] ids = idsOnDifferentShards();
+
+      journal.appendAddRecordTransactional(1000, ids[0], RECORD_TYPE, new byte[] { 1 });
+      journal.appendAddRecordTransactional(1000, ids[1], RECORD_TYPE, new byte[] { 1 });
+
+      journal.appendPrepareRecord(1000, new byte[] { 1, 2, 3 }, true);
+
+      load();
+
+      assertTrue(committed.isEmpty());
+      assertEquals(1, prepared.size());
+      assertEquals(1000, prepared.get(0).id);
+      assertEquals(2, prepared.get(0).records.size());
+
+      journal.appendCommitRecord(1000, true);
+
+      load();
+
+      assertEquals(2, committed.size());
+      assertTrue(prepared.isEmpty());
+   }
+
+   // Private -------------------------------------------------------
+
+   private void load() throws Exception
+   {
+      stopComponent(journal);
+
+      JournalImpl[] shards = new JournalImpl[SHARDS];
+
+      for (int i = 0; i < SHARDS; i++)
+      {
+         File directory = new File(getTestDir(), "shard-" + i);
+
+         directory.mkdirs();
+
+         shards[i] = new JournalImpl(10 * 1024,
+                                     2,
+                                     0,
+                                     0,
+                                     new NIOSequentialFileFactory(directory.getPath(), true),
+                                     "hq",
+                                     "hq",
+                                     1);
+      }
+
+      journal = new ShardedJournal(shards);
+
+      journal.start();
+
+      committed.clear();
+      prepared.clear();
+
+      journal.load(committed, prepared, null);
+   }
+
+   private long[] idsOnDifferentShards()
+   {
+      long first = 1;
+      long second = 2;
+
+      while (journal.getShardIndex(second) == journal.getShardIndex(first))
+      {
+         second++;
+      }
+
+      return new long[] { first, second };
+   }
+
+   private static Map<Long, List<RecordInfo>> groupByID(final List<RecordInfo> records)
+   {
+      Map<Long, List<RecordInfo>> byID = new HashMap<Long, List<RecordInfo>>();
+
+      for (RecordInfo record : records)
+      {
+         List<RecordInfo> recordsOfID = byID.get(record.id);
+
+         if (recordsOfID == null)
+         {
+            recordsOfID = new ArrayList<RecordInfo>();
+            byID.put(record.id, recordsOfID);
+         }
+
+         recordsOfID.add(record);
+      }
+
+      return byID;
+   }
+
+   // Inner classes -------------------------------------------------
+
+   private static final class CountingCompletion implements IOCompletion
+   {
+      final AtomicInteger lineUps = new AtomicInteger();
+
+      final AtomicInteger dones = new AtomicInteger();
+
+      private final SimpleWaitIOCallback wait = new SimpleWaitIOCallback();
+
+      public void storeLineUp()
+      {
+         lineUps.incrementAndGet();
+      }
+
+      public void done()
+      {
+         dones.incrementAndGet();
+         wait.done();
+      }
+
+      public void onError(final int errorCode, final String errorMessage)
+      {
+         wait.onError(errorCode, errorMessage);
+      }
+
+      void waitCompletion() throws Exception
+      {
+         wait.waitCompletion();
+      }
+   }
+}
@@ -19,8 +19,11 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 import org.junit.Assert;
 
@@ -403,4 +406,104 @@ public class TimedBufferTest extends UnitTestCase
          timedBuffer.stop();
       }
    }
+
+   @Test
+   public void testAdaptiveTimeout() throws Exception
+   {
+      final ExecutorService syncExecutor = Executors.newCachedThreadPool();
+
+      // completes the callbacks asynchronously after a slow sync, as AIO would
+      class TestObserver implements TimedBufferObserver
+      {
+         public void flushBuffer(final ByteBuffer buffer, final boolean sync, final List<IOAsyncTask> callbacks)
+         {
+            syncExecutor.execute(new Runnable()
+            {
+               public void run()
+               {
+                  LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+
+                  for (IOAsyncTask callback : callbacks)
+                  {
+                     callback.done();
+                  }
+               }
+            });
+         }
+
+         public ByteBuffer newBuffer(final int minSize, final int maxSize)
+         {
+            return ByteBuffer.allocate(maxSize);
+         }
+
+         public int getRemainingBytes()
+         {
+            return 1024 * 1024;
+         }
+      }
+
+      final int timeout = TimedBufferTest.ONE_SECOND_IN_NANOS / 1000;
+
+      TimedBuffer timedBuffer = new TimedBuffer(1000, timeout, false, true);
+
+      timedBuffer.start();
+
+      try
+      {
+         timedBuffer.setObserver(new TestObserver());
+
+         assertEquals(0, timedBuffer.getWriteRate(), 0);
+
+         byte[] bytes = new byte[10];
+
+         // syncs requested much faster than they complete, it's worth waiting longer to batch them
+         long end = System.currentTimeMillis() + 300;
+
+         while (System.currentTimeMillis() < end)
+         {
+            timedBuffer.checkSize(10);
+            timedBuffer.addBytes(HornetQBuffers.wrappedBuffer(bytes), true, dummyCallback);
+            LockSupport.parkNanos(100000);
+         }
+
+         Thread.sleep(100);
+
+         assertTrue(timedBuffer.getSyncLatency() >= TimeUnit.MILLISECONDS.toNanos(5));
+         assertTrue(timedBuffer.getCurrentTimeout() > timeout);
+         assertTrue(timedBuffer.getCurrentTimeout() <= timeout * 4);
+
+         // syncs requested one at a time, waiting only adds latency
+         for (int i = 0; i < 40; i++)
+         {
+            final CountDownLatch synced = new CountDownLatch(1);
+
+            timedBuffer.checkSize(10);
+            timedBuffer.addBytes(HornetQBuffers.wrappedBuffer(bytes), true, new IOAsyncTask()
+            {
+               public void done()
+               {
+                  synced.countDown();
+               }
+
+               public void onError(final int errorCode, final String errorMessage)
+               {
+               }
+            });
+
+            assertTrue(synced.await(10, TimeUnit.SECONDS));
+
+            Thread.sleep(20);
+         }
+
+         assertEquals(timeout / 10, timedBuffer.getCurrentTimeout());
+
+         assertTrue(timedBuffer.getWriteRate() > 0);
+         assertTrue(timedBuffer.getFlushRate() > 0);
+      }
+      finally
+      {
+         timedBuffer.stop();
+         syncExecutor.shutdown();
+      }
+   }
 }
@@ -15,15 +15,21 @@ package org.hornetq.tests.unit.core.message.impl;
 
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Set;
 
 import org.junit.Assert;
 
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.HornetQBuffers;
 import org.hornetq.api.core.Message;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.client.impl.ClientMessageImpl;
+import org.hornetq.core.protocol.core.impl.PacketImpl;
+import org.hornetq.core.protocol.core.impl.wireformat.SessionReceiveMessage;
 import org.hornetq.tests.util.RandomUtil;
 import org.hornetq.tests.util.UnitTestCase;
+import org.hornetq.utils.DataConstants;
 
 /**
  *
@@ -225,6 +231,31 @@ public class MessageImplTest extends UnitTestCase
       }
    }
 
+   @Test
+   public void testReceiveMessagesShareTheEncoding()
+   {
+      ClientMessageImpl message = new ClientMessageImpl(Message.TEXT_TYPE, true, 0, System.currentTimeMillis(), (byte)4, 100);
+      message.getBodyBuffer().writeString("body");
+      message.putIntProperty("delivery", 1);
+
+      HornetQBuffer first = encode(new SessionReceiveMessage(10, message, 1));
+      byte[] firstBytes = bytes(first);
+
+      // a second delivery shares the encoding of the first one
+      HornetQBuffer second = encode(new SessionReceiveMessage(20, message, 2));
+      Assert.assertArrayEquals(Arrays.copyOfRange(firstBytes, PacketImpl.PACKET_HEADERS_SIZE, firstBytes.length - 12),
+                               Arrays.copyOfRange(bytes(second), PacketImpl.PACKET_HEADERS_SIZE, firstBytes.length - 12));
+
+      // changing the message afterwards must not change what was already encoded
+      message.putIntProperty("delivery", 3);
+      HornetQBuffer third = encode(new SessionReceiveMessage(30, message, 3));
+      Assert.assertArrayEquals(firstBytes, bytes(first));
+
+      assertReceived(first, 10, 1);
+      assertReceived(second, 20, 1);
+      assertReceived(third, 30, 3);
+   }
+
    // Protected -------------------------------------------------------------------------------
 
    protected void assertMessagesEquivalent(final Message msg1, final Message msg2)
@@ -263,4 +294,37 @@ public class MessageImplTest extends UnitTestCase
 
    // Private ----------------------------------------------------------------------------------
 
+   private static HornetQBuffer encode(final SessionReceiveMessage packet)
+   {
+      packet.setChannelID(5);
+      return packet.encode(null);
+   }
+
+   private static byte[] bytes(final HornetQBuffer buffer)
+   {
+      byte[] bytes = new byte[buffer.readableBytes()];
+      buffer.getBytes(buffer.readerIndex(), bytes);
+      return bytes;
+   }
+
+   private static void assertReceived(final HornetQBuffer encoded, final long consumerID, final int delivery)
+   {
+      // as received from a connection
+      HornetQBuffer buffer = HornetQBuffers.dynamicBuffer(encoded.readableBytes());
+      buffer.writeBytes(bytes(encoded));
+
+      Assert.assertEquals(buffer.writerIndex() - DataConstants.SIZE_INT, buffer.readInt());
+      Assert.assertEquals(PacketImpl.SESS_RECEIVE_MSG, buffer.readByte());
+
+      SessionReceiveMessage packet = new SessionReceiveMessage(new ClientMessageImpl());
+      packet.decode(buffer);
+
+      Assert.assertEquals(5, packet.getChannelID());
+      Assert.assertEquals(consumerID, packet.getConsumerID());
+
+      ClientMessageImpl message = (ClientMessageImpl)packet.getMessage();
+      Assert.assertEquals(delivery, message.getIntProperty("delivery").intValue());
+      Assert.assertEquals("body", message.getBodyBuffer().readString());
+   }
+
 }
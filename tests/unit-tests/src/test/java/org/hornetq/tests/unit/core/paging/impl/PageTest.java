@@ -15,16 +15,22 @@ package org.hornetq.tests.unit.core.paging.impl;
 
 import org.junit.Test;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 
 import org.junit.Assert;
 
 import org.hornetq.api.core.HornetQBuffer;
 import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.journal.EncodingSupport;
 import org.hornetq.core.journal.SequentialFile;
 import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.impl.MappedSequentialFileFactory;
 import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
 import org.hornetq.core.paging.PagedMessage;
 import org.hornetq.core.paging.impl.Page;
@@ -59,6 +65,13 @@ public class PageTest extends UnitTestCase
       testAdd(new NIOSequentialFileFactory(getTestDir()), 1000);
    }
 
+   @Test
+   public void testPageWithMapped() throws Exception
+   {
+      recreateDirectory(getTestDir());
+      testAdd(new MappedSequentialFileFactory(getTestDir()), 1000);
+   }
+
    @Test
    public void testDamagedDataWithNIO() throws Exception
    {
@@ -79,7 +92,367 @@ public class PageTest extends UnitTestCase
       testDamagedPage(new FakeSequentialFileFactory(1, false), 100);
    }
 
+   @Test
+   public void testAppendIsWrittenOnFlush() throws Exception
+   {
+      recreateDirectory(getTestDir());
+
+      SequentialFileFactory factory = new NIOSequentialFileFactory(getTestDir());
+
+      SequentialFile file = factory.createSequentialFile("00010.page", 1);
+
+      Page page = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+
+      page.open();
+
+      for (int i = 0; i < 10; i++)
+      {
+         page.append(new PagedMessageImpl(createMessage(i), new long[0]));
+      }
+
+      Assert.assertEquals(10, page.getNumberOfMessages());
+      Assert.assertEquals(0, file.size());
+
+      page.flush();
+
+      Assert.assertEquals(page.getSize(), file.size());
+
+      page.close();
+   }
+
+   /**
+    * Messages appended concurrently are written by whichever thread is flushing, check that none
+    * is lost and that the messages of each thread keep their order.
+    */
+   @Test
+   public void testConcurrentAppendWithNIO() throws Exception
+   {
+      recreateDirectory(getTestDir());
+      testConcurrentAppend(new NIOSequentialFileFactory(getTestDir()));
+   }
+
+   @Test
+   public void testConcurrentAppendWithMapped() throws Exception
+   {
+      recreateDirectory(getTestDir());
+      testConcurrentAppend(new MappedSequentialFileFactory(getTestDir()));
+   }
+
+   /**
+    * The messages appended while a write is in progress are written together, a failure of that
+    * write has to reach each of their appenders.
+    */
+   @Test
+   public void testWriteFailureReachesEveryAppender() throws Exception
+   {
+      final CountDownLatch writing = new CountDownLatch(1);
+
+      final CountDownLatch release = new CountDownLatch(1);
+
+      SequentialFileFactory factory = new FakeSequentialFileFactory()
+      {
+         @Override
+         protected FakeSequentialFile newSequentialFile(final String fileName)
+         {
+            return new FakeSequentialFile(fileName)
+            {
+               private int writes;
+
+               @Override
+               public void write(final EncodingSupport bytes, final boolean sync) throws Exception
+               {
+                  if (writes++ > 0)
+                  {
+                     throw new IOException("No space left on device");
+                  }
+
+                  writing.countDown();
+                  release.await();
+                  super.write(bytes, sync);
+               }
+            };
+         }
+      };
+
+      final Page page = createPage(factory, 10);
+
+      page.open();
+
+      final List<Exception> errors = new CopyOnWriteArrayList<Exception>();
+
+      Thread[] writers = new Thread[3];
+
+      for (int i = 0; i < writers.length; i++)
+      {
+         final long id = i;
+
+         writers[i] = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               try
+               {
+                  page.write(new PagedMessageImpl(createMessage(id), new long[0]));
+               }
+               catch (Exception e)
+               {
+                  errors.add(e);
+               }
+            }
+         };
+      }
+
+      writers[0].start();
+      writing.await();
+
+      writers[1].start();
+      writers[2].start();
+
+      long timeout = System.currentTimeMillis() + 5000;
+      while (page.getNumberOfMessages() < writers.length && System.currentTimeMillis() < timeout)
+      {
+         Thread.sleep(10);
+      }
+
+      release.countDown();
+
+      for (Thread writer : writers)
+      {
+         writer.join();
+      }
+
+      // the first message was written on its own, the other two failed together
+      Assert.assertEquals(errors.toString(), 2, errors.size());
+   }
+
+   /** The data of a mapped page file not closed ends at the zeros the file was extended with */
+   @Test
+   public void testPageNotClosedWithMapped() throws Exception
+   {
+      recreateDirectory(getTestDir());
+
+      SequentialFileFactory factory = new MappedSequentialFileFactory(getTestDir());
+
+      Page page = createPage(factory, 10);
+
+      page.open();
+
+      for (int i = 0; i < 10; i++)
+      {
+         page.write(new PagedMessageImpl(createMessage(i), new long[0]));
+      }
+
+      page.sync();
+
+      Page reopened = createPage(factory, 10);
+
+      reopened.open();
+      List<PagedMessage> messages = reopened.read(new NullStorageManager());
+      reopened.close();
+
+      Assert.assertEquals(10, messages.size());
+      for (int i = 0; i < 10; i++)
+      {
+         Assert.assertEquals(i, messages.get(i).getMessage().getMessageID());
+      }
+
+      Assert.assertEquals(0, factory.listFiles("invalidPage").size());
+
+      page.close();
+   }
+
+   protected void testConcurrentAppend(final SequentialFileFactory factory) throws Exception
+   {
+      final int threads = 8;
+
+      final int messagesPerThread = 500;
+
+      SequentialFile file = factory.createSequentialFile("00010.page", 1);
+
+      final Page page = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+
+      page.open();
+
+      final CountDownLatch start = new CountDownLatch(1);
+
+      final List<Exception> errors = new CopyOnWriteArrayList<Exception>();
+
+      Thread[] writers = new Thread[threads];
+
+      for (int t = 0; t < threads; t++)
+      {
+         final long base = t * (long)messagesPerThread;
+
+         writers[t] = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               try
+               {
+                  start.await();
+
+                  for (long i = base; i < base + messagesPerThread; i++)
+                  {
+                     page.write(new PagedMessageImpl(createMessage(i), new long[0]));
+                  }
+               }
+               catch (Exception e)
+               {
+                  errors.add(e);
+               }
+            }
+         };
+
+         writers[t].start();
+      }
+
+      start.countDown();
+
+      for (Thread writer : writers)
+      {
+         writer.join();
+      }
+
+      Assert.assertTrue(errors.toString(), errors.isEmpty());
+
+      page.close();
+
+      file = factory.createSequentialFile("00010.page", 1);
+      file.open();
+
+      List<PagedMessage> msgs = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10).read(new NullStorageManager());
+
+      Assert.assertEquals(threads * messagesPerThread, msgs.size());
+
+      long[] lastIDs = new long[threads];
+      Arrays.fill(lastIDs, -1);
+
+      for (PagedMessage msg : msgs)
+      {
+         long id = msg.getMessage().getMessageID();
+         int thread = (int)(id / messagesPerThread);
+
+         Assert.assertTrue(id > lastIDs[thread]);
+         lastIDs[thread] = id;
+      }
+
+      file.close();
+   }
+
    /** Validate if everything we add is recovered */
+   @Test
+   public void testIndexedReadWithNIO() throws Exception
+   {
+      recreateDirectory(getTestDir());
+
+      SequentialFileFactory factory = new NIOSequentialFileFactory(getTestDir());
+
+      Page page = createPage(factory, 10);
+
+      page.open();
+
+      for (int i = 0; i < 100; i++)
+      {
+         page.write(new PagedMessageImpl(createMessage(i), new long[0]));
+      }
+
+      page.close();
+
+      Assert.assertTrue(factory.createSequentialFile("00010." + Page.INDEX_EXTENSION, 1).exists());
+
+      page = createPage(factory, 10);
+
+      int[] index = page.readIndex();
+
+      Assert.assertNotNull(index);
+      Assert.assertEquals(100, index.length);
+
+      List<PagedMessage> messages = page.read(new NullStorageManager(), index, 50, 1);
+
+      Assert.assertEquals(1, messages.size());
+      Assert.assertEquals(50, messages.get(0).getMessage().getMessageID());
+
+      messages = page.read(new NullStorageManager(), index, 90, 10);
+
+      Assert.assertEquals(10, messages.size());
+      for (int i = 0; i < 10; i++)
+      {
+         Assert.assertEquals(90 + i, messages.get(i).getMessage().getMessageID());
+      }
+
+      page.delete(null);
+
+      Assert.assertFalse(factory.createSequentialFile("00010." + Page.INDEX_EXTENSION, 1).exists());
+   }
+
+   @Test
+   public void testIndexIgnoredOncePageReopenedWithNIO() throws Exception
+   {
+      recreateDirectory(getTestDir());
+
+      SequentialFileFactory factory = new NIOSequentialFileFactory(getTestDir());
+
+      Page page = createPage(factory, 10);
+
+      page.open();
+      page.write(new PagedMessageImpl(createMessage(0), new long[0]));
+      page.close();
+
+      Assert.assertNotNull(page.readIndex());
+
+      // the page of a server restarted before it was full gets more records
+      page = createPage(factory, 10);
+
+      page.open();
+      page.read(new NullStorageManager());
+      page.write(new PagedMessageImpl(createMessage(1), new long[0]));
+      page.close();
+
+      Assert.assertNull(page.readIndex());
+
+      page.open();
+      Assert.assertEquals(2, page.read(new NullStorageManager()).size());
+      page.close();
+   }
+
+   /** Zeros only end the data of a mapped page file, on any other file they are damage */
+   @Test
+   public void testZeroedRecordWithNIO() throws Exception
+   {
+      recreateDirectory(getTestDir());
+
+      SequentialFileFactory factory = new NIOSequentialFileFactory(getTestDir());
+
+      Page page = createPage(factory, 10);
+
+      page.open();
+
+      for (int i = 0; i < 10; i++)
+      {
+         page.write(new PagedMessageImpl(createMessage(i), new long[0]));
+      }
+
+      page.close();
+
+      int[] index = page.readIndex();
+
+      SequentialFile file = factory.createSequentialFile("00010.page", 1);
+      file.open();
+      file.position(index[5]);
+      file.writeDirect(ByteBuffer.allocate(index[6] - index[5]), true);
+      file.close();
+
+      page = createPage(factory, 10);
+
+      page.open();
+      Assert.assertEquals(5, page.read(new NullStorageManager()).size());
+      page.delete(null);
+
+      Assert.assertEquals(1, factory.listFiles("invalidPage").size());
+   }
+
    protected void testAdd(final SequentialFileFactory factory, final int numberOfElements) throws Exception
    {
 
@@ -246,5 +619,23 @@ public class PageTest extends UnitTestCase
 
    // Private -------------------------------------------------------
 
+   private static Page createPage(final SequentialFileFactory factory, final int pageId) throws Exception
+   {
+      SequentialFile file = factory.createSequentialFile("000" + pageId + ".page", 1);
+
+      return new Page(new SimpleString("something"), new NullStorageManager(), factory, file, pageId);
+   }
+
+   private static ServerMessage createMessage(final long id)
+   {
+      ServerMessage msg = new ServerMessageImpl(id, 100);
+
+      msg.getBodyBuffer().writeLong(id);
+
+      msg.setAddress(new SimpleString("Test"));
+
+      return msg;
+   }
+
    // Inner classes -------------------------------------------------
 }
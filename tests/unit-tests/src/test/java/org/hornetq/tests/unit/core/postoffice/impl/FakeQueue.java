@@ -316,6 +316,24 @@ public class FakeQueue implements Queue
       // no-op
       return 0;
    }
+
+   @Override
+   public int getGroupCount()
+   {
+      return 0;
+   }
+
+   @Override
+   public long getGroupsEvicted()
+   {
+      return 0;
+   }
+
+   @Override
+   public long getGroupsRebalanced()
+   {
+      return 0;
+   }
    
    @Override
    public void resetMessagesAdded()
@@ -33,11 +33,13 @@ import org.hornetq.spi.core.remoting.Connection;
 import org.hornetq.spi.core.remoting.ConnectionLifeCycleListener;
 import org.hornetq.tests.util.RandomUtil;
 import org.hornetq.tests.util.UnitTestCase;
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelConfig;
 import org.jboss.netty.channel.ChannelFactory;
 import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.DefaultChannelFuture;
 
 /**
  *
@@ -73,6 +75,86 @@ public class NettyConnectionTest extends UnitTestCase
       Assert.assertEquals(1, channel.getWritten().size());
    }
 
+   @Test
+   public void testWriteBatched() throws Exception
+   {
+      SimpleChannel channel = new SimpleChannel(RandomUtil.randomInt());
+      NettyConnection conn = new NettyConnection(emptyMap, channel, new MyListener(), true, false);
+
+      for (int i = 0; i < 3; i++)
+      {
+         conn.write(createPacket(100, (byte)i), false, true);
+      }
+
+      Assert.assertEquals(0, channel.getWritten().size());
+
+      conn.checkFlushBatchBuffer();
+
+      Assert.assertEquals(1, channel.getWritten().size());
+
+      ChannelBuffer written = (ChannelBuffer)channel.getWritten().get(0);
+      Assert.assertEquals(300, written.readableBytes());
+      Assert.assertEquals(2, written.getByte(299));
+   }
+
+   @Test
+   public void testBatchBufferReusedOnceWritten() throws Exception
+   {
+      SimpleChannel channel = new SimpleChannel(RandomUtil.randomInt());
+      NettyConnection conn = new NettyConnection(emptyMap, channel, new MyListener(), true, false);
+
+      for (int i = 1; i <= 3; i++)
+      {
+         conn.write(createPacket(100 * i, (byte)i), false, true);
+         conn.checkFlushBatchBuffer();
+      }
+
+      Assert.assertEquals(3, channel.getWritten().size());
+      Assert.assertNotSame(channel.getWritten().get(0), channel.getWritten().get(2));
+
+      channel.completeWrites();
+
+      conn.write(createPacket(400, (byte)4), false, true);
+      conn.checkFlushBatchBuffer();
+      conn.write(createPacket(500, (byte)5), false, true);
+      conn.checkFlushBatchBuffer();
+
+      Assert.assertEquals(5, channel.getWritten().size());
+
+      // the 4th packet went to the batch buffer taken when the 3rd one was flushed, the 5th to the
+      // first batch buffer written
+      Assert.assertSame(channel.getWritten().get(0), channel.getWritten().get(4));
+      Assert.assertEquals(500, ((ChannelBuffer)channel.getWritten().get(4)).readableBytes());
+   }
+
+   @Test
+   public void testLargePacketNotCopiedIntoBatchBuffer() throws Exception
+   {
+      SimpleChannel channel = new SimpleChannel(RandomUtil.randomInt());
+      NettyConnection conn = new NettyConnection(emptyMap, channel, new MyListener(), true, false);
+
+      conn.write(createPacket(100, (byte)1), false, true);
+
+      HornetQBuffer large = createPacket(100 * 1024, (byte)2);
+      conn.write(large, false, true);
+
+      // the batch buffer and the packet are written together
+      Assert.assertEquals(1, channel.getWritten().size());
+
+      ChannelBuffer written = (ChannelBuffer)channel.getWritten().get(0);
+      Assert.assertEquals(100 + 100 * 1024, written.readableBytes());
+      Assert.assertEquals(1, written.getByte(99));
+      Assert.assertEquals(2, written.getByte(100));
+
+      // it is a view on the packet
+      large.setByte(0, (byte)3);
+      Assert.assertEquals(3, written.getByte(100));
+
+      // nothing is left to flush
+      conn.checkFlushBatchBuffer();
+      Assert.assertEquals(1, channel.getWritten().size());
+   }
+
    @Test
    public void testCreateBuffer() throws Exception
    {
@@ -87,12 +169,26 @@ public class NettyConnectionTest extends UnitTestCase
 
    }
 
+   private static HornetQBuffer createPacket(final int size, final byte value)
+   {
+      HornetQBuffer buffer = HornetQBuffers.dynamicBuffer(size);
+
+      for (int i = 0; i < size; i++)
+      {
+         buffer.writeByte(value);
+      }
+
+      return buffer;
+   }
+
    private final class SimpleChannel implements Channel
    {
       private final int id;
 
       private final List<Object> written = new LinkedList<Object>();
 
+      private final List<ChannelFuture> futures = new LinkedList<ChannelFuture>();
+
       private SimpleChannel(final int id)
       {
          this.id = id;
@@ -103,6 +199,15 @@ public class NettyConnectionTest extends UnitTestCase
          return written;
       }
 
+      public void completeWrites()
+      {
+         for (ChannelFuture future : futures)
+         {
+            future.setSuccess();
+         }
+         futures.clear();
+      }
+
       public int compareTo(final Channel arg0)
       {
          return 0;
@@ -111,13 +216,17 @@ public class NettyConnectionTest extends UnitTestCase
       public ChannelFuture write(final Object arg0, final SocketAddress arg1)
       {
          written.add(arg0);
-         return null;
+         ChannelFuture future = new DefaultChannelFuture(this, false);
+         futures.add(future);
+         return future;
       }
 
       public ChannelFuture write(final Object arg0)
       {
          written.add(arg0);
-         return null;
+         ChannelFuture future = new DefaultChannelFuture(this, false);
+         futures.add(future);
+         return future;
       }
 
       public ChannelFuture unbind()
@@ -18,6 +18,7 @@ import org.junit.After;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -36,6 +37,8 @@ import org.hornetq.core.server.HandleStatus;
 import org.hornetq.core.server.MessageReference;
 import org.hornetq.core.server.ServerMessage;
 import org.hornetq.core.server.impl.QueueImpl;
+import org.hornetq.core.settings.impl.AddressSettings;
+import org.hornetq.core.settings.impl.HierarchicalObjectRepository;
 import org.hornetq.tests.unit.core.server.impl.fakes.FakeConsumer;
 import org.hornetq.tests.unit.core.server.impl.fakes.FakeFilter;
 import org.hornetq.tests.unit.core.server.impl.fakes.FakePostOffice;
@@ -1015,6 +1018,122 @@ public class QueueImplTest extends UnitTestCase
       }
    }
 
+   @Test
+   public void testIndexedDeliveryWithFilters() throws Exception
+   {
+      AddressSettings settings = new AddressSettings();
+      settings.setIndexedDelivery(true);
+
+      HierarchicalObjectRepository<AddressSettings> repository = new HierarchicalObjectRepository<AddressSettings>();
+      repository.addMatch("#", settings);
+
+      QueueImpl queue = new QueueImpl(1,
+                                      QueueImplTest.address1,
+                                      QueueImplTest.queue1,
+                                      null,
+                                      false,
+                                      true,
+                                      scheduledExecutor,
+                                      null,
+                                      null,
+                                      repository,
+                                      executor);
+
+      FakeConsumer green = new FakeConsumer(FilterImpl.createFilter("color = 'green' AND size > 2"));
+      FakeConsumer red = new FakeConsumer(FilterImpl.createFilter("'red' = color"));
+
+      queue.addConsumer(green);
+      queue.addConsumer(red);
+
+      final int numMessages = 30;
+
+      List<MessageReference> greenRefs = new ArrayList<MessageReference>();
+      List<MessageReference> redRefs = new ArrayList<MessageReference>();
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         MessageReference ref = generateReference(queue, i);
+         if (i % 3 == 0)
+         {
+            ref.getMessage().putStringProperty("color", "red");
+            redRefs.add(ref);
+         }
+         else
+         {
+            ref.getMessage().putStringProperty("color", "green");
+            ref.getMessage().putIntProperty("size", i % 2 == 0 ? 1 : 3);
+            if (i % 2 != 0)
+            {
+               greenRefs.add(ref);
+            }
+         }
+
+         queue.addTail(ref);
+      }
+
+      queue.deliverNow();
+
+      assertRefListsIdenticalRefs(greenRefs, green.getReferences());
+      assertRefListsIdenticalRefs(redRefs, red.getReferences());
+
+      // the green messages not matching the filter stay on the queue
+      Assert.assertEquals(numMessages - greenRefs.size() - redRefs.size(), queue.getMessageCount() - queue.getDeliveringCount());
+
+      queue.removeConsumer(red);
+
+      // the references already on the queue are indexed when a new key is first iterated
+      FakeConsumer small = new FakeConsumer(FilterImpl.createFilter("color = 'green' AND size < 2"));
+      queue.addConsumer(small);
+
+      queue.deliverNow();
+
+      Assert.assertEquals(numMessages - greenRefs.size() - redRefs.size(), small.getReferences().size());
+      Assert.assertEquals(0, queue.getMessageCount() - queue.getDeliveringCount());
+   }
+
+   @Test
+   public void testIndexedDeliveryOnAnotherPropertyOnceConsumersRemoved() throws Exception
+   {
+      AddressSettings settings = new AddressSettings();
+      settings.setIndexedDelivery(true);
+
+      HierarchicalObjectRepository<AddressSettings> repository = new HierarchicalObjectRepository<AddressSettings>();
+      repository.addMatch("#", settings);
+
+      QueueImpl queue = new QueueImpl(1,
+                                      QueueImplTest.address1,
+                                      QueueImplTest.queue1,
+                                      null,
+                                      false,
+                                      true,
+                                      scheduledExecutor,
+                                      null,
+                                      null,
+                                      repository,
+                                      executor);
+
+      FakeConsumer green = new FakeConsumer(FilterImpl.createFilter("color = 'green'"));
+      queue.addConsumer(green);
+
+      MessageReference ref = generateReference(queue, 1);
+      ref.getMessage().putStringProperty("size", "small");
+      queue.addTail(ref);
+
+      queue.deliverNow();
+
+      Assert.assertTrue(green.getReferences().isEmpty());
+
+      // the index on color goes away with its last consumer, the queue can be indexed by another property
+      queue.removeConsumer(green);
+
+      FakeConsumer small = new FakeConsumer(FilterImpl.createFilter("size = 'small'"));
+      queue.addConsumer(small);
+
+      queue.deliverNow();
+
+      assertRefListsIdenticalRefs(Collections.singletonList(ref), small.getReferences());
+   }
+
    @Test
    public void testBusyConsumerWithFilterThenAddMoreMessages() throws Exception
    {